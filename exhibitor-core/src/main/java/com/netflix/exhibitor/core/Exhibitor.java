@@ -18,6 +18,7 @@ package com.netflix.exhibitor.core;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.netflix.exhibitor.core.activity.ActivityLog;
 import com.netflix.exhibitor.core.activity.ActivityQueue;
 import com.netflix.exhibitor.core.activity.QueueGroups;
@@ -36,6 +37,10 @@ import com.netflix.exhibitor.core.config.JQueryStyle;
 import com.netflix.exhibitor.core.controlpanel.ControlPanelValues;
 import com.netflix.exhibitor.core.controlpanel.FileBasedPreferences;
 import com.netflix.exhibitor.core.index.IndexCache;
+import com.netflix.exhibitor.core.index.IndexJobs;
+import com.netflix.exhibitor.core.index.LiveIndexActivity;
+import com.netflix.exhibitor.core.index.TreeReconstructor;
+import com.netflix.exhibitor.core.index.ZooKeeperLogFiles;
 import com.netflix.exhibitor.core.processes.ProcessMonitor;
 import com.netflix.exhibitor.core.processes.ProcessOperations;
 import com.netflix.exhibitor.core.processes.StandardProcessOperations;
@@ -58,6 +63,10 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.prefs.Preferences;
 
@@ -71,6 +80,7 @@ public class Exhibitor implements Closeable
     private final CleanupManager                cleanupManager;
     private final AtomicReference<State>        state = new AtomicReference<State>(State.LATENT);
     private final IndexCache                    indexCache;
+    private final IndexJobs                     indexJobs;
     private final ControlPanelValues            controlPanelValues;
     private final BackupManager                 backupManager;
     private final ConfigManager                 configManager;
@@ -78,14 +88,20 @@ public class Exhibitor implements Closeable
     private final ProcessMonitor                processMonitor;
     private final RepeatingActivity             autoInstanceManagement;
     private final RepeatingActivity             servoMonitoring;
+    private final LiveIndexActivity             liveIndexActivity;
+    private final RepeatingActivity             liveIndex;
     private final CompositeMonitor<?>           servoCompositeMonitor;
     private final ManifestVersion               manifestVersion = new ManifestVersion();
     private final ForkJoinPool                  forkJoinPool = new ForkJoinPool();
+    private final ThreadPoolExecutor            remoteSearchExecutor;
     private final RemoteInstanceRequestClient   remoteInstanceRequestClient;
 
     public static final int        AUTO_INSTANCE_MANAGEMENT_PERIOD_MS = 60000;
 
+    private static final int        REMOTE_SEARCH_THREAD_QTY = 8;
+
     private CuratorFramework    localConnection;    // protected by synchronization
+    private TreeReconstructor   treeReconstructor;  // protected by synchronization
 
     private enum State
     {
@@ -132,15 +148,29 @@ public class Exhibitor implements Closeable
         monitorRunningInstance = new MonitorRunningInstance(this);
         cleanupManager = new CleanupManager(this);
         indexCache = new IndexCache(log);
+        indexJobs = new IndexJobs(activityQueue);
         processMonitor = new ProcessMonitor(this);
         autoInstanceManagement = new RepeatingActivityImpl(log, activityQueue, QueueGroups.MAIN, new AutomaticInstanceManagement(this), getAutoInstanceManagementPeriod());
 
         remoteInstanceRequestClient = new RemoteInstanceRequestClientImpl(arguments.remoteConnectionConfiguration);
+        remoteSearchExecutor = new ThreadPoolExecutor(REMOTE_SEARCH_THREAD_QTY, REMOTE_SEARCH_THREAD_QTY, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder().setDaemon(true).setNameFormat("RemoteSearch-%d").build());
+        remoteSearchExecutor.allowCoreThreadTimeOut(true);
 
         AtomicReference<CompositeMonitor<?>>    theMonitor = new AtomicReference<CompositeMonitor<?>>();
         servoMonitoring = initServo(this, log, activityQueue, arguments, theMonitor);
         servoCompositeMonitor = theMonitor.get();
 
+        if ( arguments.liveIndexPeriodMs > 0 )
+        {
+            liveIndexActivity = new LiveIndexActivity(this);
+            liveIndex = new RepeatingActivityImpl(log, activityQueue, QueueGroups.IO, liveIndexActivity, arguments.liveIndexPeriodMs);
+        }
+        else
+        {
+            liveIndexActivity = null;
+            liveIndex = null;
+        }
+
         controlPanelValues = new ControlPanelValues(getPreferences());
 
         this.backupManager = new BackupManager(this, backupProvider);
@@ -167,6 +197,14 @@ public class Exhibitor implements Closeable
         return indexCache;
     }
 
+    /**
+     * @return queued, running and recent index builds
+     */
+    public IndexJobs getIndexJobs()
+    {
+        return indexJobs;
+    }
+
     /**
      * Start the app
      *
@@ -180,6 +218,7 @@ public class Exhibitor implements Closeable
         backupManager.restoreAll();
 
         activityQueue.start();
+        indexCache.start();
         configManager.start();
         monitorRunningInstance.start();
         cleanupManager.start();
@@ -189,6 +228,10 @@ public class Exhibitor implements Closeable
         {
             servoMonitoring.start();
         }
+        if ( liveIndex != null )
+        {
+            liveIndex.start();
+        }
 
         configManager.addConfigListener
         (
@@ -225,6 +268,8 @@ public class Exhibitor implements Closeable
             arguments.servoRegistration.getMonitorRegistry().unregister(servoCompositeMonitor);
         }
 
+        CloseableUtils.closeQuietly(liveIndex);
+        CloseableUtils.closeQuietly(liveIndexActivity);
         CloseableUtils.closeQuietly(servoMonitoring);
         CloseableUtils.closeQuietly(autoInstanceManagement);
         CloseableUtils.closeQuietly(processMonitor);
@@ -235,6 +280,7 @@ public class Exhibitor implements Closeable
         CloseableUtils.closeQuietly(configManager);
         CloseableUtils.closeQuietly(activityQueue);
         CloseableUtils.closeQuietly(remoteInstanceRequestClient);
+        remoteSearchExecutor.shutdownNow();
         closeLocalConnection();
     }
 
@@ -286,6 +332,14 @@ public class Exhibitor implements Closeable
         return arguments.allowNodeMutations;
     }
 
+    /**
+     * @return max characters of each znode payload indexed for data searches - 0 means data text isn't indexed
+     */
+    public int getIndexDataTextMaxChars()
+    {
+        return arguments.indexDataTextMaxChars;
+    }
+
     /**
      * Closes/resets the ZK connection or does nothing if it hasn't been opened yet
      *
@@ -323,6 +377,23 @@ public class Exhibitor implements Closeable
         return localConnection;
     }
 
+    /**
+     * Return the reconstructor for point-in-time views of the local ZK instance's tree. It's recreated
+     * if the configured data/log directories change.
+     *
+     * @return reconstructor
+     */
+    public synchronized TreeReconstructor getTreeReconstructor()
+    {
+        File        snapshotDirectory = ZooKeeperLogFiles.getSnapshotDir(this);
+        File        logDirectory = ZooKeeperLogFiles.getDataDir(this);
+        if ( (treeReconstructor == null) || !treeReconstructor.getSnapshotDirectory().equals(snapshotDirectory) || !treeReconstructor.getLogDirectory().equals(logDirectory) )
+        {
+            treeReconstructor = new TreeReconstructor(snapshotDirectory, logDirectory);
+        }
+        return treeReconstructor;
+    }
+
     public ControlPanelValues getControlPanelValues()
     {
         return controlPanelValues;
@@ -378,6 +449,17 @@ public class Exhibitor implements Closeable
         return forkJoinPool;
     }
 
+    /**
+     * Searches of other instances block on HTTP, so they run here rather than in the
+     * {@link #getForkJoinPool()} which is kept for CPU bound work
+     *
+     * @return bounded executor for searches of remote instances
+     */
+    public ExecutorService getRemoteSearchExecutor()
+    {
+        return remoteSearchExecutor;
+    }
+
     private Preferences getPreferences() throws IOException
     {
         if ( arguments.preferencesPath != null )
@@ -26,6 +26,9 @@ public class Index
     private String  from;
     private String  to;
     private int     entryCount;
+    private long    minZxid;
+    private long    maxZxid;
+    private long    buildMs;
 
     public Index()
     {
@@ -33,11 +36,19 @@ public class Index
     }
 
     public Index(String name, String from, String to, int entryCount)
+    {
+        this(name, from, to, entryCount, -1, -1, 0);
+    }
+
+    public Index(String name, String from, String to, int entryCount, long minZxid, long maxZxid, long buildMs)
     {
         this.name = name;
         this.from = from;
         this.to = to;
         this.entryCount = entryCount;
+        this.minZxid = minZxid;
+        this.maxZxid = maxZxid;
+        this.buildMs = buildMs;
     }
 
     public String getName()
@@ -79,4 +90,34 @@ public class Index
     {
         this.entryCount = entryCount;
     }
+
+    public long getMinZxid()
+    {
+        return minZxid;
+    }
+
+    public void setMinZxid(long minZxid)
+    {
+        this.minZxid = minZxid;
+    }
+
+    public long getMaxZxid()
+    {
+        return maxZxid;
+    }
+
+    public void setMaxZxid(long maxZxid)
+    {
+        this.maxZxid = maxZxid;
+    }
+
+    public long getBuildMs()
+    {
+        return buildMs;
+    }
+
+    public void setBuildMs(long buildMs)
+    {
+        this.buildMs = buildMs;
+    }
 }
@@ -25,6 +25,10 @@ public class SearchRequest
 {
     private String      indexName;
     private String      pathPrefix;
+    private String      dataContains;
+    private String      firstZxid;
+    private String      secondZxid;
+    private String      sessionId;
     private Date        firstDate;
     private Date        secondDate;
     private int         operationType;
@@ -45,6 +49,10 @@ public class SearchRequest
         this.operationType = operationType;
         this.reuseHandle = reuseHandle;
         this.maxResults = maxResults;
+        dataContains = "";
+        firstZxid = "";
+        secondZxid = "";
+        sessionId = "";
     }
 
     public int getMaxResults()
@@ -116,4 +124,53 @@ public class SearchRequest
     {
         this.operationType = operationType;
     }
+
+    public String getDataContains()
+    {
+        return dataContains;
+    }
+
+    public void setDataContains(String dataContains)
+    {
+        this.dataContains = dataContains;
+    }
+
+    /**
+     * @return one end of the zxid range as hex (optionally with a leading 0x) or empty
+     */
+    public String getFirstZxid()
+    {
+        return firstZxid;
+    }
+
+    public void setFirstZxid(String firstZxid)
+    {
+        this.firstZxid = firstZxid;
+    }
+
+    /**
+     * @return other end of the zxid range as hex (optionally with a leading 0x) or empty
+     */
+    public String getSecondZxid()
+    {
+        return secondZxid;
+    }
+
+    public void setSecondZxid(String secondZxid)
+    {
+        this.secondZxid = secondZxid;
+    }
+
+    /**
+     * @return session id as hex (optionally with a leading 0x) or empty
+     */
+    public String getSessionId()
+    {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId)
+    {
+        this.sessionId = sessionId;
+    }
 }
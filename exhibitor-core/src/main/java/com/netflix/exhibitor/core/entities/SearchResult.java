@@ -28,6 +28,9 @@ public class SearchResult
     private String      date;
     private String      dataAsString;
     private String      dataBytes;
+    private String      zxid;
+    private String      sessionId;
+    private int         cxid;
 
     public SearchResult()
     {
@@ -36,6 +39,14 @@ public class SearchResult
 
     public SearchResult(int docId, int type, String path, String date, String dataAsString, String dataBytes)
     {
+        this(docId, type, path, date, dataAsString, dataBytes, "", "", -1);
+    }
+
+    public SearchResult(int docId, int type, String path, String date, String dataAsString, String dataBytes, String zxid, String sessionId, int cxid)
+    {
+        this.zxid = zxid;
+        this.sessionId = sessionId;
+        this.cxid = cxid;
         this.docId = docId;
         this.type = type;
         this.path = path;
@@ -103,4 +114,34 @@ public class SearchResult
     {
         this.dataBytes = dataBytes;
     }
+
+    public String getZxid()
+    {
+        return zxid;
+    }
+
+    public void setZxid(String zxid)
+    {
+        this.zxid = zxid;
+    }
+
+    public String getSessionId()
+    {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId)
+    {
+        this.sessionId = sessionId;
+    }
+
+    public int getCxid()
+    {
+        return cxid;
+    }
+
+    public void setCxid(int cxid)
+    {
+        this.cxid = cxid;
+    }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+
+/**
+ * Result of {@link LogSearch#aggregate(org.apache.lucene.search.Query, long, long, int, int, int)}: a histogram
+ * of transaction dates plus the most written path prefixes
+ */
+public class Aggregation
+{
+    private final int totalHits;
+    private final long startTime;
+    private final long bucketMillis;
+    private final int[] bucketCounts;
+    private final List<PathCount> topPaths;
+
+    public static class PathCount
+    {
+        private final String path;
+        private final int total;
+        private final int[] typeCounts;
+
+        PathCount(String path, int total, int[] typeCounts)
+        {
+            this.path = path;
+            this.total = total;
+            this.typeCounts = typeCounts;
+        }
+
+        public String getPath()
+        {
+            return path;
+        }
+
+        public int getTotal()
+        {
+            return total;
+        }
+
+        public int getCount(EntryTypes type)
+        {
+            return (type.getId() < typeCounts.length) ? typeCounts[type.getId()] : 0;
+        }
+    }
+
+    Aggregation(int totalHits, long startTime, long bucketMillis, int[] bucketCounts, List<PathCount> topPaths)
+    {
+        this.totalHits = totalHits;
+        this.startTime = startTime;
+        this.bucketMillis = bucketMillis;
+        this.bucketCounts = bucketCounts;
+        this.topPaths = ImmutableList.copyOf(topPaths);
+    }
+
+    public int getTotalHits()
+    {
+        return totalHits;
+    }
+
+    public long getStartTime()
+    {
+        return startTime;
+    }
+
+    public long getBucketMillis()
+    {
+        return bucketMillis;
+    }
+
+    /**
+     * @return counts of transactions per bucket. Bucket <code>n</code> starts at <code>startTime + (n * bucketMillis)</code>
+     */
+    public int[] getBucketCounts()
+    {
+        return bucketCounts.clone();
+    }
+
+    /**
+     * @return most written path prefixes, highest count first
+     */
+    public List<PathCount> getTopPaths()
+    {
+        return topPaths;
+    }
+}
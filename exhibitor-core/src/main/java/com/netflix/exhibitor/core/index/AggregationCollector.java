@@ -0,0 +1,271 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.ArrayUtil;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts hits per date bucket and per (path prefix, type) without loading documents. Values come
+ * from the {@link IndexColumns} when available, otherwise from the field cache. Each distinct path
+ * is truncated to its prefix only once.
+ */
+class AggregationCollector extends Collector
+{
+    private final DocDates dates;
+    private final DocValues values;
+    private final long startTime;
+    private final long bucketMillis;
+    private final int[] bucketCounts;
+    private final int pathDepth;
+    private final Map<String, Integer> groupIds = Maps.newHashMap();
+    private final List<String> groupPaths = Lists.newArrayList();
+    private int[] groupTypeCounts = new int[INITIAL_GROUPS * TYPE_SLOTS];
+    private int totalHits = 0;
+
+    private static final int        TYPE_SLOTS = EntryTypes.values().length;
+    private static final int        INITIAL_GROUPS = 64;
+    private static final int        UNRESOLVED = -1;
+    private static final int        NO_GROUP = -2;
+
+    /**
+     * @param columns columns or null
+     * @param startTime start of the first bucket
+     * @param bucketMillis size of each bucket
+     * @param bucketQty number of buckets - hits outside the buckets are still counted by path
+     * @param pathDepth number of path segments to group paths by
+     */
+    AggregationCollector(IndexColumns columns, long startTime, long bucketMillis, int bucketQty, int pathDepth)
+    {
+        this.startTime = startTime;
+        this.bucketMillis = Math.max(1, bucketMillis);
+        this.pathDepth = Math.max(1, pathDepth);
+        bucketCounts = new int[Math.max(0, bucketQty)];
+        dates = DocDates.make(columns);
+        values = (columns != null) ? new ColumnValues(columns) : new FieldCacheValues();
+    }
+
+    @Override
+    public void setScorer(Scorer scorer)
+    {
+    }
+
+    @Override
+    public void collect(int doc) throws IOException
+    {
+        ++totalHits;
+
+        long        bucket = (dates.get(doc) - startTime) / bucketMillis;
+        if ( (bucket >= 0) && (bucket < bucketCounts.length) )
+        {
+            ++bucketCounts[(int)bucket];
+        }
+
+        int         type = values.getType(doc);
+        int         group = values.getGroup(doc);
+        if ( (group >= 0) && (type >= 0) && (type < TYPE_SLOTS) )
+        {
+            ++groupTypeCounts[(group * TYPE_SLOTS) + type];
+        }
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException
+    {
+        dates.setNextReader(reader, docBase);
+        values.setNextReader(reader, docBase);
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder()
+    {
+        return true;
+    }
+
+    /**
+     * @param topQty max number of path prefixes to return
+     * @return the aggregation
+     */
+    Aggregation getAggregation(int topQty)
+    {
+        final int[]     totals = new int[groupPaths.size()];
+        Integer[]       order = new Integer[totals.length];
+        for ( int group = 0; group < totals.length; ++group )
+        {
+            for ( int type = 0; type < TYPE_SLOTS; ++type )
+            {
+                totals[group] += groupTypeCounts[(group * TYPE_SLOTS) + type];
+            }
+            order[group] = group;
+        }
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer o1, Integer o2)
+            {
+                int     diff = totals[o2] - totals[o1];
+                return (diff != 0) ? diff : groupPaths.get(o1).compareTo(groupPaths.get(o2));
+            }
+        });
+
+        List<Aggregation.PathCount>     topPaths = Lists.newArrayList();
+        for ( int i = 0; (i < order.length) && (topPaths.size() < topQty); ++i )
+        {
+            int     group = order[i];
+            int[]   typeCounts = Arrays.copyOfRange(groupTypeCounts, group * TYPE_SLOTS, (group + 1) * TYPE_SLOTS);
+            topPaths.add(new Aggregation.PathCount(groupPaths.get(group), totals[group], typeCounts));
+        }
+        return new Aggregation(totalHits, startTime, bucketMillis, bucketCounts.clone(), topPaths);
+    }
+
+    private int resolveGroup(String path)
+    {
+        if ( (path == null) || (path.length() == 0) )
+        {
+            return NO_GROUP;
+        }
+
+        String      prefix = getPrefix(path, pathDepth);
+        Integer     group = groupIds.get(prefix);
+        if ( group == null )
+        {
+            group = groupPaths.size();
+            groupIds.put(prefix, group);
+            groupPaths.add(prefix);
+            if ( ((group + 1) * TYPE_SLOTS) > groupTypeCounts.length )
+            {
+                groupTypeCounts = ArrayUtil.grow(groupTypeCounts, (group + 1) * TYPE_SLOTS);
+            }
+        }
+        return group;
+    }
+
+    static String getPrefix(String path, int depth)
+    {
+        int     index = 0;
+        for ( int i = 0; i < depth; ++i )
+        {
+            index = path.indexOf('/', index + 1);
+            if ( index < 0 )
+            {
+                return path;
+            }
+        }
+        return path.substring(0, index);
+    }
+
+    private static int[] newUnresolved(int size)
+    {
+        int[]   groups = new int[size];
+        Arrays.fill(groups, UNRESOLVED);
+        return groups;
+    }
+
+    private interface DocValues
+    {
+        void setNextReader(IndexReader reader, int docBase) throws IOException;
+
+        int getType(int doc);
+
+        int getGroup(int doc);
+    }
+
+    private class ColumnValues implements DocValues
+    {
+        private final IndexColumns columns;
+        private int[] ordinalGroups;    // allocated on first use
+        private int docBase;
+
+        ColumnValues(IndexColumns columns)
+        {
+            this.columns = columns;
+        }
+
+        @Override
+        public void setNextReader(IndexReader reader, int docBase)
+        {
+            this.docBase = docBase;
+        }
+
+        @Override
+        public int getType(int doc)
+        {
+            return columns.getType(docBase + doc);
+        }
+
+        @Override
+        public int getGroup(int doc)
+        {
+            if ( ordinalGroups == null )
+            {
+                ordinalGroups = newUnresolved(columns.getPathQty());
+            }
+
+            int     ordinal = columns.getPathOrdinal(docBase + doc);
+            int     group = ordinalGroups[ordinal];
+            if ( group == UNRESOLVED )
+            {
+                group = resolveGroup(columns.getPath(ordinal));
+                ordinalGroups[ordinal] = group;
+            }
+            return group;
+        }
+    }
+
+    private class FieldCacheValues implements DocValues
+    {
+        private int[] types;
+        private FieldCache.StringIndex paths;
+        private int[] segmentGroups;
+
+        @Override
+        public void setNextReader(IndexReader reader, int docBase) throws IOException
+        {
+            types = FieldCache.DEFAULT.getInts(reader, FieldNames.TYPE, FieldCache.DEFAULT_INT_PARSER);
+            paths = FieldCache.DEFAULT.getStringIndex(reader, FieldNames.PATH);
+            segmentGroups = newUnresolved(paths.lookup.length);
+        }
+
+        @Override
+        public int getType(int doc)
+        {
+            return types[doc];
+        }
+
+        @Override
+        public int getGroup(int doc)
+        {
+            int     ordinal = paths.order[doc];
+            int     group = segmentGroups[ordinal];
+            if ( group == UNRESOLVED )
+            {
+                group = resolveGroup(paths.lookup[ordinal]);
+                segmentGroups[ordinal] = group;
+            }
+            return group;
+        }
+    }
+}
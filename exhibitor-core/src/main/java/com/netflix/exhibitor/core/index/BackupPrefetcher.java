@@ -0,0 +1,251 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.exhibitor.core.backup.BackupMetaData;
+import com.netflix.exhibitor.core.backup.BackupStream;
+import org.apache.curator.utils.CloseableUtils;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ *     Downloads and decompresses backups into temp (spill) files ahead of the index build so that
+ *     fetching the next backups overlaps with parsing and indexing the current ones. At most
+ *     <code>prefetchQty</code> backups are downloading or waiting to be indexed at once - the next backup
+ *     is only fetched when one is released - which bounds both the connections and the disk used.
+ * </p>
+ *
+ * <p>
+ *     Backups are fetched in list order. Callers must {@link #take(int)} and {@link #release(int, File)}
+ *     each backup, taking them in roughly list order (as the index pipeline does) so that the backups
+ *     being waited for are always among those being fetched.
+ * </p>
+ */
+class BackupPrefetcher implements Closeable
+{
+    private final BackupSource          source;
+    private final List<BackupMetaData>  backups;
+    private final int                   prefetchQty;
+    private final ExecutorService       executorService;
+    private final List<Future<File>>    futures = Lists.newArrayList(); // protected by sync
+    private boolean                     closed = false;                 // protected by sync
+
+    private static final String     SPILL_FILE_PREFIX = "exhibitor-backup-prefetch";
+
+    interface BackupSource
+    {
+        /**
+         * @param metaData backup
+         * @return the backup's stream or null if it no longer exists
+         * @throws Exception errors
+         */
+        public BackupStream     getBackupStream(BackupMetaData metaData) throws Exception;
+    }
+
+    /**
+     * @param source where the backups come from
+     * @param backups the backups in the order they will be indexed
+     * @param prefetchQty max number of backups fetched or held at once
+     */
+    BackupPrefetcher(BackupSource source, List<BackupMetaData> backups, int prefetchQty)
+    {
+        this.source = source;
+        this.backups = ImmutableList.copyOf(backups);
+        this.prefetchQty = Math.max(1, prefetchQty);
+        executorService = Executors.newFixedThreadPool(this.prefetchQty, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("BackupPrefetcher-%d").build());
+    }
+
+    /**
+     * Start fetching the first backups
+     */
+    synchronized void   start()
+    {
+        while ( (futures.size() < prefetchQty) && (futures.size() < backups.size()) )
+        {
+            submitNext();
+        }
+    }
+
+    /**
+     * Wait for a backup to be fetched
+     *
+     * @param index index of the backup in the list
+     * @return the decompressed backup or null if the backup no longer exists. Must be passed to {@link #release(int, File)}
+     * @throws Exception fetch errors
+     */
+    File        take(int index) throws Exception
+    {
+        Future<File>    future;
+        synchronized(this)
+        {
+            while ( !closed && (index >= futures.size()) )
+            {
+                wait();
+            }
+            if ( closed )
+            {
+                throw new IOException("Prefetcher is closed");
+            }
+            future = futures.get(index);
+        }
+
+        try
+        {
+            return future.get();
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable   cause = e.getCause();
+            throw (cause instanceof Exception) ? (Exception)cause : e;
+        }
+    }
+
+    /**
+     * Delete a taken backup's spill file and start fetching the next backup
+     *
+     * @param index index of the backup in the list
+     * @param file the file returned by {@link #take(int)}
+     */
+    void        release(int index, File file)
+    {
+        deleteSpillFile(file);
+        synchronized(this)
+        {
+            if ( !closed && (futures.size() < backups.size()) )
+            {
+                submitNext();
+                notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        List<Future<File>>  localFutures;
+        synchronized(this)
+        {
+            closed = true;
+            localFutures = Lists.newArrayList(futures);
+            notifyAll();
+        }
+
+        executorService.shutdownNow();
+        for ( Future<File> future : localFutures )
+        {
+            // cancelling wakes any thread waiting in take() - fetches that already completed have a file to delete
+            if ( !future.cancel(true) && !future.isCancelled() )
+            {
+                try
+                {
+                    deleteSpillFile(future.get());
+                }
+                catch ( Exception ignore )
+                {
+                    // the fetch failed - there's no file
+                }
+            }
+        }
+    }
+
+    private synchronized boolean isClosed()
+    {
+        return closed;
+    }
+
+    // must be synchronized
+    private void        submitNext()
+    {
+        final BackupMetaData    metaData = backups.get(futures.size());
+        futures.add
+        (
+            executorService.submit
+            (
+                new Callable<File>()
+                {
+                    @Override
+                    public File call() throws Exception
+                    {
+                        File    file = fetch(metaData);
+                        if ( isClosed() )
+                        {
+                            deleteSpillFile(file);  // closed while fetching - nobody will take it
+                            return null;
+                        }
+                        return file;
+                    }
+                }
+            )
+        );
+    }
+
+    private File        fetch(BackupMetaData metaData) throws Exception
+    {
+        BackupStream    backupStream = source.getBackupStream(metaData);
+        if ( backupStream == null )
+        {
+            return null;
+        }
+
+        File            file = null;
+        OutputStream    out = null;
+        try
+        {
+            file = File.createTempFile(SPILL_FILE_PREFIX, ".log");
+            out = new BufferedOutputStream(new FileOutputStream(file));
+            InputStream     in = IndexProcessor.decompressIfNeeded(backupStream.getStream());
+            ByteStreams.copy(in, out);
+            out.close();
+            out = null;
+            return file;
+        }
+        catch ( Exception e )
+        {
+            CloseableUtils.closeQuietly(out);
+            deleteSpillFile(file);
+            throw e;
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(backupStream);
+        }
+    }
+
+    private static void deleteSpillFile(File file)
+    {
+        if ( (file != null) && file.exists() && !file.delete() )
+        {
+            file.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import org.apache.curator.utils.CloseableUtils;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * <p>
+ *     Content addressed store of the znode payloads of an index. Each distinct payload is stored once, keyed by
+ *     its SHA-1, and documents only hold the hash. It is appended to by {@link BlobStoreWriter} and read by
+ *     {@link LogSearch}.
+ * </p>
+ *
+ * <p>
+ *     Layout: header (magic, version) followed by records of hash, stored length and payload bytes. If the stored
+ *     length has {@link #COMPRESSED_FLAG} set, the payload is raw deflate data preceded by its uncompressed length.
+ *     Version 1 stores never set the flag so they are read the same way. A record is only referenced by committed
+ *     documents after it has been flushed, so a truncated last record (a build that died mid write) is ignored.
+ * </p>
+ */
+class BlobStore implements Closeable
+{
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private volatile Map<HashCode, Long> offsets = null;
+
+    static final String     FILE_NAME = "exhibitor.blobs";
+
+    static final int        MAGIC = 0x45584231;   // "EXB1"
+    static final int        VERSION = 2;
+    static final int        HEADER_SIZE = 8;
+    static final int        HASH_SIZE = 20;
+    static final int        RECORD_HEADER_SIZE = HASH_SIZE + 4;
+    static final int        COMPRESSED_FLAG = 0x80000000;
+    static final int        COMPRESSED_HEADER_SIZE = 4;    // uncompressed length
+
+    static File     getBlobsFile(File indexDirectory)
+    {
+        return new File(indexDirectory, FILE_NAME);
+    }
+
+    static HashCode hash(byte[] data)
+    {
+        return Hashing.sha1().hashBytes(data);
+    }
+
+    /**
+     * @param indexDirectory index
+     * @return the index's blob store or null if it doesn't have one (it was built before the blob store)
+     * @throws IOException errors
+     */
+    static BlobStore    open(File indexDirectory) throws IOException
+    {
+        File        file = getBlobsFile(indexDirectory);
+        return file.exists() ? new BlobStore(file) : null;
+    }
+
+    /**
+     * Read the offsets of the complete records of the given file
+     *
+     * @param file blob file
+     * @param offsets receives record offsets by hash
+     * @return the length of the complete records (including the header)
+     * @throws IOException errors or an unknown format
+     */
+    static long     readOffsets(File file, Map<HashCode, Long> offsets) throws IOException
+    {
+        DataInputStream     in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try
+        {
+            int     version;
+            if ( (in.readInt() != MAGIC) || ((version = in.readInt()) < 1) || (version > VERSION) )
+            {
+                throw new IOException("Unknown blob store format: " + file);
+            }
+
+            long        fileLength = file.length();
+            long        offset = HEADER_SIZE;
+            byte[]      hash = new byte[HASH_SIZE];
+            for(;;)
+            {
+                try
+                {
+                    in.readFully(hash);
+                    int     length = in.readInt() & ~COMPRESSED_FLAG;
+                    long    next = offset + RECORD_HEADER_SIZE + length;
+                    if ( (length < 0) || (next > fileLength) )
+                    {
+                        break;
+                    }
+                    in.skipBytes(length);
+                    offsets.put(HashCode.fromBytes(hash), offset);
+                    offset = next;
+                }
+                catch ( EOFException dummy )
+                {
+                    break;
+                }
+            }
+            return offset;
+        }
+        catch ( EOFException e )
+        {
+            throw new IOException("Truncated blob store header: " + file, e);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+        }
+    }
+
+    private BlobStore(File file) throws IOException
+    {
+        this.file = file;
+        randomAccessFile = new RandomAccessFile(file, "r");
+        channel = randomAccessFile.getChannel();
+    }
+
+    /**
+     * @param hash payload hash as stored in a document
+     * @return the payload
+     * @throws IOException errors or an unknown hash
+     */
+    byte[]      get(byte[] hash) throws IOException
+    {
+        Long        offset = getOffsets().get(HashCode.fromBytes(hash));
+        if ( offset == null )
+        {
+            throw new IOException("Payload " + HashCode.fromBytes(hash) + " not found in: " + file);
+        }
+
+        ByteBuffer  header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        readFully(header, offset);
+        int         storedLength = header.getInt(HASH_SIZE);
+        ByteBuffer  data = ByteBuffer.allocate(storedLength & ~COMPRESSED_FLAG);
+        readFully(data, offset + RECORD_HEADER_SIZE);
+        return ((storedLength & COMPRESSED_FLAG) != 0) ? inflate(data) : data.array();
+    }
+
+    @Override
+    public void close()
+    {
+        CloseableUtils.closeQuietly(randomAccessFile);
+    }
+
+    // loaded on first use - most searches never read a payload
+    private Map<HashCode, Long> getOffsets() throws IOException
+    {
+        Map<HashCode, Long>     localOffsets = offsets;
+        if ( localOffsets == null )
+        {
+            synchronized(this)
+            {
+                localOffsets = offsets;
+                if ( localOffsets == null )
+                {
+                    localOffsets = Maps.newHashMap();
+                    readOffsets(file, localOffsets);
+                    offsets = localOffsets;
+                }
+            }
+        }
+        return localOffsets;
+    }
+
+    private byte[]  inflate(ByteBuffer data) throws IOException
+    {
+        int         length = data.getInt(0);
+        byte[]      bytes = new byte[length];
+        Inflater    inflater = new Inflater(true);
+        try
+        {
+            inflater.setInput(data.array(), COMPRESSED_HEADER_SIZE, data.capacity() - COMPRESSED_HEADER_SIZE);
+            int     offset = 0;
+            while ( offset < length )
+            {
+                int     qty = inflater.inflate(bytes, offset, length - offset);
+                if ( (qty == 0) && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()) )
+                {
+                    throw new IOException("Corrupt payload in: " + file);
+                }
+                offset += qty;
+            }
+            return bytes;
+        }
+        catch ( DataFormatException e )
+        {
+            throw new IOException("Corrupt payload in: " + file, e);
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+
+    private void    readFully(ByteBuffer buffer, long position) throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            if ( channel.read(buffer, position + buffer.position()) < 0 )
+            {
+                throw new EOFException("Truncated payload in: " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import org.apache.curator.utils.CloseableUtils;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.Deflater;
+
+/**
+ * Appends the distinct payloads of an index build to its {@link BlobStore}. Safe to call from
+ * the indexing threads concurrently. Payloads must be {@link #flush() flushed} before the documents
+ * that reference them are committed. Payloads of at least {@link #COMPRESS_MIN_BYTES} are deflated at
+ * the fastest level and stored compressed if that makes them smaller.
+ */
+class BlobStoreWriter implements Closeable
+{
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final DataOutputStream out;
+    private final ConcurrentMap<HashCode, Long> offsets = Maps.newConcurrentMap();
+    private final int compressMinBytes;
+    private long length;            // protected by sync
+    private long flushedLength;     // protected by sync
+
+    private static final ThreadLocal<Deflater> deflater = new ThreadLocal<Deflater>()
+    {
+        @Override
+        protected Deflater initialValue()
+        {
+            return new Deflater(Deflater.BEST_SPEED, true);
+        }
+    };
+
+    // smaller payloads are stored as is - 0 disables compression
+    static final int        COMPRESS_MIN_BYTES = Integer.getInteger("exhibitor.index.blob-compress-min-bytes", 512);
+
+    /**
+     * @param indexDirectory index
+     * @param append if true, add to the existing store (if any). Otherwise any existing store is replaced.
+     * @throws IOException errors
+     */
+    BlobStoreWriter(File indexDirectory, boolean append) throws IOException
+    {
+        this(indexDirectory, append, COMPRESS_MIN_BYTES);
+    }
+
+    /**
+     * @param indexDirectory index
+     * @param append if true, add to the existing store (if any). Otherwise any existing store is replaced.
+     * @param compressMinBytes payloads of at least this size are compressed - 0 disables compression
+     * @throws IOException errors
+     */
+    BlobStoreWriter(File indexDirectory, boolean append, int compressMinBytes) throws IOException
+    {
+        this.compressMinBytes = compressMinBytes;
+        file = BlobStore.getBlobsFile(indexDirectory);
+
+        long        validLength = 0;
+        if ( append && file.exists() )
+        {
+            validLength = BlobStore.readOffsets(file, offsets);
+        }
+        else if ( file.exists() && !file.delete() )
+        {
+            throw new IOException("Could not delete: " + file);
+        }
+
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        try
+        {
+            if ( validLength == 0 )
+            {
+                randomAccessFile.setLength(0);
+                randomAccessFile.writeInt(BlobStore.MAGIC);
+                randomAccessFile.writeInt(BlobStore.VERSION);
+                validLength = BlobStore.HEADER_SIZE;
+            }
+            else
+            {
+                randomAccessFile.setLength(validLength);    // drop a partially written record
+                randomAccessFile.seek(4);
+                randomAccessFile.writeInt(BlobStore.VERSION);   // older versions are a subset of this version
+            }
+            randomAccessFile.seek(validLength);
+        }
+        catch ( IOException e )
+        {
+            CloseableUtils.closeQuietly(randomAccessFile);
+            throw e;
+        }
+
+        length = validLength;
+        flushedLength = validLength;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(randomAccessFile.getFD())));
+    }
+
+    /**
+     * Store the payload unless an identical payload is already stored
+     *
+     * @param data payload
+     * @return the payload's hash
+     * @throws IOException errors
+     */
+    byte[]      put(byte[] data) throws IOException
+    {
+        HashCode        hash = BlobStore.hash(data);
+        if ( !offsets.containsKey(hash) )
+        {
+            byte[]      compressed = compress(data);  // outside the lock so threads compress in parallel
+            synchronized(this)
+            {
+                if ( !offsets.containsKey(hash) )
+                {
+                    long        offset = length;
+                    out.write(hash.asBytes());
+                    if ( compressed != null )
+                    {
+                        out.writeInt((BlobStore.COMPRESSED_HEADER_SIZE + compressed.length) | BlobStore.COMPRESSED_FLAG);
+                        out.writeInt(data.length);
+                        out.write(compressed);
+                        length += BlobStore.RECORD_HEADER_SIZE + BlobStore.COMPRESSED_HEADER_SIZE + compressed.length;
+                    }
+                    else
+                    {
+                        out.writeInt(data.length);
+                        out.write(data);
+                        length += BlobStore.RECORD_HEADER_SIZE + data.length;
+                    }
+                    offsets.put(hash, offset);
+                }
+            }
+        }
+        return hash.asBytes();
+    }
+
+    /**
+     * @return number of distinct payloads in the store
+     */
+    int         getBlobQty()
+    {
+        return offsets.size();
+    }
+
+    /**
+     * Write and sync everything stored so far
+     *
+     * @throws IOException errors
+     */
+    synchronized void   flush() throws IOException
+    {
+        out.flush();
+        randomAccessFile.getChannel().force(false);
+        flushedLength = length;
+    }
+
+    /**
+     * Discard the payloads stored since the last flush (which committed documents can't reference) and close the store
+     */
+    synchronized void   abort()
+    {
+        try
+        {
+            out.flush();
+            randomAccessFile.setLength(flushedLength);
+        }
+        catch ( IOException ignore )
+        {
+            // ignore - the records are unreferenced
+        }
+        close();
+    }
+
+    /**
+     * @param data payload
+     * @return the compressed payload or null if it should be stored as is
+     */
+    private byte[]      compress(byte[] data)
+    {
+        if ( (compressMinBytes <= 0) || (data.length < compressMinBytes) )
+        {
+            return null;
+        }
+
+        Deflater    localDeflater = deflater.get();
+        localDeflater.reset();
+        localDeflater.setInput(data);
+        localDeflater.finish();
+
+        byte[]      buffer = new byte[data.length];   // only worth storing if smaller
+        int         qty = 0;
+        while ( !localDeflater.finished() && (qty < buffer.length) )
+        {
+            qty += localDeflater.deflate(buffer, qty, buffer.length - qty);
+        }
+        if ( !localDeflater.finished() || ((BlobStore.COMPRESSED_HEADER_SIZE + qty) >= data.length) )
+        {
+            return null;
+        }
+        return Arrays.copyOf(buffer, qty);
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        CloseableUtils.closeQuietly(out);
+        CloseableUtils.closeQuietly(randomAccessFile);
+    }
+}
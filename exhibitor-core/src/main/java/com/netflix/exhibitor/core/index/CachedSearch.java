@@ -16,14 +16,12 @@
 
 package com.netflix.exhibitor.core.index;
 
-import org.apache.lucene.search.TopDocs;
-
 public class CachedSearch
 {
-    private final TopDocs docs;
+    private final int[] docs;
     private final int totalDocs;
 
-    CachedSearch(TopDocs docs, int totalDocs)
+    CachedSearch(int[] docs, int totalDocs)
     {
         this.docs = docs;
         this.totalDocs = totalDocs;
@@ -31,11 +29,11 @@ public class CachedSearch
 
     public int  getTotalHits()
     {
-        return (docs != null) ? docs.totalHits : totalDocs;
+        return (docs != null) ? docs.length : totalDocs;
     }
     
     public int  getNthDocId(int n)
     {
-        return (docs != null) ? docs.scoreDocs[n].doc : n;
+        return (docs != null) ? docs[n] : n;
     }
 }
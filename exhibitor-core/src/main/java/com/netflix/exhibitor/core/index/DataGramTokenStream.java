@@ -0,0 +1,123 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.base.Charsets;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Tokenizes znode data as lower cased UTF-8 character n-grams of {@link #GRAM_SIZE}, one per character
+ * position. The last grams of the text are shorter so that every substring shorter than a gram is
+ * the prefix of some gram. A substring is then found with a phrase of its grams (see
+ * {@link QueryBuilder#dataContains(String)}). Instances are reused per indexing thread.
+ */
+final class DataGramTokenStream extends TokenStream
+{
+    static final int GRAM_SIZE = 3;
+
+    private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+    private final CharsetDecoder decoder = Charsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharBuffer text;
+    private int position = 0;
+
+    /**
+     * @param maxChars only the first maxChars characters of each payload are indexed
+     */
+    DataGramTokenStream(int maxChars)
+    {
+        text = CharBuffer.allocate(maxChars);
+        text.flip();
+    }
+
+    /**
+     * Set the data for the next document
+     *
+     * @param data data
+     * @return false if the data is empty or binary and should not be indexed
+     */
+    boolean     setData(byte[] data)
+    {
+        text.clear();
+        position = 0;
+
+        int     length = ((data != null) ? Math.min(data.length, text.capacity()) : 0);  // UTF-8 never has more chars than bytes
+        for ( int i = 0; i < length; ++i )
+        {
+            if ( data[i] == 0 )
+            {
+                length = 0;     // binary
+                break;
+            }
+        }
+
+        if ( length > 0 )
+        {
+            decoder.reset();
+            decoder.decode(ByteBuffer.wrap(data, 0, length), text, true);
+        }
+        text.flip();
+        return text.length() > 0;
+    }
+
+    @Override
+    public boolean incrementToken()
+    {
+        if ( position >= text.limit() )
+        {
+            return false;
+        }
+
+        clearAttributes();
+        int     gramLength = Math.min(GRAM_SIZE, text.limit() - position);
+        char[]  buffer = termAttribute.resizeBuffer(gramLength);
+        for ( int i = 0; i < gramLength; ++i )
+        {
+            buffer[i] = Character.toLowerCase(text.get(position + i));
+        }
+        termAttribute.setLength(gramLength);
+        ++position;
+        return true;
+    }
+
+    @Override
+    public void reset()
+    {
+        position = 0;
+    }
+
+    /**
+     * Normalize query text the same way indexed data is normalized
+     *
+     * @param text query text
+     * @return normalized text
+     */
+    static String   normalize(String text)
+    {
+        char[]      chars = text.toCharArray();
+        for ( int i = 0; i < chars.length; ++i )
+        {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+}
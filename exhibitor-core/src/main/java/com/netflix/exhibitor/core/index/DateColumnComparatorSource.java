@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldComparator;
+import org.apache.lucene.search.FieldComparatorSource;
+
+/**
+ * Sorts by the date column of {@link IndexColumns} instead of a field cache
+ */
+class DateColumnComparatorSource extends FieldComparatorSource
+{
+    private final IndexColumns columns;
+
+    DateColumnComparatorSource(IndexColumns columns)
+    {
+        this.columns = columns;
+    }
+
+    @Override
+    public FieldComparator<?> newComparator(String fieldname, int numHits, int sortPos, boolean reversed)
+    {
+        return new DateColumnComparator(columns, numHits);
+    }
+
+    private static class DateColumnComparator extends FieldComparator<Long>
+    {
+        private final IndexColumns columns;
+        private final long[] values;
+        private long bottom;
+        private int docBase;
+
+        private DateColumnComparator(IndexColumns columns, int numHits)
+        {
+            this.columns = columns;
+            values = new long[numHits];
+        }
+
+        @Override
+        public int compare(int slot1, int slot2)
+        {
+            return compareLongs(values[slot1], values[slot2]);
+        }
+
+        @Override
+        public void setBottom(int slot)
+        {
+            bottom = values[slot];
+        }
+
+        @Override
+        public int compareBottom(int doc)
+        {
+            return compareLongs(bottom, columns.getDate(docBase + doc));
+        }
+
+        @Override
+        public void copy(int slot, int doc)
+        {
+            values[slot] = columns.getDate(docBase + doc);
+        }
+
+        @Override
+        public void setNextReader(IndexReader reader, int docBase)
+        {
+            this.docBase = docBase;
+        }
+
+        @Override
+        public Long value(int slot)
+        {
+            return values[slot];
+        }
+
+        private static int compareLongs(long l1, long l2)
+        {
+            return (l1 < l2) ? -1 : ((l1 > l2) ? 1 : 0);
+        }
+    }
+}
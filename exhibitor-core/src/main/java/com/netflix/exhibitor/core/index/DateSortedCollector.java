@@ -0,0 +1,202 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.SorterTemplate;
+import java.io.IOException;
+
+/**
+ * Collects matching documents into primitive arrays and sorts them by
+ * date (newest first) then doc id. Unlike a TopFieldCollector there is no
+ * per-hit object so large result sets stay compact. Once <code>maxResults</code>
+ * hits have been collected the arrays become a heap with the hit that sorts
+ * last at the root so memory stays bounded by <code>maxResults</code>.
+ */
+class DateSortedCollector extends Collector
+{
+    private final DocDates dates;
+    private int[] docIds;
+    private long[] docDates;
+    private final int maxResults;
+    private int count = 0;
+    private boolean isHeap = false;
+    private int docBase;
+
+    private static final int        INITIAL_SIZE = 1024;
+
+    DateSortedCollector(IndexColumns columns, int maxResults)
+    {
+        this.maxResults = Math.max(maxResults, 0);
+        dates = DocDates.make(columns);
+        int     initialSize = Math.min(INITIAL_SIZE, this.maxResults);
+        docIds = new int[initialSize];
+        docDates = new long[initialSize];
+    }
+
+    /**
+     * Sort what was collected and return the doc ids - at most <code>maxResults</code>
+     *
+     * @return sorted doc ids
+     */
+    int[] getSortedDocIds()
+    {
+        new SorterTemplate()
+        {
+            private long pivotDate;
+            private int pivotDoc;
+
+            @Override
+            protected void swap(int i, int j)
+            {
+                int     tempDoc = docIds[i];
+                docIds[i] = docIds[j];
+                docIds[j] = tempDoc;
+
+                long    tempDate = docDates[i];
+                docDates[i] = docDates[j];
+                docDates[j] = tempDate;
+            }
+
+            @Override
+            protected int compare(int i, int j)
+            {
+                return compareKeys(docDates[i], docIds[i], docDates[j], docIds[j]);
+            }
+
+            @Override
+            protected void setPivot(int i)
+            {
+                pivotDate = docDates[i];
+                pivotDoc = docIds[i];
+            }
+
+            @Override
+            protected int comparePivot(int j)
+            {
+                return compareKeys(pivotDate, pivotDoc, docDates[j], docIds[j]);
+            }
+        }.quickSort(0, count - 1);
+
+        int[]       result = new int[count];
+        System.arraycopy(docIds, 0, result, 0, count);
+        return result;
+    }
+
+    @Override
+    public void setScorer(Scorer scorer)
+    {
+    }
+
+    @Override
+    public void collect(int doc)
+    {
+        long        date = dates.get(doc);
+        int         docId = docBase + doc;
+        if ( count < maxResults )
+        {
+            if ( count == docIds.length )
+            {
+                docIds = ArrayUtil.grow(docIds, count + 1);
+                docDates = ArrayUtil.grow(docDates, docIds.length);
+            }
+            docIds[count] = docId;
+            docDates[count] = date;
+            ++count;
+            return;
+        }
+
+        if ( count == 0 )
+        {
+            return;
+        }
+
+        if ( !isHeap )
+        {
+            for ( int i = (count / 2) - 1; i >= 0; --i )
+            {
+                siftDown(i);
+            }
+            isHeap = true;
+        }
+
+        if ( compareKeys(date, docId, docDates[0], docIds[0]) < 0 )
+        {
+            docIds[0] = docId;
+            docDates[0] = date;
+            siftDown(0);
+        }
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException
+    {
+        this.docBase = docBase;
+        dates.setNextReader(reader, docBase);
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder()
+    {
+        return true;
+    }
+
+    // restores the heap below index - the parent always sorts after its children
+    private void siftDown(int index)
+    {
+        for(;;)
+        {
+            int     worst = index;
+            int     left = (2 * index) + 1;
+            int     right = left + 1;
+            if ( (left < count) && (compareKeys(docDates[left], docIds[left], docDates[worst], docIds[worst]) > 0) )
+            {
+                worst = left;
+            }
+            if ( (right < count) && (compareKeys(docDates[right], docIds[right], docDates[worst], docIds[worst]) > 0) )
+            {
+                worst = right;
+            }
+            if ( worst == index )
+            {
+                break;
+            }
+
+            int     tempDoc = docIds[index];
+            docIds[index] = docIds[worst];
+            docIds[worst] = tempDoc;
+
+            long    tempDate = docDates[index];
+            docDates[index] = docDates[worst];
+            docDates[worst] = tempDate;
+
+            index = worst;
+        }
+    }
+
+    // newest first, then by doc id
+    static int compareKeys(long date1, int doc1, long date2, int doc2)
+    {
+        if ( date1 != date2 )
+        {
+            return (date1 > date2) ? -1 : 1;
+        }
+        return (doc1 < doc2) ? -1 : ((doc1 > doc2) ? 1 : 0);
+    }
+}
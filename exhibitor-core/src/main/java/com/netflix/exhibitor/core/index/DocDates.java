@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldCache;
+import java.io.IOException;
+
+/**
+ * Per-segment access to document dates for collectors - from the {@link IndexColumns}
+ * when available, otherwise from the field cache
+ */
+abstract class DocDates
+{
+    abstract void setNextReader(IndexReader reader, int docBase) throws IOException;
+
+    abstract long get(int doc);
+
+    static DocDates make(final IndexColumns columns)
+    {
+        if ( columns != null )
+        {
+            return new DocDates()
+            {
+                private int docBase;
+
+                @Override
+                void setNextReader(IndexReader reader, int docBase)
+                {
+                    this.docBase = docBase;
+                }
+
+                @Override
+                long get(int doc)
+                {
+                    return columns.getDate(docBase + doc);
+                }
+            };
+        }
+
+        return new DocDates()
+        {
+            private long[] dates;
+
+            @Override
+            void setNextReader(IndexReader reader, int docBase) throws IOException
+            {
+                dates = FieldCache.DEFAULT.getLongs(reader, FieldNames.DATE, FieldCache.NUMERIC_UTILS_LONG_PARSER);
+            }
+
+            @Override
+            long get(int doc)
+            {
+                return dates[doc];
+            }
+        };
+    }
+}
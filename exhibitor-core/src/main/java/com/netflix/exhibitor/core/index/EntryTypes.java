@@ -18,19 +18,33 @@ package com.netflix.exhibitor.core.index;
 
 public enum EntryTypes
 {
-    CREATE_PERSISTENT(0),
-    CREATE_EPHEMERAL(1),
-    DELETE(2),
-    SET_DATA(3)
+    CREATE_PERSISTENT(0, true),
+    CREATE_EPHEMERAL(1, true),
+    DELETE(2, true),
+    SET_DATA(3, true),
+    CREATE_SESSION(4, false),
+    CLOSE_SESSION(5, false),
+    SET_ACL(6, true),
+    CHECK(7, true),
+    ERROR(8, false)
     ;
 
     private final int id;
+    private final boolean hasPath;
 
     public int getId()
     {
         return id;
     }
 
+    /**
+     * @return true if entries of this type are for a znode path. Session and error entries are not.
+     */
+    public boolean hasPath()
+    {
+        return hasPath;
+    }
+
     public static EntryTypes    getFromId(int id)
     {
         for ( EntryTypes type : values() )
@@ -57,8 +71,9 @@ public enum EntryTypes
         return getFromId(intId);
     }
 
-    private EntryTypes(int id)
+    private EntryTypes(int id, boolean hasPath)
     {
         this.id = id;
+        this.hasPath = hasPath;
     }
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.OpenBitSetDISI;
+import java.io.IOException;
+
+/**
+ * The docs of a (usually cached) filter minus the docs of another filter. Used to trim a
+ * date range that was rounded out to whole buckets back to its exact bounds.
+ */
+class ExcludingFilter extends Filter
+{
+    private final Filter filter;
+    private final Filter exclude;
+
+    ExcludingFilter(Filter filter, Filter exclude)
+    {
+        this.filter = filter;
+        this.exclude = exclude;
+    }
+
+    @Override
+    public DocIdSet getDocIdSet(IndexReader reader) throws IOException
+    {
+        DocIdSet            set = filter.getDocIdSet(reader);
+        DocIdSetIterator    iterator = (set != null) ? set.iterator() : null;
+        if ( iterator == null )
+        {
+            return DocIdSet.EMPTY_DOCIDSET;
+        }
+
+        // copied so that the cached set isn't changed
+        OpenBitSetDISI      result = new OpenBitSetDISI(iterator, reader.maxDoc());
+        DocIdSet            excludeSet = exclude.getDocIdSet(reader);
+        DocIdSetIterator    excludeIterator = (excludeSet != null) ? excludeSet.iterator() : null;
+        if ( excludeIterator != null )
+        {
+            result.inPlaceNot(excludeIterator);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ExcludingFilter(" + filter + " - " + exclude + ")";
+    }
+}
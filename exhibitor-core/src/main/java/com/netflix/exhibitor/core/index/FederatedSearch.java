@@ -0,0 +1,452 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.BaseEncoding;
+import com.netflix.exhibitor.core.Exhibitor;
+import com.netflix.exhibitor.core.automanage.RemoteInstanceRequest;
+import com.netflix.exhibitor.core.config.StringConfigs;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.JsonNodeFactory;
+import org.codehaus.jackson.node.ObjectNode;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     Searches the time partitions (see {@link IndexPartitions}) of every server in the ensemble. The
+ *     {@link SearchKey} is sent to each server's Exhibitor through the cluster resource
+ *     ({@link RemoteInstanceRequest}) and the servers are searched in parallel. Servers that haven't answered
+ *     by the deadline are reported as timed out. The hits are merge sorted by date, newest first, and each
+ *     hit is labeled with the host it came from.
+ * </p>
+ *
+ * <p>
+ *     Each server returns at most max results, so the merged results are the newest max results of the
+ *     whole ensemble.
+ * </p>
+ */
+public class FederatedSearch
+{
+    private final ExecutorService   executorService;
+    private final List<String>      hostnames;
+    private final HostSearcher      searcher;
+
+    /**
+     * The method of the cluster resource that searches the local partitions
+     */
+    public static final String      LOCAL_SEARCH_METHOD = "getLocalSearch";
+
+    private static final String     FIELD_PATH_PREFIX = "pathPrefix";
+    private static final String     FIELD_DATA_CONTAINS = "dataContains";
+    private static final String     FIELD_OPERATION_TYPE = "operationType";
+    private static final String     FIELD_START_DATE = "startDate";
+    private static final String     FIELD_END_DATE = "endDate";
+    private static final String     FIELD_START_ZXID = "startZxid";
+    private static final String     FIELD_END_ZXID = "endZxid";
+    private static final String     FIELD_SESSION_ID = "sessionId";
+    private static final String     FIELD_MAX_RESULTS = "maxResults";
+
+    private static final String     FIELD_RESULTS = "results";
+    private static final String     FIELD_TYPE = "type";
+    private static final String     FIELD_PATH = "path";
+    private static final String     FIELD_VERSION = "version";
+    private static final String     FIELD_DATE = "date";
+    private static final String     FIELD_ZXID = "zxid";
+    private static final String     FIELD_CXID = "cxid";
+
+    /**
+     * Searches one host
+     */
+    interface HostSearcher
+    {
+        public List<SearchItem>     search(String hostname, SearchKey key) throws Exception;
+    }
+
+    public static class Hit
+    {
+        private final String hostname;
+        private final SearchItem item;
+
+        private Hit(String hostname, SearchItem item)
+        {
+            this.hostname = hostname;
+            this.item = item;
+        }
+
+        public String getHostname()
+        {
+            return hostname;
+        }
+
+        public SearchItem getItem()
+        {
+            return item;
+        }
+    }
+
+    public static class HostResult
+    {
+        private final String hostname;
+        private final int count;
+        private final String errorMessage;
+        private final boolean timedOut;
+
+        private HostResult(String hostname, int count, String errorMessage, boolean timedOut)
+        {
+            this.hostname = hostname;
+            this.count = count;
+            this.errorMessage = errorMessage;
+            this.timedOut = timedOut;
+        }
+
+        public String getHostname()
+        {
+            return hostname;
+        }
+
+        /**
+         * @return number of hits the host returned
+         */
+        public int getCount()
+        {
+            return count;
+        }
+
+        /**
+         * @return error message or an empty string if the search succeeded
+         */
+        public String getErrorMessage()
+        {
+            return errorMessage;
+        }
+
+        public boolean isTimedOut()
+        {
+            return timedOut;
+        }
+
+        public boolean isSuccess()
+        {
+            return errorMessage.length() == 0;
+        }
+    }
+
+    public static class Result
+    {
+        private final List<Hit> hits;
+        private final List<HostResult> hosts;
+
+        private Result(List<Hit> hits, List<HostResult> hosts)
+        {
+            this.hits = ImmutableList.copyOf(hits);
+            this.hosts = ImmutableList.copyOf(hosts);
+        }
+
+        /**
+         * @return the merged hits, newest first
+         */
+        public List<Hit> getHits()
+        {
+            return hits;
+        }
+
+        /**
+         * @return the outcome of each host's search in server list order
+         */
+        public List<HostResult> getHosts()
+        {
+            return hosts;
+        }
+    }
+
+    /**
+     * The hosts are searched in {@link Exhibitor#getRemoteSearchExecutor()}. The local partitions
+     * are searched in the fork join pool from there.
+     *
+     * @param exhibitor the instance
+     * @param hostnames the servers to search
+     */
+    public FederatedSearch(final Exhibitor exhibitor, List<String> hostnames)
+    {
+        this
+        (
+            exhibitor.getRemoteSearchExecutor(),
+            hostnames,
+            new HostSearcher()
+            {
+                @Override
+                public List<SearchItem> search(String hostname, SearchKey key) throws Exception
+                {
+                    if ( hostname.equals("localhost") || hostname.equals(exhibitor.getThisJVMHostname()) )
+                    {
+                        return searchLocal(exhibitor, key);
+                    }
+
+                    RemoteInstanceRequest           request = new RemoteInstanceRequest(exhibitor, hostname);
+                    RemoteInstanceRequest.Result    result = request.makeRequest(exhibitor.getRemoteInstanceRequestClient(), LOCAL_SEARCH_METHOD, encodeKey(key));
+                    if ( result.errorMessage.length() > 0 )
+                    {
+                        throw new IOException(result.errorMessage);
+                    }
+                    return fromJson(result.remoteResponse);
+                }
+            }
+        );
+    }
+
+    FederatedSearch(ExecutorService executorService, List<String> hostnames, HostSearcher searcher)
+    {
+        this.executorService = executorService;
+        this.hostnames = ImmutableList.copyOf(hostnames);
+        this.searcher = searcher;
+    }
+
+    /**
+     * Search every host and merge the results
+     *
+     * @param key the search - its max results (which must be set) applies to each host and to the merged hits
+     * @param deadlineMs max time to wait for the hosts
+     * @return result
+     * @throws InterruptedException if interrupted
+     */
+    public Result search(final SearchKey key, long deadlineMs) throws InterruptedException
+    {
+        List<Callable<List<SearchItem>>>    tasks = Lists.newArrayList();
+        for ( final String hostname : hostnames )
+        {
+            tasks.add
+            (
+                new Callable<List<SearchItem>>()
+                {
+                    @Override
+                    public List<SearchItem> call() throws Exception
+                    {
+                        return searcher.search(hostname, key);
+                    }
+                }
+            );
+        }
+
+        List<Hit>                   hits = Lists.newArrayList();
+        List<HostResult>            hosts = Lists.newArrayList();
+        List<Future<List<SearchItem>>>  futures = executorService.invokeAll(tasks, deadlineMs, TimeUnit.MILLISECONDS);
+        for ( int i = 0; i < futures.size(); ++i )
+        {
+            String          hostname = hostnames.get(i);
+            try
+            {
+                List<SearchItem>    items = futures.get(i).get();
+                for ( SearchItem item : items )
+                {
+                    hits.add(new Hit(hostname, item));
+                }
+                hosts.add(new HostResult(hostname, items.size(), "", false));
+            }
+            catch ( CancellationException e )
+            {
+                hosts.add(new HostResult(hostname, 0, "Timed out", true));
+            }
+            catch ( ExecutionException e )
+            {
+                String      message = e.getCause().getMessage();
+                hosts.add(new HostResult(hostname, 0, (message != null) ? message : "Unknown", false));
+            }
+        }
+
+        // newest first - ties order by host so the results are stable
+        Collections.sort
+        (
+            hits,
+            new Comparator<Hit>()
+            {
+                @Override
+                public int compare(Hit o1, Hit o2)
+                {
+                    int     diff = o2.item.getDate().compareTo(o1.item.getDate());
+                    return (diff != 0) ? diff : o1.hostname.compareTo(o2.hostname);
+                }
+            }
+        );
+        if ( hits.size() > key.getMaxResults() )
+        {
+            hits = hits.subList(0, key.getMaxResults());
+        }
+        return new Result(hits, hosts);
+    }
+
+    /**
+     * Search the partitions of this instance
+     *
+     * @param exhibitor the instance
+     * @param key the search
+     * @return the newest max results hits, newest first
+     * @throws Exception errors
+     */
+    public static List<SearchItem>  searchLocal(Exhibitor exhibitor, SearchKey key) throws Exception
+    {
+        File    indexParent = new File(exhibitor.getConfigManager().getConfig().getString(StringConfigs.LOG_INDEX_DIRECTORY));
+        return searchLocal(exhibitor.getIndexCache(), indexParent, exhibitor.getForkJoinPool(), key);
+    }
+
+    static List<SearchItem>         searchLocal(IndexCache indexCache, File indexParent, ExecutorService executorService, SearchKey key) throws Exception
+    {
+        List<File>          partitions = IndexPartitions.getOverlappingPartitions(indexCache, indexParent, key);
+
+        List<SearchItem>    items = Lists.newArrayList();
+        List<LogSearch>     logSearches = Lists.newArrayList();
+        try
+        {
+            for ( File partition : partitions )
+            {
+                logSearches.add(indexCache.getLogSearch(partition));
+            }
+
+            PartitionedSearch.Page  page = new PartitionedSearch(logSearches).searchPage(executorService, key.toQuery(), null, key.getMaxResults());
+            for ( PartitionedSearch.Hit hit : page.getHits() )
+            {
+                items.add(hit.getLogSearch().toResult(hit.getDocId()));
+            }
+        }
+        finally
+        {
+            for ( LogSearch logSearch : logSearches )
+            {
+                indexCache.releaseLogSearch(logSearch.getFile());
+            }
+        }
+        return items;
+    }
+
+    /**
+     * @param key the search
+     * @return the key as a URL safe path segment
+     */
+    public static String        encodeKey(SearchKey key)
+    {
+        ObjectNode      node = JsonNodeFactory.instance.objectNode();
+        node.put(FIELD_PATH_PREFIX, key.getPathPrefix());
+        node.put(FIELD_DATA_CONTAINS, key.getDataContains());
+        node.put(FIELD_OPERATION_TYPE, key.getOperationType());
+        node.put(FIELD_START_DATE, key.getStartDate());
+        node.put(FIELD_END_DATE, key.getEndDate());
+        node.put(FIELD_START_ZXID, key.getStartZxid());
+        node.put(FIELD_END_ZXID, key.getEndZxid());
+        if ( key.getSessionId() != null )
+        {
+            node.put(FIELD_SESSION_ID, key.getSessionId());
+        }
+        node.put(FIELD_MAX_RESULTS, key.getMaxResults());
+        return BaseEncoding.base64Url().omitPadding().encode(node.toString().getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * @param encoded value from {@link #encodeKey(SearchKey)}
+     * @return the key
+     * @throws IOException if the value is malformed
+     */
+    public static SearchKey     decodeKey(String encoded) throws IOException
+    {
+        JsonNode        node;
+        try
+        {
+            node = new ObjectMapper().readTree(new String(BaseEncoding.base64Url().omitPadding().decode(encoded), Charsets.UTF_8));
+        }
+        catch ( IllegalArgumentException e )
+        {
+            throw new IOException("Malformed search key", e);
+        }
+
+        long            startDate = node.path(FIELD_START_DATE).asLong(SearchKey.NO_DATE);
+        long            endDate = node.path(FIELD_END_DATE).asLong(SearchKey.NO_DATE);
+        JsonNode        sessionId = node.path(FIELD_SESSION_ID);
+        return new SearchKey
+        (
+            node.path(FIELD_PATH_PREFIX).getTextValue(),
+            node.path(FIELD_DATA_CONTAINS).getTextValue(),
+            node.path(FIELD_OPERATION_TYPE).asInt(SearchKey.NO_OPERATION_TYPE),
+            (startDate != SearchKey.NO_DATE) ? new Date(startDate) : null,
+            (endDate != SearchKey.NO_DATE) ? new Date(endDate) : null,
+            node.path(FIELD_START_ZXID).asLong(SearchKey.NO_ZXID),
+            node.path(FIELD_END_ZXID).asLong(SearchKey.NO_ZXID),
+            sessionId.isNumber() ? sessionId.getLongValue() : null,
+            node.path(FIELD_MAX_RESULTS).asInt(0)
+        );
+    }
+
+    /**
+     * @param items hits from {@link #searchLocal(Exhibitor, SearchKey)}
+     * @return the hits as JSON
+     */
+    public static String        toJson(List<SearchItem> items)
+    {
+        ArrayNode       results = JsonNodeFactory.instance.arrayNode();
+        for ( SearchItem item : items )
+        {
+            ObjectNode      node = JsonNodeFactory.instance.objectNode();
+            node.put(FIELD_TYPE, item.getType());
+            node.put(FIELD_PATH, item.getPath());
+            node.put(FIELD_VERSION, item.getVersion());
+            node.put(FIELD_DATE, item.getDate().getTime());
+            node.put(FIELD_ZXID, item.getZxid());
+            node.put(FIELD_SESSION_ID, item.getSessionId());
+            node.put(FIELD_CXID, item.getCxid());
+            results.add(node);
+        }
+
+        ObjectNode      node = JsonNodeFactory.instance.objectNode();
+        node.put(FIELD_RESULTS, results);
+        return node.toString();
+    }
+
+    static List<SearchItem>     fromJson(String json) throws IOException
+    {
+        List<SearchItem>    items = Lists.newArrayList();
+        for ( JsonNode node : new ObjectMapper().readTree(json).path(FIELD_RESULTS) )
+        {
+            items.add
+            (
+                new SearchItem
+                (
+                    node.path(FIELD_TYPE).getIntValue(),
+                    node.path(FIELD_PATH).getTextValue(),
+                    node.path(FIELD_VERSION).getIntValue(),
+                    new Date(node.path(FIELD_DATE).getLongValue()),
+                    node.path(FIELD_ZXID).getLongValue(),
+                    node.path(FIELD_SESSION_ID).getLongValue(),
+                    node.path(FIELD_CXID).getIntValue()
+                )
+            );
+        }
+        return items;
+    }
+}
@@ -20,9 +20,18 @@ class FieldNames
 {
     static final String      TYPE = "type";
     static final String      PATH = "path";
+    static final String      PATH_ANCESTORS = "pathAncestors";
     static final String      DATE = "date";
-    static final String      DATA = "data";
+    static final String      DATA = "data";     // payload of indexes built before the blob store
+    static final String      DATA_HASH = "dataHash";
+    static final String      DATA_TEXT = "dataText";
     static final String      VERSION = "version";
+    static final String      ZXID = "zxid";
+    static final String      SESSION = "session";
+    static final String      CXID = "cxid";
+
+    // numeric fields only ever matched exactly are indexed as a single full precision term
+    static final int         EXACT_PRECISION_STEP = Integer.MAX_VALUE;
 
     private FieldNames()
     {
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.Filter;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link LogSearch}'s cache of {@link CachingWrapperFilter}s keyed by a normalized clause description.
+ * The filters' doc-id bitsets are for the LogSearch's reader so they count toward its weight and are
+ * released when it is closed.
+ */
+class FilterCache
+{
+    private final Cache<String, Filter> cache = CacheBuilder.newBuilder()
+        .maximumSize(MAX_FILTERS)
+        .expireAfterAccess(IDLE_MINUTES, TimeUnit.MINUTES)
+        .build();
+    private final long filterWeight;
+
+    private static final int MAX_FILTERS = 64;
+    private static final int IDLE_MINUTES = 30;
+
+    /**
+     * @param maxDoc max doc of the reader the filters are used with
+     */
+    FilterCache(int maxDoc)
+    {
+        // a cached set is at most a bitset of the reader
+        filterWeight = (maxDoc / 8) + 1;
+    }
+
+    /**
+     * @param key normalized description of the filter - equal keys must match the same docs
+     * @param filter the filter to cache if there isn't one for the key yet
+     * @return the cached filter
+     */
+    Filter      get(String key, final Filter filter)
+    {
+        try
+        {
+            return cache.get(key, new Callable<Filter>()
+            {
+                @Override
+                public Filter call() throws Exception
+                {
+                    return new CachingWrapperFilter(filter);
+                }
+            });
+        }
+        catch ( ExecutionException e )
+        {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * @return approximate bytes held by the cached bitsets
+     */
+    long        getWeight()
+    {
+        return cache.size() * filterWeight;
+    }
+
+    void        close()
+    {
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Filter;
+import java.io.IOException;
+
+/**
+ * A MUST clause that can be evaluated as a cached filter instead of a scoring query. The cached
+ * part can match more than the clause - e.g. a date range rounded out to whole buckets so that rolling
+ * ranges share it - in which case the edges are removed from it with an uncached filter.
+ */
+class FilterClause
+{
+    private final String key;
+    private final Filter filter;
+    private final Term term;
+    private final String edgesKey;
+    private final Filter edges;
+
+    /**
+     * @param key normalized description of the clause - equal keys must match the same docs
+     * @param filter the filter
+     * @param term if the clause is a single term, the term - used to estimate selectivity. Otherwise null.
+     */
+    FilterClause(String key, Filter filter, Term term)
+    {
+        this(key, filter, term, null, null);
+    }
+
+    /**
+     * @param key normalized description of the cacheable filter - equal keys must match the same docs
+     * @param filter the cacheable filter
+     * @param term if the clause is a single term, the term - used to estimate selectivity. Otherwise null.
+     * @param edgesKey if not null, normalized description of the edges
+     * @param edges if not null, docs that the filter matches but the clause doesn't
+     */
+    FilterClause(String key, Filter filter, Term term, String edgesKey, Filter edges)
+    {
+        this.key = key;
+        this.filter = filter;
+        this.term = term;
+        this.edgesKey = edgesKey;
+        this.edges = edges;
+    }
+
+    /**
+     * @return cache key of {@link #getFilter()}
+     */
+    String      getKey()
+    {
+        return key;
+    }
+
+    /**
+     * @return the cacheable filter - it can match more than the clause (see {@link #getEdges()})
+     */
+    Filter      getFilter()
+    {
+        return filter;
+    }
+
+    /**
+     * @return normalized description of {@link #getEdges()} or null
+     */
+    String      getEdgesKey()
+    {
+        return edgesKey;
+    }
+
+    /**
+     * @return docs that {@link #getFilter()} matches but the clause doesn't, or null
+     */
+    Filter      getEdges()
+    {
+        return edges;
+    }
+
+    /**
+     * @return a filter that matches exactly the clause
+     */
+    Filter      getExactFilter()
+    {
+        return (edges != null) ? new ExcludingFilter(filter, edges) : filter;
+    }
+
+    /**
+     * @param cachedFilter the cached version of this clause's filter
+     * @return the same clause using the given filter
+     */
+    FilterClause    withFilter(Filter cachedFilter)
+    {
+        return new FilterClause(key, cachedFilter, term, edgesKey, edges);
+    }
+
+    /**
+     * Estimate the number of docs this clause matches. Ranges can't be estimated
+     * cheaply and are assumed to match everything so that term clauses go first.
+     *
+     * @param reader the reader being filtered
+     * @return estimate
+     * @throws IOException errors
+     */
+    int         estimate(IndexReader reader) throws IOException
+    {
+        return (term != null) ? reader.docFreq(term) : reader.maxDoc();
+    }
+}
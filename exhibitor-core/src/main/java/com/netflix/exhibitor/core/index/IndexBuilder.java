@@ -16,57 +16,267 @@
 
 package com.netflix.exhibitor.core.index;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+import com.google.common.collect.Sets;
 import org.apache.curator.utils.CloseableUtils;
+import org.apache.jute.BinaryInputArchive;
 import org.apache.jute.Record;
 import org.apache.lucene.analysis.KeywordAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.NumericField;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LogByteSizeMergePolicy;
 import org.apache.lucene.store.NIOFSDirectory;
 import org.apache.lucene.store.SingleInstanceLockFactory;
 import org.apache.lucene.util.Version;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.txn.CheckVersionTxn;
+import org.apache.zookeeper.txn.CreateSessionTxn;
 import org.apache.zookeeper.txn.CreateTxn;
 import org.apache.zookeeper.txn.DeleteTxn;
+import org.apache.zookeeper.txn.ErrorTxn;
+import org.apache.zookeeper.txn.MultiTxn;
+import org.apache.zookeeper.txn.SetACLTxn;
 import org.apache.zookeeper.txn.SetDataTxn;
+import org.apache.zookeeper.txn.Txn;
 import org.apache.zookeeper.txn.TxnHeader;
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
-public class IndexBuilder implements Closeable
+public class IndexBuilder implements Closeable, IndexTarget
 {
     private final File              directory;
+    private final int               threadQty;
+    private final int               dataTextMaxChars;
     private final AtomicInteger     count = new AtomicInteger(0);
     private final AtomicLong        from = new AtomicLong(Long.MAX_VALUE);
     private final AtomicLong        to = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong        minZxid = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong        maxZxid = new AtomicLong(IndexMetaData.UNKNOWN_ZXID);
+    private final Map<EntryTypes, AtomicInteger>    typeCounts = Maps.newEnumMap(EntryTypes.class);
+    private final boolean           typeCountsKnown;
+    private final long              baseZxid;
+    private final int               baseCount;
+    private final Set<String>       sources = Sets.newConcurrentHashSet();
+    private volatile long           openMs = 0;
+    private final Queue<PathBloomFilter.Builder>    pathFilters = Queues.newConcurrentLinkedQueue();
+
+    private final ThreadLocal<ReusableDocument> reusableDocument = new ThreadLocal<ReusableDocument>()
+    {
+        @Override
+        protected ReusableDocument initialValue()
+        {
+            ReusableDocument    reusable = new ReusableDocument(dataTextMaxChars);
+            pathFilters.add(reusable.pathFilter);
+            return reusable;
+        }
+    };
+
+    private static final byte[]                     EMPTY_DATA = new byte[0];
+    private static final Map<EntryTypes, String>    TYPE_IDS;
+    static
+    {
+        Map<EntryTypes, String>     typeIds = Maps.newEnumMap(EntryTypes.class);
+        for ( EntryTypes type : EntryTypes.values() )
+        {
+            typeIds.put(type, Integer.toString(type.getId()));
+        }
+        TYPE_IDS = Collections.unmodifiableMap(typeIds);
+    }
+
+    /**
+     * Lucene copies a document's values when it is added, so each indexing thread
+     * re-populates the same Document and Field instances for every transaction
+     */
+    private static class ReusableDocument
+    {
+        final Document          document = new Document();
+        final Field             type = new Field(FieldNames.TYPE, "", Field.Store.YES, Field.Index.NOT_ANALYZED);
+        final NumericField      date = new NumericField(FieldNames.DATE, Field.Store.YES, true);
+        final Field             path = new Field(FieldNames.PATH, "", Field.Store.YES, Field.Index.NOT_ANALYZED);
+        final Field             dataHash = new Field(FieldNames.DATA_HASH, EMPTY_DATA);
+        final NumericField      version = new NumericField(FieldNames.VERSION, Field.Store.YES, true);
+        final NumericField      zxid = new NumericField(FieldNames.ZXID, Field.Store.YES, true);
+        final NumericField      session = new NumericField(FieldNames.SESSION, FieldNames.EXACT_PRECISION_STEP, Field.Store.YES, true);
+        final NumericField      cxid = new NumericField(FieldNames.CXID, Field.Store.YES, false);
+        final PathAncestorsTokenStream  pathAncestorTokens = new PathAncestorsTokenStream();
+        final Field             pathAncestors = new Field(FieldNames.PATH_ANCESTORS, pathAncestorTokens);
+        final DataGramTokenStream   dataGrams;
+        final Field             dataText;
+        final PathBloomFilter.Builder   pathFilter = new PathBloomFilter.Builder();
+
+        ReusableDocument(int dataTextMaxChars)
+        {
+            pathAncestors.setOmitNorms(true);
+            pathAncestors.setIndexOptions(FieldInfo.IndexOptions.DOCS_ONLY);
+
+            if ( dataTextMaxChars > 0 )
+            {
+                dataGrams = new DataGramTokenStream(dataTextMaxChars);
+                dataText = new Field(FieldNames.DATA_TEXT, dataGrams);
+                dataText.setOmitNorms(true);
+            }
+            else
+            {
+                dataGrams = null;
+                dataText = null;
+            }
+        }
+
+        Document    reset()
+        {
+            document.getFields().clear();
+            return document;
+        }
+    }
 
     private NIOFSDirectory niofsDirectory;
     private IndexWriter writer;
+    private BlobStoreWriter blobs;
+    private PathBloomFilter basePathFilter;
+    private IndexColumns    baseColumns;
+    private int             blobCompressMinBytes = BlobStoreWriter.COMPRESS_MIN_BYTES;
 
     public IndexBuilder(File directory)
+    {
+        this(directory, 1);
+    }
+
+    /**
+     * @param directory index directory
+     * @param threadQty max number of threads that will concurrently call {@link #add(InputStream)}
+     */
+    public IndexBuilder(File directory, int threadQty)
+    {
+        this(directory, threadQty, null);
+    }
+
+    /**
+     * @param directory index directory
+     * @param threadQty max number of threads that will concurrently call {@link #add(InputStream)}
+     * @param base if not null, the meta data of the existing index in <code>directory</code>. The index
+     *             is appended to and only transactions newer than {@link IndexMetaData#getMaxZxid()} are added.
+     */
+    public IndexBuilder(File directory, int threadQty, IndexMetaData base)
+    {
+        this(directory, threadQty, base, 0);
+    }
+
+    /**
+     * @param directory index directory
+     * @param threadQty max number of threads that will concurrently call {@link #add(InputStream)}
+     * @param base if not null, the meta data of the existing index in <code>directory</code>. The index
+     *             is appended to and only transactions newer than {@link IndexMetaData#getMaxZxid()} are added.
+     * @param dataTextMaxChars max characters of each znode payload indexed for {@link QueryBuilder#dataContains(String)} - 0 to not index data text
+     */
+    public IndexBuilder(File directory, int threadQty, IndexMetaData base, int dataTextMaxChars)
     {
         this.directory = directory;
+        this.threadQty = Math.max(1, threadQty);
+        this.dataTextMaxChars = Math.max(0, dataTextMaxChars);
+        for ( EntryTypes type : EntryTypes.values() )
+        {
+            typeCounts.put(type, new AtomicInteger(0));
+        }
+        if ( base != null )
+        {
+            count.set(base.getEntryCount());
+            from.set(base.getFrom().getTime());
+            to.set(base.getTo().getTime());
+            if ( base.getEntryCount() > 0 )
+            {
+                // a legacy base doesn't know its min zxid - UNKNOWN_ZXID is below every zxid so it sticks
+                minZxid.set(base.getMinZxid());
+            }
+            maxZxid.set(base.getMaxZxid());
+            for ( Map.Entry<EntryTypes, Integer> entry : base.getTypeCounts().entrySet() )
+            {
+                typeCounts.get(entry.getKey()).set(entry.getValue());
+            }
+            typeCountsKnown = base.hasTypeCounts();
+            sources.addAll(base.getSources());
+            baseZxid = base.getMaxZxid();
+            baseCount = base.getEntryCount();
+        }
+        else
+        {
+            baseZxid = IndexMetaData.UNKNOWN_ZXID;
+            baseCount = 0;
+            typeCountsKnown = true;
+        }
+    }
+
+    /**
+     * Must be called before {@link #open()}
+     *
+     * @param blobCompressMinBytes payloads of at least this size are compressed - 0 disables compression
+     */
+    @VisibleForTesting
+    void setBlobCompressMinBytes(int blobCompressMinBytes)
+    {
+        this.blobCompressMinBytes = blobCompressMinBytes;
+    }
+
+    /**
+     * @return true if this builder is appending to an existing index
+     */
+    public boolean isIncremental()
+    {
+        return baseZxid != IndexMetaData.UNKNOWN_ZXID;
     }
 
     public void open() throws Exception
     {
+        openMs = System.currentTimeMillis();
         if ( !directory.exists() && !directory.mkdirs() )
         {
             throw new IOException("Could not make: " + directory);
         }
 
-        IndexWriterConfig conf = new IndexWriterConfig(Version.LUCENE_35, new KeywordAnalyzer()).setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+        IndexWriterConfig conf = new IndexWriterConfig(Version.LUCENE_35, new KeywordAnalyzer())
+            .setOpenMode(isIncremental() ? IndexWriterConfig.OpenMode.APPEND : IndexWriterConfig.OpenMode.CREATE)
+            .setMaxThreadStates(threadQty)
+            .setMergePolicy(new LogByteSizeMergePolicy())    // only merges adjacent segments so doc ids keep their order
+            .setRAMBufferSizeMB(IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB * threadQty);
 
+        if ( isIncremental() )
+        {
+            PathBloomFilter     filter = PathBloomFilter.read(directory);
+            basePathFilter = ((filter != null) && (filter.getEntryCount() == baseCount)) ? filter : null;
+        }
+
+        blobs = new BlobStoreWriter(directory, isIncremental(), blobCompressMinBytes);
         niofsDirectory = new NIOFSDirectory(directory, new SingleInstanceLockFactory());
+        if ( isIncremental() )
+        {
+            baseColumns = openBaseColumns();
+        }
         writer = new IndexWriter(niofsDirectory, conf);
     }
 
+    /**
+     * Parse the given log stream and add its entries to the index. Safe to call
+     * concurrently from up to <code>threadQty</code> threads.
+     *
+     * @param stream log stream
+     * @throws Exception errors
+     */
     public void add(InputStream stream) throws Exception
     {
         ZooKeeperLogParser  logParser = new ZooKeeperLogParser(stream);
@@ -79,17 +289,110 @@ public class IndexBuilder implements Closeable
                     @Override
                     public void receiveEntry(TxnHeader header, Record record) throws Exception
                     {
-                        indexRecord(header, record, count, from, to);
+                        addEntry(header, record);
                     }
                 }
             );
         }
     }
 
+    /**
+     * Add a single parsed log entry to the index. Entries at or below the base index's max zxid are skipped.
+     *
+     * @param header entry header
+     * @param record entry txn or null
+     * @throws IOException errors
+     */
+    public void addEntry(TxnHeader header, Record record) throws IOException
+    {
+        indexRecord(header, record, count, from, to);
+    }
+
+    /**
+     * Record that the log source with the given id has been completely indexed
+     *
+     * @param sourceId source id
+     */
+    public void addSource(String sourceId)
+    {
+        sources.add(sourceId);
+    }
+
+    /**
+     * @param sourceId source id
+     * @return true if the source was completely indexed by this or a previous build
+     */
+    public boolean hasSource(String sourceId)
+    {
+        return sources.contains(sourceId);
+    }
+
+    /**
+     * Finish the build: close the writer (which waits for pending merges and commits them) and then write
+     * the columns, path filter and meta data for the final doc ids. Nothing can be added afterwards.
+     *
+     * @throws Exception errors
+     */
     public void writeMetaData() throws Exception
     {
-        IndexMetaData       metaData = new IndexMetaData(new Date(from.get()), new Date(to.get()), count.get());
-        IndexMetaData.write(metaData, IndexMetaData.getMetaDataFile(directory));
+        blobs.flush();
+        IndexWriter     localWriter = writer;
+        writer = null;
+        localWriter.close();
+        IndexColumns.write(niofsDirectory, directory, baseColumns);
+        CloseableUtils.closeQuietly(baseColumns);
+        baseColumns = null;
+        if ( !isIncremental() || (basePathFilter != null) )
+        {
+            PathBloomFilter.build(basePathFilter, pathFilters, count.get()).write(directory);
+        }
+        // else the base index has no current filter to union with - the old filter stays stale and isn't used
+        writeMetaDataFile();
+    }
+
+    /**
+     * Make what has been added so far visible to newly opened readers without rewriting the
+     * columns file or path filter. Until {@link #writeMetaData()} is called, readers see the columns as stale
+     * and fall back to stored fields and searches don't skip the index.
+     *
+     * @throws Exception errors
+     */
+    public void commit() throws Exception
+    {
+        blobs.flush();
+        writer.commit();
+        writeMetaDataFile();
+    }
+
+    /**
+     * @return highest zxid added so far (including the base index) or {@link IndexMetaData#UNKNOWN_ZXID}
+     */
+    public long getMaxZxid()
+    {
+        return maxZxid.get();
+    }
+
+    /**
+     * Discard everything added since the index was opened
+     */
+    public void abort()
+    {
+        if ( writer != null )
+        {
+            try
+            {
+                writer.rollback();  // also closes the writer
+            }
+            catch ( IOException ignore )
+            {
+                // ignore
+            }
+            writer = null;
+        }
+        if ( blobs != null )
+        {
+            blobs.abort();
+        }
     }
 
     @Override
@@ -97,6 +400,8 @@ public class IndexBuilder implements Closeable
     {
         CloseableUtils.closeQuietly(writer);
         CloseableUtils.closeQuietly(niofsDirectory);
+        CloseableUtils.closeQuietly(blobs);
+        CloseableUtils.closeQuietly(baseColumns);
     }
 
     public int  getCurrentCount()
@@ -104,73 +409,267 @@ public class IndexBuilder implements Closeable
         return count.get();
     }
 
+    /**
+     * @return number of documents added by this builder (not counting the base index)
+     */
+    public int  getAddedCount()
+    {
+        return count.get() - baseCount;
+    }
+
+    /**
+     * The columns of the commit the build starts from so that {@link #writeMetaData()} only has to add the new documents
+     */
+    private IndexColumns openBaseColumns() throws IOException
+    {
+        IndexReader     reader = IndexReader.open(niofsDirectory);
+        try
+        {
+            return IndexColumns.open(directory, reader);
+        }
+        catch ( IOException ignore )
+        {
+            return null;    // unknown format - rewrite the columns
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(reader);
+        }
+    }
+
+    private void writeMetaDataFile() throws Exception
+    {
+        Map<EntryTypes, Integer>    counts = Maps.newEnumMap(EntryTypes.class);
+        if ( typeCountsKnown )
+        {
+            for ( Map.Entry<EntryTypes, AtomicInteger> entry : typeCounts.entrySet() )
+            {
+                if ( entry.getValue().get() > 0 )
+                {
+                    counts.put(entry.getKey(), entry.getValue().get());
+                }
+            }
+        }
+
+        long                now = System.currentTimeMillis();
+        long                localMinZxid = minZxid.get();
+        IndexMetaData       metaData = new IndexMetaData
+        (
+            new Date(from.get()),
+            new Date(to.get()),
+            count.get(),
+            (localMinZxid != Long.MAX_VALUE) ? localMinZxid : IndexMetaData.UNKNOWN_ZXID,
+            maxZxid.get(),
+            sources,
+            counts,
+            now,
+            now - openMs
+        );
+        IndexMetaData.writeForIndex(metaData, directory);
+    }
+
     private void indexRecord(TxnHeader header, Record record, AtomicInteger count, AtomicLong from, AtomicLong to) throws IOException
+    {
+        if ( header.getZxid() <= baseZxid )
+        {
+            return; // already in the index
+        }
+        updateMin(header.getZxid(), minZxid);
+        updateMax(header.getZxid(), maxZxid);
+
+        ReusableDocument    reusable = reusableDocument.get();
+        if ( record instanceof MultiTxn )
+        {
+            // each op of a multi becomes its own document sharing the multi's header
+            for ( Txn txn : ((MultiTxn)record).getTxns() )
+            {
+                Record      subRecord = deserializeSubTxn(txn);
+                if ( subRecord != null )
+                {
+                    indexTxn(reusable, header, txn.getType(), subRecord, count, from, to);
+                }
+            }
+        }
+        else
+        {
+            indexTxn(reusable, header, header.getType(), record, count, from, to);
+        }
+    }
+
+    private void indexTxn(ReusableDocument reusable, TxnHeader header, int opCode, Record record, AtomicInteger count, AtomicLong from, AtomicLong to) throws IOException
     {
         if ( record instanceof CreateTxn )
         {
             CreateTxn   createTxn = (CreateTxn)record;
 
             EntryTypes type = createTxn.getEphemeral() ? EntryTypes.CREATE_EPHEMERAL: EntryTypes.CREATE_PERSISTENT;
-            Document document = makeDocument(header, type, count, from, to);
-            addPath(document, createTxn.getPath());
-            addData(document, createTxn.getData());
+            Document document = makeDocument(reusable, header, type, count, from, to);
+            addPath(reusable, createTxn.getPath());
+            addData(reusable, createTxn.getData());
             writer.addDocument(document);
         }
         else if ( record instanceof DeleteTxn )
         {
             DeleteTxn   deleteTxn = (DeleteTxn)record;
 
-            Document document = makeDocument(header, EntryTypes.DELETE, count, from, to);
-            addPath(document, deleteTxn.getPath());
+            Document document = makeDocument(reusable, header, EntryTypes.DELETE, count, from, to);
+            addPath(reusable, deleteTxn.getPath());
             writer.addDocument(document);
         }
         else if ( record instanceof SetDataTxn )
         {
             SetDataTxn   setDataTxn = (SetDataTxn)record;
 
-            NumericField versionField = new NumericField(FieldNames.VERSION, Field.Store.YES, true);
-            versionField.setIntValue(setDataTxn.getVersion());
+            Document document = makeDocument(reusable, header, EntryTypes.SET_DATA, count, from, to);
+            addPath(reusable, setDataTxn.getPath());
+            addData(reusable, setDataTxn.getData());
+            addVersion(reusable, setDataTxn.getVersion());
+            writer.addDocument(document);
+        }
+        else if ( record instanceof SetACLTxn )
+        {
+            SetACLTxn   setACLTxn = (SetACLTxn)record;
 
-            Document document = makeDocument(header, EntryTypes.SET_DATA, count, from, to);
-            addPath(document, setDataTxn.getPath());
-            addData(document, setDataTxn.getData());
-            document.add(versionField);
+            Document document = makeDocument(reusable, header, EntryTypes.SET_ACL, count, from, to);
+            addPath(reusable, setACLTxn.getPath());
+            addVersion(reusable, setACLTxn.getVersion());
             writer.addDocument(document);
         }
+        else if ( record instanceof CheckVersionTxn )
+        {
+            CheckVersionTxn checkVersionTxn = (CheckVersionTxn)record;
+
+            Document document = makeDocument(reusable, header, EntryTypes.CHECK, count, from, to);
+            addPath(reusable, checkVersionTxn.getPath());
+            addVersion(reusable, checkVersionTxn.getVersion());
+            writer.addDocument(document);
+        }
+        else if ( record instanceof CreateSessionTxn )
+        {
+            writer.addDocument(makeDocument(reusable, header, EntryTypes.CREATE_SESSION, count, from, to));
+        }
+        else if ( record instanceof ErrorTxn )
+        {
+            writer.addDocument(makeDocument(reusable, header, EntryTypes.ERROR, count, from, to));
+        }
+        else if ( opCode == ZooDefs.OpCode.closeSession )   // has no record
+        {
+            writer.addDocument(makeDocument(reusable, header, EntryTypes.CLOSE_SESSION, count, from, to));
+        }
     }
 
-    private void addData(Document document, byte[] data)
+    private static Record deserializeSubTxn(Txn txn) throws IOException
     {
-        if ( data == null )
+        Record      record;
+        switch ( txn.getType() )
         {
-            data = new byte[0];
+            case ZooDefs.OpCode.create:
+            {
+                record = new CreateTxn();
+                break;
+            }
+
+            case ZooDefs.OpCode.delete:
+            {
+                record = new DeleteTxn();
+                break;
+            }
+
+            case ZooDefs.OpCode.setData:
+            {
+                record = new SetDataTxn();
+                break;
+            }
+
+            case ZooDefs.OpCode.check:
+            {
+                record = new CheckVersionTxn();
+                break;
+            }
+
+            case ZooDefs.OpCode.error:
+            {
+                record = new ErrorTxn();
+                break;
+            }
+
+            default:
+            {
+                return null;    // not a multi op
+            }
         }
-        document.add(new Field(FieldNames.DATA, data));
+        record.deserialize(BinaryInputArchive.getArchive(new ByteArrayInputStream(txn.getData())), "txn");
+        return record;
     }
 
-    private void addPath(Document document, String path)
+    private void addVersion(ReusableDocument reusable, int version)
     {
-        document.add(new Field(FieldNames.PATH, path, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        reusable.version.setIntValue(version);
+        reusable.document.add(reusable.version);
     }
 
-    private Document makeDocument(TxnHeader header, EntryTypes type, AtomicInteger count, AtomicLong from, AtomicLong to)
+    private void addData(ReusableDocument reusable, byte[] data) throws IOException
     {
-        count.incrementAndGet();
-        if ( header.getTime() < from.get() )
-        {
-            from.set(header.getTime());
-        }
-        if ( header.getTime() > to.get() )
+        // documents hold only the hash - each distinct payload is stored once in the blob store
+        reusable.dataHash.setValue(blobs.put((data != null) ? data : EMPTY_DATA));
+        reusable.document.add(reusable.dataHash);
+        if ( (reusable.dataGrams != null) && reusable.dataGrams.setData(data) )
         {
-            to.set(header.getTime());
+            reusable.document.add(reusable.dataText);
         }
+    }
 
-        NumericField dateField = new NumericField(FieldNames.DATE, Field.Store.YES, true);
-        dateField.setLongValue(header.getTime());
+    private void addPath(ReusableDocument reusable, String path)
+    {
+        reusable.path.setValue(path);
+        reusable.document.add(reusable.path);
+        reusable.pathFilter.add(path);
+        reusable.pathAncestorTokens.setPath(path);
+        reusable.document.add(reusable.pathAncestors);
+    }
 
-        Document    document = new Document();
-        document.add(new Field(FieldNames.TYPE, Integer.toString(type.getId()), Field.Store.YES, Field.Index.NOT_ANALYZED));
-        document.add(dateField);
+    private Document makeDocument(ReusableDocument reusable, TxnHeader header, EntryTypes type, AtomicInteger count, AtomicLong from, AtomicLong to)
+    {
+        count.incrementAndGet();
+        typeCounts.get(type).incrementAndGet();
+        updateMin(header.getTime(), from);
+        updateMax(header.getTime(), to);
+
+        Document    document = reusable.reset();
+        reusable.type.setValue(TYPE_IDS.get(type));
+        reusable.date.setLongValue(header.getTime());
+        reusable.zxid.setLongValue(header.getZxid());
+        reusable.session.setLongValue(header.getClientId());
+        reusable.cxid.setIntValue(header.getCxid());
+        document.add(reusable.type);
+        document.add(reusable.date);
+        document.add(reusable.zxid);
+        document.add(reusable.session);
+        document.add(reusable.cxid);
         return document;
     }
+
+    private static void updateMin(long value, AtomicLong min)
+    {
+        long    current;
+        while ( value < (current = min.get()) )
+        {
+            if ( min.compareAndSet(current, value) )
+            {
+                break;
+            }
+        }
+    }
+
+    private static void updateMax(long value, AtomicLong max)
+    {
+        long    current;
+        while ( value > (current = max.get()) )
+        {
+            if ( max.compareAndSet(current, value) )
+            {
+                break;
+            }
+        }
+    }
 }
@@ -16,21 +16,37 @@
 
 package com.netflix.exhibitor.core.index;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.netflix.exhibitor.core.activity.ActivityLog;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Cache of open {@link LogSearch} instances. Readers are closed by a background reaper when they have
+ * been idle for {@link #MAX_CACHE_MS}. The max weight is enforced when readers are acquired and released:
+ * if the total weight (see {@link LogSearch#getWeight()}) of the open readers exceeds it, idle readers are
+ * closed, least recently used first. Request paths only lock the holder of the index being requested.
+ */
 @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
 public class IndexCache implements Closeable
 {
@@ -49,30 +65,98 @@ public class IndexCache implements Closeable
             }
         );
 
+    private final LoadingCache<File, Optional<PathBloomFilter>> pathFilterCache = CacheBuilder
+        .newBuilder()
+        .expireAfterAccess(MAX_CACHE_MS, TimeUnit.MILLISECONDS)
+        .build
+        (
+            new CacheLoader<File, Optional<PathBloomFilter>>()
+            {
+                @Override
+                public Optional<PathBloomFilter> load(File indexDirectory) throws Exception
+                {
+                    return Optional.fromNullable(PathBloomFilter.read(indexDirectory));
+                }
+            }
+        );
+
     private final ConcurrentMap<File, LogSearchHolder>  indexCache = Maps.newConcurrentMap();
     private final AtomicBoolean                         isOpen = new AtomicBoolean(true);
     private final ActivityLog                           log;
+    private final long                                  maxWeight;
+    private final ScheduledExecutorService              reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("IndexCache-reaper").build());
+    private final AtomicLong                            hits = new AtomicLong(0);
+    private final AtomicLong                            misses = new AtomicLong(0);
+    private final AtomicLong                            evictions = new AtomicLong(0);
+    private final AtomicLong                            skips = new AtomicLong(0);
 
     private static class LogSearchHolder
     {
-        // all protected by synchronization
-        private LogSearch               logSearch;
+        // all protected by synchronization - logSearch is also read unlocked to sum the weight
+        private volatile LogSearch      logSearch;
         private int                     useCount = 0;
         private long                    lastUse = System.currentTimeMillis();
         private boolean                 markedForDeletion = false;
+        private boolean                 stale = false;
+        private boolean                 removed = false;
     }
 
     private static final int        MAX_CACHE_MS = (int)TimeUnit.MILLISECONDS.convert(5, TimeUnit.MINUTES);
+    private static final int        REAP_PERIOD_MS = (int)TimeUnit.MILLISECONDS.convert(15, TimeUnit.SECONDS);
+
+    /**
+     * Default max weight of open readers
+     */
+    public static final long        DEFAULT_MAX_WEIGHT = 256 * 1024 * 1024;
 
     public IndexCache(ActivityLog log)
+    {
+        this(log, DEFAULT_MAX_WEIGHT);
+    }
+
+    /**
+     * @param log the log
+     * @param maxWeight max total weight (approximate bytes) of open readers
+     */
+    public IndexCache(ActivityLog log, long maxWeight)
     {
         this.log = log;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Start the background reaper
+     */
+    public void start()
+    {
+        reaper.scheduleWithFixedDelay
+        (
+            new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        clean();
+                    }
+                    catch ( Throwable e )
+                    {
+                        log.add(ActivityLog.Type.ERROR, "Cleaning index cache", e);
+                    }
+                }
+            },
+            REAP_PERIOD_MS,
+            REAP_PERIOD_MS,
+            TimeUnit.MILLISECONDS
+        );
     }
 
     @Override
     public void close() throws IOException
     {
         Preconditions.checkArgument(isOpen.compareAndSet(true, false), "Cache is closed");
+        reaper.shutdownNow();
         clean();
     }
 
@@ -83,43 +167,77 @@ public class IndexCache implements Closeable
         return metaDataCache.get(indexDirectory);
     }
 
-    public void     markForDeletion(File indexDirectory)
+    /**
+     * Check the index's path filter without opening a reader. Indexes without a filter or
+     * whose filter is stale might contain any path.
+     *
+     * @param indexDirectory index
+     * @param pathPrefix path prefix
+     * @return false if no path in the index starts with the prefix
+     * @throws Exception errors
+     */
+    public boolean  mightContainPathPrefix(File indexDirectory, String pathPrefix) throws Exception
     {
         Preconditions.checkArgument(isOpen.get(), "Cache is closed");
 
-        LogSearchHolder     holder = getHolder(indexDirectory);
-        synchronized(holder)
+        PathBloomFilter     filter = pathFilterCache.get(indexDirectory).orNull();
+        if ( (filter == null) || !filter.isCurrent(getMetaData(indexDirectory)) || filter.mightContainPrefix(pathPrefix) )
         {
-            holder.markedForDeletion = true;
+            return true;
         }
-        clean();
+        skips.incrementAndGet();
+        return false;
     }
 
-    public LogSearch        getLogSearch(File indexDirectory) throws Exception
+    public void     markForDeletion(File indexDirectory)
     {
         Preconditions.checkArgument(isOpen.get(), "Cache is closed");
 
-        clean();
-
-        final LogSearchHolder     holder = getHolder(indexDirectory);
-
-        LogSearch                 logSearch;
+        LogSearchHolder     holder = getHolder(indexDirectory);
         synchronized(holder)
         {
-            if ( holder.logSearch == null )
+            holder.markedForDeletion = true;
+            if ( holder.useCount == 0 )
             {
-                Preconditions.checkArgument(holder.useCount == 0, "use count is non zero but instance is null: " + holder.useCount);
-                holder.logSearch = new LogSearch(indexDirectory);
+                remove(indexDirectory, holder);
             }
+            // otherwise the reaper deletes it once it's released
+        }
+    }
 
-            ++holder.useCount;
-            Preconditions.checkArgument(holder.useCount > 0, "use count has rolled over: " + holder.useCount);
-
-            holder.lastUse = System.currentTimeMillis();
+    /**
+     * Mark the given index as having changed on disk. Its meta data is reloaded and
+     * a new reader is opened once the current one is no longer in use.
+     *
+     * @param indexDirectory index
+     */
+    public void     refresh(File indexDirectory)
+    {
+        Preconditions.checkArgument(isOpen.get(), "Cache is closed");
 
-            logSearch = holder.logSearch;
+        metaDataCache.invalidate(indexDirectory);
+        pathFilterCache.invalidate(indexDirectory);
+        LogSearchHolder     holder = getHolder(indexDirectory);
+        synchronized(holder)
+        {
+            holder.stale = true;
         }
+    }
 
+    /**
+     * Return the index's reader, opening it if needed. If the open readers then weigh more than the max
+     * weight, idle readers are closed (least recently used first) before returning.
+     *
+     * @param indexDirectory index
+     * @return reader - must be released with {@link #releaseLogSearch(File)}
+     * @throws Exception errors
+     */
+    public LogSearch        getLogSearch(File indexDirectory) throws Exception
+    {
+        Preconditions.checkArgument(isOpen.get(), "Cache is closed");
+
+        LogSearch       logSearch = acquireLogSearch(indexDirectory);
+        evictToMaxWeight();
         return logSearch;
     }
 
@@ -134,7 +252,104 @@ public class IndexCache implements Closeable
         {
             Preconditions.checkArgument(holder.useCount > 0, "non positive use count in release: " + holder.useCount);
             --holder.useCount;
+            holder.lastUse = System.currentTimeMillis();
         }
+
+        // the reader may have cached filters while in use
+        evictToMaxWeight();
+    }
+
+    private LogSearch       acquireLogSearch(File indexDirectory) throws Exception
+    {
+        for(;;)
+        {
+            final LogSearchHolder     holder = getHolder(indexDirectory);
+            synchronized(holder)
+            {
+                if ( holder.removed )
+                {
+                    continue;   // lost a race with the reaper - get the new holder
+                }
+
+                if ( holder.stale && (holder.useCount == 0) )
+                {
+                    closeLogSearch(holder);
+                    holder.stale = false;
+                }
+
+                if ( holder.logSearch == null )
+                {
+                    Preconditions.checkArgument(holder.useCount == 0, "use count is non zero but instance is null: " + holder.useCount);
+                    holder.logSearch = new LogSearch(indexDirectory);
+                    misses.incrementAndGet();
+                }
+                else
+                {
+                    hits.incrementAndGet();
+                }
+
+                ++holder.useCount;
+                Preconditions.checkArgument(holder.useCount > 0, "use count has rolled over: " + holder.useCount);
+
+                holder.lastUse = System.currentTimeMillis();
+
+                return holder.logSearch;
+            }
+        }
+    }
+
+    /**
+     * @return number of requests served by an already open reader
+     */
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return number of requests that had to open a reader
+     */
+    public long getMissCount()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return number of readers closed because they were idle or to reduce the weight
+     */
+    public long getEvictionCount()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * @return number of times an index was skipped by its path filter
+     */
+    public long getSkipCount()
+    {
+        return skips.get();
+    }
+
+    /**
+     * @return approximate total weight of the currently open readers - it changes as they cache filters
+     */
+    public long getCurrentWeight()
+    {
+        long        weight = 0;
+        for ( LogSearchHolder holder : indexCache.values() )
+        {
+            LogSearch   logSearch = holder.logSearch;
+            if ( logSearch != null )
+            {
+                weight += logSearch.getWeight();
+            }
+        }
+        return weight;
+    }
+
+    public long getMaxWeight()
+    {
+        return maxWeight;
     }
 
     private LogSearchHolder getHolder(File indexDirectory)
@@ -161,17 +376,52 @@ public class IndexCache implements Closeable
         {
             log.add(ActivityLog.Type.ERROR, "Could not delete: " + indexDirectory);
         }
-        File    metaDataFile = IndexMetaData.getMetaDataFile(indexDirectory);
-        if ( !metaDataFile.delete() )
+        for ( File metaDataFile : IndexMetaData.getMetaDataFiles(indexDirectory) )
+        {
+            if ( metaDataFile.exists() && !metaDataFile.delete() )
+            {
+                log.add(ActivityLog.Type.ERROR, "Could not delete: " + metaDataFile);
+            }
+        }
+        File    pathFilterFile = PathBloomFilter.getFile(indexDirectory);
+        if ( pathFilterFile.exists() && !pathFilterFile.delete() )
         {
-            log.add(ActivityLog.Type.ERROR, "Could not delete: " + metaDataFile);
+            log.add(ActivityLog.Type.ERROR, "Could not delete: " + pathFilterFile);
         }
 
         log.add(ActivityLog.Type.INFO, "Index deleted: " + indexDirectory.getName());
     }
 
-    private void        clean()
+    // holder must be locked
+    private void        closeLogSearch(LogSearchHolder holder)
     {
+        if ( holder.logSearch != null )
+        {
+            holder.logSearch.close();
+            holder.logSearch = null;
+        }
+    }
+
+    // holder must be locked and not in use
+    private void        remove(File indexDirectory, LogSearchHolder holder)
+    {
+        closeLogSearch(holder);
+        holder.removed = true;
+        indexCache.remove(indexDirectory, holder);
+
+        if ( holder.markedForDeletion )
+        {
+            delete(indexDirectory);
+        }
+    }
+
+    /**
+     * Idle expiry and deletion of released indexes. The weight is enforced inline by {@link #evictToMaxWeight()}.
+     */
+    @VisibleForTesting
+    void        clean()
+    {
+        long                                    now = System.currentTimeMillis();
         Iterator<Map.Entry<File, LogSearchHolder>> iterator = indexCache.entrySet().iterator();
         while ( iterator.hasNext() )
         {
@@ -179,22 +429,71 @@ public class IndexCache implements Closeable
             final LogSearchHolder     holder = entry.getValue();
             synchronized(holder)
             {
-                if ( holder.useCount == 0 )
+                if ( (holder.useCount == 0) && (!isOpen.get() || holder.markedForDeletion || ((now - holder.lastUse) > MAX_CACHE_MS)) )
                 {
-                    if ( !isOpen.get() || holder.markedForDeletion || ((System.currentTimeMillis() - holder.lastUse) > MAX_CACHE_MS) )
+                    if ( holder.logSearch != null )
                     {
-                        if ( holder.logSearch != null )
-                        {
-                            holder.logSearch.close();
-                            holder.logSearch = null;
-                        }
-                        iterator.remove();
-
-                        if ( holder.markedForDeletion )
-                        {
-                            delete(entry.getKey());
-                        }
+                        evictions.incrementAndGet();
                     }
+                    remove(entry.getKey(), holder);
+                }
+            }
+        }
+    }
+
+    /**
+     * Close idle readers, least recently used first, until the open readers weigh no more than the max weight.
+     * Readers in use are never closed so the weight can stay above the max until they are released.
+     * Must not be called with a holder locked.
+     */
+    private void        evictToMaxWeight()
+    {
+        if ( getCurrentWeight() <= maxWeight )
+        {
+            return;
+        }
+
+        List<Map.Entry<File, LogSearchHolder>>  idle = Lists.newArrayList();
+        for ( Map.Entry<File, LogSearchHolder> entry : indexCache.entrySet() )
+        {
+            LogSearchHolder     holder = entry.getValue();
+            synchronized(holder)
+            {
+                if ( (holder.useCount == 0) && !holder.removed && (holder.logSearch != null) )
+                {
+                    idle.add(entry);
+                }
+            }
+        }
+
+        Collections.sort
+        (
+            idle,
+            new Comparator<Map.Entry<File, LogSearchHolder>>()
+            {
+                @Override
+                public int compare(Map.Entry<File, LogSearchHolder> o1, Map.Entry<File, LogSearchHolder> o2)
+                {
+                    long        diff = o1.getValue().lastUse - o2.getValue().lastUse;   // racy read is fine for ordering
+                    return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+                }
+            }
+        );
+
+        for ( Map.Entry<File, LogSearchHolder> entry : idle )
+        {
+            if ( getCurrentWeight() <= maxWeight )
+            {
+                break;
+            }
+
+            LogSearchHolder     holder = entry.getValue();
+            synchronized(holder)
+            {
+                if ( (holder.useCount == 0) && !holder.removed && (holder.logSearch != null) )
+                {
+                    evictions.incrementAndGet();
+                    remove(entry.getKey(), holder);
                 }
             }
         }
@@ -0,0 +1,497 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.document.NumericField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.NumericUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Date;
+
+/**
+ * <p>
+ *     A columnar copy of the small per-document values (date, zxid, session, type, version, cxid, path) of an index, keyed
+ *     by document id. It is written by {@link IndexBuilder} after the index is committed and memory-mapped
+ *     by {@link LogSearch} so that result pages and sorting never load stored documents.
+ * </p>
+ *
+ * <p>
+ *     Layout: header (magic, version, doc count, path count, segments generation), dates, zxids and sessions as longs, versions,
+ *     cxids and path ordinals as ints, types as bytes, then the path dictionary as int offsets followed by UTF-8 bytes.
+ *     The dictionary starts with "" and the paths of a full build in sorted order. An incremental build keeps the
+ *     ordinals of the paths it extends and appends the paths it adds. The whole file is a single mapping so it is
+ *     limited to 2GB.
+ * </p>
+ */
+public class IndexColumns implements Closeable
+{
+    private final RandomAccessFile file;
+    private final ByteBuffer buffer;
+    private final int docQty;
+    private final int pathQty;
+    private final long generation;
+    private final Layout layout;
+
+    static final String     FILE_NAME = "exhibitor.columns";
+
+    private static final int        MAGIC = 0x45584331;   // "EXC1"
+    private static final int        VERSION = 3;
+    private static final int        HEADER_SIZE = 24;
+
+    private static final Logger     log = LoggerFactory.getLogger(IndexColumns.class);
+
+    private static class Layout
+    {
+        final int       dates;
+        final int       zxids;
+        final int       sessions;
+        final int       versions;
+        final int       cxids;
+        final int       pathOrdinals;
+        final int       types;
+        final int       pathOffsets;
+        final int       pathBytes;
+
+        static long     getSize(int docQty, int pathQty, long pathBytesQty)
+        {
+            return HEADER_SIZE + (docQty * (8L + 8 + 8 + 4 + 4 + 4 + 1)) + ((pathQty + 1) * 4L) + pathBytesQty;
+        }
+
+        Layout(int docQty, int pathQty)
+        {
+            dates = HEADER_SIZE;
+            zxids = dates + (docQty * 8);
+            sessions = zxids + (docQty * 8);
+            versions = sessions + (docQty * 8);
+            cxids = versions + (docQty * 4);
+            pathOrdinals = cxids + (docQty * 4);
+            types = pathOrdinals + (docQty * 4);
+            pathOffsets = types + docQty;
+            pathBytes = pathOffsets + ((pathQty + 1) * 4);
+        }
+    }
+
+    /**
+     * Return the columns file for the given index
+     *
+     * @param indexDirectory index
+     * @return file
+     */
+    public static File getColumnsFile(File indexDirectory)
+    {
+        return new File(indexDirectory, FILE_NAME);
+    }
+
+    /**
+     * Open the columns for the given index if they exist and match the reader
+     *
+     * @param indexDirectory index
+     * @param reader the index's reader
+     * @return columns or null
+     * @throws IOException errors
+     */
+    public static IndexColumns open(File indexDirectory, IndexReader reader) throws IOException
+    {
+        File        columnsFile = getColumnsFile(indexDirectory);
+        if ( !columnsFile.exists() )
+        {
+            return null;
+        }
+
+        IndexColumns    columns = new IndexColumns(columnsFile);
+        if ( (columns.getDocQty() != reader.maxDoc()) || (columns.generation != reader.getIndexCommit().getGeneration()) )
+        {
+            // stale - e.g. an interrupted incremental build or a later commit that merged segments
+            columns.close();
+            return null;
+        }
+        return columns;
+    }
+
+    /**
+     * (Re)write the columns file for the given committed index. The stored values are streamed into
+     * the file in doc order and the path dictionary comes from the term dictionary, so nothing
+     * proportional to the index is held in heap. If the file would be larger than a single mapping
+     * allows, an error is logged and no columns are written - searches fall back to stored fields.
+     *
+     * @param directory Lucene directory
+     * @param indexDirectory index directory (where the columns file goes)
+     * @throws IOException errors
+     */
+    public static void write(Directory directory, File indexDirectory) throws IOException
+    {
+        write(directory, indexDirectory, null);
+    }
+
+    /**
+     * (Re)write the columns file for the given committed index, extending the columns of the commit an
+     * incremental build started from. If that commit's documents still have the same doc ids, its columns
+     * and dictionary are copied and only the documents added since are loaded. Otherwise all documents are.
+     *
+     * @param directory Lucene directory
+     * @param indexDirectory index directory (where the columns file goes)
+     * @param base the columns of the commit the build started from or null
+     * @throws IOException errors
+     */
+    public static void write(Directory directory, File indexDirectory, IndexColumns base) throws IOException
+    {
+        IndexReader     reader = IndexReader.open(directory);
+        try
+        {
+            write(reader, indexDirectory, base);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(reader);
+        }
+    }
+
+    @VisibleForTesting
+    static void write(IndexReader reader, File indexDirectory, IndexColumns base) throws IOException
+    {
+        IndexColumns    prefix = ((base != null) && base.isPrefixOf(reader)) ? base : null;
+        int             baseDocQty = (prefix != null) ? prefix.docQty : 0;
+        int             docQty = reader.maxDoc();
+        int             pathQty = (prefix != null) ? prefix.pathQty : 1;    // ordinal 0 is "" - the path of documents that have none
+        long            pathBytesQty = (prefix != null) ? prefix.getPathBytesQty() : 0;
+        TermEnum        terms = reader.terms(new Term(FieldNames.PATH, ""));
+        TermDocs        termDocs = reader.termDocs();
+        try
+        {
+            for ( String path = nextPath(terms, true); path != null; path = nextPath(terms, false) )
+            {
+                termDocs.seek(terms);
+                if ( termDocs.next() && (termDocs.doc() >= baseDocQty) )
+                {
+                    ++pathQty;
+                    pathBytesQty += path.getBytes(Charsets.UTF_8).length;
+                }
+            }
+        }
+        finally
+        {
+            termDocs.close();
+            terms.close();
+        }
+
+        long        size = Layout.getSize(docQty, pathQty, pathBytesQty);
+        if ( size > Integer.MAX_VALUE )
+        {
+            log.error(String.format("Columns for %s would be %d bytes which is more than can be mapped - searches will use stored fields", indexDirectory, size));
+            return;
+        }
+
+        File                tempFile = new File(indexDirectory, FILE_NAME + ".tmp");
+        RandomAccessFile    out = new RandomAccessFile(tempFile, "rw");
+        try
+        {
+            out.setLength(0);
+            out.setLength(size);    // zero filled - documents without a path get ordinal 0
+            MappedByteBuffer    buffer = out.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            Layout              layout = new Layout(docQty, pathQty);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, docQty);
+            buffer.putInt(12, pathQty);
+            buffer.putLong(16, reader.getIndexCommit().getGeneration());
+
+            if ( prefix != null )
+            {
+                prefix.copyTo(buffer, layout);
+            }
+            writeStoredValues(reader, buffer, layout, baseDocQty);
+            writePaths(reader, buffer, layout, prefix);
+
+            buffer.force();
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(out);
+        }
+
+        IndexMetaData.replaceFile(tempFile, getColumnsFile(indexDirectory));
+    }
+
+    private IndexColumns(File columnsFile) throws IOException
+    {
+        file = new RandomAccessFile(columnsFile, "r");
+        try
+        {
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            if ( (buffer.getInt(0) != MAGIC) || (buffer.getInt(4) != VERSION) )
+            {
+                throw new IOException("Unknown columns format: " + columnsFile);
+            }
+        }
+        catch ( IOException e )
+        {
+            CloseableUtils.closeQuietly(file);
+            throw e;
+        }
+
+        docQty = buffer.getInt(8);
+        pathQty = buffer.getInt(12);
+        generation = buffer.getLong(16);
+        layout = new Layout(docQty, pathQty);
+    }
+
+    public int getDocQty()
+    {
+        return docQty;
+    }
+
+    public int getPathQty()
+    {
+        return pathQty;
+    }
+
+    public long getDate(int docId)
+    {
+        return buffer.getLong(layout.dates + (docId * 8));
+    }
+
+    public long getZxid(int docId)
+    {
+        return buffer.getLong(layout.zxids + (docId * 8));
+    }
+
+    public long getSessionId(int docId)
+    {
+        return buffer.getLong(layout.sessions + (docId * 8));
+    }
+
+    public int getCxid(int docId)
+    {
+        return buffer.getInt(layout.cxids + (docId * 4));
+    }
+
+    public int getVersion(int docId)
+    {
+        return buffer.getInt(layout.versions + (docId * 4));
+    }
+
+    public int getType(int docId)
+    {
+        return buffer.get(layout.types + docId);
+    }
+
+    public int getPathOrdinal(int docId)
+    {
+        return buffer.getInt(layout.pathOrdinals + (docId * 4));
+    }
+
+    public String getPath(int ordinal)
+    {
+        int         start = buffer.getInt(layout.pathOffsets + (ordinal * 4));
+        int         end = buffer.getInt(layout.pathOffsets + ((ordinal + 1) * 4));
+        byte[]      bytes = new byte[end - start];
+        ByteBuffer  duplicate = buffer.duplicate();
+        duplicate.position(layout.pathBytes + start);
+        duplicate.get(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    public SearchItem toResult(int docId)
+    {
+        return new SearchItem(getType(docId), getPath(getPathOrdinal(docId)), getVersion(docId), new Date(getDate(docId)), getZxid(docId), getSessionId(docId), getCxid(docId));
+    }
+
+    @Override
+    public void close()
+    {
+        // the mapping itself is released when the buffer is collected
+        CloseableUtils.closeQuietly(file);
+    }
+
+    /**
+     * The documents of an incremental build's base commit keep their doc ids only if nothing was deleted
+     * and the base's first and last documents are still where they were. The merge policy of
+     * {@link IndexBuilder} only merges adjacent segments so this is the normal case.
+     */
+    private boolean isPrefixOf(IndexReader reader) throws IOException
+    {
+        if ( reader.hasDeletions() || (docQty > reader.maxDoc()) )
+        {
+            return false;
+        }
+        return (docQty == 0) || (hasZxid(reader, 0) && hasZxid(reader, docQty - 1));
+    }
+
+    // checks the zxid's postings so that no stored document is loaded
+    private boolean hasZxid(IndexReader reader, int docId) throws IOException
+    {
+        TermDocs    termDocs = reader.termDocs(new Term(FieldNames.ZXID, NumericUtils.longToPrefixCoded(getZxid(docId))));
+        try
+        {
+            return termDocs.skipTo(docId) && (termDocs.doc() == docId);
+        }
+        finally
+        {
+            termDocs.close();
+        }
+    }
+
+    private int getPathBytesQty()
+    {
+        return buffer.getInt(layout.pathOffsets + (pathQty * 4));
+    }
+
+    private void copyTo(ByteBuffer to, Layout toLayout)
+    {
+        copy(to, layout.dates, toLayout.dates, docQty * 8);
+        copy(to, layout.zxids, toLayout.zxids, docQty * 8);
+        copy(to, layout.sessions, toLayout.sessions, docQty * 8);
+        copy(to, layout.versions, toLayout.versions, docQty * 4);
+        copy(to, layout.cxids, toLayout.cxids, docQty * 4);
+        copy(to, layout.pathOrdinals, toLayout.pathOrdinals, docQty * 4);
+        copy(to, layout.types, toLayout.types, docQty);
+        copy(to, layout.pathOffsets, toLayout.pathOffsets, (pathQty + 1) * 4);
+        copy(to, layout.pathBytes, toLayout.pathBytes, getPathBytesQty());
+    }
+
+    private void copy(ByteBuffer to, int fromOffset, int toOffset, int length)
+    {
+        ByteBuffer  source = buffer.duplicate();
+        source.position(fromOffset);
+        source.limit(fromOffset + length);
+        ByteBuffer  destination = to.duplicate();
+        destination.position(toOffset);
+        destination.put(source);
+    }
+
+    private static void writeStoredValues(IndexReader reader, ByteBuffer buffer, Layout layout, int fromDocId) throws IOException
+    {
+        MapFieldSelector    selector = new MapFieldSelector(FieldNames.TYPE, FieldNames.DATE, FieldNames.VERSION, FieldNames.ZXID, FieldNames.SESSION, FieldNames.CXID);
+        for ( int docId = fromDocId; docId < reader.maxDoc(); ++docId )
+        {
+            Document        document = reader.document(docId, selector);
+            NumericField    date = (NumericField)document.getFieldable(FieldNames.DATE);
+            NumericField    version = (NumericField)document.getFieldable(FieldNames.VERSION);
+            NumericField    zxid = (NumericField)document.getFieldable(FieldNames.ZXID);
+            NumericField    session = (NumericField)document.getFieldable(FieldNames.SESSION);
+            NumericField    cxid = (NumericField)document.getFieldable(FieldNames.CXID);
+
+            buffer.putLong(layout.dates + (docId * 8), date.getNumericValue().longValue());
+            buffer.putLong(layout.zxids + (docId * 8), (zxid != null) ? zxid.getNumericValue().longValue() : SearchItem.UNKNOWN);
+            buffer.putLong(layout.sessions + (docId * 8), (session != null) ? session.getNumericValue().longValue() : SearchItem.UNKNOWN);
+            buffer.putInt(layout.versions + (docId * 4), (version != null) ? version.getNumericValue().intValue() : -1);
+            buffer.putInt(layout.cxids + (docId * 4), (cxid != null) ? cxid.getNumericValue().intValue() : (int)SearchItem.UNKNOWN);
+            buffer.put(layout.types + docId, (byte)Integer.parseInt(document.get(FieldNames.TYPE)));
+        }
+    }
+
+    /**
+     * Each path term that is new since the base gets the next ordinal (so the paths each build adds are sorted) and
+     * its postings give the documents to set the ordinal for. A path that the base has keeps its ordinal, which is
+     * read from the base column of its first document.
+     */
+    private static void writePaths(IndexReader reader, ByteBuffer buffer, Layout layout, IndexColumns base) throws IOException
+    {
+        int         baseDocQty = (base != null) ? base.docQty : 0;
+        int         ordinal = (base != null) ? (base.pathQty - 1) : 0;
+        int         pathOffset = (base != null) ? base.getPathBytesQty() : 0;
+        TermEnum    terms = reader.terms(new Term(FieldNames.PATH, ""));
+        TermDocs    termDocs = reader.termDocs();
+        try
+        {
+            for ( String path = nextPath(terms, true); path != null; path = nextPath(terms, false) )
+            {
+                termDocs.seek(terms.term());    // skipTo() after seek(TermEnum) trips an assertion in the multi-segment TermDocs
+                if ( !termDocs.next() )
+                {
+                    continue;
+                }
+
+                int     pathOrdinal;
+                if ( termDocs.doc() < baseDocQty )
+                {
+                    pathOrdinal = base.getPathOrdinal(termDocs.doc());
+                    if ( !termDocs.skipTo(baseDocQty) )
+                    {
+                        continue;
+                    }
+                }
+                else
+                {
+                    byte[]      bytes = path.getBytes(Charsets.UTF_8);
+                    ByteBuffer  duplicate = buffer.duplicate();
+                    duplicate.position(layout.pathBytes + pathOffset);
+                    duplicate.put(bytes);
+                    pathOffset += bytes.length;
+                    pathOrdinal = ++ordinal;
+                    buffer.putInt(layout.pathOffsets + ((pathOrdinal + 1) * 4), pathOffset);
+                }
+
+                do
+                {
+                    buffer.putInt(layout.pathOrdinals + (termDocs.doc() * 4), pathOrdinal);
+                } while ( termDocs.next() );
+            }
+        }
+        finally
+        {
+            termDocs.close();
+            terms.close();
+        }
+    }
+
+    /**
+     * @param terms enum positioned by {@link IndexReader#terms(Term)} at the first path term
+     * @param first true for the enum's current term, false to advance first
+     * @return the next non-empty path or null when there are no more
+     */
+    private static String nextPath(TermEnum terms, boolean first) throws IOException
+    {
+        if ( !first && !terms.next() )
+        {
+            return null;
+        }
+        for(;;)
+        {
+            Term    term = terms.term();
+            if ( (term == null) || !term.field().equals(FieldNames.PATH) )
+            {
+                return null;
+            }
+            if ( term.text().length() > 0 )
+            {
+                return term.text();
+            }
+            if ( !terms.next() )
+            {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.curator.utils.CloseableUtils;
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ *     Progress, throughput and control of one index build. {@link IndexProcessor} updates the counters
+ *     as it goes and checks for cancellation before each log source and between transactions. A cancelled
+ *     build fails like any other failed build so its partial output is removed.
+ * </p>
+ *
+ * <p>
+ *     Phase times are the total time spent in each phase by all indexing threads: {@link Phase#FETCH} is time
+ *     spent waiting for backups to download, {@link Phase#PARSE} is reading log entries, {@link Phase#INDEX}
+ *     is adding documents and {@link Phase#MERGE} is committing and writing the columns and meta data.
+ * </p>
+ */
+public class IndexJob
+{
+    private final String                description;
+    private final long                  createdMs = System.currentTimeMillis();
+    private final AtomicInteger         sourceQty = new AtomicInteger(0);
+    private final AtomicInteger         completedSourceQty = new AtomicInteger(0);
+    private final AtomicLong            byteQty = new AtomicLong(0);
+    private final AtomicLong            transactionQty = new AtomicLong(0);
+    private final Map<Phase, AtomicLong> phaseNanos = Maps.newEnumMap(Phase.class);
+    private final List<Closeable>       cancelHooks = Lists.newArrayList();  // protected by sync
+    private volatile String             id = "";
+    private volatile State              state = State.QUEUED;
+    private volatile boolean            cancelRequested = false;
+    private volatile long               startMs = 0;
+    private volatile long               endMs = 0;
+    private volatile String             errorMessage = "";
+    private volatile IndexTarget        target = null;
+
+    public enum State
+    {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED,
+        CANCELLED
+    }
+
+    public enum Phase
+    {
+        FETCH,
+        PARSE,
+        INDEX,
+        MERGE
+    }
+
+    /**
+     * @param description what the job does - jobs with the same description are duplicates (see {@link IndexJobs})
+     */
+    public IndexJob(String description)
+    {
+        this.description = description;
+        for ( Phase phase : Phase.values() )
+        {
+            phaseNanos.put(phase, new AtomicLong(0));
+        }
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    public String getDescription()
+    {
+        return description;
+    }
+
+    public State getState()
+    {
+        return state;
+    }
+
+    public boolean isFinished()
+    {
+        return (state != State.QUEUED) && (state != State.RUNNING);
+    }
+
+    public long getCreatedMs()
+    {
+        return createdMs;
+    }
+
+    /**
+     * @return time since the job started running (until it finished) or 0 if it hasn't started
+     */
+    public long getElapsedMs()
+    {
+        long        localStartMs = startMs;
+        if ( localStartMs == 0 )
+        {
+            return 0;
+        }
+        long        localEndMs = endMs;
+        return ((localEndMs != 0) ? localEndMs : System.currentTimeMillis()) - localStartMs;
+    }
+
+    /**
+     * @return number of log sources the build has to index
+     */
+    public int getSourceQty()
+    {
+        return sourceQty.get();
+    }
+
+    public int getCompletedSourceQty()
+    {
+        return completedSourceQty.get();
+    }
+
+    /**
+     * @return bytes of (decompressed) log read so far
+     */
+    public long getByteQty()
+    {
+        return byteQty.get();
+    }
+
+    /**
+     * @return log entries read so far, including those already in the index
+     */
+    public long getTransactionQty()
+    {
+        return transactionQty.get();
+    }
+
+    /**
+     * @return documents added to the index so far
+     */
+    public int getDocumentQty()
+    {
+        IndexTarget     localTarget = target;
+        return (localTarget != null) ? localTarget.getAddedCount() : 0;
+    }
+
+    public long getDocumentsPerSecond()
+    {
+        return (getDocumentQty() * 1000L) / Math.max(1, getElapsedMs());
+    }
+
+    /**
+     * Estimated from the average time per completed log source
+     *
+     * @return estimated remaining ms or -1 if unknown
+     */
+    public long getEtaMs()
+    {
+        if ( state != State.RUNNING )
+        {
+            return isFinished() ? 0 : -1;
+        }
+        int         completed = completedSourceQty.get();
+        if ( completed == 0 )
+        {
+            return -1;
+        }
+        return (getElapsedMs() * (sourceQty.get() - completed)) / completed;
+    }
+
+    public long getPhaseMs(Phase phase)
+    {
+        return TimeUnit.MILLISECONDS.convert(phaseNanos.get(phase).get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the failure or an empty string
+     */
+    public String getErrorMessage()
+    {
+        return errorMessage;
+    }
+
+    public boolean isCancelRequested()
+    {
+        return cancelRequested;
+    }
+
+    /**
+     * Cancel the job. A queued job won't run. A running job stops at its next check and its partial output is removed.
+     *
+     * @return false if the job has already finished
+     */
+    public boolean cancel()
+    {
+        List<Closeable>     hooks;
+        synchronized(this)
+        {
+            if ( state == State.QUEUED )
+            {
+                finish(State.CANCELLED, "");
+                return true;
+            }
+            if ( state != State.RUNNING )
+            {
+                return false;
+            }
+            cancelRequested = true;
+            hooks = Lists.newArrayList(cancelHooks);
+        }
+
+        for ( Closeable hook : hooks )
+        {
+            CloseableUtils.closeQuietly(hook);
+        }
+        return true;
+    }
+
+    synchronized void   setId(String id)
+    {
+        this.id = id;
+    }
+
+    /**
+     * @return false if the job was cancelled before it started
+     */
+    synchronized boolean    begin()
+    {
+        if ( state != State.QUEUED )
+        {
+            return false;
+        }
+        state = State.RUNNING;
+        startMs = System.currentTimeMillis();
+        return true;
+    }
+
+    synchronized void   succeeded()
+    {
+        finish(State.SUCCEEDED, "");
+    }
+
+    synchronized void   failed(Exception e)
+    {
+        if ( cancelRequested )
+        {
+            finish(State.CANCELLED, "");
+        }
+        else
+        {
+            finish(State.FAILED, (e.getMessage() != null) ? e.getMessage() : e.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * @throws CancellationException if the job has been cancelled
+     */
+    void                checkCancelled()
+    {
+        if ( cancelRequested )
+        {
+            throw new CancellationException("Index build cancelled: " + description);
+        }
+    }
+
+    /**
+     * @param hook closed if the job is cancelled - e.g. to release threads waiting on a download
+     */
+    synchronized void   addCancelHook(Closeable hook)
+    {
+        cancelHooks.add(hook);
+    }
+
+    void                starting(IndexTarget target, int sourceQty)
+    {
+        this.target = target;
+        this.sourceQty.set(sourceQty);
+    }
+
+    void                sourceCompleted(long bytes)
+    {
+        byteQty.addAndGet(bytes);
+        completedSourceQty.incrementAndGet();
+    }
+
+    void                addTransactions(long qty)
+    {
+        transactionQty.addAndGet(qty);
+    }
+
+    void                addPhaseNanos(Phase phase, long nanos)
+    {
+        phaseNanos.get(phase).addAndGet(nanos);
+    }
+
+    // must be synchronized
+    private void        finish(State newState, String message)
+    {
+        state = newState;
+        errorMessage = message;
+        endMs = System.currentTimeMillis();
+        cancelHooks.clear();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.netflix.exhibitor.core.activity.ActivityQueue;
+import com.netflix.exhibitor.core.activity.QueueGroups;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The index builds that are queued or running plus the most recently finished ones. Submitting a build
+ * that duplicates one that is queued or running returns the existing job instead of queueing another build.
+ */
+public class IndexJobs
+{
+    private final ActivityQueue                 activityQueue;
+    private final Map<String, IndexJob>         jobs = Maps.newLinkedHashMap();    // protected by sync - oldest first
+    private int                                 nextId = 1;                         // protected by sync
+
+    private static final int        MAX_FINISHED_JOBS = 20;
+
+    public IndexJobs(ActivityQueue activityQueue)
+    {
+        this.activityQueue = activityQueue;
+    }
+
+    /**
+     * Queue the activity's build unless the same build is already queued or running
+     *
+     * @param activity the build
+     * @return the activity's job or the existing duplicate job
+     */
+    public synchronized IndexJob    submit(IndexProcessorActivity activity)
+    {
+        IndexJob        newJob = activity.getJob();
+        for ( IndexJob job : jobs.values() )
+        {
+            if ( !job.isFinished() && job.getDescription().equals(newJob.getDescription()) )
+            {
+                return job;
+            }
+        }
+
+        newJob.setId(Integer.toString(nextId++));
+        jobs.put(newJob.getId(), newJob);
+        trim();
+        activityQueue.add(QueueGroups.IO, activity);
+        return newJob;
+    }
+
+    /**
+     * @param id job id
+     * @return the job or null
+     */
+    public synchronized IndexJob    getJob(String id)
+    {
+        return jobs.get(id);
+    }
+
+    /**
+     * @return the known jobs, oldest first
+     */
+    public synchronized List<IndexJob>  getJobs()
+    {
+        return ImmutableList.copyOf(jobs.values());
+    }
+
+    // must be synchronized
+    private void    trim()
+    {
+        int         finishedQty = 0;
+        for ( IndexJob job : jobs.values() )
+        {
+            if ( job.isFinished() )
+            {
+                ++finishedQty;
+            }
+        }
+
+        Iterator<IndexJob>  iterator = jobs.values().iterator();
+        while ( (finishedQty > MAX_FINISHED_JOBS) && iterator.hasNext() )
+        {
+            if ( iterator.next().isFinished() )
+            {
+                iterator.remove();
+                --finishedQty;
+            }
+        }
+    }
+}
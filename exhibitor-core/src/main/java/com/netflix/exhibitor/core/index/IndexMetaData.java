@@ -16,98 +16,234 @@
 
 package com.netflix.exhibitor.core.index;
 
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
 import org.apache.curator.utils.CloseableUtils;
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.text.DateFormat;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
+/**
+ * <p>
+ *     Summary of an index: date range, entry count (in total and per {@link EntryTypes}), zxid range, the log sources
+ *     that were indexed and how long the last build took. It is small and stored next to the index directory so that
+ *     listing indexes and choosing the indexes a search needs don't open any index.
+ * </p>
+ *
+ * <p>
+ *     The meta data file is binary: magic, version, from/to dates, entry count, min/max zxid, build time and duration,
+ *     per type counts and the source ids. Indexes written before version 3 have a <code>.properties</code> file instead.
+ *     Those are still read (their dates have second resolution and they have no type counts or min zxid) and are
+ *     replaced by the binary file when the index is next updated.
+ * </p>
+ */
 public class IndexMetaData
 {
     private final Date  from;
     private final Date  to;
     private final int   entryCount;
+    private final long  minZxid;
+    private final long  maxZxid;
+    private final Set<String> sources;
+    private final Map<EntryTypes, Integer> typeCounts;
+    private final long  builtMs;
+    private final long  buildMs;
+
+    private static final String         META_DATA_FILE_EXTENSION = ".meta";
+    private static final String         LEGACY_META_DATA_FILE_EXTENSION = ".properties";
 
-    private static final String         META_DATA_FILE_EXTENSION = ".properties";
+    private static final int        MAGIC = 0x45584D44;   // "EXMD"
+    private static final int        VERSION = 3;
+    private static final int        VERSION_2 = 2;
+    private static final int        VERSION_1 = 1;
 
-    private static final int        VERSION = 1;
-    
     private static final String     PROPERTY_FROM = "from";
     private static final String     PROPERTY_TO = "to";
     private static final String     PROPERTY_COUNT = "count";
     private static final String     PROPERTY_VERSION = "version";
+    private static final String     PROPERTY_MAX_ZXID = "maxZxid";
+    private static final String     PROPERTY_SOURCES = "sources";
+
+    private static final char       SOURCES_SEPARATOR = '\n';
+
+    /**
+     * Value of {@link #getMinZxid()}/{@link #getMaxZxid()} when the index doesn't record it
+     */
+    public static final long        UNKNOWN_ZXID = -1;
 
     public static boolean isValid(File indexDirectory)
     {
         return indexDirectory.exists() && indexDirectory.isDirectory();
     }
 
+    /**
+     * Return the meta data file of the given index - the binary file unless the index only has a
+     * pre version 3 <code>.properties</code> file
+     *
+     * @param indexDirectory index
+     * @return file
+     */
     public static File getMetaDataFile(File indexDirectory)
     {
-        return new File(indexDirectory.getPath() + IndexMetaData.META_DATA_FILE_EXTENSION);
+        File        file = new File(indexDirectory.getPath() + META_DATA_FILE_EXTENSION);
+        File        legacyFile = new File(indexDirectory.getPath() + LEGACY_META_DATA_FILE_EXTENSION);
+        return (!file.exists() && legacyFile.exists()) ? legacyFile : file;
+    }
+
+    /**
+     * @param indexDirectory index
+     * @return every meta data file the index might have, current and legacy
+     */
+    public static List<File> getMetaDataFiles(File indexDirectory)
+    {
+        return ImmutableList.of(new File(indexDirectory.getPath() + META_DATA_FILE_EXTENSION), new File(indexDirectory.getPath() + LEGACY_META_DATA_FILE_EXTENSION));
+    }
+
+    /**
+     * Write the meta data file of the given index, replacing a legacy file
+     *
+     * @param meta meta data
+     * @param indexDirectory index
+     * @throws Exception errors
+     */
+    public static void     writeForIndex(IndexMetaData meta, File indexDirectory) throws Exception
+    {
+        write(meta, new File(indexDirectory.getPath() + META_DATA_FILE_EXTENSION));
+
+        File        legacyFile = new File(indexDirectory.getPath() + LEGACY_META_DATA_FILE_EXTENSION);
+        if ( legacyFile.exists() && !legacyFile.delete() )
+        {
+            throw new IOException("Could not delete: " + legacyFile);
+        }
     }
 
     public static void     write(IndexMetaData meta, File to) throws Exception
     {
-        DateFormat      format = DateFormat.getDateTimeInstance();
-        
-        Properties      properties = new Properties();
-        properties.setProperty(PROPERTY_FROM, format.format(meta.from));
-        properties.setProperty(PROPERTY_TO, format.format(meta.to));
-        properties.setProperty(PROPERTY_VERSION, Integer.toString(VERSION));
-        properties.setProperty(PROPERTY_COUNT, Integer.toString(meta.entryCount));
-        
-        OutputStream    out = new BufferedOutputStream(new FileOutputStream(to));
+        File                tempFile = new File(to.getPath() + ".tmp");
+        DataOutputStream    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
         try
         {
-            properties.store(out, "Auto-generated by Exhibitor");
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(meta.from.getTime());
+            out.writeLong(meta.to.getTime());
+            out.writeInt(meta.entryCount);
+            out.writeLong(meta.minZxid);
+            out.writeLong(meta.maxZxid);
+            out.writeLong(meta.builtMs);
+            out.writeLong(meta.buildMs);
+            out.writeInt(meta.typeCounts.size());
+            for ( Map.Entry<EntryTypes, Integer> entry : meta.typeCounts.entrySet() )
+            {
+                out.writeInt(entry.getKey().getId());
+                out.writeInt(entry.getValue());
+            }
+            out.writeInt(meta.sources.size());
+            for ( String source : meta.sources )
+            {
+                out.writeUTF(source);
+            }
         }
         finally
         {
             CloseableUtils.closeQuietly(out);
         }
+
+        replaceFile(tempFile, to);
     }
 
-    public static IndexMetaData     read(File from) throws Exception
+    /**
+     * Move a completely written temp file into place. On POSIX systems the rename atomically replaces
+     * an existing file so readers see either the old or the new file. Only when the rename fails
+     * (e.g. Windows won't rename over an existing file) is the old file deleted first.
+     *
+     * @param tempFile the written file
+     * @param to final name
+     * @throws IOException if the file couldn't be moved
+     */
+    static void replaceFile(File tempFile, File to) throws IOException
     {
-        DateFormat      format = DateFormat.getDateTimeInstance();
-
-        Properties      properties = new Properties();
-        InputStream     in = new BufferedInputStream(new FileInputStream(from));
-        try
+        if ( tempFile.renameTo(to) )
         {
-            properties.load(in);
+            return;
         }
-        finally
+        if ( (to.exists() && !to.delete()) || !tempFile.renameTo(to) )
         {
-            CloseableUtils.closeQuietly(in);
+            throw new IOException("Could not create: " + to);
         }
+    }
 
-        String version = properties.getProperty(PROPERTY_VERSION, "0");
-        if ( !version.equals(Integer.toString(VERSION)) )
+    /**
+     * Read a meta data file - binary or legacy <code>.properties</code>
+     *
+     * @param from the file
+     * @return meta data
+     * @throws Exception errors or an unknown version
+     */
+    public static IndexMetaData     read(File from) throws Exception
+    {
+        byte[]      bytes = Files.toByteArray(from);
+        if ( (bytes.length >= 4) && (ByteBuffer.wrap(bytes).getInt() == MAGIC) )
         {
-            throw new Exception("Unknown version: " + version);
+            return readBinary(bytes);
         }
-
-        return new IndexMetaData
-        (
-            format.parse(properties.getProperty(PROPERTY_FROM)),
-            format.parse(properties.getProperty(PROPERTY_TO)),
-            Integer.parseInt(properties.getProperty(PROPERTY_COUNT))
-        );
+        return readProperties(bytes);
     }
 
     public IndexMetaData(Date from, Date to, int entryCount)
+    {
+        this(from, to, entryCount, UNKNOWN_ZXID, ImmutableSet.<String>of());
+    }
+
+    /**
+     * @param from oldest entry date
+     * @param to newest entry date
+     * @param entryCount number of documents
+     * @param maxZxid highest zxid that was indexed or {@link #UNKNOWN_ZXID}
+     * @param sources ids of the log sources that were completely indexed
+     */
+    public IndexMetaData(Date from, Date to, int entryCount, long maxZxid, Iterable<String> sources)
+    {
+        this(from, to, entryCount, UNKNOWN_ZXID, maxZxid, sources, ImmutableMap.<EntryTypes, Integer>of(), 0, 0);
+    }
+
+    /**
+     * @param from oldest entry date
+     * @param to newest entry date
+     * @param entryCount number of documents
+     * @param minZxid lowest zxid that was indexed or {@link #UNKNOWN_ZXID}
+     * @param maxZxid highest zxid that was indexed or {@link #UNKNOWN_ZXID}
+     * @param sources ids of the log sources that were completely indexed
+     * @param typeCounts number of documents of each type - empty if unknown
+     * @param builtMs when the index was last built/updated or 0
+     * @param buildMs how long the last build/update took or 0
+     */
+    public IndexMetaData(Date from, Date to, int entryCount, long minZxid, long maxZxid, Iterable<String> sources, Map<EntryTypes, Integer> typeCounts, long builtMs, long buildMs)
     {
         this.from = from;
         this.to = to;
         this.entryCount = entryCount;
+        this.minZxid = minZxid;
+        this.maxZxid = maxZxid;
+        this.sources = ImmutableSet.copyOf(sources);
+        this.typeCounts = Maps.immutableEnumMap(typeCounts);
+        this.builtMs = builtMs;
+        this.buildMs = buildMs;
     }
 
     public Date getFrom()
@@ -124,4 +260,109 @@ public class IndexMetaData
     {
         return entryCount;
     }
+
+    public long getMinZxid()
+    {
+        return minZxid;
+    }
+
+    public long getMaxZxid()
+    {
+        return maxZxid;
+    }
+
+    public Set<String> getSources()
+    {
+        return sources;
+    }
+
+    /**
+     * @return true if {@link #getTypeCounts()} is known
+     */
+    public boolean hasTypeCounts()
+    {
+        return !typeCounts.isEmpty() || (entryCount == 0);
+    }
+
+    /**
+     * @return number of documents of each type (types without documents are omitted) - empty if unknown
+     */
+    public Map<EntryTypes, Integer> getTypeCounts()
+    {
+        return typeCounts;
+    }
+
+    public long getBuiltMs()
+    {
+        return builtMs;
+    }
+
+    public long getBuildMs()
+    {
+        return buildMs;
+    }
+
+    private static IndexMetaData    readBinary(byte[] bytes) throws Exception
+    {
+        DataInputStream     in = new DataInputStream(new ByteArrayInputStream(bytes));
+        in.readInt();   // magic
+        int                 version = in.readInt();
+        if ( version != VERSION )
+        {
+            throw new Exception("Unknown version: " + version);
+        }
+
+        Date                from = new Date(in.readLong());
+        Date                to = new Date(in.readLong());
+        int                 entryCount = in.readInt();
+        long                minZxid = in.readLong();
+        long                maxZxid = in.readLong();
+        long                builtMs = in.readLong();
+        long                buildMs = in.readLong();
+
+        Map<EntryTypes, Integer>    typeCounts = Maps.newEnumMap(EntryTypes.class);
+        int                 typeQty = in.readInt();
+        for ( int i = 0; i < typeQty; ++i )
+        {
+            EntryTypes      type = EntryTypes.getFromId(in.readInt());
+            int             count = in.readInt();
+            if ( type != null )
+            {
+                typeCounts.put(type, count);
+            }
+        }
+
+        ImmutableSet.Builder<String>    sources = ImmutableSet.builder();
+        int                 sourceQty = in.readInt();
+        for ( int i = 0; i < sourceQty; ++i )
+        {
+            sources.add(in.readUTF());
+        }
+
+        return new IndexMetaData(from, to, entryCount, minZxid, maxZxid, sources.build(), typeCounts, builtMs, buildMs);
+    }
+
+    private static IndexMetaData    readProperties(byte[] bytes) throws Exception
+    {
+        DateFormat      format = DateFormat.getDateTimeInstance();
+
+        Properties      properties = new Properties();
+        properties.load(new ByteArrayInputStream(bytes));
+
+        String version = properties.getProperty(PROPERTY_VERSION, "0");
+        if ( !version.equals(Integer.toString(VERSION_2)) && !version.equals(Integer.toString(VERSION_1)) )
+        {
+            throw new Exception("Unknown version: " + version);
+        }
+
+        String      sources = properties.getProperty(PROPERTY_SOURCES, "");
+        return new IndexMetaData
+        (
+            format.parse(properties.getProperty(PROPERTY_FROM)),
+            format.parse(properties.getProperty(PROPERTY_TO)),
+            Integer.parseInt(properties.getProperty(PROPERTY_COUNT)),
+            Long.parseLong(properties.getProperty(PROPERTY_MAX_ZXID, Long.toString(UNKNOWN_ZXID))),
+            Splitter.on(SOURCES_SEPARATOR).omitEmptyStrings().split(sources)
+        );
+    }
 }
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import java.io.File;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     Time partitioned indexes are ordinary index directories in the index directory, one per time window,
+ *     named {@link #PARTITION_PREFIX} + the window's start time (epoch millis, aligned to the window size).
+ *     Transactions are routed to the partition of their date.
+ * </p>
+ *
+ * <p>
+ *     Only the partitions that receive newer transactions are written by an update, so older partitions
+ *     are never touched again. Retention is deleting old partitions.
+ * </p>
+ */
+public class IndexPartitions
+{
+    public static final String      PARTITION_PREFIX = "partition-";
+
+    public static final long        DEFAULT_PARTITION_MILLIS = TimeUnit.MILLISECONDS.convert(1, TimeUnit.DAYS);
+
+    // legacy IndexMetaData files store dates with second resolution
+    private static final long       META_DATA_DATE_RESOLUTION_MILLIS = 1000;
+
+    /**
+     * @param time a time
+     * @param partitionMillis partition window size
+     * @return the start of the window containing the time
+     */
+    public static long      getWindowStart(long time, long partitionMillis)
+    {
+        long    mod = time % partitionMillis;
+        return time - ((mod < 0) ? (mod + partitionMillis) : mod);
+    }
+
+    public static File      getPartitionDirectory(File indexParent, long windowStart)
+    {
+        return new File(indexParent, PARTITION_PREFIX + windowStart);
+    }
+
+    /**
+     * @param indexDirectory an index directory
+     * @return true if the directory is a partition
+     */
+    public static boolean   isPartition(File indexDirectory)
+    {
+        return getWindowStart(indexDirectory) != null;
+    }
+
+    /**
+     * @param indexDirectory a partition directory
+     * @return the partition's window start or null if the directory isn't a partition
+     */
+    public static Long      getWindowStart(File indexDirectory)
+    {
+        String      name = indexDirectory.getName();
+        if ( !name.startsWith(PARTITION_PREFIX) )
+        {
+            return null;
+        }
+        try
+        {
+            return Long.parseLong(name.substring(PARTITION_PREFIX.length()));
+        }
+        catch ( NumberFormatException e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @param indexParent the index directory
+     * @return all complete partitions (those with meta data), newest first
+     */
+    public static List<File>    getPartitions(File indexParent)
+    {
+        List<File>      partitions = Lists.newArrayList();
+        for ( File f : new IndexList(indexParent).getIndexes() )
+        {
+            if ( isPartition(f) )
+            {
+                partitions.add(f);
+            }
+        }
+        Collections.sort
+        (
+            partitions,
+            new Comparator<File>()
+            {
+                @Override
+                public int compare(File o1, File o2)
+                {
+                    long        diff = getWindowStart(o2) - getWindowStart(o1);
+                    return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+                }
+            }
+        );
+        return partitions;
+    }
+
+    /**
+     * @param indexCache cache for the partitions' meta data
+     * @param indexParent the index directory
+     * @param startDate start of the date range or null
+     * @param endDate end of the date range or null
+     * @return the partitions, newest first, whose entries overlap the date range
+     * @throws Exception errors
+     */
+    public static List<File>    getOverlappingPartitions(IndexCache indexCache, File indexParent, Date startDate, Date endDate) throws Exception
+    {
+        return getOverlappingPartitions(indexCache, indexParent, startDate, endDate, null);
+    }
+
+    /**
+     * @param indexCache cache for the partitions' meta data and path filters
+     * @param indexParent the index directory
+     * @param startDate start of the date range or null
+     * @param endDate end of the date range or null
+     * @param pathPrefix path prefix or null for any path
+     * @return the partitions, newest first, whose entries overlap the date range and whose path
+     * filters don't rule out the prefix. No readers are opened.
+     * @throws Exception errors
+     */
+    public static List<File>    getOverlappingPartitions(IndexCache indexCache, File indexParent, Date startDate, Date endDate, String pathPrefix) throws Exception
+    {
+        List<File>      partitions = Lists.newArrayList();
+        for ( File partition : getPartitions(indexParent) )
+        {
+            if ( (pathPrefix != null) && !indexCache.mightContainPathPrefix(partition, pathPrefix) )
+            {
+                continue;
+            }
+
+            IndexMetaData   metaData = indexCache.getMetaData(partition);
+            long            from = metaData.getFrom().getTime();
+            long            to = metaData.getTo().getTime() + META_DATA_DATE_RESOLUTION_MILLIS;
+            if ( ((startDate == null) || (to >= startDate.getTime())) && ((endDate == null) || (from <= endDate.getTime())) )
+            {
+                partitions.add(partition);
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * @param indexCache cache for the partitions' meta data and path filters
+     * @param indexParent the index directory
+     * @param key the search
+     * @return the partitions, newest first, that might have matches for the key: their entries overlap its date and zxid
+     * ranges, they have entries of its operation type and their path filters don't rule out its path prefix. Only meta data
+     * and path filters are read.
+     * @throws Exception errors
+     */
+    public static List<File>    getOverlappingPartitions(IndexCache indexCache, File indexParent, SearchKey key) throws Exception
+    {
+        List<File>      candidates = getOverlappingPartitions
+        (
+            indexCache,
+            indexParent,
+            (key.getStartDate() != SearchKey.NO_DATE) ? new Date(key.getStartDate()) : null,
+            (key.getEndDate() != SearchKey.NO_DATE) ? new Date(key.getEndDate()) : null,
+            key.getPathPrefix()
+        );
+
+        EntryTypes      type = (key.getOperationType() != SearchKey.NO_OPERATION_TYPE) ? EntryTypes.getFromId(key.getOperationType()) : null;
+        List<File>      partitions = Lists.newArrayList();
+        for ( File partition : candidates )
+        {
+            IndexMetaData   metaData = indexCache.getMetaData(partition);
+            if ( (type != null) && metaData.hasTypeCounts() && !metaData.getTypeCounts().containsKey(type) )
+            {
+                continue;
+            }
+            if ( key.getStartZxid() != SearchKey.NO_ZXID )
+            {
+                if ( (metaData.getMaxZxid() != IndexMetaData.UNKNOWN_ZXID) && (metaData.getMaxZxid() < key.getStartZxid()) )
+                {
+                    continue;
+                }
+                if ( (metaData.getMinZxid() != IndexMetaData.UNKNOWN_ZXID) && (metaData.getMinZxid() > key.getEndZxid()) )
+                {
+                    continue;
+                }
+            }
+            partitions.add(partition);
+        }
+        return partitions;
+    }
+
+    private IndexPartitions()
+    {
+    }
+}
@@ -17,29 +17,101 @@
 package com.netflix.exhibitor.core.index;
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.netflix.exhibitor.core.Exhibitor;
 import com.netflix.exhibitor.core.activity.ActivityLog;
 import com.netflix.exhibitor.core.backup.BackupMetaData;
 import com.netflix.exhibitor.core.backup.BackupStream;
 import org.apache.curator.utils.CloseableUtils;
+import org.apache.jute.Record;
+import org.apache.zookeeper.txn.TxnHeader;
 import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
 
 public class IndexProcessor
 {
     private final Exhibitor exhibitor;
+    private final int threadQty;
+    private final int prefetchQty;
+    private final IndexJob job;
+
+    private static final int        GZIP_MAGIC = 0x8b1f;
+
+    // entries parsed between updates of the job's transaction count
+    private static final int        TRANSACTION_COUNT_BATCH = 1000;
+
+    /**
+     * Default number of backups downloaded ahead of the index build
+     */
+    public static final int         DEFAULT_PREFETCH_QTY = 4;
 
     public IndexProcessor(Exhibitor exhibitor)
+    {
+        this(exhibitor, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param exhibitor main instance
+     * @param threadQty number of log files to parse/index concurrently
+     */
+    public IndexProcessor(Exhibitor exhibitor, int threadQty)
+    {
+        this(exhibitor, threadQty, DEFAULT_PREFETCH_QTY);
+    }
+
+    /**
+     * @param exhibitor main instance
+     * @param threadQty number of log files to parse/index concurrently
+     * @param prefetchQty max number of backups downloaded (to temp files) ahead of the indexing threads
+     */
+    public IndexProcessor(Exhibitor exhibitor, int threadQty, int prefetchQty)
+    {
+        this(exhibitor, threadQty, prefetchQty, new IndexJob("Index build"));
+    }
+
+    /**
+     * @param exhibitor main instance
+     * @param job receives the build's progress and can cancel it
+     */
+    public IndexProcessor(Exhibitor exhibitor, IndexJob job)
+    {
+        this(exhibitor, Runtime.getRuntime().availableProcessors(), DEFAULT_PREFETCH_QTY, job);
+    }
+
+    /**
+     * @param exhibitor main instance
+     * @param threadQty number of log files to parse/index concurrently
+     * @param prefetchQty max number of backups downloaded (to temp files) ahead of the indexing threads
+     * @param job receives the build's progress and can cancel it
+     */
+    public IndexProcessor(Exhibitor exhibitor, int threadQty, int prefetchQty, IndexJob job)
     {
         this.exhibitor = exhibitor;
+        this.threadQty = Math.max(1, threadQty);
+        this.prefetchQty = Math.max(1, prefetchQty);
+        this.job = job;
     }
 
+    /**
+     * Build a new index containing all available logs
+     *
+     * @param directory index directory to create
+     * @throws Exception errors
+     */
     public void     process(File directory) throws Exception
     {
         if ( !directory.exists() && !directory.mkdirs() )
@@ -47,15 +119,117 @@ public class IndexProcessor
             throw new IOException("Index Build: could not make directory: " + directory);
         }
 
+        build(directory, null);
+    }
+
+    /**
+     * Append transactions that are newer than what is in the given existing index
+     *
+     * @param directory existing index directory
+     * @throws Exception errors
+     */
+    public void     update(File directory) throws Exception
+    {
+        IndexMetaData       base = IndexMetaData.read(IndexMetaData.getMetaDataFile(directory));
+        if ( base.getMaxZxid() == IndexMetaData.UNKNOWN_ZXID )
+        {
+            throw new Exception("Index was built by an older version and cannot be updated: " + directory);
+        }
+
+        build(directory, base);
+    }
+
+    /**
+     * Add transactions that are newer than every existing partition to time partitioned indexes
+     * (see {@link IndexPartitions}). Only partitions that receive transactions are written.
+     *
+     * @param indexParent the index directory that contains the partitions
+     * @param partitionMillis partition window size
+     * @return the partitions that were written
+     * @throws Exception errors
+     */
+    public List<File>   updatePartitions(File indexParent, long partitionMillis) throws Exception
+    {
+        long                            startMs = System.currentTimeMillis();
+        final PartitionedIndexBuilder   builder = new PartitionedIndexBuilder(indexParent, partitionMillis, threadQty, exhibitor.getIndexDataTextMaxChars());
+        runBuild
+        (
+            builder,
+            new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for ( File partition : builder.getCreatedPartitions() )
+                    {
+                        cleanDirectory(partition);
+                    }
+                }
+            }
+        );
+
+        List<File>      written = builder.getWrittenPartitions();
+        long            elapsedMs = Math.max(1, System.currentTimeMillis() - startMs);
+        exhibitor.getLog().add(ActivityLog.Type.INFO, String.format("Partitioned index completed: %s - %d documents added to %d partition(s) (%d new) in %d ms", indexParent, builder.getAddedCount(), written.size(), builder.getCreatedPartitions().size(), elapsedMs));
+        return written;
+    }
+
+    private void    build(final File directory, IndexMetaData base) throws Exception
+    {
+        long                startMs = System.currentTimeMillis();
+        final IndexBuilder  builder = new IndexBuilder(directory, threadQty, base, exhibitor.getIndexDataTextMaxChars());
+        runBuild
+        (
+            builder,
+            new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if ( !builder.isIncremental() )
+                    {
+                        cleanDirectory(directory);
+                    }
+                }
+            }
+        );
+
+        if ( builder.getCurrentCount() == 0 )
+        {
+            exhibitor.getLog().add(ActivityLog.Type.INFO, "Index is empty and will be deleted: " + directory);
+            cleanDirectory(directory);
+        }
+        else
+        {
+            int         addedCount = builder.getAddedCount();
+            long        elapsedMs = Math.max(1, System.currentTimeMillis() - startMs);
+            long        docsPerSecond = (addedCount * 1000L) / elapsedMs;
+            exhibitor.getLog().add(ActivityLog.Type.INFO, String.format("Index completed: %s - %d documents added in %d ms (%d docs/sec, %d threads)", directory, addedCount, elapsedMs, docsPerSecond, threadQty));
+        }
+    }
+
+    /**
+     * Open the target, add every source it doesn't have yet and write its meta data. If anything fails the
+     * target is aborted, <code>onFailure</code> is run after the target is closed and the exception is rethrown.
+     */
+    private void    runBuild(IndexTarget target, Runnable onFailure) throws Exception
+    {
         Exception           exception = null;
-        IndexBuilder        builder = new IndexBuilder(directory);
+        ExecutorService     executorService = Executors.newFixedThreadPool(threadQty, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("IndexProcessor-%d").build());
+        BackupPrefetcher    prefetcher = null;
         try
         {
-            builder.open();
-            addBackups(builder);
-            addActive(builder);
+            target.open();
+
+            List<LogSource>     sources = Lists.newArrayList();
+            prefetcher = addBackupSources(target, sources);
+            sources.addAll(getActiveSources());
+            runPipeline(executorService, target, sources);
 
-            builder.writeMetaData();
+            job.checkCancelled();
+            long                startNanos = System.nanoTime();
+            target.writeMetaData();
+            job.addPhaseNanos(IndexJob.Phase.MERGE, System.nanoTime() - startNanos);
         }
         catch ( Exception e )
         {
@@ -63,27 +237,123 @@ public class IndexProcessor
         }
         finally
         {
-            builder.close();
+            executorService.shutdownNow();
+            CloseableUtils.closeQuietly(prefetcher);
             if ( exception != null )
             {
-                cleanDirectory(directory);
+                target.abort();
+            }
+            target.close();
+            if ( exception != null )
+            {
+                onFailure.run();
                 //noinspection ThrowFromFinallyBlock
                 throw exception;
             }
         }
+    }
 
-        if ( builder.getCurrentCount() == 0 )
+    private interface LogSource
+    {
+        public String       getId();
+
+        public String       getDescription();
+
+        /**
+         * @param target where to add the source
+         * @return number of log bytes read
+         * @throws Exception errors
+         */
+        public long         addTo(IndexTarget target) throws Exception;
+    }
+
+    /**
+     * Times the index part of parsing a log and counts the entries
+     */
+    private static class TimingReceiver implements LogEntryReceiver
+    {
+        private final IndexTarget   target;
+        private final IndexJob      job;
+        private long                indexNanos = 0;
+        private int                 uncountedQty = 0;
+
+        TimingReceiver(IndexTarget target, IndexJob job)
         {
-            exhibitor.getLog().add(ActivityLog.Type.INFO, "Index is empty and will be deleted: " + directory);
-            cleanDirectory(directory);
+            this.target = target;
+            this.job = job;
         }
-        else
+
+        @Override
+        public void receiveEntry(TxnHeader header, Record record) throws Exception
+        {
+            long        startNanos = System.nanoTime();
+            target.addEntry(header, record);
+            indexNanos += System.nanoTime() - startNanos;
+
+            if ( ++uncountedQty >= TRANSACTION_COUNT_BATCH )
+            {
+                flush();
+                job.checkCancelled();
+            }
+        }
+
+        void flush()
+        {
+            job.addTransactions(uncountedQty);
+            uncountedQty = 0;
+        }
+    }
+
+    private void runPipeline(ExecutorService executorService, final IndexTarget target, List<LogSource> allSources) throws Exception
+    {
+        final List<LogSource>       sources = Lists.newArrayList();
+        for ( LogSource source : allSources )
+        {
+            if ( !target.hasSource(source.getId()) )
+            {
+                sources.add(source);
+            }
+        }
+        job.starting(target, sources.size());
+
+        CompletionService<Void>     completionService = new ExecutorCompletionService<Void>(executorService);
+        final AtomicInteger         index = new AtomicInteger(0);
+        for ( final LogSource source : sources )
         {
-            exhibitor.getLog().add(ActivityLog.Type.INFO, "Index completed: " + directory);
+            completionService.submit
+            (
+                new Callable<Void>()
+                {
+                    @Override
+                    public Void call() throws Exception
+                    {
+                        job.checkCancelled();
+                        exhibitor.getLog().add(ActivityLog.Type.INFO, String.format("Index Build: indexing %s (%d of %d)", source.getDescription(), index.incrementAndGet(), sources.size()));
+                        long        bytes = source.addTo(target);
+                        target.addSource(source.getId());
+                        job.sourceCompleted(bytes);
+                        return null;
+                    }
+                }
+            );
+        }
+
+        for ( int i = 0; i < sources.size(); ++i )
+        {
+            Future<Void>    future = completionService.take();
+            try
+            {
+                future.get();
+            }
+            catch ( ExecutionException e )
+            {
+                Throwable   cause = e.getCause();
+                throw (cause instanceof Exception) ? (Exception)cause : e;
+            }
         }
     }
 
-    private void addActive(IndexBuilder builder) throws Exception
+    private List<LogSource> getActiveSources() throws Exception
     {
         ZooKeeperLogFiles       zooKeeperLogFiles = new ZooKeeperLogFiles(exhibitor);
         List<File>              paths = zooKeeperLogFiles.getPaths();
@@ -101,27 +371,42 @@ public class IndexProcessor
             }
         );
 
-        int     index = 0;
-        for ( File f : paths )
+        List<LogSource>         sources = Lists.newArrayList();
+        for ( final File f : paths )
         {
-            exhibitor.getLog().add(ActivityLog.Type.INFO, String.format("Indexing active log %d of %d", ++index, paths.size()));
-
-            if ( f.exists() )
-            {
-                InputStream         in = new BufferedInputStream(new FileInputStream(f));
-                try
-                {
-                    builder.add(in);
-                }
-                finally
+            sources.add
+            (
+                new LogSource()
                 {
-                    CloseableUtils.closeQuietly(in);
+                    @Override
+                    public String getId()
+                    {
+                        // active logs grow so include the size - the zxid filter skips what was already indexed
+                        return "log:" + f.getName() + ":" + f.lastModified() + ":" + f.length();
+                    }
+
+                    @Override
+                    public String getDescription()
+                    {
+                        return "active log " + f.getName();
+                    }
+
+                    @Override
+                    public long addTo(IndexTarget target) throws Exception
+                    {
+                        return f.exists() ? addLog(target, f) : 0;
+                    }
                 }
-            }
+            );
         }
+        return sources;
     }
 
-    private void addBackups(IndexBuilder builder) throws Exception
+    /**
+     * Add the backups that the target doesn't have yet to the sources. They are fetched ahead of
+     * the pipeline by the returned prefetcher, which must be closed.
+     */
+    private BackupPrefetcher addBackupSources(IndexTarget target, List<LogSource> sources) throws Exception
     {
         exhibitor.getLog().add(ActivityLog.Type.ERROR, "Index Build: Getting available backups");
         List<BackupMetaData> availableBackups = Lists.newArrayList(exhibitor.getBackupManager().getAvailableBackups());
@@ -140,24 +425,124 @@ public class IndexProcessor
         );
         exhibitor.getLog().add(ActivityLog.Type.ERROR, "Index Build: there are " + availableBackups.size() + " available backups");
 
-        int     index = 0;
+        List<BackupMetaData>    neededBackups = Lists.newArrayList();
         for ( BackupMetaData metaData : availableBackups )
         {
-            exhibitor.getLog().add(ActivityLog.Type.INFO, String.format("Index Build: indexing backup log %d of %d", ++index, availableBackups.size()));
+            if ( !target.hasSource(getBackupSourceId(metaData)) )
+            {
+                neededBackups.add(metaData);
+            }
+        }
 
-            BackupStream backupStream = exhibitor.getBackupManager().getBackupStream(metaData);
-            if ( backupStream != null )
+        final BackupPrefetcher  prefetcher = new BackupPrefetcher
+        (
+            new BackupPrefetcher.BackupSource()
             {
-                try
+                @Override
+                public BackupStream getBackupStream(BackupMetaData metaData) throws Exception
                 {
-                    builder.add(backupStream.getStream());
+                    return exhibitor.getBackupManager().getBackupStream(metaData);
                 }
-                finally
+            },
+            neededBackups,
+            prefetchQty
+        );
+        for ( int i = 0; i < neededBackups.size(); ++i )
+        {
+            final int               index = i;
+            final BackupMetaData    metaData = neededBackups.get(i);
+            sources.add
+            (
+                new LogSource()
                 {
-                    CloseableUtils.closeQuietly(backupStream);
+                    @Override
+                    public String getId()
+                    {
+                        return getBackupSourceId(metaData);
+                    }
+
+                    @Override
+                    public String getDescription()
+                    {
+                        return "backup log " + metaData.getName();
+                    }
+
+                    @Override
+                    public long addTo(IndexTarget target) throws Exception
+                    {
+                        File        file = null;
+                        try
+                        {
+                            long        startNanos = System.nanoTime();
+                            file = prefetcher.take(index);
+                            job.addPhaseNanos(IndexJob.Phase.FETCH, System.nanoTime() - startNanos);
+                            return (file != null) ? addLog(target, file) : 0;
+                        }
+                        finally
+                        {
+                            prefetcher.release(index, file);
+                        }
+                    }
                 }
+            );
+        }
+        job.addCancelHook(prefetcher);   // wakes threads waiting on downloads
+        prefetcher.start();
+        return prefetcher;
+    }
+
+    /**
+     * Parse the log file into the target on this thread, recording the parse and index times
+     *
+     * @return the file's length
+     */
+    private long addLog(IndexTarget target, File logFile) throws Exception
+    {
+        MappedLogFile       mappedLogFile = new MappedLogFile(logFile);
+        try
+        {
+            long                startNanos = System.nanoTime();
+            TimingReceiver      receiver = new TimingReceiver(target, job);
+            try
+            {
+                ZooKeeperLogParser  logParser = new ZooKeeperLogParser(mappedLogFile.getStream());
+                if ( logParser.isValid() )
+                {
+                    logParser.parse(receiver);
+                }
+            }
+            finally
+            {
+                receiver.flush();
+                job.addPhaseNanos(IndexJob.Phase.INDEX, receiver.indexNanos);
+                job.addPhaseNanos(IndexJob.Phase.PARSE, (System.nanoTime() - startNanos) - receiver.indexNanos);
             }
         }
+        finally
+        {
+            CloseableUtils.closeQuietly(mappedLogFile);
+        }
+        return logFile.length();
+    }
+
+    private static String getBackupSourceId(BackupMetaData metaData)
+    {
+        return "backup:" + metaData.getName() + ":" + metaData.getModifiedDate();
+    }
+
+    // backups are uploaded gzipped (see TempCompressedFile) - detect and decompress them
+    static InputStream decompressIfNeeded(InputStream stream) throws IOException
+    {
+        InputStream     in = stream.markSupported() ? stream : new BufferedInputStream(stream);
+        in.mark(2);
+        int             b1 = in.read();
+        int             b2 = in.read();
+        in.reset();
+        if ( (b1 >= 0) && (b2 >= 0) && (((b2 << 8) | b1) == GZIP_MAGIC) )
+        {
+            return new BufferedInputStream(new GZIPInputStream(in));
+        }
+        return in;
     }
 
     private void cleanDirectory(File directory)
@@ -25,10 +25,45 @@ import java.io.File;
 public class IndexProcessorActivity implements Activity
 {
     private Exhibitor exhibitor;
+    private File existingIndex;
+    private long partitionMillis;
+    private IndexJob job;
 
     public IndexProcessorActivity(Exhibitor exhibitor)
+    {
+        this(exhibitor, null);
+    }
+
+    /**
+     * @param exhibitor main instance
+     * @param existingIndex if not null, an existing index to append new transactions to
+     */
+    public IndexProcessorActivity(Exhibitor exhibitor, File existingIndex)
+    {
+        this.exhibitor = exhibitor;
+        this.existingIndex = existingIndex;
+        this.partitionMillis = 0;
+        job = new IndexJob((existingIndex != null) ? ("Update index " + existingIndex.getName()) : "New index");
+    }
+
+    /**
+     * @param exhibitor main instance
+     * @param partitionMillis window size of the time partitioned indexes to update (see {@link IndexPartitions})
+     */
+    public IndexProcessorActivity(Exhibitor exhibitor, long partitionMillis)
     {
         this.exhibitor = exhibitor;
+        this.existingIndex = null;
+        this.partitionMillis = partitionMillis;
+        job = new IndexJob("Update partitions (" + partitionMillis + " ms)");
+    }
+
+    /**
+     * @return the build's progress and control
+     */
+    public IndexJob getJob()
+    {
+        return job;
     }
 
     @Override
@@ -39,24 +74,57 @@ public class IndexProcessorActivity implements Activity
     @Override
     public Boolean call() throws Exception
     {
+        if ( !job.begin() )
+        {
+            exhibitor.getLog().add(ActivityLog.Type.INFO, "Index build was cancelled before it started: " + job.getDescription());
+            return null;
+        }
+
         String path = exhibitor.getConfigManager().getConfig().getString(StringConfigs.LOG_INDEX_DIRECTORY);
 
         if ( (path == null) || (path.trim().length() == 0) )
         {
+            job.failed(new Exception("No index directory set in config"));
             exhibitor.getLog().add(ActivityLog.Type.ERROR, "No index directory set in config");
         }
         else
         {
-            exhibitor.getLog().add(ActivityLog.Type.INFO, "Starting index build");
             try
             {
-                File            indexDirectory = new File(path, "exhibitor-" + System.currentTimeMillis());
-                IndexProcessor  processor = new IndexProcessor(exhibitor);
-                processor.process(indexDirectory);
+                IndexProcessor  processor = new IndexProcessor(exhibitor, job);
+                if ( partitionMillis > 0 )
+                {
+                    exhibitor.getLog().add(ActivityLog.Type.INFO, "Starting partitioned index update");
+                    for ( File partition : processor.updatePartitions(new File(path), partitionMillis) )
+                    {
+                        exhibitor.getIndexCache().refresh(partition);
+                    }
+                }
+                else if ( existingIndex != null )
+                {
+                    exhibitor.getLog().add(ActivityLog.Type.INFO, "Starting incremental index build: " + existingIndex.getName());
+                    processor.update(existingIndex);
+                    exhibitor.getIndexCache().refresh(existingIndex);
+                }
+                else
+                {
+                    exhibitor.getLog().add(ActivityLog.Type.INFO, "Starting index build");
+                    File            indexDirectory = new File(path, "exhibitor-" + System.currentTimeMillis());
+                    processor.process(indexDirectory);
+                }
+                job.succeeded();
             }
             catch ( Exception e )
             {
-                exhibitor.getLog().add(ActivityLog.Type.ERROR, "Building Index", e);
+                job.failed(e);
+                if ( job.getState() == IndexJob.State.CANCELLED )
+                {
+                    exhibitor.getLog().add(ActivityLog.Type.INFO, "Index build cancelled: " + job.getDescription());
+                }
+                else
+                {
+                    exhibitor.getLog().add(ActivityLog.Type.ERROR, "Building Index", e);
+                }
             }
         }
 
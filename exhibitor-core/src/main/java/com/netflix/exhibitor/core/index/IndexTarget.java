@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import org.apache.jute.Record;
+import org.apache.zookeeper.txn.TxnHeader;
+import java.io.Closeable;
+import java.io.InputStream;
+
+/**
+ * Where {@link IndexProcessor} sends log sources - a single index or a set of time partitions. A build
+ * calls {@link #open()}, adds entries, then either {@link #writeMetaData()} or {@link #abort()}, and always
+ * {@link #close()}.
+ */
+interface IndexTarget extends Closeable
+{
+    /**
+     * Open for adding. Must be called first.
+     *
+     * @throws Exception errors
+     */
+    public void     open() throws Exception;
+
+    /**
+     * Parse the given log stream and add its entries. Must be safe to call concurrently.
+     *
+     * @param stream log stream
+     * @throws Exception errors
+     */
+    public void     add(InputStream stream) throws Exception;
+
+    /**
+     * Add a single parsed log entry. Must be safe to call concurrently.
+     *
+     * @param header entry header
+     * @param record entry txn or null
+     * @throws Exception errors
+     */
+    public void     addEntry(TxnHeader header, Record record) throws Exception;
+
+    /**
+     * Record that the log source with the given id has been completely indexed
+     *
+     * @param sourceId source id
+     */
+    public void     addSource(String sourceId);
+
+    /**
+     * @param sourceId source id
+     * @return true if the source was completely indexed by this or a previous build
+     */
+    public boolean  hasSource(String sourceId);
+
+    /**
+     * @return number of documents added so far by this build
+     */
+    public int      getAddedCount();
+
+    /**
+     * Finish the build and make everything that was added visible. Nothing can be added afterwards.
+     *
+     * @throws Exception errors
+     */
+    public void     writeMetaData() throws Exception;
+
+    /**
+     * Discard everything added since {@link #open()}
+     */
+    public void     abort();
+}
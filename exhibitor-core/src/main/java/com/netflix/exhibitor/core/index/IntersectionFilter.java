@@ -0,0 +1,111 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.OpenBitSetDISI;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ANDs filter clauses together, stopping as soon as the result is empty. The clauses are
+ * ordered by their estimated selectivity in each reader - segments and partitions can differ
+ * a lot - so that the most selective clause goes first.
+ */
+class IntersectionFilter extends Filter
+{
+    private final List<FilterClause> clauses;
+
+    IntersectionFilter(List<FilterClause> clauses)
+    {
+        this.clauses = ImmutableList.copyOf(clauses);
+    }
+
+    @Override
+    public DocIdSet getDocIdSet(IndexReader reader) throws IOException
+    {
+        OpenBitSetDISI      result = null;
+        for ( FilterClause clause : getOrder(reader) )
+        {
+            DocIdSet            set = clause.getFilter().getDocIdSet(reader);
+            DocIdSetIterator    iterator = (set != null) ? set.iterator() : null;
+            if ( iterator == null )
+            {
+                return DocIdSet.EMPTY_DOCIDSET;
+            }
+
+            if ( result == null )
+            {
+                result = new OpenBitSetDISI(iterator, reader.maxDoc());
+            }
+            else
+            {
+                result.inPlaceAnd(iterator);
+            }
+
+            if ( result.isEmpty() )
+            {
+                return DocIdSet.EMPTY_DOCIDSET;
+            }
+        }
+        return (result != null) ? result : DocIdSet.EMPTY_DOCIDSET;
+    }
+
+    /**
+     * @param reader the reader about to be filtered
+     * @return the clauses, most selective first
+     * @throws IOException errors
+     */
+    List<FilterClause> getOrder(IndexReader reader) throws IOException
+    {
+        final Map<FilterClause, Integer>    estimates = Maps.newHashMap();
+        for ( FilterClause clause : clauses )
+        {
+            estimates.put(clause, clause.estimate(reader));
+        }
+        List<FilterClause>                  ordered = Lists.newArrayList(clauses);
+        Collections.sort(ordered, new Comparator<FilterClause>()
+        {
+            @Override
+            public int compare(FilterClause o1, FilterClause o2)
+            {
+                int     diff = estimates.get(o1) - estimates.get(o2);
+                return (diff != 0) ? diff : o1.getKey().compareTo(o2.getKey());
+            }
+        });
+        return ordered;
+    }
+
+    @Override
+    public String toString()
+    {
+        List<String>    keys = Lists.newArrayList();
+        for ( FilterClause clause : clauses )
+        {
+            keys.add(clause.getKey());
+        }
+        return "IntersectionFilter" + keys;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.netflix.exhibitor.core.Exhibitor;
+import com.netflix.exhibitor.core.activity.Activity;
+import com.netflix.exhibitor.core.activity.ActivityLog;
+import com.netflix.exhibitor.core.config.StringConfigs;
+import org.apache.curator.utils.CloseableUtils;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Repeating activity that polls and commits the {@link LiveIndexer} and has the
+ * {@link IndexCache} reopen the live index's reader after each commit
+ */
+public class LiveIndexActivity implements Activity, Closeable
+{
+    private final Exhibitor exhibitor;
+    private LiveIndexer liveIndexer;    // protected by synchronization
+
+    public LiveIndexActivity(Exhibitor exhibitor)
+    {
+        this.exhibitor = exhibitor;
+    }
+
+    @Override
+    public void completed(boolean wasSuccessful)
+    {
+    }
+
+    @Override
+    public synchronized Boolean call() throws Exception
+    {
+        String path = exhibitor.getConfigManager().getConfig().getString(StringConfigs.LOG_INDEX_DIRECTORY);
+        if ( (path == null) || (path.trim().length() == 0) )
+        {
+            closeLiveIndexer();
+            return false;
+        }
+
+        File        logDirectory = ZooKeeperLogFiles.getDataDir(exhibitor);
+        File        indexDirectory = new File(path, LiveIndexer.LIVE_INDEX_NAME);
+        if ( (liveIndexer != null) && (!liveIndexer.getLogDirectory().equals(logDirectory) || !liveIndexer.getIndexDirectory().equals(indexDirectory)) )
+        {
+            closeLiveIndexer();
+        }
+        if ( liveIndexer == null )
+        {
+            exhibitor.getLog().add(ActivityLog.Type.INFO, "Starting live index: " + indexDirectory);
+            LiveIndexer     newLiveIndexer = new LiveIndexer(logDirectory, indexDirectory, exhibitor.getIndexDataTextMaxChars());
+            newLiveIndexer.open();
+            liveIndexer = newLiveIndexer;
+        }
+
+        try
+        {
+            liveIndexer.poll();
+            if ( liveIndexer.commit() )
+            {
+                exhibitor.getIndexCache().refresh(indexDirectory);
+            }
+        }
+        catch ( Exception e )
+        {
+            // start over from the committed state on the next run
+            exhibitor.getLog().add(ActivityLog.Type.ERROR, "Live index failed - it will be reopened: " + indexDirectory, e);
+            closeLiveIndexer();
+            throw e;
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        closeLiveIndexer();
+    }
+
+    private void closeLiveIndexer()
+    {
+        if ( liveIndexer != null )
+        {
+            CloseableUtils.closeQuietly(liveIndexer);
+            liveIndexer = null;
+        }
+    }
+}
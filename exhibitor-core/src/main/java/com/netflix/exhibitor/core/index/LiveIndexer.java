@@ -0,0 +1,334 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.jute.Record;
+import org.apache.zookeeper.server.persistence.Util;
+import org.apache.zookeeper.txn.TxnHeader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ *     Keeps an index current by tailing the ZooKeeper txn logs. {@link #poll()} adds the entries written
+ *     since the last poll, resuming each log at the offset after the last complete entry it read, and moves
+ *     on to the next log once ZooKeeper rolls. {@link #commit()} makes the new entries visible to readers.
+ * </p>
+ *
+ * <p>
+ *     A new live index starts at the active log - run a normal build for older history. An existing live
+ *     index is appended to and picks up from the log containing the first zxid it doesn't have.
+ * </p>
+ */
+public class LiveIndexer implements Closeable
+{
+    private final File          logDirectory;
+    private final File          indexDirectory;
+    private final int           dataTextMaxChars;
+
+    // all protected by synchronization
+    private IndexBuilder        builder;
+    private File                currentLog;
+    private int                 position;
+    private int                 committedCount;
+
+    /**
+     * Directory name of the live index within the index directory
+     */
+    public static final String  LIVE_INDEX_NAME = "exhibitor-live";
+
+    private static final String LOG_PREFIX = "log";
+
+    private static final int    ENTRY_HEADER_SIZE = 12;    // crc and length
+
+    /**
+     * @param logDirectory the ZooKeeper txn log directory
+     * @param indexDirectory the live index directory
+     */
+    public LiveIndexer(File logDirectory, File indexDirectory)
+    {
+        this(logDirectory, indexDirectory, 0);
+    }
+
+    /**
+     * @param logDirectory the ZooKeeper txn log directory
+     * @param indexDirectory the live index directory
+     * @param dataTextMaxChars passed to the {@link IndexBuilder}
+     */
+    public LiveIndexer(File logDirectory, File indexDirectory, int dataTextMaxChars)
+    {
+        this.logDirectory = logDirectory;
+        this.indexDirectory = indexDirectory;
+        this.dataTextMaxChars = dataTextMaxChars;
+    }
+
+    public File getLogDirectory()
+    {
+        return logDirectory;
+    }
+
+    public File getIndexDirectory()
+    {
+        return indexDirectory;
+    }
+
+    public synchronized void open() throws Exception
+    {
+        IndexMetaData       base = null;
+        File                metaDataFile = IndexMetaData.getMetaDataFile(indexDirectory);
+        if ( metaDataFile.exists() )
+        {
+            try
+            {
+                base = IndexMetaData.read(metaDataFile);
+                if ( base.getMaxZxid() == IndexMetaData.UNKNOWN_ZXID )
+                {
+                    base = null;
+                }
+            }
+            catch ( Exception ignore )
+            {
+                // unreadable - start over
+            }
+        }
+
+        builder = new IndexBuilder(indexDirectory, 1, base, dataTextMaxChars);
+        builder.open();
+        committedCount = builder.getCurrentCount();
+        currentLog = null;
+        position = 0;
+    }
+
+    /**
+     * Add the entries written since the last poll
+     *
+     * @return number of documents added
+     * @throws Exception errors
+     */
+    public synchronized int poll() throws Exception
+    {
+        int             startCount = builder.getCurrentCount();
+
+        // list before reading: ZooKeeper only creates a new log after it is done with the previous one
+        List<File>      logs = getLogs();
+        if ( (currentLog == null) || !logs.contains(currentLog) )  // not started yet or the log was purged
+        {
+            currentLog = findStartLog(logs);
+            position = 0;
+        }
+
+        while ( currentLog != null )
+        {
+            int         index = logs.indexOf(currentLog);
+            tail(currentLog, (index + 1) >= logs.size());
+
+            if ( (index < 0) || ((index + 1) >= logs.size()) )
+            {
+                break;
+            }
+            currentLog = logs.get(index + 1);
+            position = 0;
+        }
+
+        return builder.getCurrentCount() - startCount;
+    }
+
+    /**
+     * Commit the entries added since the last commit, if any
+     *
+     * @return true if there was anything to commit
+     * @throws Exception errors
+     */
+    public synchronized boolean commit() throws Exception
+    {
+        if ( builder.getCurrentCount() == committedCount )
+        {
+            return false;
+        }
+
+        builder.commit();
+        committedCount = builder.getCurrentCount();
+        return true;
+    }
+
+    /**
+     * @return the log currently being tailed or null
+     */
+    public synchronized File getCurrentLog()
+    {
+        return currentLog;
+    }
+
+    /**
+     * @return offset in the current log after the last complete entry that was read
+     */
+    public synchronized int getPosition()
+    {
+        return position;
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if ( builder != null )
+        {
+            try
+            {
+                if ( builder.getCurrentCount() > 0 )
+                {
+                    builder.writeMetaData();    // also writes the columns
+                }
+            }
+            catch ( Exception e )
+            {
+                throw new IOException(e);
+            }
+            finally
+            {
+                CloseableUtils.closeQuietly(builder);
+                builder = null;
+            }
+        }
+    }
+
+    /**
+     * @param log the log
+     * @param isActive true if this is the newest log - the only one ZooKeeper may still be writing
+     * @throws Exception errors - including corrupt entries other than a partially written last entry of the active log
+     */
+    private void tail(File log, boolean isActive) throws Exception
+    {
+        MappedLogFile       mappedLog = new MappedLogFile(log);
+        try
+        {
+            final MappedLogFile.PositionedStream    stream = mappedLog.getStream(position);
+            ZooKeeperLogParser                      parser = new ZooKeeperLogParser(stream, position == 0);
+            if ( !parser.isValid() )
+            {
+                return; // header not written yet
+            }
+            if ( position == 0 )
+            {
+                position = stream.getPosition();
+            }
+
+            final AtomicInteger     lastPosition = new AtomicInteger(position);
+            try
+            {
+                parser.parse
+                (
+                    new LogEntryReceiver()
+                    {
+                        @Override
+                        public void receiveEntry(TxnHeader header, Record record) throws Exception
+                        {
+                            builder.addEntry(header, record);
+                            lastPosition.set(stream.getPosition());
+                        }
+                    }
+                );
+            }
+            catch ( ZooKeeperLogParser.CorruptEntryException e )
+            {
+                if ( !isActive || !isPartialLastEntry(mappedLog, lastPosition.get()) )
+                {
+                    throw e;
+                }
+                // ZooKeeper is in the middle of writing the entry - it's re-read on the next poll
+            }
+            finally
+            {
+                position = lastPosition.get();
+            }
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(mappedLog);
+        }
+    }
+
+    /**
+     * An entry that ZooKeeper is still writing fits in the preallocated file and the next entry's
+     * header is still the zeros of the preallocated tail. Anything else is corruption.
+     */
+    private static boolean isPartialLastEntry(MappedLogFile mappedLog, int offset) throws IOException
+    {
+        DataInputStream     in = new DataInputStream(mappedLog.getStream(offset));
+        in.readLong();  // crc
+        int                 length = in.readInt();
+        if ( (length <= 0) || (length > in.available()) )
+        {
+            return false;
+        }
+        in.skipBytes(length);
+        for ( int i = 0; (i < ENTRY_HEADER_SIZE) && (in.available() > 0); ++i )
+        {
+            if ( in.readByte() != 0 )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private File findStartLog(List<File> logs)
+    {
+        if ( logs.size() == 0 )
+        {
+            return null;
+        }
+
+        long        maxZxid = builder.getMaxZxid();
+        if ( maxZxid == IndexMetaData.UNKNOWN_ZXID )
+        {
+            return logs.get(logs.size() - 1);
+        }
+
+        // the last log starting at or before the next zxid - entries that are already indexed are skipped by the builder
+        File        start = logs.get(0);
+        for ( File log : logs )
+        {
+            if ( Util.getZxidFromName(log.getName(), LOG_PREFIX) <= (maxZxid + 1) )
+            {
+                start = log;
+            }
+        }
+        return start;
+    }
+
+    private List<File> getLogs()
+    {
+        List<File>      logs = Lists.newArrayList();
+        File[]          files = logDirectory.listFiles();
+        if ( files != null )
+        {
+            for ( File f : Util.sortDataDir(files, LOG_PREFIX, true) )
+            {
+                if ( f.getName().startsWith(LOG_PREFIX + ".") )
+                {
+                    logs.add(f);
+                }
+            }
+        }
+        return logs;
+    }
+}
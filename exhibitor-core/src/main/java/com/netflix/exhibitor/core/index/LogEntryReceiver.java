@@ -21,5 +21,13 @@ import org.apache.zookeeper.txn.TxnHeader;
 
 public interface LogEntryReceiver
 {
+    /**
+     * Called for each log entry. The header and record instances are reused by the parser for
+     * later entries so neither may be held on to after this method returns - copy what's needed.
+     *
+     * @param header the entry's header - reused
+     * @param record the entry's txn or null for txns without a body (e.g. closeSession) - reused
+     * @throws Exception errors
+     */
     public void     receiveEntry(TxnHeader header, Record record) throws Exception;
 }
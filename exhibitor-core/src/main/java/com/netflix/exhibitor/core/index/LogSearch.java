@@ -18,12 +18,18 @@ package com.netflix.exhibitor.core.index;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.Maps;
 import org.apache.curator.utils.CloseableUtils;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
 import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.document.MapFieldSelector;
 import org.apache.lucene.document.NumericField;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
@@ -36,6 +42,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Date;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 public class LogSearch implements Closeable
@@ -44,11 +51,38 @@ public class LogSearch implements Closeable
     private final IndexReader reader;
     private final IndexSearcher searcher;
     private final File file;
-    private final Cache<String, TopDocs> cache = CacheBuilder.newBuilder()
+    private final IndexColumns columns;
+    private final BlobStore blobs;
+    private final Sort sort;
+    private final long weight;
+    private final FilterCache filterCache;
+    private final ConcurrentMap<SearchKey, SharedResult> results = Maps.newConcurrentMap();
+    private final Cache<String, SharedResult> handles = CacheBuilder.newBuilder()
         .expireAfterAccess(5, TimeUnit.MINUTES) // does this need to be configurable?
+        .removalListener(new RemovalListener<String, SharedResult>()
+        {
+            @Override
+            public void onRemoval(RemovalNotification<String, SharedResult> notification)
+            {
+                SharedResult    result = notification.getValue();
+                if ( result != null )
+                {
+                    result.release();
+                }
+            }
+        })
         .build();
 
-    private static final int            MAX_RESULTS = 5000; // does this need to be configurable?
+    // handles hold a compact int[] of doc ids (4 bytes/hit). Use searchPage() to go deeper.
+    private static final int            MAX_RESULTS = 1000000; // does this need to be configurable?
+    private static final int            MAX_RESULTS_WITHOUT_COLUMNS = 5000;
+
+    private static final FieldSelector  DATA_SELECTOR = new MapFieldSelector(FieldNames.DATA_HASH, FieldNames.DATA);
+
+    // weight of an open file handle (segment files are kept open by the reader)
+    private static final long           FILE_WEIGHT = 64 * 1024;
+    // the date sort builds a long[] field cache when there are no columns
+    private static final long           FIELD_CACHE_BYTES_PER_DOC = 8;
 
     public LogSearch(File file) throws Exception
     {
@@ -56,6 +90,21 @@ public class LogSearch implements Closeable
         directory = new NIOFSDirectory(file, new NativeFSLockFactory());
         reader = IndexReader.open(directory);
         searcher = new IndexSearcher(reader);
+
+        IndexColumns    localColumns = null;
+        try
+        {
+            localColumns = IndexColumns.open(file, reader);
+        }
+        catch ( IOException ignore )
+        {
+            // fall back to stored fields
+        }
+        columns = localColumns;
+        blobs = BlobStore.open(file);
+        filterCache = new FilterCache(reader.maxDoc());
+        weight = (directory.listAll().length * FILE_WEIGHT) + ((columns == null) ? (reader.maxDoc() * FIELD_CACHE_BYTES_PER_DOC) : 0);
+        sort = (columns != null) ? new Sort(new SortField(FieldNames.DATE, new DateColumnComparatorSource(columns), true)) : new Sort(new SortField(FieldNames.DATE, SortField.LONG, true));
     }
 
     public File getFile()
@@ -63,6 +112,14 @@ public class LogSearch implements Closeable
         return file;
     }
 
+    /**
+     * @return approximate footprint of this instance in bytes: open files, field cache heap and cached filter bitsets
+     */
+    public long     getWeight()
+    {
+        return weight + filterCache.getWeight();
+    }
+
     public int      getDocQty()
     {
         return reader.numDocs();
@@ -70,65 +127,247 @@ public class LogSearch implements Closeable
 
     public void     releaseCache(String id)
     {
-        cache.invalidate(id);
+        handles.invalidate(id);
     }
 
-    public String    cacheSearch(Query query, String reuseId, int maxResults) throws IOException
+    /**
+     * Run the search (or share the result of an identical search that is still held by another
+     * handle) and hold the result under a handle
+     *
+     * @param key the search
+     * @param reuseId handle to reuse or null/empty for a new handle
+     * @return the handle
+     * @throws IOException errors
+     */
+    public String    cacheSearch(SearchKey key, String reuseId) throws IOException
     {
-        if ( (maxResults <= 0) || (maxResults > MAX_RESULTS) )
+        int         maxAllowed = (columns != null) ? MAX_RESULTS : MAX_RESULTS_WITHOUT_COLUMNS;
+        int         maxResults = key.getMaxResults();
+        if ( (maxResults <= 0) || (maxResults > maxAllowed) )
         {
-            maxResults = MAX_RESULTS;
+            maxResults = maxAllowed;
         }
-        
+        key = key.withMaxResults(maxResults);
+
         String      id = ((reuseId != null) && (reuseId.length() > 0)) ? reuseId : UUID.randomUUID().toString();
-        if ( query != null )    // otherwise it's an All Docs search which is the default
+        if ( key.isAllDocs() )    // All Docs search is the default
         {
-            TopDocs docs = search(query, maxResults);
-            docs.totalHits = Math.min(maxResults, docs.totalHits);
-            cache.put(id, docs);
+            handles.invalidate(id);
+        }
+        else
+        {
+            SharedResult    result = acquireResult(key);
+            try
+            {
+                result.load();
+            }
+            catch ( IOException e )
+            {
+                result.release();
+                throw e;
+            }
+            handles.put(id, result);    // a replaced handle releases its old result
         }
         return id;
     }
+
+    /**
+     * Return all matching doc ids (up to maxResults) sorted by date, newest first
+     *
+     * @param query query
+     * @param maxResults max results
+     * @return doc ids
+     * @throws IOException errors
+     */
+    public int[]    searchDocIds(Query query, int maxResults) throws IOException
+    {
+        DateSortedCollector     collector = new DateSortedCollector(columns, maxResults);
+        searcher.search(withFilterCache(query), collector);
+        return collector.getSortedDocIds();
+    }
+
+    /**
+     * Return a page of results sorted by date, newest first. Memory use is bounded by the page
+     * size so this can be used to page through any number of results.
+     *
+     * @param query query or null for all documents
+     * @param after cursor returned by the previous page or null for the first page
+     * @param pageSize page size
+     * @return the page
+     * @throws IOException errors
+     */
+    public SearchPage   searchPage(Query query, SearchCursor after, int pageSize) throws IOException
+    {
+        PageCollector       collector = new PageCollector(columns, after, Math.max(1, pageSize));
+        searcher.search((query != null) ? withFilterCache(query) : new MatchAllDocsQuery(), collector);
+        return collector.getPage();
+    }
     
+    /**
+     * Count matching transactions per date bucket and per path prefix without loading documents
+     *
+     * @param query query or null for all documents
+     * @param startTime start of the first date bucket
+     * @param bucketMillis size of each date bucket
+     * @param bucketQty number of date buckets
+     * @param pathDepth number of path segments to group paths by - e.g. 2 groups "/a/b/c" under "/a/b"
+     * @param topQty max number of path prefixes to return
+     * @return aggregation
+     * @throws IOException errors
+     */
+    public Aggregation  aggregate(Query query, long startTime, long bucketMillis, int bucketQty, int pathDepth, int topQty) throws IOException
+    {
+        AggregationCollector    collector = new AggregationCollector(columns, startTime, bucketMillis, bucketQty, pathDepth);
+        searcher.search((query != null) ? withFilterCache(query) : new MatchAllDocsQuery(), collector);
+        return collector.getAggregation(topQty);
+    }
+
     public CachedSearch getCachedSearch(String id)
     {
-        return new CachedSearch(cache.getIfPresent(id), getDocQty());
+        SharedResult    result = handles.getIfPresent(id);
+        return new CachedSearch((result != null) ? result.docs : null, getDocQty());
     }
 
     public TopDocs   search(Query query, int maxResults) throws IOException
     {
-        Sort sort = new Sort(new SortField(FieldNames.DATE, SortField.LONG, true));
-        return searcher.search(query, maxResults, sort);
+        return searcher.search(withFilterCache(query), maxResults, sort);
     }
 
     public SearchItem toResult(int documentId) throws IOException
     {
+        if ( columns != null )
+        {
+            return columns.toResult(documentId);
+        }
+
         Document        document = searcher.doc(documentId);
 
         String          type = document.getFieldable(FieldNames.TYPE).stringValue();
         NumericField    date = (NumericField)document.getFieldable(FieldNames.DATE);
         Fieldable       path = document.getFieldable(FieldNames.PATH);
         NumericField    version = (NumericField)document.getFieldable(FieldNames.VERSION);
+        NumericField    zxid = (NumericField)document.getFieldable(FieldNames.ZXID);
+        NumericField    session = (NumericField)document.getFieldable(FieldNames.SESSION);
+        NumericField    cxid = (NumericField)document.getFieldable(FieldNames.CXID);
         return new SearchItem
         (
             Integer.parseInt(type),
-            path.stringValue(),
+            (path != null) ? path.stringValue() : "",
             (version != null) ? version.getNumericValue().intValue() : -1,
-            new Date(date.getNumericValue().longValue())
+            new Date(date.getNumericValue().longValue()),
+            (zxid != null) ? zxid.getNumericValue().longValue() : SearchItem.UNKNOWN,
+            (session != null) ? session.getNumericValue().longValue() : SearchItem.UNKNOWN,
+            (cxid != null) ? cxid.getNumericValue().intValue() : (int)SearchItem.UNKNOWN
         );
     }
 
     public byte[]           toData(int documentId) throws IOException
     {
-        Document document = searcher.doc(documentId);
-        return document.getBinaryValue(FieldNames.DATA);
+        Document    document = searcher.doc(documentId, DATA_SELECTOR);
+        byte[]      hash = document.getBinaryValue(FieldNames.DATA_HASH);
+        if ( hash == null )
+        {
+            return document.getBinaryValue(FieldNames.DATA);   // built before the blob store
+        }
+        if ( blobs == null )
+        {
+            throw new IOException("Missing blob store: " + file);
+        }
+        return blobs.get(hash);
+    }
+
+    /**
+     * @return number of distinct results currently held by handles
+     */
+    int             getSharedResultQty()
+    {
+        return results.size();
     }
 
     @Override
     public void close()
     {
+        handles.invalidateAll();
+        filterCache.close();
+        if ( columns != null )
+        {
+            columns.close();
+        }
+        CloseableUtils.closeQuietly(blobs);
         CloseableUtils.closeQuietly(searcher);
         CloseableUtils.closeQuietly(reader);
         CloseableUtils.closeQuietly(directory);
     }
+
+    // filter bitsets are cached per reader
+    private Query           withFilterCache(Query query)
+    {
+        return (query instanceof PlannedQuery) ? ((PlannedQuery)query).withFilterCache(filterCache) : query;
+    }
+
+    private SharedResult    acquireResult(SearchKey key)
+    {
+        for(;;)
+        {
+            SharedResult    result = results.get(key);
+            if ( result == null )
+            {
+                SharedResult    newResult = new SharedResult(key);
+                result = results.putIfAbsent(key, newResult);
+                if ( result == null )
+                {
+                    result = newResult;
+                }
+            }
+            if ( result.acquire() )
+            {
+                return result;
+            }
+            // otherwise it was released concurrently - try again
+        }
+    }
+
+    /**
+     * Immutable search result shared by every handle with an equal {@link SearchKey}.
+     * Removed when the last handle is released.
+     */
+    private class SharedResult
+    {
+        private final SearchKey key;
+        private int refCount = 0;
+        private boolean released = false;
+        private volatile int[] docs;
+
+        private SharedResult(SearchKey key)
+        {
+            this.key = key;
+        }
+
+        private synchronized boolean acquire()
+        {
+            if ( released )
+            {
+                return false;
+            }
+            ++refCount;
+            return true;
+        }
+
+        private synchronized void release()
+        {
+            if ( (--refCount == 0) && !released )
+            {
+                released = true;
+                results.remove(key, this);
+            }
+        }
+
+        private synchronized void load() throws IOException
+        {
+            if ( docs == null )
+            {
+                docs = searchDocIds(key.toQuery(), key.getMaxResults());
+            }
+        }
+    }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import org.apache.curator.utils.CloseableUtils;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only memory mapping of a ZooKeeper transaction log. ZooKeeper preallocates
+ * log files (64MB by default) so only the pages that {@link ZooKeeperLogParser} actually
+ * touches - the entries up to the first empty entry - are ever faulted in.
+ */
+public class MappedLogFile implements Closeable
+{
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final MappedByteBuffer buffer;
+
+    public MappedLogFile(File file) throws IOException
+    {
+        this.file = file;
+        randomAccessFile = new RandomAccessFile(file, "r");
+        try
+        {
+            long        length = randomAccessFile.length();
+            if ( length > Integer.MAX_VALUE )
+            {
+                throw new IOException("Log file is too large to map: " + file);
+            }
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        catch ( IOException e )
+        {
+            CloseableUtils.closeQuietly(randomAccessFile);
+            throw e;
+        }
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Return a new stream over the mapped log. Each stream has its own position.
+     *
+     * @return stream
+     */
+    public PositionedStream getStream()
+    {
+        return getStream(0);
+    }
+
+    /**
+     * Return a new stream over the mapped log starting at the given offset
+     *
+     * @param offset start offset
+     * @return stream
+     */
+    public PositionedStream getStream(int offset)
+    {
+        ByteBuffer      duplicate = buffer.duplicate();
+        duplicate.position(Math.min(offset, duplicate.limit()));
+        return new PositionedStream(duplicate);
+    }
+
+    @Override
+    public void close()
+    {
+        // the mapping itself is released when the buffer is collected
+        CloseableUtils.closeQuietly(randomAccessFile);
+    }
+
+    public static class PositionedStream extends InputStream
+    {
+        private final ByteBuffer buffer;
+
+        private PositionedStream(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        /**
+         * @return the offset in the file of the next byte to be read
+         */
+        public int getPosition()
+        {
+            return buffer.position();
+        }
+
+        @Override
+        public int read()
+        {
+            return buffer.hasRemaining() ? (buffer.get() & 0xff) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+        {
+            if ( len == 0 )
+            {
+                return 0;
+            }
+            if ( !buffer.hasRemaining() )
+            {
+                return -1;
+            }
+            int     count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n)
+        {
+            int     count = (int)Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available()
+        {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.PriorityQueue;
+import java.io.IOException;
+
+/**
+ * Collects the first <code>pageSize</code> documents (newest first) that sort after a
+ * {@link SearchCursor}. Memory is bounded by the page size regardless of the number of hits.
+ */
+class PageCollector extends Collector
+{
+    private final DocDates dates;
+    private final SearchCursor after;
+    private final int pageSize;
+    private final HitQueue queue;
+    private int docBase;
+
+    private static class Hit
+    {
+        long date;
+        int docId;
+    }
+
+    // top of the queue is the "worst" hit (sorts last) so it can be replaced
+    private static class HitQueue extends PriorityQueue<Hit>
+    {
+        HitQueue(int size)
+        {
+            initialize(size);
+        }
+
+        @Override
+        protected boolean lessThan(Hit a, Hit b)
+        {
+            return DateSortedCollector.compareKeys(a.date, a.docId, b.date, b.docId) > 0;
+        }
+    }
+
+    PageCollector(IndexColumns columns, SearchCursor after, int pageSize)
+    {
+        this.after = after;
+        this.pageSize = pageSize;
+        dates = DocDates.make(columns);
+        queue = new HitQueue(pageSize);
+    }
+
+    SearchPage getPage()
+    {
+        int[]       docIds = new int[queue.size()];
+        long[]      docDates = new long[docIds.length];
+        Hit         last = null;
+        for ( int i = docIds.length - 1; i >= 0; --i )
+        {
+            Hit     hit = queue.pop();
+            if ( last == null )
+            {
+                last = hit;
+            }
+            docIds[i] = hit.docId;
+            docDates[i] = hit.date;
+        }
+
+        SearchCursor    next = ((last != null) && (docIds.length == pageSize)) ? new SearchCursor(last.date, last.docId) : null;
+        return new SearchPage(docIds, docDates, next);
+    }
+
+    @Override
+    public void setScorer(Scorer scorer)
+    {
+    }
+
+    @Override
+    public void collect(int doc)
+    {
+        long        date = dates.get(doc);
+        int         docId = docBase + doc;
+        if ( (after != null) && !after.isBefore(date, docId) )
+        {
+            return;
+        }
+
+        if ( queue.size() < pageSize )
+        {
+            Hit     hit = new Hit();
+            hit.date = date;
+            hit.docId = docId;
+            queue.add(hit);
+        }
+        else
+        {
+            Hit     top = queue.top();
+            if ( DateSortedCollector.compareKeys(date, docId, top.date, top.docId) < 0 )
+            {
+                top.date = date;
+                top.docId = docId;
+                queue.updateTop();
+            }
+        }
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException
+    {
+        this.docBase = docBase;
+        dates.setNextReader(reader, docBase);
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder()
+    {
+        return true;
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.jute.Record;
+import org.apache.zookeeper.txn.TxnHeader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Builds/updates a set of time partitioned indexes (see {@link IndexPartitions}). Each transaction newer than
+ * every existing partition is routed to the partition of its date. Partitions are only opened when they receive
+ * a transaction so older partitions are left untouched.
+ */
+public class PartitionedIndexBuilder implements Closeable, IndexTarget
+{
+    private final File                              indexParent;
+    private final long                              partitionMillis;
+    private final int                               threadQty;
+    private final int                               dataTextMaxChars;
+    private final Map<Long, IndexMetaData>          existing = Maps.newHashMap();
+    private final ConcurrentMap<Long, IndexBuilder> builders = Maps.newConcurrentMap();
+    private final List<File>                        created = Lists.newArrayList(); // protected by synchronization
+    private final Set<String>                       sources = Sets.newConcurrentHashSet();
+    private long                                    baseZxid = IndexMetaData.UNKNOWN_ZXID;
+    private int                                     baseCount = 0;                  // protected by synchronization
+
+    /**
+     * @param indexParent the index directory that contains the partitions
+     * @param partitionMillis partition window size
+     * @param threadQty max number of threads that will concurrently call {@link #add(InputStream)}
+     */
+    public PartitionedIndexBuilder(File indexParent, long partitionMillis, int threadQty)
+    {
+        this(indexParent, partitionMillis, threadQty, 0);
+    }
+
+    /**
+     * @param indexParent the index directory that contains the partitions
+     * @param partitionMillis partition window size
+     * @param threadQty max number of threads that will concurrently call {@link #add(InputStream)}
+     * @param dataTextMaxChars passed to each partition's {@link IndexBuilder}
+     */
+    public PartitionedIndexBuilder(File indexParent, long partitionMillis, int threadQty, int dataTextMaxChars)
+    {
+        this.indexParent = indexParent;
+        this.partitionMillis = partitionMillis;
+        this.threadQty = Math.max(1, threadQty);
+        this.dataTextMaxChars = dataTextMaxChars;
+    }
+
+    /**
+     * Read the existing partitions
+     *
+     * @throws Exception errors
+     */
+    @Override
+    public void open() throws Exception
+    {
+        for ( File partition : IndexPartitions.getPartitions(indexParent) )
+        {
+            IndexMetaData       metaData = IndexMetaData.read(IndexMetaData.getMetaDataFile(partition));
+            existing.put(IndexPartitions.getWindowStart(partition), metaData);
+            baseZxid = Math.max(baseZxid, metaData.getMaxZxid());
+            sources.addAll(metaData.getSources());
+        }
+    }
+
+    @Override
+    public void add(InputStream stream) throws Exception
+    {
+        ZooKeeperLogParser  logParser = new ZooKeeperLogParser(stream);
+        if ( logParser.isValid() )
+        {
+            logParser.parse
+            (
+                new LogEntryReceiver()
+                {
+                    @Override
+                    public void receiveEntry(TxnHeader header, Record record) throws Exception
+                    {
+                        addEntry(header, record);
+                    }
+                }
+            );
+        }
+    }
+
+    /**
+     * Route a single parsed log entry to its partition. Entries that are in an existing partition are skipped.
+     *
+     * @param header entry header
+     * @param record entry txn or null
+     * @throws Exception errors
+     */
+    @Override
+    public void addEntry(TxnHeader header, Record record) throws Exception
+    {
+        if ( header.getZxid() <= baseZxid )
+        {
+            return;
+        }
+
+        IndexBuilder    builder = getBuilder(IndexPartitions.getWindowStart(header.getTime(), partitionMillis));
+        if ( builder != null )
+        {
+            builder.addEntry(header, record);
+        }
+    }
+
+    @Override
+    public void addSource(String sourceId)
+    {
+        sources.add(sourceId);
+    }
+
+    @Override
+    public boolean hasSource(String sourceId)
+    {
+        return sources.contains(sourceId);
+    }
+
+    /**
+     * Commit each partition that was written to. Every written partition records the full set of sources.
+     *
+     * @throws Exception errors
+     */
+    @Override
+    public synchronized void writeMetaData() throws Exception
+    {
+        for ( IndexBuilder builder : builders.values() )
+        {
+            for ( String sourceId : sources )
+            {
+                builder.addSource(sourceId);
+            }
+            builder.writeMetaData();
+        }
+    }
+
+    /**
+     * Discard everything added since the partitions were opened. Partitions that were
+     * created by this builder are returned by {@link #getCreatedPartitions()} and should be deleted.
+     */
+    @Override
+    public synchronized void abort()
+    {
+        for ( IndexBuilder builder : builders.values() )
+        {
+            builder.abort();
+        }
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        for ( IndexBuilder builder : builders.values() )
+        {
+            CloseableUtils.closeQuietly(builder);
+        }
+    }
+
+    /**
+     * @return the partitions that were written to
+     */
+    public synchronized List<File> getWrittenPartitions()
+    {
+        List<File>      written = Lists.newArrayList();
+        for ( long windowStart : builders.keySet() )
+        {
+            written.add(IndexPartitions.getPartitionDirectory(indexParent, windowStart));
+        }
+        return written;
+    }
+
+    /**
+     * @return the partitions that didn't exist before
+     */
+    public synchronized List<File> getCreatedPartitions()
+    {
+        return ImmutableList.copyOf(created);
+    }
+
+    /**
+     * @return number of documents added so far
+     */
+    @Override
+    public synchronized int getAddedCount()
+    {
+        int     count = 0;
+        for ( IndexBuilder builder : builders.values() )
+        {
+            count += builder.getCurrentCount();
+        }
+        return count - baseCount;
+    }
+
+    private IndexBuilder getBuilder(long windowStart) throws Exception
+    {
+        IndexBuilder        builder = builders.get(windowStart);
+        return (builder != null) ? builder : makeBuilder(windowStart);
+    }
+
+    private synchronized IndexBuilder makeBuilder(long windowStart) throws Exception
+    {
+        IndexBuilder        builder = builders.get(windowStart);
+        if ( builder == null )
+        {
+            IndexMetaData   base = existing.get(windowStart);
+            if ( (base != null) && (base.getMaxZxid() == IndexMetaData.UNKNOWN_ZXID) )
+            {
+                return null;    // can't be appended to safely - leave it alone
+            }
+
+            File            directory = IndexPartitions.getPartitionDirectory(indexParent, windowStart);
+            if ( base == null )
+            {
+                created.add(directory);
+            }
+            else
+            {
+                baseCount += base.getEntryCount();
+            }
+
+            builder = new IndexBuilder(directory, threadQty, base, dataTextMaxChars);
+            builder.open();
+            builders.put(windowStart, builder);
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.apache.lucene.search.Query;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Pages through the combined results of several time partitions (see {@link IndexPartitions}), newest first.
+ * Each partition's page is searched in parallel and the pages are merge sorted by date. Dates that tie across
+ * partitions order by partition (newest first) then by document id.
+ */
+public class PartitionedSearch
+{
+    private final List<LogSearch>   partitions;
+    private final long[]            windowStarts;
+
+    private static final char       CURSOR_SEPARATOR = '-';
+
+    public static class Hit
+    {
+        private final LogSearch logSearch;
+        private final long windowStart;
+        private final int docId;
+        private final long date;
+
+        private Hit(LogSearch logSearch, long windowStart, int docId, long date)
+        {
+            this.logSearch = logSearch;
+            this.windowStart = windowStart;
+            this.docId = docId;
+            this.date = date;
+        }
+
+        /**
+         * @return the partition that the hit is in
+         */
+        public LogSearch getLogSearch()
+        {
+            return logSearch;
+        }
+
+        public int getDocId()
+        {
+            return docId;
+        }
+
+        public long getDate()
+        {
+            return date;
+        }
+    }
+
+    public static class Page
+    {
+        private final List<Hit> hits;
+        private final String next;
+
+        private Page(List<Hit> hits, String next)
+        {
+            this.hits = ImmutableList.copyOf(hits);
+            this.next = next;
+        }
+
+        /**
+         * @return the page's hits in result order
+         */
+        public List<Hit> getHits()
+        {
+            return hits;
+        }
+
+        /**
+         * @return cursor for the next page or null if this is the last page
+         */
+        public String getNext()
+        {
+            return next;
+        }
+    }
+
+    /**
+     * @param partitions open partitions - the file of each must be a partition directory
+     */
+    public PartitionedSearch(List<LogSearch> partitions)
+    {
+        this.partitions = ImmutableList.copyOf(partitions);
+        windowStarts = new long[partitions.size()];
+        for ( int i = 0; i < windowStarts.length; ++i )
+        {
+            Long    windowStart = IndexPartitions.getWindowStart(partitions.get(i).getFile());
+            if ( windowStart == null )
+            {
+                throw new IllegalArgumentException("Not a partition: " + partitions.get(i).getFile());
+            }
+            windowStarts[i] = windowStart;
+        }
+    }
+
+    /**
+     * Return true if the given cursor is null/empty or was returned by {@link #searchPage}
+     *
+     * @param after cursor to check
+     * @return true/false
+     */
+    public static boolean isValidCursor(String after)
+    {
+        try
+        {
+            Cursor.parse(after);
+            return true;
+        }
+        catch ( IllegalArgumentException e )
+        {
+            return false;   // includes NumberFormatException
+        }
+    }
+
+    /**
+     * Return a page of the combined results
+     *
+     * @param executorService executor for the per-partition searches
+     * @param query query or null for all documents
+     * @param after cursor returned by the previous page or null/empty for the first page
+     * @param pageSize page size
+     * @return the page
+     * @throws Exception errors
+     */
+    public Page searchPage(ExecutorService executorService, final Query query, String after, final int pageSize) throws Exception
+    {
+        final Cursor                cursor = Cursor.parse(after);
+        List<Callable<SearchPage>>  searches = Lists.newArrayList();
+        for ( int i = 0; i < partitions.size(); ++i )
+        {
+            final LogSearch     logSearch = partitions.get(i);
+            final SearchCursor  partitionAfter = (cursor != null) ? cursor.getPartitionCursor(windowStarts[i]) : null;
+            searches.add
+            (
+                new Callable<SearchPage>()
+                {
+                    @Override
+                    public SearchPage call() throws Exception
+                    {
+                        return logSearch.searchPage(query, partitionAfter, pageSize);
+                    }
+                }
+            );
+        }
+
+        List<Hit>                   hits = Lists.newArrayList();
+        boolean                     hasMore = false;
+        List<Future<SearchPage>>    futures = executorService.invokeAll(searches);
+        for ( int i = 0; i < futures.size(); ++i )
+        {
+            SearchPage      page = getPage(futures.get(i));
+            int[]           docIds = page.getDocIds();
+            long[]          dates = page.getDates();
+            for ( int j = 0; j < docIds.length; ++j )
+            {
+                hits.add(new Hit(partitions.get(i), windowStarts[i], docIds[j], dates[j]));
+            }
+            hasMore = hasMore || (page.getNext() != null);
+        }
+
+        Collections.sort(hits, HIT_ORDER);
+        if ( hits.size() > pageSize )
+        {
+            hits = hits.subList(0, pageSize);
+            hasMore = true;
+        }
+
+        String      next = null;
+        if ( hasMore && (hits.size() > 0) )
+        {
+            Hit     last = hits.get(hits.size() - 1);
+            next = new Cursor(last.date, last.windowStart, last.docId).toString();
+        }
+        return new Page(hits, next);
+    }
+
+    private static SearchPage getPage(Future<SearchPage> future) throws Exception
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable   cause = e.getCause();
+            throw (cause instanceof Exception) ? (Exception)cause : e;
+        }
+    }
+
+    private static final Comparator<Hit> HIT_ORDER = new Comparator<Hit>()
+    {
+        @Override
+        public int compare(Hit o1, Hit o2)
+        {
+            if ( o1.date != o2.date )
+            {
+                return (o1.date > o2.date) ? -1 : 1;
+            }
+            if ( o1.windowStart != o2.windowStart )
+            {
+                return (o1.windowStart > o2.windowStart) ? -1 : 1;
+            }
+            return (o1.docId < o2.docId) ? -1 : ((o1.docId > o2.docId) ? 1 : 0);
+        }
+    };
+
+    // sort key of the last returned hit: date, partition and doc id
+    private static class Cursor
+    {
+        private final long date;
+        private final long windowStart;
+        private final int docId;
+
+        static Cursor parse(String cursor)
+        {
+            if ( (cursor == null) || (cursor.length() == 0) )
+            {
+                return null;
+            }
+
+            int     first = cursor.indexOf(CURSOR_SEPARATOR);
+            int     second = cursor.indexOf(CURSOR_SEPARATOR, first + 1);
+            if ( (first <= 0) || (second <= first) )
+            {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            return new Cursor(Long.parseLong(cursor.substring(0, first)), Long.parseLong(cursor.substring(first + 1, second)), Integer.parseInt(cursor.substring(second + 1)));
+        }
+
+        Cursor(long date, long windowStart, int docId)
+        {
+            this.date = date;
+            this.windowStart = windowStart;
+            this.docId = docId;
+        }
+
+        SearchCursor getPartitionCursor(long partitionWindowStart)
+        {
+            if ( partitionWindowStart > windowStart )
+            {
+                return new SearchCursor(date, Integer.MAX_VALUE);   // its hits at this date were all returned
+            }
+            if ( partitionWindowStart < windowStart )
+            {
+                return new SearchCursor(date, -1);  // none of its hits at this date were returned
+            }
+            return new SearchCursor(date, docId);
+        }
+
+        @Override
+        public String toString()
+        {
+            return Long.toString(date) + CURSOR_SEPARATOR + windowStart + CURSOR_SEPARATOR + docId;
+        }
+    }
+}
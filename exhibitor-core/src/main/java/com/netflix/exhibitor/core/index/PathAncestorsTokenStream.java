@@ -0,0 +1,69 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+/**
+ * Tokenizes a path into itself and each of its ancestors: "/a/b/c" produces "/", "/a", "/a/b" and "/a/b/c".
+ * A subtree is then a single term. Instances are reused per indexing thread.
+ */
+final class PathAncestorsTokenStream extends TokenStream
+{
+    private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+    private String path = "";
+    private int position = 0;
+
+    void        setPath(String path)
+    {
+        this.path = path;
+        position = 0;
+    }
+
+    @Override
+    public boolean incrementToken()
+    {
+        if ( (position > path.length()) || (path.length() == 0) )
+        {
+            return false;
+        }
+
+        int     end;
+        if ( position == 0 )
+        {
+            end = 1;    // the root
+        }
+        else
+        {
+            end = path.indexOf('/', position);
+            if ( end < 0 )
+            {
+                end = path.length();
+            }
+        }
+        clearAttributes();
+        termAttribute.setEmpty().append(path, 0, end);
+        position = end + 1;
+        return true;
+    }
+
+    @Override
+    public void reset()
+    {
+        position = 0;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import org.apache.curator.utils.CloseableUtils;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * <p>
+ *     A Bloom filter of every string prefix of the paths in an index. {@link IndexBuilder} fills it as entries
+ *     are indexed and writes it next to the index's meta data file so that a search for a path
+ *     prefix can skip an index without opening a reader. A path prefix matches an index only if the filter
+ *     might contain it - the same string prefix semantics as {@link PathPrefixQuery}.
+ * </p>
+ *
+ * <p>
+ *     The filter records the entry count of the index it was built for. Incremental commits don't rewrite
+ *     it, so a filter whose count doesn't match the meta data is stale and must not be used. An incremental
+ *     build unions the filter of the index it appends to with the prefixes of the new entries. Larger indexes
+ *     get a higher false positive rate instead of a larger filter.
+ * </p>
+ */
+class PathBloomFilter
+{
+    private final BloomFilter<CharSequence>     filter;
+    private final int                           entryCount;
+
+    private static final String     FILE_EXTENSION = ".paths";
+
+    private static final int        MAGIC = 0x45585042;   // "EXPB"
+    private static final int        VERSION = 2;
+
+    // every filter has the same size so that filters can be unioned - change VERSION if these change
+    private static final int        EXPECTED_PREFIXES = 1 << 20;
+    private static final double     FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    static File     getFile(File indexDirectory)
+    {
+        return new File(indexDirectory.getPath() + FILE_EXTENSION);
+    }
+
+    /**
+     * Accumulates the path prefixes of the entries indexed by a single thread. Not thread safe.
+     */
+    static class Builder
+    {
+        private final BloomFilter<CharSequence>     filter = newFilter();
+        private String                              previous = "";
+
+        /**
+         * @param path an indexed path
+         */
+        void        add(String path)
+        {
+            // the prefixes this path shares with the previous one were already added
+            int     common = 0;
+            int     max = Math.min(path.length(), previous.length());
+            while ( (common < max) && (path.charAt(common) == previous.charAt(common)) )
+            {
+                ++common;
+            }
+
+            for ( int end = common + 1; end <= path.length(); ++end )
+            {
+                filter.put(path.subSequence(0, end));
+            }
+            previous = path;
+        }
+    }
+
+    /**
+     * @param base if not null, the current filter of the index being appended to
+     * @param builders the builders of the threads that indexed entries
+     * @param entryCount the index's entry count
+     * @return filter
+     */
+    static PathBloomFilter  build(PathBloomFilter base, Iterable<Builder> builders, int entryCount)
+    {
+        BloomFilter<CharSequence>   filter = (base != null) ? base.filter.copy() : newFilter();
+        for ( Builder builder : builders )
+        {
+            filter.putAll(builder.filter);
+        }
+        return new PathBloomFilter(filter, entryCount);
+    }
+
+    /**
+     * @param indexDirectory index
+     * @return the index's filter or null if it doesn't have one
+     * @throws IOException errors
+     */
+    static PathBloomFilter  read(File indexDirectory) throws IOException
+    {
+        File        file = getFile(indexDirectory);
+        if ( !file.exists() )
+        {
+            return null;
+        }
+
+        DataInputStream     in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try
+        {
+            if ( (in.readInt() != MAGIC) || (in.readInt() != VERSION) )
+            {
+                return null;    // unknown format - treat like a missing filter
+            }
+            int     entryCount = in.readInt();
+            @SuppressWarnings("unchecked")
+            BloomFilter<CharSequence>   filter = (BloomFilter<CharSequence>)new ObjectInputStream(in).readObject();
+            return new PathBloomFilter(filter, entryCount);
+        }
+        catch ( ClassNotFoundException e )
+        {
+            throw new IOException(e);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+        }
+    }
+
+    void        write(File indexDirectory) throws IOException
+    {
+        File                tempFile = new File(getFile(indexDirectory).getPath() + ".tmp");
+        DataOutputStream    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entryCount);
+
+            // Guava's serialized form - this Guava has no writeTo()
+            ObjectOutputStream  objectOut = new ObjectOutputStream(out);
+            objectOut.writeObject(filter);
+            objectOut.flush();
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(out);
+        }
+
+        IndexMetaData.replaceFile(tempFile, getFile(indexDirectory));
+    }
+
+    /**
+     * @param pathPrefix a path prefix
+     * @return false if no path in the index starts with the prefix, true if one might
+     */
+    boolean     mightContainPrefix(String pathPrefix)
+    {
+        return filter.mightContain(pathPrefix);
+    }
+
+    /**
+     * @param metaData the current meta data of the index
+     * @return true if the filter was built for the index as described by the meta data
+     */
+    boolean     isCurrent(IndexMetaData metaData)
+    {
+        return entryCount == metaData.getEntryCount();
+    }
+
+    int         getEntryCount()
+    {
+        return entryCount;
+    }
+
+    private PathBloomFilter(BloomFilter<CharSequence> filter, int entryCount)
+    {
+        this.filter = filter;
+        this.entryCount = entryCount;
+    }
+
+    private static BloomFilter<CharSequence>    newFilter()
+    {
+        return BloomFilter.create(Funnels.unencodedCharsFunnel(), EXPECTED_PREFIXES, FALSE_POSITIVE_PROBABILITY);
+    }
+}
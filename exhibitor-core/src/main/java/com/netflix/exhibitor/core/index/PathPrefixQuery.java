@@ -0,0 +1,140 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import java.io.IOException;
+
+/**
+ * Matches paths starting with a prefix. When the prefix lines up with a path segment the query
+ * rewrites to a single term of the {@link FieldNames#PATH_ANCESTORS} field instead of enumerating every
+ * path under the prefix. Indexes (or parts of indexes) built without ancestors use a {@link PrefixQuery}.
+ */
+class PathPrefixQuery extends Query
+{
+    private final String prefix;
+
+    PathPrefixQuery(String prefix)
+    {
+        this.prefix = prefix;
+    }
+
+    @Override
+    public Query rewrite(IndexReader reader) throws IOException
+    {
+        if ( !hasAncestors(reader) )
+        {
+            return new PrefixQuery(new Term(FieldNames.PATH, prefix));
+        }
+
+        if ( prefix.endsWith("/") )
+        {
+            if ( prefix.length() == 1 )
+            {
+                return new TermQuery(new Term(FieldNames.PATH_ANCESTORS, prefix));
+            }
+
+            // everything under the parent but not the parent itself
+            String          parent = prefix.substring(0, prefix.length() - 1);
+            BooleanQuery    query = new BooleanQuery();
+            query.add(new TermQuery(new Term(FieldNames.PATH_ANCESTORS, parent)), BooleanClause.Occur.MUST);
+            query.add(new TermQuery(new Term(FieldNames.PATH, parent)), BooleanClause.Occur.MUST_NOT);
+            return query;
+        }
+
+        if ( isSegmentAligned(reader) )
+        {
+            return new TermQuery(new Term(FieldNames.PATH_ANCESTORS, prefix));
+        }
+        return new PrefixQuery(new Term(FieldNames.PATH, prefix));
+    }
+
+    @Override
+    public String toString(String field)
+    {
+        return FieldNames.PATH + ":" + prefix + "*";
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if ( this == o )
+        {
+            return true;
+        }
+        if ( o == null || getClass() != o.getClass() )
+        {
+            return false;
+        }
+
+        PathPrefixQuery that = (PathPrefixQuery)o;
+        return prefix.equals(that.prefix) && (getBoost() == that.getBoost());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return (31 * prefix.hashCode()) + Float.floatToIntBits(getBoost());
+    }
+
+    private boolean hasAncestors(IndexReader reader) throws IOException
+    {
+        // every doc with a path has the root ancestor if every doc was indexed with ancestors
+        int     pathQty = reader.maxDoc();
+        for ( EntryTypes type : EntryTypes.values() )
+        {
+            if ( !type.hasPath() )
+            {
+                pathQty -= reader.docFreq(new Term(FieldNames.TYPE, Integer.toString(type.getId())));
+            }
+        }
+        return reader.docFreq(new Term(FieldNames.PATH_ANCESTORS, "/")) == pathQty;
+    }
+
+    /**
+     * The prefix is aligned if the only paths starting with it are the prefix itself and paths
+     * under "prefix/". Those sort after any "prefix" + c where c < '/' and before any "prefix" + c where
+     * c > '/' so two seeks are enough.
+     */
+    private boolean isSegmentAligned(IndexReader reader) throws IOException
+    {
+        return !hasPathStartingWith(reader, prefix + Character.MIN_VALUE, prefix + "/") && !hasPathStartingWith(reader, prefix + (char)('/' + 1), null);
+    }
+
+    private boolean hasPathStartingWith(IndexReader reader, String from, String before) throws IOException
+    {
+        TermEnum    terms = reader.terms(new Term(FieldNames.PATH, from));
+        try
+        {
+            Term    term = terms.term();
+            return (term != null)
+                && term.field().equals(FieldNames.PATH)
+                && term.text().startsWith(prefix)
+                && ((before == null) || (term.text().compareTo(before) < 0));
+        }
+        finally
+        {
+            terms.close();
+        }
+    }
+}
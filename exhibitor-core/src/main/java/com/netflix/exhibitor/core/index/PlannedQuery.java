@@ -0,0 +1,174 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.FilteredQuery;
+import org.apache.lucene.search.Query;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An AND of scoring queries and filter clauses. At rewrite time the filter clauses are
+ * intersected into a single filter (see {@link IntersectionFilter}) that is cached by the
+ * {@link LogSearch} the query is run by (see {@link #withFilterCache(FilterCache)}) so that
+ * repeating a search against the same reader only re-runs the (non-filter) lead query.
+ */
+class PlannedQuery extends Query
+{
+    private final List<Query> queries;
+    private final List<FilterClause> filters;
+    private final String filterKey;
+    private final String edgesKey;
+    private final FilterCache filterCache;
+
+    PlannedQuery(List<Query> queries, List<FilterClause> filters)
+    {
+        this(queries, filters, null);
+    }
+
+    private PlannedQuery(List<Query> queries, List<FilterClause> filters, FilterCache filterCache)
+    {
+        this.queries = ImmutableList.copyOf(queries);
+        this.filters = ImmutableList.copyOf(filters);
+        this.filterCache = filterCache;
+
+        List<String>    keys = Lists.newArrayList();
+        List<String>    edgesKeys = Lists.newArrayList();
+        for ( FilterClause clause : filters )
+        {
+            keys.add(clause.getKey());
+            if ( clause.getEdgesKey() != null )
+            {
+                edgesKeys.add(clause.getEdgesKey());
+            }
+        }
+        // clause order doesn't change the result so normalize it for the cache
+        Collections.sort(keys);
+        Collections.sort(edgesKeys);
+        filterKey = "and(" + Joiner.on(',').join(keys) + ")";
+        edgesKey = "not(" + Joiner.on(',').join(edgesKeys) + ")";
+    }
+
+    /**
+     * @param filterCache the cache of the reader the query is about to be run against
+     * @return this query with its filters cached by the given cache
+     */
+    PlannedQuery    withFilterCache(FilterCache filterCache)
+    {
+        return new PlannedQuery(queries, filters, filterCache);
+    }
+
+    @Override
+    public Query rewrite(IndexReader reader) throws IOException
+    {
+        Filter      filter;
+        if ( filters.size() == 1 )
+        {
+            FilterClause    clause = filters.get(0);
+            filter = (filterCache != null) ? filterCache.get(clause.getKey(), clause.getFilter()) : clause.getFilter();
+        }
+        else if ( filterCache != null )
+        {
+            // each clause is cached too so that other combinations of them are cheap
+            List<FilterClause>  cachedFilters = Lists.newArrayList();
+            for ( FilterClause clause : filters )
+            {
+                cachedFilters.add(clause.withFilter(filterCache.get(clause.getKey(), clause.getFilter())));
+            }
+            filter = filterCache.get(filterKey, new IntersectionFilter(cachedFilters));
+        }
+        else
+        {
+            filter = new IntersectionFilter(filters);
+        }
+
+        // the edges aren't cached - they are at most a bucket each
+        for ( FilterClause clause : filters )
+        {
+            if ( clause.getEdges() != null )
+            {
+                filter = new ExcludingFilter(filter, clause.getEdges());
+            }
+        }
+
+        if ( queries.size() == 0 )
+        {
+            return new ConstantScoreQuery(filter);
+        }
+
+        Query       lead;
+        if ( queries.size() == 1 )
+        {
+            lead = queries.get(0);
+        }
+        else
+        {
+            BooleanQuery    booleanQuery = new BooleanQuery();
+            for ( Query q : queries )
+            {
+                booleanQuery.add(q, BooleanClause.Occur.MUST);
+            }
+            lead = booleanQuery;
+        }
+        return new FilteredQuery(lead, filter);
+    }
+
+    @Override
+    public String toString(String field)
+    {
+        StringBuilder   str = new StringBuilder("planned(");
+        for ( Query q : queries )
+        {
+            str.append(q.toString(field)).append(' ');
+        }
+        return str.append(filterKey).append(' ').append(edgesKey).append(')').toString();
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if ( this == o )
+        {
+            return true;
+        }
+        if ( o == null || getClass() != o.getClass() )
+        {
+            return false;
+        }
+
+        PlannedQuery    that = (PlannedQuery)o;
+        return queries.equals(that.queries) && filterKey.equals(that.filterKey) && edgesKey.equals(that.edgesKey) && (getBoost() == that.getBoost());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = queries.hashCode();
+        result = 31 * result + filterKey.hashCode();
+        result = 31 * result + edgesKey.hashCode();
+        result = 31 * result + Float.floatToIntBits(getBoost());
+        return result;
+    }
+}
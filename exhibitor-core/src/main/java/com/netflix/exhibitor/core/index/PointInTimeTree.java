@@ -0,0 +1,70 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.server.DataTree;
+import java.util.List;
+
+/**
+ * Read-only view of the ZooKeeper tree as of a zxid - see {@link TreeReconstructor}
+ */
+public class PointInTimeTree
+{
+    private final DataTree tree;
+    private final long zxid;
+
+    PointInTimeTree(DataTree tree, long zxid)
+    {
+        this.tree = tree;
+        this.zxid = zxid;
+    }
+
+    /**
+     * @return the last zxid applied to the tree
+     */
+    public long getZxid()
+    {
+        return zxid;
+    }
+
+    public int getNodeCount()
+    {
+        return tree.getNodeCount();
+    }
+
+    /**
+     * @param path path
+     * @return the node's children
+     * @throws KeeperException.NoNodeException if the node didn't exist at this point
+     */
+    public List<String> getChildren(String path) throws KeeperException.NoNodeException
+    {
+        return tree.getChildren(path, null, null);
+    }
+
+    /**
+     * @param path path
+     * @param stat if not null, receives the node's stat
+     * @return the node's data
+     * @throws KeeperException.NoNodeException if the node didn't exist at this point
+     */
+    public byte[] getData(String path, Stat stat) throws KeeperException.NoNodeException
+    {
+        return tree.getData(path, (stat != null) ? stat : new Stat(), null);
+    }
+}
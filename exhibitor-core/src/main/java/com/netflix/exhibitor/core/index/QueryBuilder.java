@@ -21,17 +21,30 @@ import com.google.common.collect.Lists;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.NumericRangeFilter;
 import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.PrefixQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
 import org.apache.lucene.search.TermQuery;
-import java.util.Collection;
+import org.apache.lucene.util.NumericUtils;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class QueryBuilder
 {
-    private final Collection<Query> queries;
-    
+    private final List<Query> queries;
+    private final List<FilterClause> filters;
+
+    /**
+     * Date range filters are cached for whole buckets of this size
+     */
+    static final long   DATE_BUCKET_MS = TimeUnit.MINUTES.toMillis(1);
+
     public static QueryBuilder      builder()
     {
         return new QueryBuilder();
@@ -43,17 +56,35 @@ public class QueryBuilder
         OR
     }
 
+    /**
+     * Build the query. For {@link Type#AND} the type, session and date clauses are evaluated as filters
+     * cached by the {@link LogSearch} and the remaining clauses are planned around them - see {@link PlannedQuery}
+     *
+     * @param type how to combine the clauses
+     * @return query
+     */
     public Query            build(Type type)
     {
-        Preconditions.checkArgument(queries.size() > 0, "Query is empty");
+        Preconditions.checkArgument((queries.size() + filters.size()) > 0, "Query is empty");
+
+        if ( (type == Type.AND) && (filters.size() > 0) )
+        {
+            return new PlannedQuery(queries, filters);
+        }
 
-        if ( queries.size() == 1 )
+        List<Query>         allQueries = Lists.newArrayList(queries);
+        for ( FilterClause clause : filters )
         {
-            return queries.iterator().next();
+            allQueries.add(new ConstantScoreQuery(clause.getExactFilter()));
+        }
+
+        if ( allQueries.size() == 1 )
+        {
+            return allQueries.get(0);
         }
 
         BooleanQuery        query = new BooleanQuery();
-        for ( Query q : queries )
+        for ( Query q : allQueries )
         {
             query.add(q, (type == Type.AND) ? BooleanClause.Occur.MUST : BooleanClause.Occur.SHOULD);
         }
@@ -68,10 +99,49 @@ public class QueryBuilder
         return this;
     }
 
+    /**
+     * Match paths starting with the given prefix. Prefixes that line up with a path segment
+     * (e.g. "/a/b" when there is no "/a/bc") are a single term lookup - see {@link PathPrefixQuery}
+     *
+     * @param pathPrefix prefix
+     * @return this
+     */
     public QueryBuilder pathPrefix(String pathPrefix)
     {
-        Term            term = new Term(FieldNames.PATH, pathPrefix);
-        queries.add(new PrefixQuery(term));
+        queries.add(new PathPrefixQuery(pathPrefix));
+        return this;
+    }
+
+    /**
+     * Match transactions whose data contains the given text (case insensitive). Only indexes built
+     * with data text (see {@link com.netflix.exhibitor.core.ExhibitorArguments.Builder#indexDataTextMaxChars(int)}) can match and only the
+     * first that many characters of text payloads are indexed.
+     *
+     * @param text text to find
+     * @return this
+     */
+    public QueryBuilder     dataContains(String text)
+    {
+        Preconditions.checkArgument(text.length() > 0, "text cannot be empty");
+
+        String          normalized = DataGramTokenStream.normalize(text);
+        int             length = normalized.length();
+        if ( length < DataGramTokenStream.GRAM_SIZE )
+        {
+            // shorter texts are a prefix of the gram at their position
+            queries.add(new PrefixQuery(new Term(FieldNames.DATA_TEXT, normalized)));
+            return this;
+        }
+
+        // grams that exactly cover the text
+        PhraseQuery     query = new PhraseQuery();
+        for ( int i = 0; (i + DataGramTokenStream.GRAM_SIZE) < length; i += DataGramTokenStream.GRAM_SIZE )
+        {
+            query.add(new Term(FieldNames.DATA_TEXT, normalized.substring(i, i + DataGramTokenStream.GRAM_SIZE)), i);
+        }
+        int             last = length - DataGramTokenStream.GRAM_SIZE;
+        query.add(new Term(FieldNames.DATA_TEXT, normalized.substring(last)), last);
+        queries.add(query);
         return this;
     }
 
@@ -82,22 +152,90 @@ public class QueryBuilder
         return this;
     }
 
+    /**
+     * Match transactions in the given date range (start inclusive, end exclusive). The cached filter covers
+     * the range rounded out to whole {@link #DATE_BUCKET_MS} buckets so that rolling ranges (e.g. the last hour)
+     * share it. The partial buckets at the edges are removed without being cached.
+     *
+     * @param startDate start
+     * @param endDate end
+     * @return this
+     */
     public QueryBuilder     dateRange(Date startDate, Date endDate)
     {
-        NumericRangeQuery<Long> query = NumericRangeQuery.newLongRange(FieldNames.DATE, startDate.getTime(), endDate.getTime(), true, false);
+        long            start = startDate.getTime();
+        long            end = endDate.getTime();
+        long            bucketStart = floorBucket(start);
+        long            bucketEnd = (end > start) ? -floorBucket(-end) : bucketStart;   // rounded up - empty for an empty range
+        String          key = FieldNames.DATE + ":[" + bucketStart + "," + bucketEnd + ")";
+        Filter          filter = NumericRangeFilter.newLongRange(FieldNames.DATE, bucketStart, bucketEnd, true, false);
+
+        BooleanQuery    edges = new BooleanQuery();
+        if ( bucketStart < start )
+        {
+            edges.add(NumericRangeQuery.newLongRange(FieldNames.DATE, bucketStart, start, true, false), BooleanClause.Occur.SHOULD);
+        }
+        if ( (start < end) && (end < bucketEnd) )
+        {
+            edges.add(NumericRangeQuery.newLongRange(FieldNames.DATE, end, bucketEnd, true, false), BooleanClause.Occur.SHOULD);
+        }
+
+        if ( edges.clauses().size() == 0 )
+        {
+            filters.add(new FilterClause(key, filter, null));
+        }
+        else
+        {
+            filters.add(new FilterClause(key, filter, null, edges.toString(), new QueryWrapperFilter(edges)));
+        }
+        return this;
+    }
+
+    /**
+     * Match transactions with zxids in the given range (inclusive)
+     *
+     * @param startZxid first zxid
+     * @param endZxid last zxid
+     * @return this
+     */
+    public QueryBuilder     zxidRange(long startZxid, long endZxid)
+    {
+        NumericRangeQuery<Long> query = NumericRangeQuery.newLongRange(FieldNames.ZXID, startZxid, endZxid, true, true);
         queries.add(query);
         return this;
     }
 
+    /**
+     * Match transactions of the given client session
+     *
+     * @param sessionId session id
+     * @return this
+     */
+    public QueryBuilder     sessionId(long sessionId)
+    {
+        String          key = FieldNames.SESSION + ":" + sessionId;
+        Filter          filter = NumericRangeFilter.newLongRange(FieldNames.SESSION, FieldNames.EXACT_PRECISION_STEP, sessionId, sessionId, true, true);
+        filters.add(new FilterClause(key, filter, new Term(FieldNames.SESSION, NumericUtils.longToPrefixCoded(sessionId))));
+        return this;
+    }
+
     public QueryBuilder operationType(int type)
     {
         Term            term = new Term(FieldNames.TYPE, Integer.toString(type));
-        queries.add(new TermQuery(term));
+        String          key = FieldNames.TYPE + ":" + type;
+        Filter          filter = new QueryWrapperFilter(new TermQuery(term));
+        filters.add(new FilterClause(key, filter, term));
         return this;
     }
 
+    private static long     floorBucket(long time)
+    {
+        return time - (((time % DATE_BUCKET_MS) + DATE_BUCKET_MS) % DATE_BUCKET_MS);
+    }
+
     private QueryBuilder()
     {
         queries = Lists.newArrayList();
+        filters = Lists.newArrayList();
     }
 }
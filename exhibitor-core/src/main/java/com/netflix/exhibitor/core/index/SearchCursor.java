@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+/**
+ * Position in a date-descending result list: the sort key of the last returned document.
+ * Results are ordered by date (newest first) and then by document id.
+ */
+public class SearchCursor
+{
+    private final long date;
+    private final int docId;
+
+    private static final char       SEPARATOR = '-';
+
+    /**
+     * Parse a cursor returned by {@link #toString()}
+     *
+     * @param cursor cursor string (can be null or empty for "start")
+     * @return cursor or null
+     */
+    public static SearchCursor parse(String cursor)
+    {
+        if ( (cursor == null) || (cursor.length() == 0) )
+        {
+            return null;
+        }
+
+        int     index = cursor.indexOf(SEPARATOR);
+        if ( index <= 0 )
+        {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        return new SearchCursor(Long.parseLong(cursor.substring(0, index)), Integer.parseInt(cursor.substring(index + 1)));
+    }
+
+    public SearchCursor(long date, int docId)
+    {
+        this.date = date;
+        this.docId = docId;
+    }
+
+    public long getDate()
+    {
+        return date;
+    }
+
+    public int getDocId()
+    {
+        return docId;
+    }
+
+    /**
+     * @param date a document's date
+     * @param docId the document's id
+     * @return true if the document sorts after this cursor
+     */
+    boolean isBefore(long date, int docId)
+    {
+        return (date < this.date) || ((date == this.date) && (docId > this.docId));
+    }
+
+    @Override
+    public String toString()
+    {
+        return Long.toString(date) + SEPARATOR + docId;
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+import org.apache.lucene.search.Query;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Writes every hit of a search, newest first, as NDJSON (one JSON object per line) or CSV. Hits are
+ * read a page at a time via {@link LogSearch#searchPage(Query, SearchCursor, int)} and rows are written
+ * as they are read so memory use doesn't depend on the number of hits.
+ */
+public class SearchExporter
+{
+    private final LogSearch logSearch;
+    private final Query query;
+    private final Format format;
+    private final boolean includeData;
+    private final int maxResults;
+    private final int pageSize;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    private static final int        DEFAULT_PAGE_SIZE = 10000;
+    private static final String[]   COLUMNS = {"type", "date", "path", "version", "zxid", "sessionId", "cxid"};
+    private static final String     DATA_COLUMN = "data";
+
+    public enum Format
+    {
+        NDJSON("application/x-ndjson"),
+        CSV("text/csv")
+        ;
+
+        private final String mediaType;
+
+        public String getMediaType()
+        {
+            return mediaType;
+        }
+
+        /**
+         * @param name format name (case insensitive) or null
+         * @return the format or null if unknown. Null/empty names are {@link #NDJSON}.
+         */
+        public static Format fromName(String name)
+        {
+            if ( (name == null) || (name.length() == 0) )
+            {
+                return NDJSON;
+            }
+            for ( Format format : values() )
+            {
+                if ( format.name().equalsIgnoreCase(name) )
+                {
+                    return format;
+                }
+            }
+            return null;
+        }
+
+        private Format(String mediaType)
+        {
+            this.mediaType = mediaType;
+        }
+    }
+
+    /**
+     * @param logSearch the index
+     * @param query query or null for all documents
+     * @param format output format
+     * @param includeData if true, znode data (base64) is written for entries that have it
+     * @param maxResults max rows to write or 0 for all
+     */
+    public SearchExporter(LogSearch logSearch, Query query, Format format, boolean includeData, int maxResults)
+    {
+        this(logSearch, query, format, includeData, maxResults, DEFAULT_PAGE_SIZE);
+    }
+
+    SearchExporter(LogSearch logSearch, Query query, Format format, boolean includeData, int maxResults, int pageSize)
+    {
+        this.pageSize = Math.max(1, pageSize);
+        this.logSearch = logSearch;
+        this.query = query;
+        this.format = format;
+        this.includeData = includeData;
+        this.maxResults = (maxResults > 0) ? maxResults : Integer.MAX_VALUE;
+
+        jsonFactory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        jsonFactory.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+    }
+
+    /**
+     * Write the results. The stream is flushed but not closed.
+     *
+     * @param stream output
+     * @return number of rows written
+     * @throws IOException errors
+     */
+    public int export(OutputStream stream) throws IOException
+    {
+        Writer          out = new BufferedWriter(new OutputStreamWriter(stream, Charsets.UTF_8));
+        if ( format == Format.CSV )
+        {
+            writeCsvHeader(out);
+        }
+
+        int             count = 0;
+        SearchCursor    after = null;
+        do
+        {
+            SearchPage      page = logSearch.searchPage(query, after, Math.min(pageSize, maxResults - count));
+            for ( int docId : page.getDocIds() )
+            {
+                SearchItem      item = logSearch.toResult(docId);
+                byte[]          data = includeData ? logSearch.toData(docId) : null;
+                if ( format == Format.CSV )
+                {
+                    writeCsv(out, item, data);
+                }
+                else
+                {
+                    writeJson(out, item, data);
+                }
+                ++count;
+            }
+            after = page.getNext();
+        } while ( (after != null) && (count < maxResults) );
+
+        out.flush();
+        return count;
+    }
+
+    private void writeJson(Writer out, SearchItem item, byte[] data) throws IOException
+    {
+        JsonGenerator   generator = jsonFactory.createJsonGenerator(out);
+        generator.writeStartObject();
+        generator.writeStringField(COLUMNS[0], getTypeName(item));
+        generator.writeNumberField(COLUMNS[1], item.getDate().getTime());
+        generator.writeStringField(COLUMNS[2], item.getPath());
+        generator.writeNumberField(COLUMNS[3], item.getVersion());
+        generator.writeStringField(COLUMNS[4], toHex(item.getZxid()));
+        generator.writeStringField(COLUMNS[5], toHex(item.getSessionId()));
+        generator.writeNumberField(COLUMNS[6], item.getCxid());
+        if ( data != null )
+        {
+            generator.writeBinaryField(DATA_COLUMN, data);
+        }
+        generator.writeEndObject();
+        generator.close();  // flushes to the writer only
+
+        out.write('\n');
+    }
+
+    private void writeCsvHeader(Writer out) throws IOException
+    {
+        for ( int i = 0; i < COLUMNS.length; ++i )
+        {
+            if ( i > 0 )
+            {
+                out.write(',');
+            }
+            out.write(COLUMNS[i]);
+        }
+        if ( includeData )
+        {
+            out.write(',');
+            out.write(DATA_COLUMN);
+        }
+        out.write("\r\n");
+    }
+
+    private void writeCsv(Writer out, SearchItem item, byte[] data) throws IOException
+    {
+        out.write(getTypeName(item));
+        out.write(',');
+        out.write(Long.toString(item.getDate().getTime()));
+        out.write(',');
+        writeCsvValue(out, item.getPath());
+        out.write(',');
+        out.write(Integer.toString(item.getVersion()));
+        out.write(',');
+        out.write(toHex(item.getZxid()));
+        out.write(',');
+        out.write(toHex(item.getSessionId()));
+        out.write(',');
+        out.write(Integer.toString(item.getCxid()));
+        if ( includeData )
+        {
+            out.write(',');
+            if ( data != null )
+            {
+                out.write(BaseEncoding.base64().encode(data));
+            }
+        }
+        out.write("\r\n");
+    }
+
+    // RFC 4180 quoting
+    private static void writeCsvValue(Writer out, String value) throws IOException
+    {
+        boolean     needsQuotes = false;
+        for ( int i = 0; !needsQuotes && (i < value.length()); ++i )
+        {
+            char    c = value.charAt(i);
+            needsQuotes = (c == ',') || (c == '"') || (c == '\r') || (c == '\n');
+        }
+        if ( !needsQuotes )
+        {
+            out.write(value);
+            return;
+        }
+
+        out.write('"');
+        for ( int i = 0; i < value.length(); ++i )
+        {
+            char    c = value.charAt(i);
+            if ( c == '"' )
+            {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+    }
+
+    private static String getTypeName(SearchItem item)
+    {
+        EntryTypes      type = EntryTypes.getFromId(item.getType());
+        return (type != null) ? type.name() : Integer.toString(item.getType());
+    }
+
+    private static String toHex(long value)
+    {
+        return (value != SearchItem.UNKNOWN) ? ("0x" + Long.toHexString(value)) : "";
+    }
+}
@@ -24,13 +24,35 @@ public class SearchItem
     private final String        path;
     private final int           version;
     private final Date          date;
+    private final long          zxid;
+    private final long          sessionId;
+    private final int           cxid;
+
+    public static final long    UNKNOWN = -1;
 
     public SearchItem(int type, String path, int version, Date date)
+    {
+        this(type, path, version, date, UNKNOWN, UNKNOWN, (int)UNKNOWN);
+    }
+
+    /**
+     * @param type entry type
+     * @param path path
+     * @param version version or -1
+     * @param date txn date
+     * @param zxid txn zxid or {@link #UNKNOWN} for indexes built before zxids were indexed
+     * @param sessionId client session or {@link #UNKNOWN}
+     * @param cxid client xid or {@link #UNKNOWN}
+     */
+    public SearchItem(int type, String path, int version, Date date, long zxid, long sessionId, int cxid)
     {
         this.type = type;
         this.path = path;
         this.version = version;
         this.date = date;
+        this.zxid = zxid;
+        this.sessionId = sessionId;
+        this.cxid = cxid;
     }
 
     public int getType()
@@ -53,6 +75,21 @@ public class SearchItem
         return date;
     }
 
+    public long getZxid()
+    {
+        return zxid;
+    }
+
+    public long getSessionId()
+    {
+        return sessionId;
+    }
+
+    public int getCxid()
+    {
+        return cxid;
+    }
+
     @Override
     public String toString()
     {
@@ -61,6 +98,9 @@ public class SearchItem
             ", path='" + path + '\'' +
             ", version=" + version +
             ", date=" + date +
+            ", zxid=" + zxid +
+            ", sessionId=" + sessionId +
+            ", cxid=" + cxid +
             '}';
     }
 }
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import org.apache.lucene.search.Query;
+import java.util.Date;
+
+/**
+ * Normalized, immutable description of a search. Equal keys produce equal results for the
+ * same index so they are used to share results between callers.
+ */
+public class SearchKey
+{
+    private final String pathPrefix;
+    private final String dataContains;
+    private final int operationType;
+    private final long startDate;
+    private final long endDate;
+    private final long startZxid;
+    private final long endZxid;
+    private final Long sessionId;
+    private final int maxResults;
+
+    public static final int NO_OPERATION_TYPE = -1;
+    public static final long NO_DATE = -1;
+    public static final long NO_ZXID = -1;
+
+    /**
+     * @param pathPrefix path prefix or null/empty for any path
+     * @param dataContains text the data must contain or null/empty for any data
+     * @param operationType operation type or a negative value for any type
+     * @param firstDate one end of the date range or null for any date
+     * @param secondDate other end of the date range or null for any date
+     * @param maxResults max results or 0 for the default
+     */
+    public SearchKey(String pathPrefix, String dataContains, int operationType, Date firstDate, Date secondDate, int maxResults)
+    {
+        this(pathPrefix, dataContains, operationType, firstDate, secondDate, NO_ZXID, NO_ZXID, null, maxResults);
+    }
+
+    /**
+     * @param pathPrefix path prefix or null/empty for any path
+     * @param dataContains text the data must contain or null/empty for any data
+     * @param operationType operation type or a negative value for any type
+     * @param firstDate one end of the date range or null for any date
+     * @param secondDate other end of the date range or null for any date
+     * @param firstZxid one end of the (inclusive) zxid range or {@link #NO_ZXID}
+     * @param secondZxid other end of the zxid range or {@link #NO_ZXID}. If only one end is given,
+     *                   only that zxid matches. If neither is, any zxid matches.
+     * @param sessionId client session or null for any session
+     * @param maxResults max results or 0 for the default
+     */
+    public SearchKey(String pathPrefix, String dataContains, int operationType, Date firstDate, Date secondDate, long firstZxid, long secondZxid, Long sessionId, int maxResults)
+    {
+        this.pathPrefix = ((pathPrefix != null) && (pathPrefix.length() > 0)) ? pathPrefix : null;
+        this.dataContains = ((dataContains != null) && (dataContains.length() > 0)) ? DataGramTokenStream.normalize(dataContains) : null;
+        this.operationType = (operationType >= 0) ? operationType : NO_OPERATION_TYPE;
+        if ( (firstDate != null) && (secondDate != null) )
+        {
+            startDate = Math.min(firstDate.getTime(), secondDate.getTime());
+            endDate = Math.max(firstDate.getTime(), secondDate.getTime());
+        }
+        else
+        {
+            startDate = NO_DATE;
+            endDate = NO_DATE;
+        }
+        if ( (firstZxid >= 0) && (secondZxid >= 0) )
+        {
+            startZxid = Math.min(firstZxid, secondZxid);
+            endZxid = Math.max(firstZxid, secondZxid);
+        }
+        else
+        {
+            startZxid = (firstZxid >= 0) ? firstZxid : ((secondZxid >= 0) ? secondZxid : NO_ZXID);
+            endZxid = startZxid;
+        }
+        this.sessionId = sessionId;
+        this.maxResults = Math.max(0, maxResults);
+    }
+
+    private SearchKey(SearchKey from, int maxResults)
+    {
+        pathPrefix = from.pathPrefix;
+        dataContains = from.dataContains;
+        operationType = from.operationType;
+        startDate = from.startDate;
+        endDate = from.endDate;
+        startZxid = from.startZxid;
+        endZxid = from.endZxid;
+        sessionId = from.sessionId;
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * @return true if the key doesn't restrict anything - i.e. all documents
+     */
+    public boolean      isAllDocs()
+    {
+        return (pathPrefix == null) && (dataContains == null) && (operationType == NO_OPERATION_TYPE) && (startDate == NO_DATE) && (startZxid == NO_ZXID) && (sessionId == null);
+    }
+
+    /**
+     * @return the query for this key or null for all documents
+     */
+    public Query        toQuery()
+    {
+        if ( isAllDocs() )
+        {
+            return null;
+        }
+
+        QueryBuilder    builder = QueryBuilder.builder();
+        if ( pathPrefix != null )
+        {
+            builder.pathPrefix(pathPrefix);
+        }
+        if ( dataContains != null )
+        {
+            builder.dataContains(dataContains);
+        }
+        if ( operationType != NO_OPERATION_TYPE )
+        {
+            builder.operationType(operationType);
+        }
+        if ( startDate != NO_DATE )
+        {
+            builder.dateRange(new Date(startDate), new Date(endDate));
+        }
+        if ( startZxid != NO_ZXID )
+        {
+            builder.zxidRange(startZxid, endZxid);
+        }
+        if ( sessionId != null )
+        {
+            builder.sessionId(sessionId);
+        }
+        return builder.build(QueryBuilder.Type.AND);
+    }
+
+    public String getPathPrefix()
+    {
+        return pathPrefix;
+    }
+
+    public String getDataContains()
+    {
+        return dataContains;
+    }
+
+    public int getOperationType()
+    {
+        return operationType;
+    }
+
+    public long getStartDate()
+    {
+        return startDate;
+    }
+
+    public long getEndDate()
+    {
+        return endDate;
+    }
+
+    public long getStartZxid()
+    {
+        return startZxid;
+    }
+
+    public long getEndZxid()
+    {
+        return endZxid;
+    }
+
+    public Long getSessionId()
+    {
+        return sessionId;
+    }
+
+    public int getMaxResults()
+    {
+        return maxResults;
+    }
+
+    SearchKey           withMaxResults(int newMaxResults)
+    {
+        return (newMaxResults == maxResults) ? this : new SearchKey(this, newMaxResults);
+    }
+
+    @SuppressWarnings("RedundantIfStatement")
+    @Override
+    public boolean equals(Object o)
+    {
+        if ( this == o )
+        {
+            return true;
+        }
+        if ( o == null || getClass() != o.getClass() )
+        {
+            return false;
+        }
+
+        SearchKey searchKey = (SearchKey)o;
+
+        if ( endDate != searchKey.endDate )
+        {
+            return false;
+        }
+        if ( startZxid != searchKey.startZxid )
+        {
+            return false;
+        }
+        if ( endZxid != searchKey.endZxid )
+        {
+            return false;
+        }
+        if ( maxResults != searchKey.maxResults )
+        {
+            return false;
+        }
+        if ( operationType != searchKey.operationType )
+        {
+            return false;
+        }
+        if ( startDate != searchKey.startDate )
+        {
+            return false;
+        }
+        if ( pathPrefix != null ? !pathPrefix.equals(searchKey.pathPrefix) : searchKey.pathPrefix != null )
+        {
+            return false;
+        }
+        if ( dataContains != null ? !dataContains.equals(searchKey.dataContains) : searchKey.dataContains != null )
+        {
+            return false;
+        }
+        if ( sessionId != null ? !sessionId.equals(searchKey.sessionId) : searchKey.sessionId != null )
+        {
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = pathPrefix != null ? pathPrefix.hashCode() : 0;
+        result = 31 * result + (dataContains != null ? dataContains.hashCode() : 0);
+        result = 31 * result + operationType;
+        result = 31 * result + (int)(startDate ^ (startDate >>> 32));
+        result = 31 * result + (int)(endDate ^ (endDate >>> 32));
+        result = 31 * result + (int)(startZxid ^ (startZxid >>> 32));
+        result = 31 * result + (int)(endZxid ^ (endZxid >>> 32));
+        result = 31 * result + (sessionId != null ? sessionId.hashCode() : 0);
+        result = 31 * result + maxResults;
+        return result;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SearchKey{" +
+            "pathPrefix='" + pathPrefix + '\'' +
+            ", dataContains='" + dataContains + '\'' +
+            ", operationType=" + operationType +
+            ", startDate=" + startDate +
+            ", endDate=" + endDate +
+            ", startZxid=" + startZxid +
+            ", endZxid=" + endZxid +
+            ", sessionId=" + sessionId +
+            ", maxResults=" + maxResults +
+            '}';
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+public class SearchPage
+{
+    private final int[] docIds;
+    private final long[] dates;
+    private final SearchCursor next;
+
+    SearchPage(int[] docIds, long[] dates, SearchCursor next)
+    {
+        this.docIds = docIds;
+        this.dates = dates;
+        this.next = next;
+    }
+
+    /**
+     * @return the page's document ids in result order
+     */
+    public int[] getDocIds()
+    {
+        return docIds;
+    }
+
+    /**
+     * @return the date of each document in {@link #getDocIds()}
+     */
+    public long[] getDates()
+    {
+        return dates;
+    }
+
+    /**
+     * @return cursor for the next page or null if this is the last page
+     */
+    public SearchCursor getNext()
+    {
+        return next;
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.jute.BinaryInputArchive;
+import org.apache.jute.BinaryOutputArchive;
+import org.apache.jute.Record;
+import org.apache.zookeeper.server.DataTree;
+import org.apache.zookeeper.server.persistence.FileSnap;
+import org.apache.zookeeper.server.persistence.Util;
+import org.apache.zookeeper.server.util.SerializeUtils;
+import org.apache.zookeeper.txn.TxnHeader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * <p>
+ *     Rebuilds the ZooKeeper tree as of a given zxid by loading the nearest snapshot at or before the zxid
+ *     and replaying the txn logs up to it.
+ * </p>
+ *
+ * <p>
+ *     While replaying, the tree is checkpointed every <code>checkpointInterval</code> txns. Checkpoints are kept
+ *     in memory in serialized, compressed snapshot form (much smaller than a live DataTree) up to
+ *     <code>maxCheckpointBytes</code> and are used instead of the snapshot when closer to the requested zxid,
+ *     which bounds replay time. Only a couple of live trees are cached.
+ * </p>
+ */
+public class TreeReconstructor
+{
+    private final File snapshotDirectory;
+    private final File logDirectory;
+    private final int checkpointInterval;
+    private final long maxCheckpointBytes;
+    private final NavigableMap<Long, byte[]> checkpoints = Maps.newTreeMap();
+    private long checkpointBytes = 0;
+    private final Cache<Long, PointInTimeTree> trees = CacheBuilder.newBuilder()
+        .maximumSize(MAX_CACHED_TREES)
+        .build();
+
+    public static final int         DEFAULT_CHECKPOINT_INTERVAL = 100000;
+    public static final long        DEFAULT_MAX_CHECKPOINT_BYTES = 64 * 1024 * 1024;
+
+    private static final int        MAX_CACHED_TREES = 2;
+    private static final int        MAX_SNAPSHOTS = 100;
+    private static final String     SNAPSHOT_PREFIX = "snapshot";
+    private static final String     LOG_PREFIX = "log";
+
+    public TreeReconstructor(File snapshotDirectory, File logDirectory)
+    {
+        this(snapshotDirectory, logDirectory, DEFAULT_CHECKPOINT_INTERVAL, DEFAULT_MAX_CHECKPOINT_BYTES);
+    }
+
+    /**
+     * @param snapshotDirectory directory containing ZooKeeper snapshot files
+     * @param logDirectory directory containing ZooKeeper txn log files
+     * @param checkpointInterval number of replayed txns between checkpoints
+     * @param maxCheckpointBytes max total size of checkpoints
+     */
+    public TreeReconstructor(File snapshotDirectory, File logDirectory, int checkpointInterval, long maxCheckpointBytes)
+    {
+        this.snapshotDirectory = snapshotDirectory;
+        this.logDirectory = logDirectory;
+        this.checkpointInterval = Math.max(1, checkpointInterval);
+        this.maxCheckpointBytes = maxCheckpointBytes;
+    }
+
+    public File getSnapshotDirectory()
+    {
+        return snapshotDirectory;
+    }
+
+    public File getLogDirectory()
+    {
+        return logDirectory;
+    }
+
+    /**
+     * Return the tree as of the given zxid
+     *
+     * @param zxid zxid
+     * @return tree
+     * @throws Exception errors or no snapshot at or before the zxid
+     */
+    public PointInTimeTree getTree(final long zxid) throws Exception
+    {
+        try
+        {
+            return trees.get(zxid, new Callable<PointInTimeTree>()
+            {
+                @Override
+                public PointInTimeTree call() throws Exception
+                {
+                    return reconstruct(zxid);
+                }
+            });
+        }
+        catch ( ExecutionException e )
+        {
+            throw (e.getCause() instanceof Exception) ? (Exception)e.getCause() : e;
+        }
+    }
+
+    /**
+     * Find the last zxid at or before the given time
+     *
+     * @param time time in epoch millis
+     * @return zxid or -1 if the logs start after the time
+     * @throws Exception errors
+     */
+    public long findZxid(final long time) throws Exception
+    {
+        final AtomicLong    result = new AtomicLong(-1);
+        final AtomicLong    pastTime = new AtomicLong(0);
+        for ( File log : getLogs() )
+        {
+            readLog(log, new LogEntryReceiver()
+            {
+                @Override
+                public void receiveEntry(TxnHeader header, Record record) throws Exception
+                {
+                    if ( header.getTime() <= time )
+                    {
+                        result.set(Math.max(result.get(), header.getZxid()));
+                    }
+                    else
+                    {
+                        pastTime.incrementAndGet();
+                    }
+                }
+            });
+            if ( pastTime.get() > 0 )
+            {
+                break;  // logs are in zxid (and so time) order
+            }
+        }
+        return result.get();
+    }
+
+    /**
+     * @return number of checkpoints currently held
+     */
+    public synchronized int getCheckpointQty()
+    {
+        return checkpoints.size();
+    }
+
+    private PointInTimeTree reconstruct(final long zxid) throws Exception
+    {
+        final DataTree          tree = new DataTree();
+        final Map<Long, Integer> sessions = Maps.newHashMap();
+
+        Map.Entry<Long, byte[]> checkpoint = getCheckpoint(zxid);
+        File                    snapshot = findSnapshot(zxid);
+        long                    snapshotZxid = (snapshot != null) ? Util.getZxidFromName(snapshot.getName(), SNAPSHOT_PREFIX) : -1;
+        if ( (checkpoint != null) && (checkpoint.getKey() >= snapshotZxid) )
+        {
+            loadCheckpoint(tree, sessions, checkpoint.getValue());
+            tree.lastProcessedZxid = checkpoint.getKey();
+        }
+        else if ( snapshot != null )
+        {
+            loadSnapshot(tree, sessions, snapshot);
+            tree.lastProcessedZxid = snapshotZxid;
+        }
+        else
+        {
+            throw new IOException("No snapshot at or before zxid: 0x" + Long.toHexString(zxid));
+        }
+
+        final AtomicLong        sinceCheckpoint = new AtomicLong(0);
+        for ( File log : getLogsFrom(tree.lastProcessedZxid + 1) )
+        {
+            if ( tree.lastProcessedZxid >= zxid )
+            {
+                break;
+            }
+
+            readLog(log, new LogEntryReceiver()
+            {
+                @Override
+                public void receiveEntry(TxnHeader header, Record record) throws Exception
+                {
+                    if ( (header.getZxid() <= tree.lastProcessedZxid) || (header.getZxid() > zxid) )
+                    {
+                        return;
+                    }
+
+                    tree.processTxn(header, record);    // sets lastProcessedZxid
+                    if ( sinceCheckpoint.incrementAndGet() >= checkpointInterval )
+                    {
+                        sinceCheckpoint.set(0);
+                        addCheckpoint(tree, sessions);
+                    }
+                }
+            });
+        }
+
+        return new PointInTimeTree(tree, tree.lastProcessedZxid);
+    }
+
+    private synchronized Map.Entry<Long, byte[]> getCheckpoint(long zxid)
+    {
+        return checkpoints.floorEntry(zxid);
+    }
+
+    private void addCheckpoint(DataTree tree, Map<Long, Integer> sessions) throws IOException
+    {
+        ByteArrayOutputStream   bytes = new ByteArrayOutputStream();
+        DeflaterOutputStream    out = new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_SPEED));
+        SerializeUtils.serializeSnapshot(tree, BinaryOutputArchive.getArchive(out), sessions);
+        out.close();
+
+        byte[]                  checkpoint = bytes.toByteArray();
+        synchronized(this)
+        {
+            byte[]      previous = checkpoints.put(tree.lastProcessedZxid, checkpoint);
+            checkpointBytes += checkpoint.length - ((previous != null) ? previous.length : 0);
+            while ( (checkpointBytes > maxCheckpointBytes) && (checkpoints.size() > 0) )
+            {
+                checkpointBytes -= checkpoints.pollFirstEntry().getValue().length;  // oldest go first
+            }
+        }
+    }
+
+    private void loadCheckpoint(DataTree tree, Map<Long, Integer> sessions, byte[] checkpoint) throws IOException
+    {
+        InputStream     in = new InflaterInputStream(new ByteArrayInputStream(checkpoint));
+        try
+        {
+            SerializeUtils.deserializeSnapshot(tree, BinaryInputArchive.getArchive(in), sessions);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+        }
+    }
+
+    private void loadSnapshot(DataTree tree, Map<Long, Integer> sessions, File snapshot) throws IOException
+    {
+        InputStream     in = new BufferedInputStream(new FileInputStream(snapshot));
+        try
+        {
+            new FileSnap(snapshotDirectory).deserialize(tree, sessions, BinaryInputArchive.getArchive(in));
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+        }
+    }
+
+    private File findSnapshot(long zxid) throws IOException
+    {
+        for ( File snapshot : new FileSnap(snapshotDirectory).findNRecentSnapshots(MAX_SNAPSHOTS) )  // newest first
+        {
+            if ( Util.getZxidFromName(snapshot.getName(), SNAPSHOT_PREFIX) <= zxid )
+            {
+                return snapshot;
+            }
+        }
+        return null;
+    }
+
+    private List<File> getLogs()
+    {
+        File[]      files = logDirectory.listFiles();
+        return (files != null) ? Util.sortDataDir(files, LOG_PREFIX, true) : Lists.<File>newArrayList();
+    }
+
+    private List<File> getLogsFrom(long zxid)
+    {
+        // a log holds txns from the zxid in its name up to the zxid of the next log - so start at the last log named at or before zxid
+        List<File>  logs = getLogs();
+        int         start = 0;
+        for ( int i = 0; i < logs.size(); ++i )
+        {
+            if ( Util.getZxidFromName(logs.get(i).getName(), LOG_PREFIX) <= zxid )
+            {
+                start = i;
+            }
+        }
+        return logs.subList(start, logs.size());
+    }
+
+    private void readLog(File log, LogEntryReceiver receiver) throws Exception
+    {
+        MappedLogFile       mappedLog = new MappedLogFile(log);
+        try
+        {
+            ZooKeeperLogParser  parser = new ZooKeeperLogParser(mappedLog.getStream());
+            if ( parser.isValid() )
+            {
+                parser.parse(receiver);
+            }
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(mappedLog);
+        }
+    }
+}
@@ -18,7 +18,6 @@ package com.netflix.exhibitor.core.index;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
-import com.google.common.io.Closeables;
 import com.netflix.exhibitor.core.Exhibitor;
 import com.netflix.exhibitor.core.config.StringConfigs;
 import org.apache.curator.utils.CloseableUtils;
@@ -43,6 +42,12 @@ public class ZooKeeperLogFiles
         return new File(path, "version-2");
     }
 
+    public static File      getSnapshotDir(Exhibitor exhibitor)
+    {
+        String      path = exhibitor.getConfigManager().getConfig().getString(StringConfigs.ZOOKEEPER_DATA_DIRECTORY);
+        return new File(path, "version-2");
+    }
+
     public ZooKeeperLogFiles(Exhibitor exhibitor) throws Exception
     {
         ImmutableList.Builder<File> builder = ImmutableList.builder();
@@ -79,6 +84,7 @@ public class ZooKeeperLogFiles
 
     private boolean isLogFile(File f) throws Exception
     {
+        // only the header is read - mapping would fail for large files such as snapshots
         InputStream         log = new BufferedInputStream(new FileInputStream(f));
         try
         {
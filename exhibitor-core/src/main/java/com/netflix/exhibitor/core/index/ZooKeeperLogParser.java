@@ -17,68 +17,92 @@
 package com.netflix.exhibitor.core.index;
 
 import org.apache.jute.BinaryInputArchive;
-import org.apache.jute.InputArchive;
 import org.apache.jute.Record;
+import org.apache.zookeeper.ZooDefs;
 import org.apache.zookeeper.server.persistence.FileHeader;
 import org.apache.zookeeper.server.persistence.FileTxnLog;
 import org.apache.zookeeper.server.util.SerializeUtils;
+import org.apache.zookeeper.txn.CreateSessionTxn;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.CreateTxnV0;
+import org.apache.zookeeper.txn.DeleteTxn;
+import org.apache.zookeeper.txn.ErrorTxn;
+import org.apache.zookeeper.txn.MultiTxn;
+import org.apache.zookeeper.txn.SetACLTxn;
+import org.apache.zookeeper.txn.SetDataTxn;
 import org.apache.zookeeper.txn.TxnHeader;
 import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.zip.Adler32;
-import java.util.zip.Checksum;
 
 public class ZooKeeperLogParser
 {
-    private final BinaryInputArchive logStream;
-    private final boolean            validHeader;
+    private final DataInputStream       logStream;
+    private final boolean               validHeader;
 
-    private static final Method             deserializeTxnMethod;
-    private static final boolean            useOldDeserializeMethod;
-    static
-    {
-        // The signature for SerializeUtils.deserializeTxn changed between 3.3.x and 3.4.x
-        // so, use reflection to work with both
+    // per-parser state that is reused for every entry
+    private final Adler32               crc = new Adler32();
+    private final TxnHeader             header = new TxnHeader();
+    private final EntryStream           entryStream = new EntryStream();
+    private final BinaryInputArchive    entryArchive = new BinaryInputArchive(new DataInputStream(entryStream));
+    private byte[]                      entryBuffer = new byte[INITIAL_BUFFER_SIZE];
 
-        Method          localSeserializeTxnMethod;
-        boolean         localUseOldDeserializeMethod = true;
-        try
+    // jute's deserialize() sets every field (lists and byte arrays are newly allocated) so a record per type can be reused
+    private final CreateSessionTxn      createSessionTxn = new CreateSessionTxn();
+    private final CreateTxn             createTxn = new CreateTxn();
+    private final DeleteTxn             deleteTxn = new DeleteTxn();
+    private final SetDataTxn            setDataTxn = new SetDataTxn();
+    private final SetACLTxn             setACLTxn = new SetACLTxn();
+    private final ErrorTxn              errorTxn = new ErrorTxn();
+    private final MultiTxn              multiTxn = new MultiTxn();
+
+    private static final int        INITIAL_BUFFER_SIZE = 4096;
+    // sanity bound against corrupt lengths only - the server's jute.maxbuffer isn't known here and may be larger than this JVM's
+    private static final int        MAX_ENTRY_SIZE = Integer.getInteger("exhibitor.index.max-log-entry-bytes", 256 * 1024 * 1024);
+
+    /**
+     * Thrown for an entry whose length or CRC is wrong - either corruption or, at the end of a log
+     * that ZooKeeper is still writing, an entry that is only partially written
+     */
+    public static class CorruptEntryException extends IOException
+    {
+        public CorruptEntryException(String message)
         {
-            localSeserializeTxnMethod = SerializeUtils.class.getMethod("deserializeTxn", InputArchive.class, TxnHeader.class);
+            super(message);
         }
-        catch ( Exception e )
-        {
-            try
-            {
-                localSeserializeTxnMethod = SerializeUtils.class.getMethod("deserializeTxn", byte[].class, TxnHeader.class);
-                localUseOldDeserializeMethod = false;
-            }
-            catch ( NoSuchMethodException e1 )
-            {
-                throw new RuntimeException(e);
-            }
-        }
-        deserializeTxnMethod = localSeserializeTxnMethod;
-        useOldDeserializeMethod = localUseOldDeserializeMethod;
     }
 
     public ZooKeeperLogParser(InputStream log)
     {
-        logStream = BinaryInputArchive.getArchive(log);
+        this(log, true);
+    }
 
-        boolean         localValidHeader = false;
-        try
-        {
-            FileHeader fhdr = new FileHeader();
-            fhdr.deserialize(logStream, "fileheader");
-            localValidHeader = (fhdr.getMagic() == FileTxnLog.TXNLOG_MAGIC);
-        }
-        catch ( IOException e )
+    /**
+     * @param log log stream
+     * @param atFileHeader true if the stream starts with the log's file header. Pass false to resume
+     *                     parsing a log from an entry boundary - e.g. an offset recorded while tailing.
+     */
+    public ZooKeeperLogParser(InputStream log, boolean atFileHeader)
+    {
+        logStream = new DataInputStream(log);
+
+        boolean         localValidHeader = !atFileHeader;
+        if ( atFileHeader )
         {
-            // ignore
+            try
+            {
+                FileHeader fhdr = new FileHeader();
+                fhdr.deserialize(new BinaryInputArchive(logStream), "fileheader");
+                localValidHeader = (fhdr.getMagic() == FileTxnLog.TXNLOG_MAGIC);
+            }
+            catch ( IOException e )
+            {
+                // ignore
+            }
         }
         validHeader = localValidHeader;
     }
@@ -88,6 +112,13 @@ public class ZooKeeperLogParser
         return validHeader;
     }
 
+    /**
+     * Parse all complete entries in the log. NOTE: the {@link TxnHeader} and {@link Record} passed to the
+     * receiver are reused for later entries and are only valid for the duration of the call.
+     *
+     * @param receiver entry receiver
+     * @throws Exception errors
+     */
     public void parse(LogEntryReceiver receiver) throws Exception
     {
         if ( !validHeader )
@@ -98,42 +129,162 @@ public class ZooKeeperLogParser
         while ( true )
         {
             long crcValue;
-            byte[] bytes;
+            int length;
             try
             {
-                crcValue = logStream.readLong("crcvalue");
+                crcValue = logStream.readLong();
+                length = logStream.readInt();
+                if ( length == 0 )
+                {
+                    // Since we preallocate, we define EOF to be an
+                    // empty transaction
+                    break;
+                }
+                if ( (length < 0) || (length > MAX_ENTRY_SIZE) )
+                {
+                    throw new CorruptEntryException("Unreasonable length = " + length);
+                }
+                if ( length > entryBuffer.length )
+                {
+                    entryBuffer = new byte[Math.max(length, entryBuffer.length * 2)];
+                }
+                logStream.readFully(entryBuffer, 0, length);
+            }
+            catch ( EOFException e )
+            {
+                break;
+            }
 
-                bytes = logStream.readBuffer("txnEntry");
+            crc.reset();
+            crc.update(entryBuffer, 0, length);
+            if ( crcValue != crc.getValue() )
+            {
+                throw new CorruptEntryException("CRC doesn't match " + crcValue + " vs " + crc.getValue());
+            }
+
+            entryStream.reset(entryBuffer, length);
+            Record          record = deserializeTxn(length);
+
+            try
+            {
+                if ( logStream.readByte() != 'B' )
+                {
+                    break;  // partial transaction
+                }
             }
             catch ( EOFException e )
             {
+                break;  // partial transaction
+            }
+
+            receiver.receiveEntry(header, record);
+        }
+    }
+
+    // mirrors SerializeUtils.deserializeTxn() but reads from the reused entry buffer into the reused header and records.
+    // Types without a case here are passed to SerializeUtils so that they are handled however the ZooKeeper version does.
+    private Record deserializeTxn(int length) throws IOException
+    {
+        header.deserialize(entryArchive, "hdr");
+        entryStream.mark(0);
+
+        Record          txn;
+        switch ( header.getType() )
+        {
+            case ZooDefs.OpCode.createSession:
+            {
+                txn = createSessionTxn;
                 break;
             }
-            if ( bytes.length == 0 )
+
+            case ZooDefs.OpCode.closeSession:
             {
-                // Since we preallocate, we define EOF to be an
-                // empty transaction
+                return null;
+            }
+
+            case ZooDefs.OpCode.create:
+            {
+                txn = createTxn;
                 break;
             }
 
-            Checksum crc = new Adler32();
-            crc.update(bytes, 0, bytes.length);
-            if ( crcValue != crc.getValue() )
+            case ZooDefs.OpCode.delete:
             {
-                throw new IOException("CRC doesn't match " + crcValue + " vs " + crc.getValue());
+                txn = deleteTxn;
+                break;
             }
 
-            InputArchive    iab = BinaryInputArchive.getArchive(new ByteArrayInputStream(bytes));
-            TxnHeader       hdr = new TxnHeader();
+            case ZooDefs.OpCode.setData:
+            {
+                txn = setDataTxn;
+                break;
+            }
 
-            Record          record = useOldDeserializeMethod ? (Record)deserializeTxnMethod.invoke(null, iab, hdr) : (Record)deserializeTxnMethod.invoke(null, bytes, hdr);
+            case ZooDefs.OpCode.setACL:
+            {
+                txn = setACLTxn;
+                break;
+            }
 
-            if ( logStream.readByte("EOR") != 'B' )
+            case ZooDefs.OpCode.error:
             {
-                break;  // partial transaction
+                txn = errorTxn;
+                break;
+            }
+
+            case ZooDefs.OpCode.multi:
+            {
+                txn = multiTxn;
+                break;
             }
 
-            receiver.receiveEntry(hdr, record);
+            default:
+            {
+                return SerializeUtils.deserializeTxn(Arrays.copyOf(entryBuffer, length), header);
+            }
+        }
+
+        try
+        {
+            txn.deserialize(entryArchive, "txn");
+        }
+        catch ( EOFException e )
+        {
+            // perhaps this is a V0 Create
+            if ( header.getType() != ZooDefs.OpCode.create )
+            {
+                throw e;
+            }
+
+            CreateTxn       create = (CreateTxn)txn;
+            entryStream.reset();
+            CreateTxnV0     createV0 = new CreateTxnV0();
+            createV0.deserialize(entryArchive, "txn");
+            // cool now make it V1. a -1 parentCVersion will
+            // trigger fixup processing in processTxn
+            create.setPath(createV0.getPath());
+            create.setData(createV0.getData());
+            create.setAcl(createV0.getAcl());
+            create.setEphemeral(createV0.getEphemeral());
+            create.setParentCVersion(-1);
+        }
+
+        return txn;
+    }
+
+    private static class EntryStream extends ByteArrayInputStream
+    {
+        EntryStream()
+        {
+            super(new byte[0]);
+        }
+
+        void reset(byte[] bytes, int length)
+        {
+            buf = bytes;
+            pos = 0;
+            count = length;
+            mark = 0;
         }
     }
 }
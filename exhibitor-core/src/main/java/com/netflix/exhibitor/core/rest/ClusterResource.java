@@ -25,6 +25,8 @@ import com.netflix.exhibitor.core.config.StringConfigs;
 import com.netflix.exhibitor.core.controlpanel.ControlPanelTypes;
 import com.netflix.exhibitor.core.entities.Result;
 import com.netflix.exhibitor.core.entities.ServerStatus;
+import com.netflix.exhibitor.core.index.FederatedSearch;
+import com.netflix.exhibitor.core.index.SearchKey;
 import com.netflix.exhibitor.core.state.FourLetterWord;
 import com.netflix.exhibitor.core.state.InstanceStateTypes;
 import com.netflix.exhibitor.core.state.KillRunningInstance;
@@ -40,12 +42,14 @@ import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.ext.ContextResolver;
+import java.io.IOException;
 import java.net.URLEncoder;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -226,6 +230,23 @@ public class ClusterResource
             );
     }
 
+    @Path("search/{key}")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public String getLocalSearch(@PathParam("key") String encodedKey) throws Exception
+    {
+        SearchKey       key;
+        try
+        {
+            key = FederatedSearch.decodeKey(encodedKey);
+        }
+        catch ( IOException e )
+        {
+            throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build());
+        }
+        return FederatedSearch.toJson(FederatedSearch.searchLocal(context.getExhibitor(), key));
+    }
+
     @Path("log")
     @GET
     @Produces(MediaType.APPLICATION_JSON)
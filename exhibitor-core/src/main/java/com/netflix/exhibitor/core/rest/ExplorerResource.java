@@ -31,6 +31,7 @@ import com.netflix.exhibitor.core.entities.PathAnalysisNode;
 import com.netflix.exhibitor.core.entities.PathAnalysisRequest;
 import com.netflix.exhibitor.core.entities.Result;
 import com.netflix.exhibitor.core.entities.UsageListingRequest;
+import com.netflix.exhibitor.core.index.PointInTimeTree;
 import org.apache.curator.utils.CloseableUtils;
 import org.apache.curator.utils.ZKPaths;
 import org.apache.zookeeper.KeeperException;
@@ -257,6 +258,101 @@ public class ExplorerResource
         return children.toString();
     }
 
+    @GET
+    @Path("history/zxid")
+    @Produces("application/json")
+    public String   getHistoryZxid(@QueryParam("time") long time) throws Exception
+    {
+        long        zxid = context.getExhibitor().getTreeReconstructor().findZxid(time);
+
+        ObjectNode  node = JsonNodeFactory.instance.objectNode();
+        node.put("zxid", (zxid >= 0) ? ("0x" + Long.toHexString(zxid)) : "");
+        return node.toString();
+    }
+
+    @GET
+    @Path("history/node-data")
+    @Produces("application/json")
+    public String   getHistoryNodeData(@QueryParam("key") String key, @QueryParam("zxid") String zxid) throws Exception
+    {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        try
+        {
+            Stat            stat = new Stat();
+            byte[]          bytes = getHistoryTree(zxid).getData(key, stat);
+
+            if ( bytes != null )
+            {
+                node.put("bytes", bytesToString(bytes));
+                node.put("str", new String(bytes, "UTF-8"));
+            }
+            else
+            {
+                node.put("bytes", "");
+                node.put("str", "");
+            }
+            node.put("stat", reflectToString(stat));
+        }
+        catch ( KeeperException.NoNodeException dummy )
+        {
+            node.put("bytes", "");
+            node.put("str", "");
+            node.put("stat", "* not found * ");
+        }
+        catch ( WebApplicationException e )
+        {
+            throw e;
+        }
+        catch ( Throwable e )
+        {
+            node.put("bytes", "");
+            node.put("str", "Exception");
+            node.put("stat", e.getMessage());
+        }
+        return node.toString();
+    }
+
+    @GET
+    @Path("history/node")
+    @Produces("application/json")
+    public String   getHistoryNode(@QueryParam("key") String key, @QueryParam("zxid") String zxid) throws Exception
+    {
+        ArrayNode children = JsonNodeFactory.instance.arrayNode();
+        try
+        {
+            List<String> childrenNames = getHistoryTree(zxid).getChildren(key);
+            SmartSort.sortChildren(childrenNames);
+            for ( String name : childrenNames )
+            {
+                ObjectNode  node = children.addObject();
+                node.put("title", name);
+                node.put("key", ZKPaths.makePath(key, name));
+                node.put("isLazy", true);
+                node.put("expand", false);
+            }
+        }
+        catch ( KeeperException.NoNodeException dummy )
+        {
+            // node didn't exist at that point - no children
+        }
+        catch ( WebApplicationException e )
+        {
+            throw e;
+        }
+        catch ( Throwable e )
+        {
+            context.getExhibitor().getLog().add(ActivityLog.Type.ERROR, "getHistoryNode: " + key, e);
+
+            ObjectNode  node = children.addObject();
+            node.put("title", "* Exception *");
+            node.put("key", ERROR_KEY);
+            node.put("isLazy", false);
+            node.put("expand", false);
+        }
+
+        return children.toString();
+    }
+
     @GET
     @Path("usage-listing")
     @Produces("text/plain")
@@ -392,6 +488,16 @@ public class ExplorerResource
             .build();
     }
 
+    private PointInTimeTree getHistoryTree(String zxid) throws Exception
+    {
+        Long        value = IndexResource.parseHex(zxid);
+        if ( value == null )
+        {
+            throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST).entity("zxid is required").build());
+        }
+        return context.getExhibitor().getTreeReconstructor().getTree(value);
+    }
+
     private String  reflectToString(Object obj) throws Exception
     {
         StringBuilder       str = new StringBuilder();
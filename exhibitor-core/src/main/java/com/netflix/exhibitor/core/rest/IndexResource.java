@@ -19,8 +19,8 @@ package com.netflix.exhibitor.core.rest;
 import com.google.common.base.Function;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.Lists;
+import com.google.common.primitives.UnsignedLongs;
 import com.netflix.exhibitor.core.activity.ActivityLog;
-import com.netflix.exhibitor.core.activity.QueueGroups;
 import com.netflix.exhibitor.core.backup.BackupMetaData;
 import com.netflix.exhibitor.core.config.StringConfigs;
 import com.netflix.exhibitor.core.entities.Index;
@@ -29,16 +29,25 @@ import com.netflix.exhibitor.core.entities.Result;
 import com.netflix.exhibitor.core.entities.SearchId;
 import com.netflix.exhibitor.core.entities.SearchRequest;
 import com.netflix.exhibitor.core.entities.SearchResult;
+import com.netflix.exhibitor.core.index.Aggregation;
 import com.netflix.exhibitor.core.index.CachedSearch;
 import com.netflix.exhibitor.core.index.EntryTypes;
+import com.netflix.exhibitor.core.index.FederatedSearch;
 import com.netflix.exhibitor.core.index.IndexCache;
+import com.netflix.exhibitor.core.index.IndexJob;
 import com.netflix.exhibitor.core.index.IndexList;
 import com.netflix.exhibitor.core.index.IndexMetaData;
+import com.netflix.exhibitor.core.index.IndexPartitions;
 import com.netflix.exhibitor.core.index.IndexProcessorActivity;
+import com.netflix.exhibitor.core.index.LiveIndexer;
 import com.netflix.exhibitor.core.index.LogSearch;
-import com.netflix.exhibitor.core.index.QueryBuilder;
+import com.netflix.exhibitor.core.index.PartitionedSearch;
+import com.netflix.exhibitor.core.index.SearchCursor;
+import com.netflix.exhibitor.core.index.SearchExporter;
 import com.netflix.exhibitor.core.index.SearchItem;
-import org.apache.lucene.search.Query;
+import com.netflix.exhibitor.core.index.SearchKey;
+import com.netflix.exhibitor.core.index.SearchPage;
+import com.netflix.exhibitor.core.state.ServerList;
 import org.codehaus.jackson.node.ArrayNode;
 import org.codehaus.jackson.node.JsonNodeFactory;
 import org.codehaus.jackson.node.ObjectNode;
@@ -50,12 +59,16 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.ext.ContextResolver;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -63,6 +76,7 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @Path("exhibitor/v1/index")
 public class IndexResource
@@ -71,6 +85,15 @@ public class IndexResource
 
     private static final int        MAX_PATH = 50;
     private static final String     DATE_FORMAT_STR = "MM/dd/yyyy-HH:mm:ss";
+    private static final int        DEFAULT_PAGE_SIZE = 100;
+    private static final int        MAX_PAGE_SIZE = 10000;
+    private static final int        DEFAULT_AGGREGATE_BUCKETS = 100;
+    private static final int        MAX_AGGREGATE_BUCKETS = 10000;
+    private static final int        DEFAULT_AGGREGATE_DEPTH = 2;
+    private static final int        DEFAULT_AGGREGATE_TOP = 20;
+    private static final int        MAX_AGGREGATE_TOP = 1000;
+    private static final long       DEFAULT_FEDERATED_DEADLINE_MS = TimeUnit.MILLISECONDS.convert(10, TimeUnit.SECONDS);
+    private static final long       MAX_FEDERATED_DEADLINE_MS = TimeUnit.MILLISECONDS.convert(1, TimeUnit.MINUTES);
 
     public IndexResource(@Context ContextResolver<UIContext> resolver)
     {
@@ -82,8 +105,75 @@ public class IndexResource
     @Produces(MediaType.APPLICATION_JSON)
     public Response newIndex() throws Exception
     {
-        context.getExhibitor().getActivityQueue().add(QueueGroups.IO, new IndexProcessorActivity(context.getExhibitor()));
-        return Response.ok(new Result("OK", true)).build();
+        IndexJob    job = context.getExhibitor().getIndexJobs().submit(new IndexProcessorActivity(context.getExhibitor()));
+        return Response.ok(new Result(job.getId(), true)).build();
+    }
+
+    @Path("update-index/{index-name}")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response updateIndex(@PathParam("index-name") String indexName) throws Exception
+    {
+        File        indexFile = getLogFile(indexName);
+        if ( indexFile == null )
+        {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        if ( indexFile.getName().equals(LiveIndexer.LIVE_INDEX_NAME) )
+        {
+            return Response.ok(new Result("The live index is updated continuously", false)).build();
+        }
+        IndexJob    job = context.getExhibitor().getIndexJobs().submit(new IndexProcessorActivity(context.getExhibitor(), indexFile));
+        return Response.ok(new Result(job.getId(), true)).build();
+    }
+
+    @Path("update-partitions")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response updatePartitions(@QueryParam("hours") int hours) throws Exception
+    {
+        long        partitionMillis = (hours > 0) ? TimeUnit.MILLISECONDS.convert(hours, TimeUnit.HOURS) : IndexPartitions.DEFAULT_PARTITION_MILLIS;
+        IndexJob    job = context.getExhibitor().getIndexJobs().submit(new IndexProcessorActivity(context.getExhibitor(), partitionMillis));
+        return Response.ok(new Result(job.getId(), true)).build();
+    }
+
+    @Path("jobs")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public String getJobs()
+    {
+        ArrayNode       jobs = JsonNodeFactory.instance.arrayNode();
+        for ( IndexJob job : context.getExhibitor().getIndexJobs().getJobs() )
+        {
+            jobs.add(toJson(job));
+        }
+        return jobs.toString();
+    }
+
+    @Path("job/{job-id}")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getJob(@PathParam("job-id") String jobId)
+    {
+        IndexJob    job = context.getExhibitor().getIndexJobs().getJob(jobId);
+        if ( job == null )
+        {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return Response.ok(toJson(job).toString()).build();
+    }
+
+    @Path("job/{job-id}")
+    @DELETE
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response cancelJob(@PathParam("job-id") String jobId)
+    {
+        IndexJob    job = context.getExhibitor().getIndexJobs().getJob(jobId);
+        if ( job == null )
+        {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return job.cancel() ? Response.ok(new Result("OK", true)).build() : Response.ok(new Result("Job has already finished", false)).build();
     }
 
     @Path("{index-name}")
@@ -153,7 +243,10 @@ public class IndexResource
                 item.getPath(),
                 dateFormatter.format(item.getDate()),
                 new String(bytes, "UTF-8"),
-                ExplorerResource.bytesToString(bytes)
+                ExplorerResource.bytesToString(bytes),
+                toHex(item.getZxid()),
+                toHex(item.getSessionId()),
+                item.getCxid()
             );
         }
         finally
@@ -251,7 +344,10 @@ public class IndexResource
                                 f.getName(),
                                 format.format(metaData.getFrom()),
                                 format.format(metaData.getTo()),
-                                metaData.getEntryCount()
+                                metaData.getEntryCount(),
+                                metaData.getMinZxid(),
+                                metaData.getMaxZxid(),
+                                metaData.getBuildMs()
                             );
                         }
                     }
@@ -260,6 +356,22 @@ public class IndexResource
         return Response.ok(entity).build();
     }
 
+    @Path("cache-stats")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public String getCacheStats()
+    {
+        IndexCache      indexCache = context.getExhibitor().getIndexCache();
+        ObjectNode      node = JsonNodeFactory.instance.objectNode();
+        node.put("hits", indexCache.getHitCount());
+        node.put("misses", indexCache.getMissCount());
+        node.put("evictions", indexCache.getEvictionCount());
+        node.put("skips", indexCache.getSkipCount());
+        node.put("weight", indexCache.getCurrentWeight());
+        node.put("maxWeight", indexCache.getMaxWeight());
+        return node.toString();
+    }
+
     @Path("release-cache/{index-name}/{search-handle}")
     @GET
     @Produces(MediaType.APPLICATION_JSON)
@@ -281,58 +393,308 @@ public class IndexResource
         return Response.ok(new Result("OK", true)).build();
     }
 
-    @Path("cache-search")
+    @Path("page-search")
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response cacheSearch(SearchRequest request) throws Exception
+    public Response pageSearch(SearchRequest request, @QueryParam("after") String after, @QueryParam("size") int size) throws Exception
     {
+        SearchCursor    cursor;
+        try
+        {
+            cursor = SearchCursor.parse(after);
+        }
+        catch ( IllegalArgumentException e )
+        {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Invalid cursor: " + after).build();
+        }
+
         LogSearch   logSearch = getLogSearch(request.getIndexName());
         if ( logSearch == null )
         {
             return Response.status(Response.Status.NOT_FOUND).build();
         }
 
-        SearchId    searchHandle;
+        ObjectNode      node;
+        try
+        {
+            SearchPage      page = logSearch.searchPage(toSearchKey(request).toQuery(), cursor, (size > 0) ? Math.min(size, MAX_PAGE_SIZE) : DEFAULT_PAGE_SIZE);
+            DateFormat      dateFormatter = new SimpleDateFormat(DATE_FORMAT_STR);
+            ArrayNode       results = JsonNodeFactory.instance.arrayNode();
+            for ( int docId : page.getDocIds() )
+            {
+                SearchItem      item = logSearch.toResult(docId);
+                ObjectNode      data = JsonNodeFactory.instance.objectNode();
+                data.put("docId", docId);
+                data.put("type", getTypeName(EntryTypes.getFromId(item.getType())));
+                data.put("date", dateFormatter.format(item.getDate()));
+                data.put("path", item.getPath());
+                data.put("zxid", toHex(item.getZxid()));
+                data.put("sessionId", toHex(item.getSessionId()));
+                results.add(data);
+            }
+
+            node = JsonNodeFactory.instance.objectNode();
+            node.put("results", results);
+            node.put("next", (page.getNext() != null) ? page.getNext().toString() : null);
+        }
+        finally
+        {
+            context.getExhibitor().getIndexCache().releaseLogSearch(logSearch.getFile());
+        }
+        return Response.ok(node.toString()).build();
+    }
+
+    @Path("partition-search")
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response partitionSearch(SearchRequest request, @QueryParam("after") String after, @QueryParam("size") int size) throws Exception
+    {
+        if ( !PartitionedSearch.isValidCursor(after) )
+        {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Invalid cursor: " + after).build();
+        }
+
+        SearchKey       key = toSearchKey(request);
+        IndexCache      indexCache = context.getExhibitor().getIndexCache();
+        File            indexParent = new File(context.getExhibitor().getConfigManager().getConfig().getString(StringConfigs.LOG_INDEX_DIRECTORY));
+        List<File>      partitions = IndexPartitions.getOverlappingPartitions(indexCache, indexParent, key);
+
+        List<LogSearch> logSearches = Lists.newArrayList();
+        ObjectNode      node;
         try
         {
-            boolean         hasTerms = false;
-            QueryBuilder    builder = QueryBuilder.builder();
-            if ( (request.getPathPrefix() != null) && (request.getPathPrefix().length() > 0) )
+            for ( File partition : partitions )
             {
-                hasTerms = true;
-                builder.pathPrefix(request.getPathPrefix());
+                logSearches.add(indexCache.getLogSearch(partition));
             }
-            if ( request.getOperationType() >= 0 )
+
+            PartitionedSearch       search = new PartitionedSearch(logSearches);
+            PartitionedSearch.Page  page = search.searchPage(context.getExhibitor().getForkJoinPool(), key.toQuery(), after, (size > 0) ? Math.min(size, MAX_PAGE_SIZE) : DEFAULT_PAGE_SIZE);
+            DateFormat              dateFormatter = new SimpleDateFormat(DATE_FORMAT_STR);
+            ArrayNode               results = JsonNodeFactory.instance.arrayNode();
+            for ( PartitionedSearch.Hit hit : page.getHits() )
             {
-                hasTerms = true;
-                builder.operationType(request.getOperationType());
+                SearchItem      item = hit.getLogSearch().toResult(hit.getDocId());
+                ObjectNode      data = JsonNodeFactory.instance.objectNode();
+                data.put("index", hit.getLogSearch().getFile().getName());
+                data.put("docId", hit.getDocId());
+                data.put("type", getTypeName(EntryTypes.getFromId(item.getType())));
+                data.put("date", dateFormatter.format(item.getDate()));
+                data.put("path", item.getPath());
+                data.put("zxid", toHex(item.getZxid()));
+                data.put("sessionId", toHex(item.getSessionId()));
+                results.add(data);
             }
-            if ( (request.getFirstDate() != null) && (request.getSecondDate() != null) )
+
+            node = JsonNodeFactory.instance.objectNode();
+            node.put("partitions", partitions.size());
+            node.put("results", results);
+            node.put("next", page.getNext());
+        }
+        finally
+        {
+            for ( LogSearch logSearch : logSearches )
             {
-                hasTerms = true;
-                Date        startDate;
-                Date        endDate;
-                if ( request.getFirstDate().before(request.getSecondDate()) )
+                indexCache.releaseLogSearch(logSearch.getFile());
+            }
+        }
+        return Response.ok(node.toString()).build();
+    }
+
+    @Path("federated-search")
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response federatedSearch(SearchRequest request, @QueryParam("deadlineMs") long deadlineMs) throws Exception
+    {
+        request.setMaxResults((request.getMaxResults() > 0) ? Math.min(request.getMaxResults(), MAX_PAGE_SIZE) : DEFAULT_PAGE_SIZE);
+        SearchKey       key = toSearchKey(request);
+
+        List<String>    hostnames = Lists.newArrayList(new ServerList(context.getExhibitor().getConfigManager().getConfig().getString(StringConfigs.SERVERS_SPEC)).getHostnames());
+        if ( hostnames.size() == 0 )
+        {
+            hostnames.add(context.getExhibitor().getThisJVMHostname());
+        }
+
+        FederatedSearch         search = new FederatedSearch(context.getExhibitor(), hostnames);
+        FederatedSearch.Result  result = search.search(key, (deadlineMs > 0) ? Math.min(deadlineMs, MAX_FEDERATED_DEADLINE_MS) : DEFAULT_FEDERATED_DEADLINE_MS);
+
+        DateFormat              dateFormatter = new SimpleDateFormat(DATE_FORMAT_STR);
+        ArrayNode               results = JsonNodeFactory.instance.arrayNode();
+        for ( FederatedSearch.Hit hit : result.getHits() )
+        {
+            SearchItem      item = hit.getItem();
+            ObjectNode      data = JsonNodeFactory.instance.objectNode();
+            data.put("host", hit.getHostname());
+            data.put("type", getTypeName(EntryTypes.getFromId(item.getType())));
+            data.put("date", dateFormatter.format(item.getDate()));
+            data.put("path", item.getPath());
+            data.put("zxid", toHex(item.getZxid()));
+            data.put("sessionId", toHex(item.getSessionId()));
+            results.add(data);
+        }
+
+        ArrayNode               hosts = JsonNodeFactory.instance.arrayNode();
+        for ( FederatedSearch.HostResult hostResult : result.getHosts() )
+        {
+            ObjectNode      data = JsonNodeFactory.instance.objectNode();
+            data.put("host", hostResult.getHostname());
+            data.put("success", hostResult.isSuccess());
+            data.put("timedOut", hostResult.isTimedOut());
+            data.put("errorMessage", hostResult.getErrorMessage());
+            data.put("count", hostResult.getCount());
+            hosts.add(data);
+        }
+
+        ObjectNode              node = JsonNodeFactory.instance.objectNode();
+        node.put("hosts", hosts);
+        node.put("results", results);
+        return Response.ok(node.toString()).build();
+    }
+
+    @Path("export")
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response export(SearchRequest request, @QueryParam("format") String formatName, @QueryParam("data") final boolean includeData, @QueryParam("max") final int max) throws Exception
+    {
+        final SearchExporter.Format format = SearchExporter.Format.fromName(formatName);
+        if ( format == null )
+        {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Unknown format: " + formatName).build();
+        }
+
+        final File              indexFile = getLogFile(request.getIndexName());
+        if ( indexFile == null )
+        {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        final SearchKey         key = toSearchKey(request);
+
+        // the reader is acquired only once the response is being written (write() isn't called if the
+        // request fails or the client goes away first) and is held until the whole result has been written
+        StreamingOutput         output = new StreamingOutput()
+        {
+            @Override
+            public void write(OutputStream out) throws IOException
+            {
+                IndexCache      indexCache = context.getExhibitor().getIndexCache();
+                LogSearch       logSearch;
+                try
+                {
+                    logSearch = indexCache.getLogSearch(indexFile);
+                }
+                catch ( Exception e )
                 {
-                    startDate = request.getFirstDate();
-                    endDate = request.getSecondDate();
+                    throw new IOException(e);
                 }
-                else
+
+                try
+                {
+                    new SearchExporter(logSearch, key.toQuery(), format, includeData, max).export(out);
+                }
+                finally
+                {
+                    indexCache.releaseLogSearch(indexFile);
+                }
+            }
+        };
+        return Response.ok(output, format.getMediaType()).build();
+    }
+
+    @Path("aggregate")
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response aggregate(SearchRequest request, @QueryParam("bucketSeconds") int bucketSeconds, @QueryParam("depth") int depth, @QueryParam("top") int top) throws Exception
+    {
+        LogSearch   logSearch = getLogSearch(request.getIndexName());
+        if ( logSearch == null )
+        {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+
+        ObjectNode      node;
+        try
+        {
+            SearchKey       key = toSearchKey(request);
+            long            startTime;
+            long            endTime;
+            if ( key.getStartDate() != SearchKey.NO_DATE )
+            {
+                startTime = key.getStartDate();
+                endTime = key.getEndDate();
+            }
+            else
+            {
+                IndexMetaData   metaData = context.getExhibitor().getIndexCache().getMetaData(logSearch.getFile());
+                startTime = metaData.getFrom().getTime();
+                endTime = metaData.getTo().getTime() + 1000;    // meta data dates are truncated to seconds
+            }
+            long            range = Math.max(1, endTime - startTime);
+            long            bucketMillis = (bucketSeconds > 0) ? (bucketSeconds * 1000L) : Math.max(1000, (range + DEFAULT_AGGREGATE_BUCKETS - 1) / DEFAULT_AGGREGATE_BUCKETS);
+            bucketMillis = Math.max(bucketMillis, (range + MAX_AGGREGATE_BUCKETS - 1) / MAX_AGGREGATE_BUCKETS);
+            int             bucketQty = (int)((range + bucketMillis - 1) / bucketMillis);
+
+            Aggregation     aggregation = logSearch.aggregate(key.toQuery(), startTime, bucketMillis, bucketQty, (depth > 0) ? depth : DEFAULT_AGGREGATE_DEPTH, (top > 0) ? Math.min(top, MAX_AGGREGATE_TOP) : DEFAULT_AGGREGATE_TOP);
+
+            ArrayNode       buckets = JsonNodeFactory.instance.arrayNode();
+            for ( int count : aggregation.getBucketCounts() )
+            {
+                buckets.add(count);
+            }
+
+            ArrayNode       topPaths = JsonNodeFactory.instance.arrayNode();
+            for ( Aggregation.PathCount pathCount : aggregation.getTopPaths() )
+            {
+                ObjectNode      byType = JsonNodeFactory.instance.objectNode();
+                for ( EntryTypes type : EntryTypes.values() )
                 {
-                    startDate = request.getSecondDate();
-                    endDate = request.getFirstDate();
+                    int     count = pathCount.getCount(type);
+                    if ( count > 0 )
+                    {
+                        byType.put(getTypeName(type), count);
+                    }
                 }
-                Calendar      endOfDayEndDate = Calendar.getInstance();
-                endOfDayEndDate.setTime(endDate);
-                endOfDayEndDate.set(Calendar.HOUR_OF_DAY, 23);
-                endOfDayEndDate.set(Calendar.MINUTE, 59);
-                endOfDayEndDate.set(Calendar.SECOND, 59);
-                endDate = endOfDayEndDate.getTime();
-                builder.dateRange(startDate, endDate);
+
+                ObjectNode      data = JsonNodeFactory.instance.objectNode();
+                data.put("path", pathCount.getPath());
+                data.put("total", pathCount.getTotal());
+                data.put("byType", byType);
+                topPaths.add(data);
             }
-            Query       query = hasTerms ? builder.build(QueryBuilder.Type.AND) : null;
-            String      id = logSearch.cacheSearch(query, request.getReuseHandle(), request.getMaxResults());
+
+            node = JsonNodeFactory.instance.objectNode();
+            node.put("totalHits", aggregation.getTotalHits());
+            node.put("startTime", aggregation.getStartTime());
+            node.put("bucketMillis", aggregation.getBucketMillis());
+            node.put("buckets", buckets);
+            node.put("topPaths", topPaths);
+        }
+        finally
+        {
+            context.getExhibitor().getIndexCache().releaseLogSearch(logSearch.getFile());
+        }
+        return Response.ok(node.toString()).build();
+    }
+
+    @Path("cache-search")
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response cacheSearch(SearchRequest request) throws Exception
+    {
+        LogSearch   logSearch = getLogSearch(request.getIndexName());
+        if ( logSearch == null )
+        {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+
+        SearchId    searchHandle;
+        try
+        {
+            String      id = logSearch.cacheSearch(toSearchKey(request), request.getReuseHandle());
             searchHandle = new SearchId(id);
         }
         finally
@@ -342,6 +704,103 @@ public class IndexResource
         return Response.ok(searchHandle).build();
     }
 
+    private SearchKey toSearchKey(SearchRequest request)
+    {
+        Date        startDate = null;
+        Date        endDate = null;
+        if ( (request.getFirstDate() != null) && (request.getSecondDate() != null) )
+        {
+            if ( request.getFirstDate().before(request.getSecondDate()) )
+            {
+                startDate = request.getFirstDate();
+                endDate = request.getSecondDate();
+            }
+            else
+            {
+                startDate = request.getSecondDate();
+                endDate = request.getFirstDate();
+            }
+            Calendar      endOfDayEndDate = Calendar.getInstance();
+            endOfDayEndDate.setTime(endDate);
+            endOfDayEndDate.set(Calendar.HOUR_OF_DAY, 23);
+            endOfDayEndDate.set(Calendar.MINUTE, 59);
+            endOfDayEndDate.set(Calendar.SECOND, 59);
+            endOfDayEndDate.set(Calendar.MILLISECOND, 0);
+            endDate = endOfDayEndDate.getTime();
+        }
+        Long        firstZxid = parseHex(request.getFirstZxid());
+        Long        secondZxid = parseHex(request.getSecondZxid());
+        if ( (firstZxid != null) || (secondZxid != null) )
+        {
+            // a single zxid matches just that transaction
+            firstZxid = (firstZxid != null) ? firstZxid : secondZxid;
+            secondZxid = (secondZxid != null) ? secondZxid : firstZxid;
+        }
+        else
+        {
+            firstZxid = SearchKey.NO_ZXID;
+            secondZxid = SearchKey.NO_ZXID;
+        }
+        return new SearchKey(request.getPathPrefix(), request.getDataContains(), request.getOperationType(), startDate, endDate, firstZxid, secondZxid, parseHex(request.getSessionId()), request.getMaxResults());
+    }
+
+    private static ObjectNode toJson(IndexJob job)
+    {
+        ObjectNode      phases = JsonNodeFactory.instance.objectNode();
+        for ( IndexJob.Phase phase : IndexJob.Phase.values() )
+        {
+            phases.put(phase.name().toLowerCase(), job.getPhaseMs(phase));
+        }
+
+        ObjectNode      node = JsonNodeFactory.instance.objectNode();
+        node.put("id", job.getId());
+        node.put("description", job.getDescription());
+        node.put("state", job.getState().name());
+        node.put("errorMessage", job.getErrorMessage());
+        node.put("created", job.getCreatedMs());
+        node.put("elapsedMs", job.getElapsedMs());
+        node.put("etaMs", job.getEtaMs());
+        node.put("sources", job.getSourceQty());
+        node.put("completedSources", job.getCompletedSourceQty());
+        node.put("bytes", job.getByteQty());
+        node.put("transactions", job.getTransactionQty());
+        node.put("documents", job.getDocumentQty());
+        node.put("documentsPerSecond", job.getDocumentsPerSecond());
+        node.put("phaseMs", phases);
+        return node;
+    }
+
+    static Long parseHex(String value)
+    {
+        if ( value == null )
+        {
+            return null;
+        }
+        value = value.trim();
+        if ( value.startsWith("0x") || value.startsWith("0X") )
+        {
+            value = value.substring(2);
+        }
+        if ( value.length() == 0 )
+        {
+            return null;
+        }
+
+        try
+        {
+            return UnsignedLongs.parseUnsignedLong(value, 16);  // session ids use the high bit
+        }
+        catch ( NumberFormatException e )
+        {
+            throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST).entity("Not a hex value: " + value).build());
+        }
+    }
+
+    private static String toHex(long value)
+    {
+        return (value != SearchItem.UNKNOWN) ? ("0x" + Long.toHexString(value)) : "";
+    }
+
     private String trimPath(String path)
     {
         if ( path.length() > MAX_PATH )
@@ -398,6 +857,31 @@ public class IndexResource
                 {
                     return "SetData";
                 }
+
+                case CREATE_SESSION:
+                {
+                    return "Create-Session";
+                }
+
+                case CLOSE_SESSION:
+                {
+                    return "Close-Session";
+                }
+
+                case SET_ACL:
+                {
+                    return "SetACL";
+                }
+
+                case CHECK:
+                {
+                    return "Check";
+                }
+
+                case ERROR:
+                {
+                    return "Error";
+                }
             }
         }
         return "n/a";
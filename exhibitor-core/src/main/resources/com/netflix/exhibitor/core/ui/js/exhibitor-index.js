@@ -22,6 +22,19 @@ function initRestoreUI()
             return false;
         });
 
+    $('#restore-update-button').button({
+        icons:{
+            primary:"ui-icon-refresh"
+        }
+    }).click(function(){
+            okCancelDialog("Update Index", "Transactions newer than the selected index will be appended to it. Check the log for the index progress.", function ()
+            {
+                var radio = $('input:radio:checked[name="restore-item-radio"]');
+                $.getJSON(URL_UPDATE_INDEX_BASE + radio.val() + '?ts=' + getNow());
+            });
+            return false;
+        });
+
     $('#restore-delete-button').button({
         icons:{
             primary:"ui-icon-trash"
@@ -144,6 +157,7 @@ function updateRestoreItems(selectedRadio)
             }
 
             $("#restore-open-button").button((itemsTab.length > 0) ? "enable" : "disable");
+            $("#restore-update-button").button((itemsTab.length > 0) ? "enable" : "disable");
             $("#restore-delete-button").button((itemsTab.length > 0) ? "enable" : "disable");
         }
     });
@@ -156,6 +170,7 @@ function applySelectedValue(data)
 
     $('#index-query-results-selected-path').html(data.path);
     $('#index-query-results-selected-date').html(data.date);
+    $('#index-query-results-selected-txn').html(data.zxid ? (data.zxid + " / " + data.sessionId) : "");
     $('#index-query-results-selected-data-bytes').html(data.dataBytes);
     $('#index-query-results-selected-data-string').html(data.dataAsString);
 }
@@ -190,7 +205,9 @@ function buildViewIndexTable(indexName, indexHandle)
         date: "",
         path: "",
         dataBytes: "",
-        dataAsString: ""
+        dataAsString: "",
+        zxid: "",
+        sessionId: ""
     };
     applySelectedValue(emptyData);
     var selectedRowId = -1;
@@ -234,8 +251,11 @@ function buildViewIndexTable(indexName, indexHandle)
             $(this).addClass('row_selected');
 
             var docId = selectedRowId.split('-').pop();
-            $.getJSON(URL_GET_INDEX_BASE + indexName + "/" + docId + '?ts=' + getNow(), applySelectedValue);
-            $('#index-query-clear-restore-button').button("option", "disabled", false);
+            $.getJSON(URL_GET_INDEX_BASE + indexName + "/" + docId + '?ts=' + getNow(), function(data){
+                applySelectedValue(data);
+                // only creates, deletes and set datas can be restored
+                $('#index-query-clear-restore-button').button("option", "disabled", (data.type > 3));
+            });
         }
     });
 
@@ -320,6 +340,10 @@ function buildSearchRequestFromFilter(indexName, indexHandle)
     searchRequest.indexName = indexName;
     searchRequest.reuseHandle = indexHandle;
         searchRequest.pathPrefix = $('#index-query-path').val().trim();
+    searchRequest.dataContains = $('#index-query-data').val();
+    searchRequest.firstZxid = $('#index-query-zxid-from').val();
+    searchRequest.secondZxid = $('#index-query-zxid-to').val();
+    searchRequest.sessionId = $('#index-query-session').val();
     searchRequest.operationType = ($('#index-query-type').val() === "") ? null : $('#index-query-type').val();
     searchRequest.maxResults = $('#index-query-max').val();
     searchRequest.firstDate = $('#index-query-from').datepicker("getDate");
@@ -349,6 +373,7 @@ function openIndex(indexName)
     var searchRequest = {};
     searchRequest.indexName = indexName;
     searchRequest.pathPrefix = "";
+    searchRequest.dataContains = "";
     searchRequest.operationType = -1;
     searchRequest.reuseHandle = null;
     searchRequest.maxResults = 0;
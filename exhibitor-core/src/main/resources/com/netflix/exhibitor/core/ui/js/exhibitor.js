@@ -5,6 +5,7 @@ var UPDATE_STATE_PERIOD = 2500;
 var URL_GET_BACKUPS = "../index/get-backups";
 var URL_NEW_INDEX = "../index/new-index";
 var URL_DELETE_INDEX_BASE = "../index/";
+var URL_UPDATE_INDEX_BASE = "../index/update-index/";
 var URL_INDEX_DATA_BASE = "../index/dataTable/";
 var URL_GET_INDEX_BASE = "../index/get/";
 var URL_GET_INDEXES = "../index/indexed-logs";
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.io.Files;
+import java.io.File;
+
+/**
+ * Compares an index build and reading every payload back ({@link LogSearch#toData(int)}) with
+ * blob compression on and off. Not part of the test suite - run main() by hand.
+ */
+public class BlobCompressionBenchmark
+{
+    private static final int        LOG_QTY = 10;
+    private static final int        TXNS_PER_LOG = 5000;
+    private static final int        DATA_BYTES = 2048;
+    private static final int        READ_PASSES = 5;
+    private static final int        RUNS = 3;
+
+    public static void main(String[] args) throws Exception
+    {
+        File        tempDirectory = Files.createTempDir();
+        try
+        {
+            File            logDirectory = new File(tempDirectory, "logs");
+            if ( !logDirectory.mkdirs() )
+            {
+                throw new Exception("Could not make: " + logDirectory);
+            }
+            LogFileMaker    maker = new LogFileMaker(logDirectory, 1, 1000000);
+            for ( int i = 0; i < LOG_QTY; ++i )
+            {
+                maker.writeDataLog(TXNS_PER_LOG, DATA_BYTES);
+            }
+
+            run(logDirectory, new File(tempDirectory, "warmup"), BlobStoreWriter.COMPRESS_MIN_BYTES, false);
+            run(logDirectory, new File(tempDirectory, "warmup"), 0, false);
+            for ( int i = 0; i < RUNS; ++i )
+            {
+                run(logDirectory, new File(tempDirectory, "compressed"), BlobStoreWriter.COMPRESS_MIN_BYTES, true);
+                run(logDirectory, new File(tempDirectory, "uncompressed"), 0, true);
+            }
+        }
+        finally
+        {
+            TestIndexBuilder.deleteDirectory(tempDirectory);
+        }
+    }
+
+    private static void run(File logDirectory, File indexDirectory, int compressMinBytes, boolean report) throws Exception
+    {
+        TestIndexBuilder.deleteDirectory(indexDirectory);
+
+        long            buildStart = System.nanoTime();
+        IndexBuilder    builder = new IndexBuilder(indexDirectory);
+        builder.setBlobCompressMinBytes(compressMinBytes);
+        TestIndexBuilder.addAll(builder, LogFileMaker.getLogFiles(logDirectory));
+        long            buildMs = (System.nanoTime() - buildStart) / 1000000;
+
+        LogSearch       logSearch = new LogSearch(indexDirectory);
+        long            readBytes = 0;
+        long            readStart = System.nanoTime();
+        try
+        {
+            for ( int pass = 0; pass < READ_PASSES; ++pass )
+            {
+                for ( int docId = 0; docId < logSearch.getDocQty(); ++docId )
+                {
+                    readBytes += logSearch.toData(docId).length;
+                }
+            }
+        }
+        finally
+        {
+            logSearch.close();
+        }
+        long            readMs = Math.max(1, (System.nanoTime() - readStart) / 1000000);
+
+        if ( report )
+        {
+            System.out.println(String.format("compressMinBytes=%d build=%d ms blobs=%d bytes toData=%d ms (%d MB/s)", compressMinBytes, buildMs, BlobStore.getBlobsFile(indexDirectory).length(), readMs, (readBytes / (1024 * 1024) * 1000) / readMs));
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import org.apache.jute.BinaryOutputArchive;
+import org.apache.jute.Record;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.server.persistence.FileTxnLog;
+import org.apache.zookeeper.txn.CheckVersionTxn;
+import org.apache.zookeeper.txn.CreateSessionTxn;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.DeleteTxn;
+import org.apache.zookeeper.txn.ErrorTxn;
+import org.apache.zookeeper.txn.MultiTxn;
+import org.apache.zookeeper.txn.SetACLTxn;
+import org.apache.zookeeper.txn.SetDataTxn;
+import org.apache.zookeeper.txn.Txn;
+import org.apache.zookeeper.txn.TxnHeader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Writes real ZooKeeper txn logs for tests
+ */
+class LogFileMaker
+{
+    private final File directory;
+    private long zxid;
+    private long time;
+    private long sessionId = 0x1234L;
+    private int cxid = 1;
+
+    /**
+     * Time of the first txn written by {@link #makeIndex(File, int)}
+     */
+    static final long START_TIME = 1000000;
+
+    static
+    {
+        FileTxnLog.setPreallocSize(64 * 1024);
+    }
+
+    LogFileMaker(File directory, long startZxid, long startTime)
+    {
+        this.directory = directory;
+        this.zxid = startZxid;
+        this.time = startTime;
+    }
+
+    /**
+     * Write a new log file containing <code>qty</code> create/setData/delete triples
+     *
+     * @param qty number of triples
+     * @return number of transactions written
+     * @throws Exception errors
+     */
+    int writeLog(int qty) throws Exception
+    {
+        FileTxnLog      log = openLog();
+        try
+        {
+            return appendTriples(log, qty);
+        }
+        finally
+        {
+            log.close();
+        }
+    }
+
+    /**
+     * @return a log that the next {@link #appendTriples(FileTxnLog, int)} starts a new file in
+     */
+    FileTxnLog openLog()
+    {
+        return new FileTxnLog(directory);
+    }
+
+    /**
+     * Append and commit (flush) <code>qty</code> create/setData/delete triples to the given open log
+     *
+     * @param log log
+     * @param qty number of triples
+     * @return number of transactions written
+     * @throws Exception errors
+     */
+    int appendTriples(FileTxnLog log, int qty) throws Exception
+    {
+        for ( int i = 0; i < qty; ++i )
+        {
+            String      path = "/test/node-" + zxid;
+            append(log, ZooDefs.OpCode.create, new CreateTxn(path, ("create " + i).getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, false, 1));
+            append(log, ZooDefs.OpCode.setData, new SetDataTxn(path, ("set " + i).getBytes(), 1));
+            append(log, ZooDefs.OpCode.delete, new DeleteTxn(path));
+        }
+        log.commit();
+        return qty * 3;
+    }
+
+    /**
+     * Write a new log file of <code>qty</code> setData txns. Each payload is a distinct JSON like
+     * document of about <code>dataBytes</code> bytes.
+     *
+     * @param qty number of txns
+     * @param dataBytes approximate payload size
+     * @return number of transactions written
+     * @throws Exception errors
+     */
+    int writeDataLog(int qty, int dataBytes) throws Exception
+    {
+        FileTxnLog      log = openLog();
+        try
+        {
+            for ( int i = 0; i < qty; ++i )
+            {
+                StringBuilder   data = new StringBuilder("[");
+                for ( int field = 0; data.length() < dataBytes; ++field )
+                {
+                    data.append("{\"zxid\":").append(zxid).append(",\"field\":\"field-").append(field).append("\",\"value\":").append(field * 31).append("},");
+                }
+                data.setCharAt(data.length() - 1, ']');
+                append(log, ZooDefs.OpCode.setData, new SetDataTxn("/test/data-" + (i % 100), data.toString().getBytes(), i));
+            }
+            log.commit();
+        }
+        finally
+        {
+            log.close();
+        }
+        return qty;
+    }
+
+    /**
+     * Write a new log file with one of each of the other txn types: createSession, a multi
+     * (create, setData, check), setACL, error and closeSession
+     *
+     * @param path path used by the multi and setACL
+     * @return number of documents the log should index to
+     * @throws Exception errors
+     */
+    int writeMixedLog(String path) throws Exception
+    {
+        FileTxnLog      log = new FileTxnLog(directory);
+        try
+        {
+            append(log, ZooDefs.OpCode.createSession, new CreateSessionTxn(30000));
+            MultiTxn        multi = new MultiTxn(Arrays.asList
+            (
+                toTxn(ZooDefs.OpCode.create, new CreateTxn(path, "multi".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, false, 1)),
+                toTxn(ZooDefs.OpCode.setData, new SetDataTxn(path, "multi set".getBytes(), 1)),
+                toTxn(ZooDefs.OpCode.check, new CheckVersionTxn(path, 1))
+            ));
+            append(log, ZooDefs.OpCode.multi, multi);
+            append(log, ZooDefs.OpCode.setACL, new SetACLTxn(path, ZooDefs.Ids.READ_ACL_UNSAFE, 2));
+            append(log, ZooDefs.OpCode.error, new ErrorTxn(-101));
+            append(log, ZooDefs.OpCode.closeSession, null);
+            log.commit();
+        }
+        finally
+        {
+            log.close();
+        }
+        return 7;
+    }
+
+    /**
+     * @param sessionId session id for subsequently written txns
+     */
+    void setSessionId(long sessionId)
+    {
+        this.sessionId = sessionId;
+    }
+
+    long getLastZxid()
+    {
+        return zxid - 1;
+    }
+
+    private static Txn toTxn(int type, Record record) throws IOException
+    {
+        ByteArrayOutputStream   bytes = new ByteArrayOutputStream();
+        record.serialize(BinaryOutputArchive.getArchive(bytes), "txn");
+        return new Txn(type, bytes.toByteArray());
+    }
+
+    private void append(FileTxnLog log, int type, Record txn) throws Exception
+    {
+        log.append(new TxnHeader(sessionId, cxid++, zxid++, time, type), txn);
+        time += 1000;   // IndexMetaData stores second resolution
+    }
+
+    /**
+     * Fixture for the path prefix tests: write a log of <code>qty</code> create/setData/delete triples to
+     * {@link #getLogDirectory(File)} and index it to <code>tempDirectory/index</code>
+     *
+     * @param tempDirectory the test's temp directory
+     * @param qty number of triples
+     * @return the index directory
+     * @throws Exception errors
+     */
+    static File makeIndex(File tempDirectory, int qty) throws Exception
+    {
+        File            logDirectory = getLogDirectory(tempDirectory);
+        if ( !logDirectory.mkdirs() )
+        {
+            throw new IOException("Could not make: " + logDirectory);
+        }
+
+        new LogFileMaker(logDirectory, 1, START_TIME).writeLog(qty);
+        return buildIndex(logDirectory, new File(tempDirectory, "index"));
+    }
+
+    /**
+     * @param tempDirectory the test's temp directory
+     * @return the directory {@link #makeIndex(File, int)} writes logs to
+     */
+    static File getLogDirectory(File tempDirectory)
+    {
+        return new File(tempDirectory, "logs");
+    }
+
+    /**
+     * Build an index of all the logs in the given directory
+     *
+     * @param logDirectory logs
+     * @param indexDirectory index to create
+     * @return the index directory
+     * @throws Exception errors
+     */
+    static File buildIndex(File logDirectory, File indexDirectory) throws Exception
+    {
+        return buildIndex(logDirectory, indexDirectory, 0);
+    }
+
+    /**
+     * Build an index of all the logs in the given directory
+     *
+     * @param logDirectory logs
+     * @param indexDirectory index to create
+     * @param dataTextMaxChars max characters of each payload indexed as data text - 0 for none
+     * @return the index directory
+     * @throws Exception errors
+     */
+    static File buildIndex(File logDirectory, File indexDirectory, int dataTextMaxChars) throws Exception
+    {
+        IndexBuilder    builder = new IndexBuilder(indexDirectory, 1, null, dataTextMaxChars);
+        try
+        {
+            builder.open();
+            for ( File log : getLogFiles(logDirectory) )
+            {
+                MappedLogFile   mappedLogFile = new MappedLogFile(log);
+                try
+                {
+                    builder.add(mappedLogFile.getStream());
+                }
+                finally
+                {
+                    mappedLogFile.close();
+                }
+            }
+            builder.writeMetaData();
+        }
+        finally
+        {
+            builder.close();
+        }
+        return indexDirectory;
+    }
+
+    static File[] getLogFiles(File directory)
+    {
+        File[]  files = directory.listFiles();
+        if ( files != null )
+        {
+            Arrays.sort(files);
+        }
+        return files;
+    }
+}
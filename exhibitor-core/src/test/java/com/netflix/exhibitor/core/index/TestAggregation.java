@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.io.Files;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.File;
+
+public class TestAggregation
+{
+    private static final long START_TIME = 1000000;
+
+    private File        tempDirectory;
+    private File        indexDirectory;
+
+    @BeforeMethod
+    public void         setup() throws Exception
+    {
+        tempDirectory = Files.createTempDir();
+        File            logDirectory = new File(tempDirectory, "logs");
+        Assert.assertTrue(logDirectory.mkdirs());
+
+        LogFileMaker    maker = new LogFileMaker(logDirectory, 1, START_TIME);
+        maker.writeLog(20);     // 60 txns, one a second
+        maker.writeMixedLog("/other/multi");
+
+        indexDirectory = LogFileMaker.buildIndex(logDirectory, new File(tempDirectory, "index"));
+    }
+
+    @AfterMethod
+    public void         tearDown()
+    {
+        TestIndexBuilder.deleteDirectory(tempDirectory);
+    }
+
+    @Test
+    public void         testPrefix()
+    {
+        Assert.assertEquals(AggregationCollector.getPrefix("/a/b/c", 1), "/a");
+        Assert.assertEquals(AggregationCollector.getPrefix("/a/b/c", 2), "/a/b");
+        Assert.assertEquals(AggregationCollector.getPrefix("/a/b/c", 5), "/a/b/c");
+        Assert.assertEquals(AggregationCollector.getPrefix("/", 1), "/");
+    }
+
+    @Test
+    public void         testAggregate() throws Exception
+    {
+        LogSearch       logSearch = new LogSearch(indexDirectory);
+        try
+        {
+            Aggregation     aggregation = logSearch.aggregate(null, START_TIME, 10000, 6, 1, 10);
+            Assert.assertEquals(aggregation.getTotalHits(), 67);
+            Assert.assertEquals(aggregation.getBucketCounts(), new int[]{10, 10, 10, 10, 10, 10});  // the mixed log is after the last bucket
+
+            Assert.assertEquals(aggregation.getTopPaths().size(), 2);   // session/error txns have no path
+            Aggregation.PathCount   test = aggregation.getTopPaths().get(0);
+            Assert.assertEquals(test.getPath(), "/test");
+            Assert.assertEquals(test.getTotal(), 60);
+            Assert.assertEquals(test.getCount(EntryTypes.SET_DATA), 20);
+            Assert.assertEquals(test.getCount(EntryTypes.CREATE_EPHEMERAL), 0);
+            Aggregation.PathCount   other = aggregation.getTopPaths().get(1);
+            Assert.assertEquals(other.getPath(), "/other");
+            Assert.assertEquals(other.getTotal(), 4);
+            Assert.assertEquals(other.getCount(EntryTypes.SET_ACL), 1);
+
+            aggregation = logSearch.aggregate(QueryBuilder.builder().operationType(EntryTypes.DELETE.getId()).build(QueryBuilder.Type.AND), START_TIME, 30000, 2, 2, 3);
+            Assert.assertEquals(aggregation.getTotalHits(), 20);
+            Assert.assertEquals(aggregation.getBucketCounts(), new int[]{10, 10});
+            Assert.assertEquals(aggregation.getTopPaths().size(), 3);
+            for ( Aggregation.PathCount pathCount : aggregation.getTopPaths() )
+            {
+                Assert.assertEquals(pathCount.getTotal(), 1);
+                Assert.assertEquals(pathCount.getCount(EntryTypes.DELETE), 1);
+                Assert.assertTrue(pathCount.getPath().startsWith("/test/node-"));
+            }
+        }
+        finally
+        {
+            logSearch.close();
+        }
+    }
+
+    @Test
+    public void         testWithoutColumns() throws Exception
+    {
+        Assert.assertTrue(IndexColumns.getColumnsFile(indexDirectory).delete());
+
+        LogSearch       logSearch = new LogSearch(indexDirectory);
+        try
+        {
+            Aggregation     aggregation = logSearch.aggregate(null, START_TIME, 10000, 6, 1, 10);
+            Assert.assertEquals(aggregation.getTotalHits(), 67);
+            Assert.assertEquals(aggregation.getBucketCounts(), new int[]{10, 10, 10, 10, 10, 10});
+            Assert.assertEquals(aggregation.getTopPaths().get(0).getPath(), "/test");
+            Assert.assertEquals(aggregation.getTopPaths().get(0).getCount(EntryTypes.DELETE), 20);
+            Assert.assertEquals(aggregation.getTopPaths().get(1).getPath(), "/other");
+            Assert.assertEquals(aggregation.getTopPaths().get(1).getTotal(), 4);
+        }
+        finally
+        {
+            logSearch.close();
+        }
+    }
+}
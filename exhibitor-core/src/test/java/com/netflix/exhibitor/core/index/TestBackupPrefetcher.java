@@ -0,0 +1,174 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.netflix.exhibitor.core.backup.BackupMetaData;
+import com.netflix.exhibitor.core.backup.BackupStream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+public class TestBackupPrefetcher
+{
+    @Test
+    public void         testPrefetchIsBounded() throws Exception
+    {
+        final AtomicInteger     fetchedQty = new AtomicInteger(0);
+        List<BackupMetaData>    backups = Lists.newArrayList();
+        for ( int i = 0; i < 10; ++i )
+        {
+            backups.add(new BackupMetaData("backup-" + i, i));
+        }
+
+        BackupPrefetcher    prefetcher = new BackupPrefetcher
+        (
+            new BackupPrefetcher.BackupSource()
+            {
+                @Override
+                public BackupStream getBackupStream(BackupMetaData metaData) throws Exception
+                {
+                    fetchedQty.incrementAndGet();
+                    if ( metaData.getName().equals("backup-3") )
+                    {
+                        return null;    // deleted since it was listed
+                    }
+                    byte[]      bytes = metaData.getName().getBytes(Charsets.UTF_8);
+                    if ( (metaData.getModifiedDate() % 2) == 0 )
+                    {
+                        bytes = gzip(bytes);
+                    }
+                    return stream(bytes);
+                }
+            },
+            backups,
+            3
+        );
+        try
+        {
+            prefetcher.start();
+            List<File>      files = Lists.newArrayList();
+            for ( int i = 0; i < backups.size(); ++i )
+            {
+                File        file = prefetcher.take(i);
+                if ( i == 3 )
+                {
+                    Assert.assertNull(file);
+                }
+                else
+                {
+                    Assert.assertEquals(Files.toString(file, Charsets.UTF_8), "backup-" + i);
+                    Assert.assertTrue(fetchedQty.get() <= (i + 3));   // only 3 ahead of what was released
+                    files.add(file);
+                }
+                prefetcher.release(i, file);
+            }
+            Assert.assertEquals(fetchedQty.get(), backups.size());
+            for ( File file : files )
+            {
+                Assert.assertFalse(file.exists());
+            }
+        }
+        finally
+        {
+            prefetcher.close();
+        }
+    }
+
+    @Test
+    public void         testErrorsAndClose() throws Exception
+    {
+        List<BackupMetaData>    backups = Lists.newArrayList(new BackupMetaData("good", 1), new BackupMetaData("bad", 2));
+        BackupPrefetcher        prefetcher = new BackupPrefetcher
+        (
+            new BackupPrefetcher.BackupSource()
+            {
+                @Override
+                public BackupStream getBackupStream(BackupMetaData metaData) throws Exception
+                {
+                    if ( metaData.getName().equals("bad") )
+                    {
+                        throw new IOException("S3 error");
+                    }
+                    return stream("good".getBytes(Charsets.UTF_8));
+                }
+            },
+            backups,
+            2
+        );
+
+        File        file;
+        try
+        {
+            prefetcher.start();
+            try
+            {
+                prefetcher.take(1);
+                Assert.fail();
+            }
+            catch ( IOException e )
+            {
+                Assert.assertEquals(e.getMessage(), "S3 error");
+            }
+
+            file = prefetcher.take(0);
+            Assert.assertTrue(file.exists());
+        }
+        finally
+        {
+            prefetcher.close();
+        }
+        Assert.assertFalse(file.exists());  // close deletes what wasn't released
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException
+    {
+        ByteArrayOutputStream   out = new ByteArrayOutputStream();
+        GZIPOutputStream        gzip = new GZIPOutputStream(out);
+        gzip.write(bytes);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    private static BackupStream stream(byte[] bytes)
+    {
+        final InputStream   in = new ByteArrayInputStream(bytes);
+        return new BackupStream()
+        {
+            @Override
+            public InputStream getStream()
+            {
+                return in;
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+                in.close();
+            }
+        };
+    }
+}
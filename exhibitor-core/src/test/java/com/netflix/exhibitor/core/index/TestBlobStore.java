@@ -0,0 +1,259 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.apache.curator.utils.CloseableUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+public class TestBlobStore
+{
+    private File        tempDirectory;
+
+    @BeforeMethod
+    public void         setup()
+    {
+        tempDirectory = Files.createTempDir();
+    }
+
+    @AfterMethod
+    public void         tearDown()
+    {
+        File[]      files = tempDirectory.listFiles();
+        if ( files != null )
+        {
+            for ( File file : files )
+            {
+                Assert.assertTrue(file.delete());
+            }
+        }
+        Assert.assertTrue(tempDirectory.delete());
+    }
+
+    @Test
+    public void         testDuplicatesStoredOnce() throws Exception
+    {
+        byte[]          payload = new byte[10000];
+        for ( int i = 0; i < payload.length; ++i )
+        {
+            payload[i] = (byte)i;
+        }
+
+        BlobStoreWriter writer = new BlobStoreWriter(tempDirectory, false, 0);
+        byte[]          hash;
+        byte[]          otherHash;
+        try
+        {
+            hash = writer.put(payload);
+            for ( int i = 0; i < 100; ++i )
+            {
+                Assert.assertEquals(writer.put(payload.clone()), hash);
+            }
+            otherHash = writer.put("other".getBytes(Charsets.UTF_8));
+            Assert.assertEquals(writer.getBlobQty(), 2);
+            writer.flush();
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(writer);
+        }
+
+        File            file = BlobStore.getBlobsFile(tempDirectory);
+        Assert.assertEquals(file.length(), BlobStore.HEADER_SIZE + (2 * BlobStore.RECORD_HEADER_SIZE) + payload.length + "other".length());
+
+        BlobStore       store = BlobStore.open(tempDirectory);
+        try
+        {
+            Assert.assertEquals(store.get(hash), payload);
+            Assert.assertEquals(new String(store.get(otherHash), Charsets.UTF_8), "other");
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(store);
+        }
+    }
+
+    @Test
+    public void         testAppendAndAbort() throws Exception
+    {
+        BlobStoreWriter writer = new BlobStoreWriter(tempDirectory, false);
+        byte[]          hash = writer.put("one".getBytes(Charsets.UTF_8));
+        writer.flush();
+        writer.close();
+
+        File            file = BlobStore.getBlobsFile(tempDirectory);
+        long            length = file.length();
+
+        writer = new BlobStoreWriter(tempDirectory, true);
+        Assert.assertEquals(writer.put("one".getBytes(Charsets.UTF_8)), hash);
+        Assert.assertEquals(writer.getBlobQty(), 1);
+        writer.put("two".getBytes(Charsets.UTF_8));
+        writer.abort();
+        Assert.assertEquals(file.length(), length);
+
+        BlobStore       store = BlobStore.open(tempDirectory);
+        try
+        {
+            Assert.assertEquals(new String(store.get(hash), Charsets.UTF_8), "one");
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(store);
+        }
+    }
+
+    @Test
+    public void         testTruncatedRecordIgnored() throws Exception
+    {
+        BlobStoreWriter writer = new BlobStoreWriter(tempDirectory, false);
+        byte[]          hash = writer.put("one".getBytes(Charsets.UTF_8));
+        writer.flush();
+        long            length = BlobStore.getBlobsFile(tempDirectory).length();
+        writer.put("two".getBytes(Charsets.UTF_8));
+        writer.close();
+
+        // simulate a build that died mid write
+        RandomAccessFile    file = new RandomAccessFile(BlobStore.getBlobsFile(tempDirectory), "rw");
+        try
+        {
+            file.setLength(file.length() - 1);
+        }
+        finally
+        {
+            file.close();
+        }
+
+        writer = new BlobStoreWriter(tempDirectory, true);
+        try
+        {
+            Assert.assertEquals(writer.getBlobQty(), 1);
+            Assert.assertEquals(BlobStore.getBlobsFile(tempDirectory).length(), length);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(writer);
+        }
+
+        BlobStore       store = BlobStore.open(tempDirectory);
+        try
+        {
+            Assert.assertEquals(new String(store.get(hash), Charsets.UTF_8), "one");
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(store);
+        }
+    }
+
+    @Test
+    public void         testCompression() throws Exception
+    {
+        StringBuilder   json = new StringBuilder("[");
+        for ( int i = 0; i < 500; ++i )
+        {
+            json.append("{\"host\":\"server-").append(i % 10).append(".example.com\",\"port\":2181,\"weight\":").append(i).append("},");
+        }
+        byte[]          payload = json.append("{}]").toString().getBytes(Charsets.UTF_8);
+        byte[]          random = new byte[payload.length];
+        new Random(0).nextBytes(random);
+        byte[]          small = "{\"host\":\"server-1\"}".getBytes(Charsets.UTF_8);
+
+        BlobStoreWriter writer = new BlobStoreWriter(tempDirectory, false, 512);
+        byte[]          payloadHash;
+        byte[]          randomHash;
+        byte[]          smallHash;
+        try
+        {
+            payloadHash = writer.put(payload);
+            randomHash = writer.put(random);
+            smallHash = writer.put(small);
+            writer.flush();
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(writer);
+        }
+
+        // the JSON is compressed at least 5x, random bytes and small payloads are stored as is
+        long            uncompressedLength = BlobStore.HEADER_SIZE + (3 * BlobStore.RECORD_HEADER_SIZE) + random.length + small.length;
+        long            length = BlobStore.getBlobsFile(tempDirectory).length();
+        Assert.assertTrue(length > uncompressedLength, Long.toString(length));
+        Assert.assertTrue(length < (uncompressedLength + (payload.length / 5)), Long.toString(length));
+
+        BlobStore       store = BlobStore.open(tempDirectory);
+        try
+        {
+            Assert.assertEquals(store.get(payloadHash), payload);
+            Assert.assertEquals(store.get(randomHash), random);
+            Assert.assertEquals(store.get(smallHash), small);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(store);
+        }
+    }
+
+    @Test
+    public void         testReadVersion1() throws Exception
+    {
+        byte[]              payload = "one".getBytes(Charsets.UTF_8);
+        byte[]              hash = BlobStore.hash(payload).asBytes();
+        DataOutputStream    out = new DataOutputStream(new FileOutputStream(BlobStore.getBlobsFile(tempDirectory)));
+        try
+        {
+            out.writeInt(BlobStore.MAGIC);
+            out.writeInt(1);
+            out.write(hash);
+            out.writeInt(payload.length);
+            out.write(payload);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(out);
+        }
+
+        BlobStoreWriter     writer = new BlobStoreWriter(tempDirectory, true);
+        try
+        {
+            Assert.assertEquals(writer.put(payload), hash);
+            Assert.assertEquals(writer.getBlobQty(), 1);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(writer);
+        }
+
+        BlobStore           store = BlobStore.open(tempDirectory);
+        try
+        {
+            Assert.assertEquals(new String(store.get(hash), Charsets.UTF_8), "one");
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(store);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.search.Query;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.File;
+import java.util.List;
+
+public class TestDataContains
+{
+    private File        tempDirectory;
+    private File        logDirectory;
+    private File        indexDirectory;
+
+    @BeforeMethod
+    public void         setup() throws Exception
+    {
+        tempDirectory = Files.createTempDir();
+        logDirectory = new File(tempDirectory, "logs");
+        Assert.assertTrue(logDirectory.mkdirs());
+
+        LogFileMaker    maker = new LogFileMaker(logDirectory, 1, 1000000);
+        maker.writeLog(20);
+
+        indexDirectory = LogFileMaker.buildIndex(logDirectory, new File(tempDirectory, "index"), 1024);
+    }
+
+    @AfterMethod
+    public void         tearDown()
+    {
+        TestIndexBuilder.deleteDirectory(tempDirectory);
+    }
+
+    @Test
+    public void         testContains() throws Exception
+    {
+        LogSearch       logSearch = new LogSearch(indexDirectory);
+        try
+        {
+            Assert.assertEquals(count(logSearch, "create 7"), 1);
+            Assert.assertEquals(count(logSearch, "SET 1"), 11);     // set 1, set 10 - set 19
+            Assert.assertEquals(count(logSearch, " 1"), 22);
+            Assert.assertEquals(count(logSearch, "reate"), 20);
+            Assert.assertEquals(count(logSearch, "et"), 20);
+            Assert.assertEquals(count(logSearch, "9"), 4);          // only at the end of the data
+            Assert.assertEquals(count(logSearch, "set 19"), 1);
+            Assert.assertEquals(count(logSearch, "set 190"), 0);
+            Assert.assertEquals(count(logSearch, "zzz"), 0);
+
+            Query       combined = QueryBuilder.builder().dataContains("1").operationType(EntryTypes.SET_DATA.getId()).build(QueryBuilder.Type.AND);
+            Assert.assertEquals(logSearch.searchDocIds(combined, Integer.MAX_VALUE).length, 11);
+        }
+        finally
+        {
+            logSearch.close();
+        }
+    }
+
+    @Test
+    public void         testNotIndexedByDefault() throws Exception
+    {
+        LogSearch       logSearch = new LogSearch(LogFileMaker.buildIndex(logDirectory, new File(tempDirectory, "default")));
+        try
+        {
+            Assert.assertEquals(count(logSearch, "create 7"), 0);
+            Assert.assertEquals(count(logSearch, "et"), 0);
+        }
+        finally
+        {
+            logSearch.close();
+        }
+    }
+
+    private int         count(LogSearch logSearch, String text) throws Exception
+    {
+        Query       query = QueryBuilder.builder().dataContains(text).build(QueryBuilder.Type.AND);
+        return logSearch.searchDocIds(query, Integer.MAX_VALUE).length;
+    }
+
+    @Test
+    public void         testGrams() throws Exception
+    {
+        DataGramTokenStream     stream = new DataGramTokenStream(5);
+        Assert.assertTrue(stream.setData("AbCdefg".getBytes()));
+        Assert.assertEquals(tokens(stream), new String[]{"abc", "bcd", "cde", "de", "e"});
+        Assert.assertFalse(stream.setData(new byte[]{1, 0, 2}));
+        Assert.assertFalse(stream.setData(new byte[0]));
+    }
+
+    static String[]     tokens(PathAncestorsTokenStream stream, String path) throws Exception
+    {
+        stream.setPath(path);
+        return tokens(stream);
+    }
+
+    private static String[] tokens(TokenStream stream) throws Exception
+    {
+        List<String>        tokens = Lists.newArrayList();
+        CharTermAttribute   term = stream.getAttribute(CharTermAttribute.class);
+        stream.reset();
+        while ( stream.incrementToken() )
+        {
+            tokens.add(term.toString());
+        }
+        return tokens.toArray(new String[tokens.size()]);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class TestFederatedSearch
+{
+    @Test
+    public void         testKeyEncoding() throws Exception
+    {
+        SearchKey       key = new SearchKey("/a/b", "Some Data", EntryTypes.SET_DATA.getId(), new Date(20000), new Date(10000), 5, 3, 0x8000000000000001L, 50);
+        Assert.assertEquals(FederatedSearch.decodeKey(FederatedSearch.encodeKey(key)), key);
+
+        key = new SearchKey(null, null, SearchKey.NO_OPERATION_TYPE, null, null, 10);
+        Assert.assertEquals(FederatedSearch.decodeKey(FederatedSearch.encodeKey(key)), key);
+    }
+
+    @Test
+    public void         testResultsJson() throws Exception
+    {
+        List<SearchItem>    items = Lists.newArrayList
+        (
+            new SearchItem(EntryTypes.CREATE_PERSISTENT.getId(), "/a", 1, new Date(1000), 0x100000001L, 0x8000000000000001L, 7),
+            new SearchItem(EntryTypes.CLOSE_SESSION.getId(), "", -1, new Date(999), 2, 3, 4)
+        );
+        List<SearchItem>    read = FederatedSearch.fromJson(FederatedSearch.toJson(items));
+        Assert.assertEquals(read.size(), items.size());
+        for ( int i = 0; i < items.size(); ++i )
+        {
+            Assert.assertEquals(read.get(i).toString(), items.get(i).toString());
+        }
+    }
+
+    @Test
+    public void         testMergeWithDeadline() throws Exception
+    {
+        FederatedSearch.HostSearcher    searcher = new FederatedSearch.HostSearcher()
+        {
+            @Override
+            public List<SearchItem> search(String hostname, SearchKey key) throws Exception
+            {
+                if ( hostname.equals("a") )
+                {
+                    return Lists.newArrayList(item(5), item(3), item(1));
+                }
+                if ( hostname.equals("b") )
+                {
+                    return Lists.newArrayList(item(4), item(3));
+                }
+                if ( hostname.equals("slow") )
+                {
+                    Thread.sleep(10000);
+                    return Lists.newArrayList(item(6));
+                }
+                throw new IOException("Connection refused");
+            }
+        };
+
+        ExecutorService     executorService = Executors.newCachedThreadPool();
+        try
+        {
+            FederatedSearch         search = new FederatedSearch(executorService, Lists.newArrayList("a", "b", "slow", "down"), searcher);
+            FederatedSearch.Result  result = search.search(new SearchKey(null, null, SearchKey.NO_OPERATION_TYPE, null, null, 4), 500);
+
+            List<String>    hits = Lists.newArrayList();
+            for ( FederatedSearch.Hit hit : result.getHits() )
+            {
+                hits.add(hit.getHostname() + ":" + hit.getItem().getDate().getTime());
+            }
+            Assert.assertEquals(hits, Lists.newArrayList("a:5", "b:4", "a:3", "b:3"));
+
+            Assert.assertEquals(result.getHosts().size(), 4);
+            Assert.assertTrue(result.getHosts().get(0).isSuccess());
+            Assert.assertEquals(result.getHosts().get(0).getCount(), 3);
+            Assert.assertEquals(result.getHosts().get(1).getCount(), 2);
+            Assert.assertTrue(result.getHosts().get(2).isTimedOut());
+            Assert.assertFalse(result.getHosts().get(2).isSuccess());
+            Assert.assertFalse(result.getHosts().get(3).isTimedOut());
+            Assert.assertEquals(result.getHosts().get(3).getErrorMessage(), "Connection refused");
+        }
+        finally
+        {
+            executorService.shutdownNow();
+        }
+    }
+
+    private static SearchItem   item(long date)
+    {
+        return new SearchItem(EntryTypes.SET_DATA.getId(), "/test", 1, new Date(date), date, 1, 1);
+    }
+}
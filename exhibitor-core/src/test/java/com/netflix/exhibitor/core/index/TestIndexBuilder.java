@@ -0,0 +1,382 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class TestIndexBuilder
+{
+    private File        tempDirectory;
+
+    private static final long       START_TIME = 1000000;
+
+    @BeforeMethod
+    public void         setup()
+    {
+        tempDirectory = Files.createTempDir();
+    }
+
+    @AfterMethod
+    public void         tearDown()
+    {
+        deleteDirectory(tempDirectory);
+    }
+
+    @Test
+    public void         testConcurrentAdd() throws Exception
+    {
+        File            logDirectory = new File(tempDirectory, "logs");
+        Assert.assertTrue(logDirectory.mkdirs());
+
+        LogFileMaker    maker = new LogFileMaker(logDirectory, 1, START_TIME);
+        int             expectedCount = 0;
+        for ( int i = 0; i < 8; ++i )
+        {
+            expectedCount += maker.writeLog(100);
+        }
+
+        File[]                  logs = LogFileMaker.getLogFiles(logDirectory);
+        Assert.assertEquals(logs.length, 8);
+
+        File                    indexDirectory = new File(tempDirectory, "index");
+        final IndexBuilder      builder = new IndexBuilder(indexDirectory, 4);
+        ExecutorService         service = Executors.newFixedThreadPool(4);
+        try
+        {
+            builder.open();
+
+            List<Future<Void>>  futures = Lists.newArrayList();
+            for ( final File log : logs )
+            {
+                futures.add
+                (
+                    service.submit
+                    (
+                        new Callable<Void>()
+                        {
+                            @Override
+                            public Void call() throws Exception
+                            {
+                                InputStream     in = new BufferedInputStream(new FileInputStream(log));
+                                try
+                                {
+                                    builder.add(in);
+                                }
+                                finally
+                                {
+                                    CloseableUtils.closeQuietly(in);
+                                }
+                                return null;
+                            }
+                        }
+                    )
+                );
+            }
+            for ( Future<Void> future : futures )
+            {
+                future.get();
+            }
+            builder.writeMetaData();
+        }
+        finally
+        {
+            service.shutdownNow();
+            builder.close();
+        }
+
+        Assert.assertEquals(builder.getCurrentCount(), expectedCount);
+
+        IndexMetaData   metaData = IndexMetaData.read(IndexMetaData.getMetaDataFile(indexDirectory));
+        Assert.assertEquals(metaData.getEntryCount(), expectedCount);
+        Assert.assertEquals(metaData.getFrom().getTime(), START_TIME);
+        Assert.assertEquals(metaData.getTo().getTime(), START_TIME + ((expectedCount - 1) * 1000L));
+
+        LogSearch       logSearch = new LogSearch(indexDirectory);
+        try
+        {
+            Assert.assertEquals(logSearch.getDocQty(), expectedCount);
+        }
+        finally
+        {
+            logSearch.close();
+        }
+    }
+
+    @Test
+    public void         testIncremental() throws Exception
+    {
+        File            logDirectory = new File(tempDirectory, "logs");
+        Assert.assertTrue(logDirectory.mkdirs());
+
+        LogFileMaker    maker = new LogFileMaker(logDirectory, 1, START_TIME);
+        int             firstCount = maker.writeLog(10) + maker.writeLog(10);
+        long            firstZxid = maker.getLastZxid();
+
+        File            indexDirectory = new File(tempDirectory, "index");
+        IndexBuilder    builder = new IndexBuilder(indexDirectory);
+        addAll(builder, LogFileMaker.getLogFiles(logDirectory));
+        Assert.assertEquals(builder.getCurrentCount(), firstCount);
+
+        IndexMetaData   metaData = IndexMetaData.read(IndexMetaData.getMetaDataFile(indexDirectory));
+        Assert.assertEquals(metaData.getMaxZxid(), firstZxid);
+
+        int             secondCount = maker.writeLog(5);
+        builder = new IndexBuilder(indexDirectory, 1, metaData);
+        Assert.assertTrue(builder.isIncremental());
+        addAll(builder, LogFileMaker.getLogFiles(logDirectory));   // re-adds the already indexed logs too
+        Assert.assertEquals(builder.getCurrentCount(), firstCount + secondCount);
+
+        metaData = IndexMetaData.read(IndexMetaData.getMetaDataFile(indexDirectory));
+        Assert.assertEquals(metaData.getEntryCount(), firstCount + secondCount);
+        Assert.assertEquals(metaData.getMaxZxid(), maker.getLastZxid());
+        Assert.assertEquals(metaData.getFrom().getTime(), START_TIME);
+
+        LogSearch       logSearch = new LogSearch(indexDirectory);
+        try
+        {
+            Assert.assertEquals(logSearch.getDocQty(), firstCount + secondCount);
+        }
+        finally
+        {
+            logSearch.close();
+        }
+    }
+
+    @Test
+    public void         testDocumentValues() throws Exception
+    {
+        File            logDirectory = new File(tempDirectory, "logs");
+        Assert.assertTrue(logDirectory.mkdirs());
+
+        LogFileMaker    maker = new LogFileMaker(logDirectory, 1, START_TIME);
+        maker.writeLog(10);
+
+        File            indexDirectory = new File(tempDirectory, "index");
+        addAll(new IndexBuilder(indexDirectory), LogFileMaker.getLogFiles(logDirectory));
+
+        LogSearch       logSearch = new LogSearch(indexDirectory);
+        try
+        {
+            TopDocs     docs = logSearch.search(QueryBuilder.builder().pathExact("/test/node-4").build(QueryBuilder.Type.AND), 10);
+            Assert.assertEquals(docs.totalHits, 3);
+
+            Set<EntryTypes>     types = Sets.newHashSet();
+            for ( ScoreDoc scoreDoc : docs.scoreDocs )
+            {
+                SearchItem      item = logSearch.toResult(scoreDoc.doc);
+                EntryTypes      type = EntryTypes.getFromId(item.getType());
+                types.add(type);
+                Assert.assertEquals(item.getPath(), "/test/node-4");
+                Assert.assertEquals(item.getSessionId(), 0x1234L);
+                Assert.assertEquals(item.getCxid(), (int)item.getZxid());
+                if ( type == EntryTypes.SET_DATA )
+                {
+                    Assert.assertEquals(item.getVersion(), 1);
+                    Assert.assertEquals(item.getZxid(), 5);
+                    Assert.assertEquals(new String(logSearch.toData(scoreDoc.doc)), "set 1");
+                }
+                else if ( type == EntryTypes.CREATE_PERSISTENT )
+                {
+                    Assert.assertEquals(item.getVersion(), -1);
+                    Assert.assertEquals(item.getZxid(), 4);
+                    Assert.assertEquals(new String(logSearch.toData(scoreDoc.doc)), "create 1");
+                }
+            }
+            Assert.assertEquals(types, Sets.newHashSet(EntryTypes.CREATE_PERSISTENT, EntryTypes.SET_DATA, EntryTypes.DELETE));
+        }
+        finally
+        {
+            logSearch.close();
+        }
+    }
+
+    @Test
+    public void         testZxidAndSession() throws Exception
+    {
+        File            logDirectory = new File(tempDirectory, "logs");
+        Assert.assertTrue(logDirectory.mkdirs());
+
+        long            otherSession = 0x8000000000000001L;  // high bit set - as for server ids >= 128
+        LogFileMaker    maker = new LogFileMaker(logDirectory, 1, START_TIME);
+        maker.writeLog(10);
+        maker.setSessionId(otherSession);
+        maker.writeLog(10);
+
+        File            indexDirectory = new File(tempDirectory, "index");
+        addAll(new IndexBuilder(indexDirectory), LogFileMaker.getLogFiles(logDirectory));
+
+        LogSearch       logSearch = new LogSearch(indexDirectory);
+        try
+        {
+            int[]       docIds = logSearch.searchDocIds(QueryBuilder.builder().sessionId(otherSession).build(QueryBuilder.Type.AND), Integer.MAX_VALUE);
+            Assert.assertEquals(docIds.length, 30);
+            for ( int docId : docIds )
+            {
+                Assert.assertEquals(logSearch.toResult(docId).getSessionId(), otherSession);
+                Assert.assertTrue(logSearch.toResult(docId).getZxid() > 30);
+            }
+
+            docIds = logSearch.searchDocIds(QueryBuilder.builder().zxidRange(0x10, 0x1f).build(QueryBuilder.Type.AND), Integer.MAX_VALUE);
+            Assert.assertEquals(docIds.length, 16);
+
+            SearchKey   key = new SearchKey(null, null, -1, null, null, 0x20, 0x1c, 0x1234L, 0);
+            Assert.assertEquals(logSearch.searchDocIds(key.toQuery(), Integer.MAX_VALUE).length, 3);    // 0x1c - 0x1e
+
+            // a single zxid bound is an exact match
+            for ( SearchKey single : new SearchKey[]{new SearchKey(null, null, -1, null, null, 0x1c, SearchKey.NO_ZXID, null, 0), new SearchKey(null, null, -1, null, null, SearchKey.NO_ZXID, 0x1c, null, 0)} )
+            {
+                docIds = logSearch.searchDocIds(single.toQuery(), Integer.MAX_VALUE);
+                Assert.assertEquals(docIds.length, 1);
+                Assert.assertEquals(logSearch.toResult(docIds[0]).getZxid(), 0x1c);
+            }
+        }
+        finally
+        {
+            logSearch.close();
+        }
+    }
+
+    @Test
+    public void         testAllTypes() throws Exception
+    {
+        File            logDirectory = new File(tempDirectory, "logs");
+        Assert.assertTrue(logDirectory.mkdirs());
+
+        LogFileMaker    maker = new LogFileMaker(logDirectory, 1, START_TIME);
+        int             qty = maker.writeLog(5);
+        qty += maker.writeMixedLog("/test/multi");
+
+        File            indexDirectory = new File(tempDirectory, "index");
+        addAll(new IndexBuilder(indexDirectory), LogFileMaker.getLogFiles(logDirectory));
+
+        LogSearch       logSearch = new LogSearch(indexDirectory);
+        try
+        {
+            Assert.assertEquals(logSearch.getDocQty(), qty);
+            for ( EntryTypes type : EntryTypes.values() )
+            {
+                int     expected;
+                switch ( type )
+                {
+                    case CREATE_EPHEMERAL:
+                    {
+                        expected = 0;
+                        break;
+                    }
+
+                    case CREATE_PERSISTENT:
+                    case SET_DATA:
+                    {
+                        expected = 6;
+                        break;
+                    }
+
+                    case DELETE:
+                    {
+                        expected = 5;
+                        break;
+                    }
+
+                    default:
+                    {
+                        expected = 1;
+                        break;
+                    }
+                }
+                Assert.assertEquals(logSearch.searchDocIds(QueryBuilder.builder().operationType(type.getId()).build(QueryBuilder.Type.AND), Integer.MAX_VALUE).length, expected, type.name());
+            }
+
+            // the multi's ops share its zxid
+            int[]       multiDocIds = logSearch.searchDocIds(QueryBuilder.builder().pathExact("/test/multi").zxidRange(17, 17).build(QueryBuilder.Type.AND), Integer.MAX_VALUE);
+            Assert.assertEquals(multiDocIds.length, 3);
+
+            int[]       sessionDocIds = logSearch.searchDocIds(QueryBuilder.builder().operationType(EntryTypes.CLOSE_SESSION.getId()).build(QueryBuilder.Type.AND), Integer.MAX_VALUE);
+            Assert.assertEquals(logSearch.toResult(sessionDocIds[0]).getPath(), "");
+            Assert.assertEquals(logSearch.toResult(sessionDocIds[0]).getSessionId(), 0x1234L);
+
+            // path-less docs don't stop the ancestor rewrite
+            Assert.assertEquals(logSearch.searchDocIds(QueryBuilder.builder().pathPrefix("/test").build(QueryBuilder.Type.AND), Integer.MAX_VALUE).length, qty - 3);
+        }
+        finally
+        {
+            logSearch.close();
+        }
+    }
+
+    static void         addAll(IndexBuilder builder, File[] logs) throws Exception
+    {
+        try
+        {
+            builder.open();
+            for ( File log : logs )
+            {
+                InputStream     in = new BufferedInputStream(new FileInputStream(log));
+                try
+                {
+                    builder.add(in);
+                }
+                finally
+                {
+                    CloseableUtils.closeQuietly(in);
+                }
+            }
+            builder.writeMetaData();
+        }
+        finally
+        {
+            builder.close();
+        }
+    }
+
+    static void         deleteDirectory(File directory)
+    {
+        File[]      files = directory.listFiles();
+        if ( files != null )
+        {
+            for ( File f : files )
+            {
+                if ( f.isDirectory() )
+                {
+                    deleteDirectory(f);
+                }
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.io.Files;
+import com.netflix.exhibitor.core.activity.ActivityLog;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.File;
+
+public class TestIndexCache
+{
+    private File        tempDirectory;
+    private File        index1;
+    private File        index2;
+
+    @BeforeMethod
+    public void         setup() throws Exception
+    {
+        tempDirectory = Files.createTempDir();
+        File            logDirectory = new File(tempDirectory, "logs");
+        Assert.assertTrue(logDirectory.mkdirs());
+        new LogFileMaker(logDirectory, 1, 1000000).writeLog(10);
+
+        index1 = LogFileMaker.buildIndex(logDirectory, new File(tempDirectory, "index1"));
+        index2 = LogFileMaker.buildIndex(logDirectory, new File(tempDirectory, "index2"));
+    }
+
+    @AfterMethod
+    public void         tearDown()
+    {
+        TestIndexBuilder.deleteDirectory(tempDirectory);
+    }
+
+    @Test
+    public void         testHitsAndMisses() throws Exception
+    {
+        IndexCache      cache = new IndexCache(new ActivityLog(100));
+        try
+        {
+            LogSearch   logSearch = cache.getLogSearch(index1);
+            cache.releaseLogSearch(index1);
+            Assert.assertSame(cache.getLogSearch(index1), logSearch);
+            cache.releaseLogSearch(index1);
+
+            Assert.assertEquals(cache.getMissCount(), 1);
+            Assert.assertEquals(cache.getHitCount(), 1);
+            Assert.assertEquals(cache.getCurrentWeight(), logSearch.getWeight());
+        }
+        finally
+        {
+            cache.close();
+        }
+        Assert.assertEquals(cache.getCurrentWeight(), 0);
+    }
+
+    @Test
+    public void         testWeightEviction() throws Exception
+    {
+        IndexCache      cache = new IndexCache(new ActivityLog(100), 1);
+        try
+        {
+            cache.getLogSearch(index1);
+            cache.getLogSearch(index2);
+            Assert.assertEquals(cache.getEvictionCount(), 0);    // both are in use
+
+            cache.releaseLogSearch(index1);
+            Assert.assertEquals(cache.getEvictionCount(), 1);    // index2 is still in use
+
+            cache.releaseLogSearch(index2);
+            Assert.assertEquals(cache.getEvictionCount(), 2);
+            Assert.assertEquals(cache.getCurrentWeight(), 0);
+
+            cache.getLogSearch(index1);
+            cache.releaseLogSearch(index1);
+            Assert.assertEquals(cache.getMissCount(), 3);
+        }
+        finally
+        {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void         testMaxWeightWithoutReaper() throws Exception
+    {
+        long            indexWeight;
+        LogSearch       logSearch = new LogSearch(index1);
+        try
+        {
+            indexWeight = logSearch.getWeight();
+        }
+        finally
+        {
+            logSearch.close();
+        }
+
+        File            logDirectory = new File(tempDirectory, "logs");
+        File[]          indexes = new File[]{index1, index2, LogFileMaker.buildIndex(logDirectory, new File(tempDirectory, "index3")), LogFileMaker.buildIndex(logDirectory, new File(tempDirectory, "index4"))};
+
+        // room for one index - the reaper is never started
+        long            maxWeight = indexWeight + (indexWeight / 2);
+        IndexCache      cache = new IndexCache(new ActivityLog(100), maxWeight);
+        try
+        {
+            for ( File index : indexes )
+            {
+                cache.getLogSearch(index);
+                Assert.assertTrue(cache.getCurrentWeight() <= (maxWeight + indexWeight));   // only the index in use can push it over
+                cache.releaseLogSearch(index);
+                Assert.assertTrue(cache.getCurrentWeight() <= maxWeight);
+            }
+            Assert.assertEquals(cache.getEvictionCount(), indexes.length - 1);
+
+            // the most recently used index is still open
+            cache.getLogSearch(indexes[indexes.length - 1]);
+            cache.releaseLogSearch(indexes[indexes.length - 1]);
+            Assert.assertEquals(cache.getMissCount(), indexes.length);
+        }
+        finally
+        {
+            cache.close();
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.google.common.primitives.Ints;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.NumericField;
+import org.apache.lucene.index.FilterIndexReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+public class TestIndexColumns
+{
+    private File        tempDirectory;
+    private File        indexDirectory;
+
+    @BeforeMethod
+    public void         setup() throws Exception
+    {
+        tempDirectory = Files.createTempDir();
+        File            logDirectory = new File(tempDirectory, "logs");
+        Assert.assertTrue(logDirectory.mkdirs());
+
+        LogFileMaker    maker = new LogFileMaker(logDirectory, 1, 1000000);
+        maker.writeLog(20);
+        maker.writeLog(20);
+
+        indexDirectory = LogFileMaker.buildIndex(logDirectory, new File(tempDirectory, "index"));
+    }
+
+    @AfterMethod
+    public void         tearDown()
+    {
+        TestIndexBuilder.deleteDirectory(tempDirectory);
+    }
+
+    @Test
+    public void         testMatchesStoredFields() throws Exception
+    {
+        assertMatchesStoredFields(indexDirectory, 40, true);
+    }
+
+    @Test
+    public void         testIncrementalLoadsOnlyNewDocuments() throws Exception
+    {
+        // new paths, a path the base has and documents without a path
+        File            logDirectory = new File(tempDirectory, "more-logs");
+        Assert.assertTrue(logDirectory.mkdirs());
+        LogFileMaker    maker = new LogFileMaker(logDirectory, 1000, 2000000);
+        maker.writeLog(5);
+        maker.writeMixedLog("/test/node-1");
+
+        NIOFSDirectory  directory = new NIOFSDirectory(indexDirectory);
+        try
+        {
+            IndexReader     baseReader = IndexReader.open(directory);
+            IndexColumns    base = IndexColumns.open(indexDirectory, baseReader);
+            baseReader.close();
+            Assert.assertNotNull(base);
+            try
+            {
+                // commit the new documents without writing the columns
+                IndexBuilder    builder = new IndexBuilder(indexDirectory, 1, IndexMetaData.read(IndexMetaData.getMetaDataFile(indexDirectory)));
+                try
+                {
+                    builder.open();
+                    for ( File log : LogFileMaker.getLogFiles(logDirectory) )
+                    {
+                        MappedLogFile   mappedLogFile = new MappedLogFile(log);
+                        try
+                        {
+                            builder.add(mappedLogFile.getStream());
+                        }
+                        finally
+                        {
+                            mappedLogFile.close();
+                        }
+                    }
+                    builder.commit();
+                }
+                finally
+                {
+                    builder.close();
+                }
+
+                CountingReader  reader = new CountingReader(IndexReader.open(directory));
+                try
+                {
+                    IndexColumns.write(reader, indexDirectory, base);
+                    Assert.assertEquals(reader.getMinLoadedDocId(), base.getDocQty());
+                    Assert.assertEquals(reader.getLoadedQty(), 15 + 7);
+                }
+                finally
+                {
+                    reader.close();
+                }
+            }
+            finally
+            {
+                base.close();
+            }
+            assertMatchesStoredFields(indexDirectory, 40 + 5, false);
+
+            // the base of another index doesn't match the doc ids so everything is loaded
+            IndexReader     otherReader = IndexReader.open(new NIOFSDirectory(LogFileMaker.buildIndex(logDirectory, new File(tempDirectory, "other"))));
+            IndexColumns    other = IndexColumns.open(new File(tempDirectory, "other"), otherReader);
+            otherReader.close();
+            Assert.assertNotNull(other);
+            try
+            {
+                CountingReader  reader = new CountingReader(IndexReader.open(directory));
+                try
+                {
+                    IndexColumns.write(reader, indexDirectory, other);
+                    Assert.assertEquals(reader.getMinLoadedDocId(), 0);
+                    Assert.assertEquals(reader.getLoadedQty(), reader.maxDoc());
+                }
+                finally
+                {
+                    reader.close();
+                }
+            }
+            finally
+            {
+                other.close();
+            }
+            assertMatchesStoredFields(indexDirectory, 40 + 5, true);
+        }
+        finally
+        {
+            directory.close();
+        }
+    }
+
+    @Test
+    public void         testMatchesStoredFieldsAfterMerges() throws Exception
+    {
+        File            logDirectory = new File(tempDirectory, "merge-logs");
+        Assert.assertTrue(logDirectory.mkdirs());
+        LogFileMaker    maker = new LogFileMaker(logDirectory, 1, 2000000);
+        int             pathQty = 0;
+        for ( int i = 0; i < 60; ++i )
+        {
+            int     qty = 1 + ((i * 7) % 20);   // uneven segment sizes so that merges pick non-adjacent segments
+            maker.writeLog(qty);
+            pathQty += qty;
+        }
+
+        // a commit per log makes a segment per log so that the merge policy has plenty to merge
+        File            mergedDirectory = new File(tempDirectory, "merged");
+        IndexBuilder    builder = new IndexBuilder(mergedDirectory);
+        try
+        {
+            builder.open();
+            for ( File log : LogFileMaker.getLogFiles(logDirectory) )
+            {
+                InputStream     in = new BufferedInputStream(new FileInputStream(log));
+                try
+                {
+                    builder.add(in);
+                }
+                finally
+                {
+                    CloseableUtils.closeQuietly(in);
+                }
+                builder.commit();
+            }
+            builder.writeMetaData();
+        }
+        finally
+        {
+            builder.close();
+        }
+        assertMatchesStoredFields(mergedDirectory, pathQty, true);
+    }
+
+    @Test
+    public void         testSortByDateColumn() throws Exception
+    {
+        LogSearch       logSearch = new LogSearch(indexDirectory);
+        try
+        {
+            TopDocs     docs = logSearch.search(new MatchAllDocsQuery(), 1000);
+            Assert.assertEquals(docs.totalHits, 120);
+
+            long        previous = Long.MAX_VALUE;
+            for ( int i = 0; i < docs.scoreDocs.length; ++i )
+            {
+                long    date = logSearch.toResult(docs.scoreDocs[i].doc).getDate().getTime();
+                Assert.assertTrue(date < previous);
+                previous = date;
+            }
+        }
+        finally
+        {
+            logSearch.close();
+        }
+    }
+
+    @Test
+    public void         testPaging() throws Exception
+    {
+        LogSearch       logSearch = new LogSearch(indexDirectory);
+        try
+        {
+            Query           query = QueryBuilder.builder().operationType(EntryTypes.SET_DATA.getId()).build(QueryBuilder.Type.AND);
+            int[]           all = logSearch.searchDocIds(query, Integer.MAX_VALUE);
+            Assert.assertEquals(all.length, 40);
+
+            List<Integer>   paged = Lists.newArrayList();
+            SearchCursor    cursor = null;
+            do
+            {
+                SearchPage  page = logSearch.searchPage(query, SearchCursor.parse((cursor != null) ? cursor.toString() : null), 7);
+                Assert.assertTrue(page.getDocIds().length <= 7);
+                for ( int docId : page.getDocIds() )
+                {
+                    paged.add(docId);
+                }
+                cursor = page.getNext();
+            } while ( cursor != null );
+
+            Assert.assertEquals(paged, Ints.asList(all));
+
+            // fewer results than hits keeps only the newest
+            for ( int maxResults : new int[]{0, 1, 7, 39} )
+            {
+                Assert.assertEquals(Ints.asList(logSearch.searchDocIds(query, maxResults)), Ints.asList(all).subList(0, maxResults));
+            }
+
+            CachedSearch    cachedSearch = logSearch.getCachedSearch(logSearch.cacheSearch(new SearchKey(null, null, EntryTypes.SET_DATA.getId(), null, null, 10), null));
+            Assert.assertEquals(cachedSearch.getTotalHits(), 10);
+            Assert.assertEquals(cachedSearch.getNthDocId(9), all[9]);
+        }
+        finally
+        {
+            logSearch.close();
+        }
+    }
+
+    private static class CountingReader extends FilterIndexReader
+    {
+        private int     loadedQty = 0;
+        private int     minLoadedDocId = Integer.MAX_VALUE;
+
+        CountingReader(IndexReader in)
+        {
+            super(in);
+        }
+
+        @Override
+        public Document document(int n, FieldSelector fieldSelector) throws IOException
+        {
+            ++loadedQty;
+            minLoadedDocId = Math.min(minLoadedDocId, n);
+            return super.document(n, fieldSelector);
+        }
+
+        int getLoadedQty()
+        {
+            return loadedQty;
+        }
+
+        int getMinLoadedDocId()
+        {
+            return minLoadedDocId;
+        }
+    }
+
+    private void        assertMatchesStoredFields(File indexDirectory, int pathQty, boolean sortedPaths) throws Exception
+    {
+        NIOFSDirectory  directory = new NIOFSDirectory(indexDirectory);
+        IndexReader     reader = IndexReader.open(directory);
+        try
+        {
+            IndexColumns    columns = IndexColumns.open(indexDirectory, reader);
+            Assert.assertNotNull(columns);
+            try
+            {
+                Assert.assertEquals(columns.getDocQty(), reader.maxDoc());
+                Assert.assertEquals(columns.getPathQty(), pathQty + 1);   // ordinal 0 is always ""
+                Assert.assertEquals(columns.getPath(0), "");
+                for ( int ordinal = 2; sortedPaths && (ordinal < columns.getPathQty()); ++ordinal )
+                {
+                    Assert.assertTrue(columns.getPath(ordinal - 1).compareTo(columns.getPath(ordinal)) < 0);
+                }
+                for ( int docId = 0; docId < reader.maxDoc(); ++docId )
+                {
+                    Document        document = reader.document(docId);
+                    SearchItem      item = columns.toResult(docId);
+                    NumericField    version = (NumericField)document.getFieldable(FieldNames.VERSION);
+                    Assert.assertEquals(item.getType(), Integer.parseInt(document.get(FieldNames.TYPE)));
+                    Assert.assertEquals(item.getPath(), Strings.nullToEmpty(document.get(FieldNames.PATH)));
+                    Assert.assertEquals(item.getDate().getTime(), ((NumericField)document.getFieldable(FieldNames.DATE)).getNumericValue().longValue());
+                    Assert.assertEquals(item.getVersion(), (version != null) ? version.getNumericValue().intValue() : -1);
+                    Assert.assertEquals(item.getZxid(), ((NumericField)document.getFieldable(FieldNames.ZXID)).getNumericValue().longValue());
+                    Assert.assertEquals(item.getSessionId(), ((NumericField)document.getFieldable(FieldNames.SESSION)).getNumericValue().longValue());
+                    Assert.assertEquals(item.getCxid(), ((NumericField)document.getFieldable(FieldNames.CXID)).getNumericValue().intValue());
+                }
+            }
+            finally
+            {
+                columns.close();
+            }
+        }
+        finally
+        {
+            reader.close();
+            directory.close();
+        }
+    }
+}
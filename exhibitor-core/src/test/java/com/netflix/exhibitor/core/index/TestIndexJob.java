@@ -0,0 +1,116 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.netflix.exhibitor.core.activity.ActivityQueue;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class TestIndexJob
+{
+    @Test
+    public void         testCancelQueued() throws Exception
+    {
+        IndexJob        job = new IndexJob("test");
+        Assert.assertEquals(job.getState(), IndexJob.State.QUEUED);
+        Assert.assertEquals(job.getEtaMs(), -1);
+
+        Assert.assertTrue(job.cancel());
+        Assert.assertEquals(job.getState(), IndexJob.State.CANCELLED);
+        Assert.assertTrue(job.isFinished());
+        Assert.assertFalse(job.begin());
+        Assert.assertFalse(job.cancel());
+    }
+
+    @Test
+    public void         testCancelRunning() throws Exception
+    {
+        final AtomicBoolean     hookClosed = new AtomicBoolean(false);
+        IndexJob                job = new IndexJob("test");
+        Assert.assertTrue(job.begin());
+        job.addCancelHook
+        (
+            new Closeable()
+            {
+                @Override
+                public void close() throws IOException
+                {
+                    hookClosed.set(true);
+                }
+            }
+        );
+        job.checkCancelled();
+
+        Assert.assertTrue(job.cancel());
+        Assert.assertTrue(hookClosed.get());
+        Assert.assertEquals(job.getState(), IndexJob.State.RUNNING);
+        try
+        {
+            job.checkCancelled();
+            Assert.fail();
+        }
+        catch ( CancellationException e )
+        {
+            job.failed(e);
+        }
+        Assert.assertEquals(job.getState(), IndexJob.State.CANCELLED);
+        Assert.assertEquals(job.getErrorMessage(), "");
+    }
+
+    @Test
+    public void         testProgress() throws Exception
+    {
+        IndexJob        job = new IndexJob("test");
+        Assert.assertTrue(job.begin());
+        job.starting(null, 4);
+        Assert.assertEquals(job.getEtaMs(), -1);
+
+        Thread.sleep(20);
+        job.sourceCompleted(100);
+        job.addTransactions(10);
+        Assert.assertEquals(job.getCompletedSourceQty(), 1);
+        Assert.assertEquals(job.getByteQty(), 100);
+        Assert.assertEquals(job.getTransactionQty(), 10);
+        Assert.assertTrue(job.getEtaMs() >= 3 * 20);
+
+        job.failed(new Exception("bad log"));
+        Assert.assertEquals(job.getState(), IndexJob.State.FAILED);
+        Assert.assertEquals(job.getErrorMessage(), "bad log");
+        Assert.assertEquals(job.getEtaMs(), 0);
+    }
+
+    @Test
+    public void         testSubmitDeduplicates() throws Exception
+    {
+        IndexJobs       jobs = new IndexJobs(new ActivityQueue());
+        IndexJob        first = jobs.submit(new IndexProcessorActivity(null));
+        IndexJob        duplicate = jobs.submit(new IndexProcessorActivity(null));
+        Assert.assertSame(duplicate, first);
+        Assert.assertEquals(jobs.getJobs().size(), 1);
+        Assert.assertSame(jobs.getJob(first.getId()), first);
+
+        first.cancel();
+        IndexJob        second = jobs.submit(new IndexProcessorActivity(null));
+        Assert.assertNotSame(second, first);
+        Assert.assertNotEquals(second.getId(), first.getId());
+        Assert.assertEquals(jobs.getJobs().size(), 2);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.File;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.Map;
+
+public class TestIndexMetaData
+{
+    private File        tempDirectory;
+
+    private static final long       START_TIME = 1000000;
+
+    @BeforeMethod
+    public void         setup()
+    {
+        tempDirectory = Files.createTempDir();
+    }
+
+    @AfterMethod
+    public void         tearDown()
+    {
+        TestIndexBuilder.deleteDirectory(tempDirectory);
+    }
+
+    @Test
+    public void         testRoundTrip() throws Exception
+    {
+        Map<EntryTypes, Integer>    typeCounts = ImmutableMap.of(EntryTypes.CREATE_PERSISTENT, 3, EntryTypes.DELETE, 1);
+        IndexMetaData   metaData = new IndexMetaData(new Date(1234567), new Date(2345678), 4, 10, 13, Sets.newHashSet("a", "b"), typeCounts, 5000, 250);
+        File            file = new File(tempDirectory, "index.meta");
+        IndexMetaData.write(metaData, file);
+
+        IndexMetaData   read = IndexMetaData.read(file);
+        Assert.assertEquals(read.getFrom(), new Date(1234567));    // millisecond resolution
+        Assert.assertEquals(read.getTo(), new Date(2345678));
+        Assert.assertEquals(read.getEntryCount(), 4);
+        Assert.assertEquals(read.getMinZxid(), 10);
+        Assert.assertEquals(read.getMaxZxid(), 13);
+        Assert.assertEquals(read.getSources(), Sets.newHashSet("a", "b"));
+        Assert.assertEquals(read.getTypeCounts(), typeCounts);
+        Assert.assertTrue(read.hasTypeCounts());
+        Assert.assertEquals(read.getBuiltMs(), 5000);
+        Assert.assertEquals(read.getBuildMs(), 250);
+    }
+
+    @Test
+    public void         testReplace() throws Exception
+    {
+        File            file = new File(tempDirectory, "index.meta");
+        IndexMetaData.write(new IndexMetaData(new Date(1000), new Date(2000), 1), file);
+        IndexMetaData.write(new IndexMetaData(new Date(3000), new Date(4000), 2), file);
+        Assert.assertEquals(IndexMetaData.read(file).getEntryCount(), 2);
+        Assert.assertEquals(tempDirectory.list(), new String[]{"index.meta"});   // no temp file left behind
+    }
+
+    @Test
+    public void         testLegacyProperties() throws Exception
+    {
+        File            indexDirectory = new File(tempDirectory, "index");
+        Assert.assertTrue(indexDirectory.mkdirs());
+
+        DateFormat      format = DateFormat.getDateTimeInstance();
+        Date            from = format.parse(format.format(new Date(START_TIME)));
+        Date            to = format.parse(format.format(new Date(START_TIME + 60000)));
+        String          properties = "version=2\nfrom=" + format.format(from) + "\nto=" + format.format(to) + "\ncount=7\nmaxZxid=42\nsources=one\\ntwo\n";
+        File            legacyFile = new File(indexDirectory.getPath() + ".properties");
+        Files.write(properties, legacyFile, Charsets.ISO_8859_1);
+        Assert.assertEquals(IndexMetaData.getMetaDataFile(indexDirectory), legacyFile);
+
+        IndexMetaData   metaData = IndexMetaData.read(IndexMetaData.getMetaDataFile(indexDirectory));
+        Assert.assertEquals(metaData.getFrom(), from);
+        Assert.assertEquals(metaData.getTo(), to);
+        Assert.assertEquals(metaData.getEntryCount(), 7);
+        Assert.assertEquals(metaData.getMaxZxid(), 42);
+        Assert.assertEquals(metaData.getMinZxid(), IndexMetaData.UNKNOWN_ZXID);
+        Assert.assertEquals(metaData.getSources(), Sets.newHashSet("one", "two"));
+        Assert.assertFalse(metaData.hasTypeCounts());
+
+        // the binary file replaces the legacy file
+        IndexMetaData.writeForIndex(metaData, indexDirectory);
+        Assert.assertFalse(legacyFile.exists());
+        File            file = IndexMetaData.getMetaDataFile(indexDirectory);
+        Assert.assertEquals(file, new File(indexDirectory.getPath() + ".meta"));
+        Assert.assertEquals(IndexMetaData.read(file).getMaxZxid(), 42);
+    }
+
+    @Test
+    public void         testBuilderCounts() throws Exception
+    {
+        File            logDirectory = new File(tempDirectory, "logs");
+        Assert.assertTrue(logDirectory.mkdirs());
+
+        LogFileMaker    maker = new LogFileMaker(logDirectory, 1, START_TIME);
+        maker.writeLog(10);
+
+        File            indexDirectory = LogFileMaker.buildIndex(logDirectory, new File(tempDirectory, "index"));
+        IndexMetaData   metaData = IndexMetaData.read(IndexMetaData.getMetaDataFile(indexDirectory));
+        Assert.assertEquals(metaData.getEntryCount(), 30);
+        Assert.assertEquals(metaData.getTypeCounts(), ImmutableMap.of(EntryTypes.CREATE_PERSISTENT, 10, EntryTypes.SET_DATA, 10, EntryTypes.DELETE, 10));
+        Assert.assertEquals(metaData.getMinZxid(), 1);
+        Assert.assertEquals(metaData.getMaxZxid(), 30);
+        Assert.assertTrue(metaData.getBuiltMs() > 0);
+
+        // an update adds to the counts
+        maker.writeLog(5);
+        TestIndexBuilder.addAll(new IndexBuilder(indexDirectory, 1, metaData), LogFileMaker.getLogFiles(logDirectory));
+        metaData = IndexMetaData.read(IndexMetaData.getMetaDataFile(indexDirectory));
+        Assert.assertEquals(metaData.getEntryCount(), 45);
+        Assert.assertEquals(metaData.getTypeCounts().get(EntryTypes.SET_DATA), Integer.valueOf(15));
+        Assert.assertEquals(metaData.getMinZxid(), 1);
+        Assert.assertEquals(metaData.getMaxZxid(), 45);
+    }
+}
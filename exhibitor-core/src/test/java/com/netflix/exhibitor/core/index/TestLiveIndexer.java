@@ -0,0 +1,200 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.io.Files;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.zookeeper.server.persistence.FileTxnLog;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.File;
+import java.io.RandomAccessFile;
+
+public class TestLiveIndexer
+{
+    private File        tempDirectory;
+    private File        logDirectory;
+    private File        indexDirectory;
+
+    private static final long       START_TIME = 1000000;
+
+    @BeforeMethod
+    public void         setup()
+    {
+        tempDirectory = Files.createTempDir();
+        logDirectory = new File(tempDirectory, "logs");
+        Assert.assertTrue(logDirectory.mkdirs());
+        indexDirectory = new File(tempDirectory, LiveIndexer.LIVE_INDEX_NAME);
+    }
+
+    @AfterMethod
+    public void         tearDown()
+    {
+        TestIndexBuilder.deleteDirectory(tempDirectory);
+        //noinspection ResultOfMethodCallIgnored
+        IndexMetaData.getMetaDataFile(indexDirectory).delete();
+    }
+
+    @Test
+    public void         testTail() throws Exception
+    {
+        LogFileMaker    maker = new LogFileMaker(logDirectory, 1, START_TIME);
+        FileTxnLog      log = maker.openLog();
+        LiveIndexer     liveIndexer = new LiveIndexer(logDirectory, indexDirectory);
+        try
+        {
+            liveIndexer.open();
+            Assert.assertEquals(liveIndexer.poll(), 0);
+            Assert.assertFalse(liveIndexer.commit());
+
+            maker.appendTriples(log, 10);
+            Assert.assertEquals(liveIndexer.poll(), 30);
+            Assert.assertTrue(liveIndexer.commit());
+            assertDocQty(30);
+
+            // more entries in the same (preallocated) log are read from the last position
+            int             position = liveIndexer.getPosition();
+            maker.appendTriples(log, 5);
+            Assert.assertEquals(liveIndexer.poll(), 15);
+            Assert.assertTrue(liveIndexer.getPosition() > position);
+            Assert.assertEquals(liveIndexer.poll(), 0);
+
+            // ZooKeeper rolls the log
+            log.close();
+            log = maker.openLog();
+            maker.appendTriples(log, 2);
+            Assert.assertEquals(liveIndexer.poll(), 6);
+            Assert.assertEquals(LogFileMaker.getLogFiles(logDirectory).length, 2);
+            Assert.assertTrue(liveIndexer.commit());
+            assertDocQty(51);
+        }
+        finally
+        {
+            log.close();
+            CloseableUtils.closeQuietly(liveIndexer);
+        }
+
+        IndexMetaData   metaData = IndexMetaData.read(IndexMetaData.getMetaDataFile(indexDirectory));
+        Assert.assertEquals(metaData.getEntryCount(), 51);
+        Assert.assertEquals(metaData.getMaxZxid(), maker.getLastZxid());
+    }
+
+    @Test
+    public void         testPartialAndCorruptEntries() throws Exception
+    {
+        LogFileMaker    maker = new LogFileMaker(logDirectory, 1, START_TIME);
+        maker.writeLog(10);
+        File            logFile = LogFileMaker.getLogFiles(logDirectory)[0];
+
+        LiveIndexer     liveIndexer = new LiveIndexer(logDirectory, indexDirectory);
+        try
+        {
+            liveIndexer.open();
+            Assert.assertEquals(liveIndexer.poll(), 30);
+            int             position = liveIndexer.getPosition();
+
+            // an entry that is still being written - its CRC doesn't match yet and only zeros follow it
+            RandomAccessFile    file = new RandomAccessFile(logFile, "rw");
+            try
+            {
+                file.seek(position);
+                file.writeLong(123);
+                file.writeInt(20);
+            }
+            finally
+            {
+                file.close();
+            }
+            Assert.assertEquals(liveIndexer.poll(), 0);
+            Assert.assertEquals(liveIndexer.getPosition(), position);
+
+            // data after the bad entry means it isn't a partial write
+            file = new RandomAccessFile(logFile, "rw");
+            try
+            {
+                file.seek(position + 12 + 20);
+                file.writeLong(456);
+            }
+            finally
+            {
+                file.close();
+            }
+            try
+            {
+                liveIndexer.poll();
+                Assert.fail("corruption was ignored");
+            }
+            catch ( ZooKeeperLogParser.CorruptEntryException expected )
+            {
+                // expected
+            }
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(liveIndexer);
+        }
+    }
+
+    @Test
+    public void         testResume() throws Exception
+    {
+        LogFileMaker    maker = new LogFileMaker(logDirectory, 1, START_TIME);
+        maker.writeLog(10);
+
+        LiveIndexer     liveIndexer = new LiveIndexer(logDirectory, indexDirectory);
+        try
+        {
+            liveIndexer.open();
+            Assert.assertEquals(liveIndexer.poll(), 30);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(liveIndexer);
+        }
+
+        maker.writeLog(10);
+        maker.writeLog(10);
+
+        // picks up from the first log with entries it doesn't have without re-adding what it does have
+        liveIndexer = new LiveIndexer(logDirectory, indexDirectory);
+        try
+        {
+            liveIndexer.open();
+            Assert.assertEquals(liveIndexer.poll(), 60);
+            Assert.assertTrue(liveIndexer.commit());
+            assertDocQty(90);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(liveIndexer);
+        }
+    }
+
+    private void        assertDocQty(int qty) throws Exception
+    {
+        LogSearch       logSearch = new LogSearch(indexDirectory);
+        try
+        {
+            Assert.assertEquals(logSearch.getDocQty(), qty);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(logSearch);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.jute.Record;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.server.util.SerializeUtils;
+import org.apache.zookeeper.txn.TxnHeader;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestMappedLogFile
+{
+    @Test
+    public void         testParse() throws Exception
+    {
+        File            tempDirectory = Files.createTempDir();
+        try
+        {
+            LogFileMaker    maker = new LogFileMaker(tempDirectory, 1, 1000);
+            int             expectedCount = maker.writeLog(50);
+
+            File[]          logs = LogFileMaker.getLogFiles(tempDirectory);
+            Assert.assertEquals(logs.length, 1);
+
+            MappedLogFile                   mappedLogFile = new MappedLogFile(logs[0]);
+            try
+            {
+                MappedLogFile.PositionedStream  stream = mappedLogFile.getStream();
+                ZooKeeperLogParser              parser = new ZooKeeperLogParser(stream);
+                Assert.assertTrue(parser.isValid());
+
+                final AtomicInteger             count = new AtomicInteger(0);
+                parser.parse
+                (
+                    new LogEntryReceiver()
+                    {
+                        @Override
+                        public void receiveEntry(TxnHeader header, Record record) throws Exception
+                        {
+                            count.incrementAndGet();
+                        }
+                    }
+                );
+                Assert.assertEquals(count.get(), expectedCount);
+
+                // parsing stops at the first empty entry of the preallocated tail
+                Assert.assertTrue(stream.getPosition() < logs[0].length());
+            }
+            finally
+            {
+                mappedLogFile.close();
+            }
+        }
+        finally
+        {
+            TestIndexBuilder.deleteDirectory(tempDirectory);
+        }
+    }
+
+    @Test
+    public void         testUnreasonableLength() throws Exception
+    {
+        File            tempDirectory = Files.createTempDir();
+        try
+        {
+            LogFileMaker    maker = new LogFileMaker(tempDirectory, 1, 1000);
+            maker.writeLog(5);
+            File            log = LogFileMaker.getLogFiles(tempDirectory)[0];
+
+            // the first entry's length follows the 16 byte file header and the entry's 8 byte crc
+            RandomAccessFile    file = new RandomAccessFile(log, "rw");
+            try
+            {
+                file.seek(16 + 8);
+                file.writeInt(-1);
+            }
+            finally
+            {
+                file.close();
+            }
+
+            MappedLogFile   mappedLogFile = new MappedLogFile(log);
+            try
+            {
+                ZooKeeperLogParser  parser = new ZooKeeperLogParser(mappedLogFile.getStream());
+                Assert.assertTrue(parser.isValid());
+                try
+                {
+                    parser.parse
+                    (
+                        new LogEntryReceiver()
+                        {
+                            @Override
+                            public void receiveEntry(TxnHeader header, Record record) throws Exception
+                            {
+                                Assert.fail("corrupt entry was read");
+                            }
+                        }
+                    );
+                    Assert.fail("corrupt length was treated as the end of the log");
+                }
+                catch ( IOException expected )
+                {
+                    // expected
+                }
+            }
+            finally
+            {
+                mappedLogFile.close();
+            }
+        }
+        finally
+        {
+            TestIndexBuilder.deleteDirectory(tempDirectory);
+        }
+    }
+
+    @Test
+    public void         testMatchesSerializeUtils() throws Exception
+    {
+        File            tempDirectory = Files.createTempDir();
+        try
+        {
+            LogFileMaker    maker = new LogFileMaker(tempDirectory, 1, 1000);
+            maker.writeLog(5);
+            maker.writeMixedLog("/test/mixed");
+
+            final Set<Integer>  types = Sets.newHashSet();
+            for ( File log : LogFileMaker.getLogFiles(tempDirectory) )
+            {
+                // what ZooKeeper's own reader makes of each entry
+                List<TxnHeader>     expectedHeaders = Lists.newArrayList();
+                List<Record>        expectedRecords = Lists.newArrayList();
+                DataInputStream     in = new DataInputStream(new BufferedInputStream(new FileInputStream(log)));
+                try
+                {
+                    in.readFully(new byte[16]);     // file header
+                    for ( int length = skipCrcAndReadLength(in); length > 0; length = skipCrcAndReadLength(in) )
+                    {
+                        byte[]      bytes = new byte[length];
+                        in.readFully(bytes);
+                        Assert.assertEquals(in.readByte(), 'B');
+
+                        TxnHeader   header = new TxnHeader();
+                        expectedRecords.add(SerializeUtils.deserializeTxn(bytes, header));
+                        expectedHeaders.add(header);
+                    }
+                }
+                finally
+                {
+                    CloseableUtils.closeQuietly(in);
+                }
+
+                MappedLogFile   mappedLogFile = new MappedLogFile(log);
+                try
+                {
+                    final Iterator<TxnHeader>   headers = expectedHeaders.iterator();
+                    final Iterator<Record>      records = expectedRecords.iterator();
+                    new ZooKeeperLogParser(mappedLogFile.getStream()).parse
+                    (
+                        new LogEntryReceiver()
+                        {
+                            @Override
+                            public void receiveEntry(TxnHeader header, Record record) throws Exception
+                            {
+                                // compared here as the parser reuses both
+                                Assert.assertEquals(header, headers.next());
+                                Assert.assertEquals(record, records.next());
+                                types.add(header.getType());
+                            }
+                        }
+                    );
+                    Assert.assertFalse(headers.hasNext());
+                }
+                finally
+                {
+                    mappedLogFile.close();
+                }
+            }
+
+            Set<Integer>    expectedTypes = Sets.newHashSet
+            (
+                (int)ZooDefs.OpCode.create,
+                (int)ZooDefs.OpCode.setData,
+                (int)ZooDefs.OpCode.delete,
+                (int)ZooDefs.OpCode.createSession,
+                (int)ZooDefs.OpCode.multi,
+                (int)ZooDefs.OpCode.setACL,
+                (int)ZooDefs.OpCode.error,
+                (int)ZooDefs.OpCode.closeSession
+            );
+            Assert.assertEquals(types, expectedTypes);
+        }
+        finally
+        {
+            TestIndexBuilder.deleteDirectory(tempDirectory);
+        }
+    }
+
+    private static int  skipCrcAndReadLength(DataInputStream in) throws IOException
+    {
+        in.readLong();
+        return in.readInt();    // the preallocated tail is zeros
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import com.netflix.exhibitor.core.activity.ActivityLog;
+import org.apache.curator.utils.CloseableUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.File;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class TestPartitionedIndex
+{
+    private File        tempDirectory;
+    private File        logDirectory;
+    private File        indexParent;
+
+    private static final long       START_TIME = 1000000;
+    private static final long       PARTITION_MILLIS = 20000;   // 20 txns per partition
+
+    @BeforeMethod
+    public void         setup()
+    {
+        tempDirectory = Files.createTempDir();
+        logDirectory = new File(tempDirectory, "logs");
+        indexParent = new File(tempDirectory, "indexes");
+        Assert.assertTrue(logDirectory.mkdirs());
+        Assert.assertTrue(indexParent.mkdirs());
+    }
+
+    @AfterMethod
+    public void         tearDown()
+    {
+        TestIndexBuilder.deleteDirectory(tempDirectory);
+    }
+
+    @Test
+    public void         testWindowStart()
+    {
+        Assert.assertEquals(IndexPartitions.getWindowStart(1019999, PARTITION_MILLIS), 1000000);
+        Assert.assertEquals(IndexPartitions.getWindowStart(1020000, PARTITION_MILLIS), 1020000);
+        Assert.assertEquals(IndexPartitions.getWindowStart(-1, PARTITION_MILLIS), -PARTITION_MILLIS);
+        Assert.assertEquals(IndexPartitions.getWindowStart(IndexPartitions.getPartitionDirectory(indexParent, 1020000)), Long.valueOf(1020000));
+        Assert.assertNull(IndexPartitions.getWindowStart(new File(indexParent, "exhibitor-1")));
+    }
+
+    @Test
+    public void         testUpdate() throws Exception
+    {
+        LogFileMaker    maker = new LogFileMaker(logDirectory, 1, START_TIME);
+        maker.writeLog(15);     // 45 txns: 20 + 20 + 5
+
+        PartitionedIndexBuilder builder = update();
+        Assert.assertEquals(builder.getAddedCount(), 45);
+        Assert.assertEquals(builder.getCreatedPartitions().size(), 3);
+
+        List<File>      partitions = IndexPartitions.getPartitions(indexParent);
+        Assert.assertEquals(partitions.size(), 3);
+        Assert.assertEquals(partitions.get(0).getName(), IndexPartitions.PARTITION_PREFIX + 1040000);   // newest first
+        Assert.assertEquals(IndexMetaData.read(IndexMetaData.getMetaDataFile(partitions.get(0))).getEntryCount(), 5);
+        Assert.assertEquals(IndexMetaData.read(IndexMetaData.getMetaDataFile(partitions.get(2))).getEntryCount(), 20);
+
+        // the update re-reads every log but only the newest partition and a new one are written
+        maker.writeLog(10);     // 30 txns: 15 + 15
+        builder = update();
+        Assert.assertEquals(builder.getAddedCount(), 30);
+        Assert.assertEquals(builder.getCreatedPartitions(), Lists.newArrayList(IndexPartitions.getPartitionDirectory(indexParent, 1060000)));
+        Assert.assertEquals(Sets.newHashSet(builder.getWrittenPartitions()), Sets.newHashSet(IndexPartitions.getPartitionDirectory(indexParent, 1040000), IndexPartitions.getPartitionDirectory(indexParent, 1060000)));
+        Assert.assertEquals(IndexMetaData.read(IndexMetaData.getMetaDataFile(IndexPartitions.getPartitionDirectory(indexParent, 1040000))).getEntryCount(), 20);
+
+        builder = update();
+        Assert.assertEquals(builder.getAddedCount(), 0);
+        Assert.assertEquals(builder.getWrittenPartitions().size(), 0);
+    }
+
+    @Test
+    public void         testSearch() throws Exception
+    {
+        LogFileMaker    maker = new LogFileMaker(logDirectory, 1, START_TIME);
+        maker.writeLog(25);
+        maker.writeMixedLog("/other/multi");
+        update();
+
+        IndexCache      indexCache = new IndexCache(new ActivityLog(100));
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        List<LogSearch> logSearches = Lists.newArrayList();
+        LogSearch       single = new LogSearch(LogFileMaker.buildIndex(logDirectory, new File(tempDirectory, "single")));
+        try
+        {
+            List<File>  partitions = IndexPartitions.getOverlappingPartitions(indexCache, indexParent, null, null);
+            Assert.assertEquals(partitions.size(), 4);  // 80 txns
+
+            // type counts and zxid bounds rule out partitions without opening them
+            SearchKey   sessionKey = new SearchKey(null, null, EntryTypes.CREATE_SESSION.getId(), null, null, 0);
+            Assert.assertEquals(IndexPartitions.getOverlappingPartitions(indexCache, indexParent, sessionKey), partitions.subList(0, 1));
+            SearchKey   zxidKey = new SearchKey(null, null, SearchKey.NO_OPERATION_TYPE, null, null, 1, 2, null, 0);
+            Assert.assertEquals(IndexPartitions.getOverlappingPartitions(indexCache, indexParent, zxidKey), partitions.subList(3, 4));
+            for ( File partition : partitions )
+            {
+                logSearches.add(new LogSearch(partition));
+            }
+
+            // page through everything and compare with the same logs in one index
+            PartitionedSearch   search = new PartitionedSearch(logSearches);
+            Set<String>         seen = Sets.newHashSet();
+            List<Long>          dates = Lists.newArrayList();
+            String              after = null;
+            do
+            {
+                PartitionedSearch.Page  page = search.searchPage(executorService, null, after, 7);
+                for ( PartitionedSearch.Hit hit : page.getHits() )
+                {
+                    Assert.assertTrue(seen.add(hit.getLogSearch().getFile().getName() + "/" + hit.getDocId()));
+                    dates.add(hit.getDate());
+                }
+                after = page.getNext();
+            } while ( after != null );
+
+            Assert.assertTrue(PartitionedSearch.isValidCursor(null));
+            Assert.assertFalse(PartitionedSearch.isValidCursor("1-x-2"));
+            Assert.assertFalse(PartitionedSearch.isValidCursor("12"));
+
+            SearchPage          all = single.searchPage(null, null, 1000);
+            Assert.assertEquals(dates.size(), all.getDocIds().length);
+            for ( int i = 0; i < dates.size(); ++i )
+            {
+                Assert.assertEquals(dates.get(i).longValue(), all.getDates()[i]);
+            }
+
+            // only the partitions overlapping a date range are searched
+            partitions = IndexPartitions.getOverlappingPartitions(indexCache, indexParent, new Date(START_TIME + 25000), new Date(START_TIME + 45000));
+            Assert.assertEquals(partitions, Lists.newArrayList(IndexPartitions.getPartitionDirectory(indexParent, 1040000), IndexPartitions.getPartitionDirectory(indexParent, 1020000)));
+
+            // the path filters skip the partitions without the path
+            partitions = IndexPartitions.getOverlappingPartitions(indexCache, indexParent, null, null, "/other");
+            Assert.assertEquals(partitions, Lists.newArrayList(IndexPartitions.getPartitionDirectory(indexParent, 1060000)));
+            Assert.assertEquals(indexCache.getMissCount(), 0);
+
+            PartitionedSearch   filtered = new PartitionedSearch(logSearches);
+            PartitionedSearch.Page page = filtered.searchPage(executorService, QueryBuilder.builder().pathPrefix("/other").build(QueryBuilder.Type.AND), null, 100);
+            Assert.assertEquals(page.getHits().size(), 4);
+            Assert.assertNull(page.getNext());
+        }
+        finally
+        {
+            for ( LogSearch logSearch : logSearches )
+            {
+                CloseableUtils.closeQuietly(logSearch);
+            }
+            CloseableUtils.closeQuietly(single);
+            CloseableUtils.closeQuietly(indexCache);
+            executorService.shutdownNow();
+        }
+    }
+
+    private PartitionedIndexBuilder update() throws Exception
+    {
+        PartitionedIndexBuilder builder = new PartitionedIndexBuilder(indexParent, PARTITION_MILLIS, 1);
+        try
+        {
+            builder.open();
+            for ( File log : LogFileMaker.getLogFiles(logDirectory) )
+            {
+                MappedLogFile   mappedLogFile = new MappedLogFile(log);
+                try
+                {
+                    builder.add(mappedLogFile.getStream());
+                }
+                finally
+                {
+                    mappedLogFile.close();
+                }
+            }
+            builder.writeMetaData();
+        }
+        finally
+        {
+            builder.close();
+        }
+        return builder;
+    }
+}
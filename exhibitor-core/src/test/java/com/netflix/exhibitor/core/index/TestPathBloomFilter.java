@@ -0,0 +1,159 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.io.Files;
+import com.netflix.exhibitor.core.activity.ActivityLog;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class TestPathBloomFilter
+{
+    private File        tempDirectory;
+    private File        logDirectory;
+
+    @BeforeMethod
+    public void         setup()
+    {
+        tempDirectory = Files.createTempDir();
+        logDirectory = new File(tempDirectory, "logs");
+        Assert.assertTrue(logDirectory.mkdirs());
+    }
+
+    @AfterMethod
+    public void         tearDown()
+    {
+        TestIndexBuilder.deleteDirectory(tempDirectory);
+    }
+
+    @Test
+    public void         testPrefixes() throws Exception
+    {
+        PathBloomFilter.Builder     builder = new PathBloomFilter.Builder();
+        for ( String path : new String[]{"/a/bc/d", "/x", "/a/b", ""} )
+        {
+            builder.add(path);
+        }
+        PathBloomFilter     filter = PathBloomFilter.build(null, Collections.singletonList(builder), 4);
+        for ( String prefix : new String[]{"/", "/a", "/a/", "/a/b", "/a/bc", "/a/bc/", "/a/bc/d", "/x"} )
+        {
+            Assert.assertTrue(filter.mightContainPrefix(prefix), prefix);
+        }
+        for ( String prefix : new String[]{"/y", "/a/c", "/a/bd", "/a/bc/de", "/x/"} )
+        {
+            Assert.assertFalse(filter.mightContainPrefix(prefix), prefix);
+        }
+
+        // round trip
+        File        indexDirectory = new File(tempDirectory, "index");
+        filter.write(indexDirectory);
+        PathBloomFilter     read = PathBloomFilter.read(indexDirectory);
+        Assert.assertNotNull(read);
+        Assert.assertEquals(read.getEntryCount(), 4);
+        Assert.assertTrue(read.mightContainPrefix("/a/bc"));
+        Assert.assertFalse(read.mightContainPrefix("/a/bd"));
+    }
+
+    @Test
+    public void         testUnion() throws Exception
+    {
+        PathBloomFilter.Builder     first = new PathBloomFilter.Builder();
+        first.add("/a/b");
+        PathBloomFilter     base = PathBloomFilter.build(null, Collections.singletonList(first), 1);
+
+        PathBloomFilter.Builder     second = new PathBloomFilter.Builder();
+        second.add("/c");
+        PathBloomFilter.Builder     third = new PathBloomFilter.Builder();
+        third.add("/d/e");
+        PathBloomFilter     union = PathBloomFilter.build(base, Arrays.asList(second, third), 3);
+        Assert.assertEquals(union.getEntryCount(), 3);
+        for ( String prefix : new String[]{"/a", "/a/b", "/c", "/d/", "/d/e"} )
+        {
+            Assert.assertTrue(union.mightContainPrefix(prefix), prefix);
+        }
+        Assert.assertFalse(union.mightContainPrefix("/e"));
+
+        // the base filter isn't changed
+        Assert.assertFalse(base.mightContainPrefix("/c"));
+    }
+
+    @Test
+    public void         testIndexSkipped() throws Exception
+    {
+        LogFileMaker    maker = new LogFileMaker(logDirectory, 1, 1000000);
+        maker.writeLog(10);
+        File            index = LogFileMaker.buildIndex(logDirectory, new File(tempDirectory, "index"));
+        Assert.assertTrue(PathBloomFilter.getFile(index).exists());
+
+        IndexCache      cache = new IndexCache(new ActivityLog(100));
+        try
+        {
+            Assert.assertTrue(cache.mightContainPathPrefix(index, "/test/node-"));
+            Assert.assertFalse(cache.mightContainPathPrefix(index, "/other"));
+            Assert.assertEquals(cache.getSkipCount(), 1);
+            Assert.assertEquals(cache.getMissCount(), 0);   // no reader was opened
+
+            // an incremental commit leaves the filter stale - it must not be used
+            Assert.assertTrue(logDirectory.renameTo(new File(tempDirectory, "old-logs")));
+            Assert.assertTrue(logDirectory.mkdirs());
+            new LogFileMaker(logDirectory, 1000, 2000000).writeMixedLog("/other/multi");
+            IndexBuilder    builder = new IndexBuilder(index, 1, IndexMetaData.read(IndexMetaData.getMetaDataFile(index)));
+            try
+            {
+                builder.open();
+                for ( File log : LogFileMaker.getLogFiles(logDirectory) )
+                {
+                    MappedLogFile   mappedLogFile = new MappedLogFile(log);
+                    try
+                    {
+                        builder.add(mappedLogFile.getStream());
+                    }
+                    finally
+                    {
+                        mappedLogFile.close();
+                    }
+                }
+                builder.commit();
+                cache.refresh(index);
+                Assert.assertTrue(cache.mightContainPathPrefix(index, "/other"));
+                Assert.assertTrue(cache.mightContainPathPrefix(index, "/nothing"));
+
+                builder.writeMetaData();
+                cache.refresh(index);
+                Assert.assertTrue(cache.mightContainPathPrefix(index, "/other"));
+                Assert.assertTrue(cache.mightContainPathPrefix(index, "/test/node-"));  // unioned with the base filter
+                Assert.assertFalse(cache.mightContainPathPrefix(index, "/nothing"));
+            }
+            finally
+            {
+                builder.close();
+            }
+
+            cache.delete(index);
+            Assert.assertFalse(PathBloomFilter.getFile(index).exists());
+        }
+        finally
+        {
+            cache.close();
+        }
+    }
+}
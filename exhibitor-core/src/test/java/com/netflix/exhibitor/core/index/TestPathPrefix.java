@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.io.Files;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.File;
+
+public class TestPathPrefix
+{
+    private File        tempDirectory;
+    private File        indexDirectory;
+
+    @BeforeMethod
+    public void         setup() throws Exception
+    {
+        tempDirectory = Files.createTempDir();
+        indexDirectory = LogFileMaker.makeIndex(tempDirectory, 20);
+    }
+
+    @AfterMethod
+    public void         tearDown()
+    {
+        TestIndexBuilder.deleteDirectory(tempDirectory);
+    }
+
+    @Test
+    public void         testAncestorTokens() throws Exception
+    {
+        PathAncestorsTokenStream    stream = new PathAncestorsTokenStream();
+        Assert.assertEquals(TestDataContains.tokens(stream, "/a/bc/d"), new String[]{"/", "/a", "/a/bc", "/a/bc/d"});
+        Assert.assertEquals(TestDataContains.tokens(stream, "/"), new String[]{"/"});
+    }
+
+    @Test
+    public void         testRewrite() throws Exception
+    {
+        NIOFSDirectory  directory = new NIOFSDirectory(indexDirectory);
+        IndexReader     reader = IndexReader.open(directory);
+        try
+        {
+            IndexSearcher   searcher = new IndexSearcher(reader);
+
+            Query           aligned = new PathPrefixQuery("/test").rewrite(reader);
+            Assert.assertTrue(aligned instanceof TermQuery);
+            Assert.assertEquals(searcher.search(aligned, 1000).totalHits, 60);
+
+            Assert.assertEquals(searcher.search(new PathPrefixQuery("/test/").rewrite(reader), 1000).totalHits, 60);
+            Assert.assertEquals(searcher.search(new PathPrefixQuery("/").rewrite(reader), 1000).totalHits, 60);
+            Assert.assertEquals(searcher.search(new PathPrefixQuery("/test/node-5").rewrite(reader), 1000).totalHits, 9);    // node-52, 55, 58
+            Assert.assertEquals(searcher.search(new PathPrefixQuery("/tes").rewrite(reader), 1000).totalHits, 60);
+
+            // "/test/node-1" is also a prefix of "/test/node-10" etc.
+            Query           unaligned = new PathPrefixQuery("/test/node-1").rewrite(reader);
+            Assert.assertTrue(unaligned instanceof PrefixQuery);
+            Assert.assertEquals(searcher.search(unaligned, 1000).totalHits, searcher.search(new PrefixQuery(new Term(FieldNames.PATH, "/test/node-1")), 1000).totalHits);
+
+            searcher.close();
+        }
+        finally
+        {
+            reader.close();
+            directory.close();
+        }
+    }
+}
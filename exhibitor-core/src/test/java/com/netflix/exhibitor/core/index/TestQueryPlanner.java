@@ -0,0 +1,209 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.io.Files;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.util.NumericUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+
+public class TestQueryPlanner
+{
+    private static final long START_TIME = 1000000;
+
+    private File        tempDirectory;
+    private File        indexDirectory;
+
+    @BeforeMethod
+    public void         setup() throws Exception
+    {
+        tempDirectory = Files.createTempDir();
+        File            logDirectory = new File(tempDirectory, "logs");
+        Assert.assertTrue(logDirectory.mkdirs());
+
+        LogFileMaker    maker = new LogFileMaker(logDirectory, 1, START_TIME);
+        maker.writeLog(20);
+        maker.writeLog(20);
+
+        indexDirectory = LogFileMaker.buildIndex(logDirectory, new File(tempDirectory, "index"));
+    }
+
+    @AfterMethod
+    public void         tearDown()
+    {
+        TestIndexBuilder.deleteDirectory(tempDirectory);
+    }
+
+    @Test
+    public void         testMatchesUnplannedQuery() throws Exception
+    {
+        LogSearch       logSearch = new LogSearch(indexDirectory);
+        try
+        {
+            Date        start = new Date(START_TIME + 10000);
+            Date        end = new Date(START_TIME + 90000);
+
+            Query       planned = QueryBuilder.builder()
+                .operationType(EntryTypes.SET_DATA.getId())
+                .dateRange(start, end)
+                .pathPrefix("/test/node-1")
+                .build(QueryBuilder.Type.AND);
+            Assert.assertTrue(planned instanceof PlannedQuery);
+
+            BooleanQuery    plain = new BooleanQuery();
+            plain.add(new TermQuery(new Term(FieldNames.TYPE, Integer.toString(EntryTypes.SET_DATA.getId()))), BooleanClause.Occur.MUST);
+            plain.add(NumericRangeQuery.newLongRange(FieldNames.DATE, start.getTime(), end.getTime(), true, false), BooleanClause.Occur.MUST);
+            plain.add(new PrefixQuery(new Term(FieldNames.PATH, "/test/node-1")), BooleanClause.Occur.MUST);
+
+            int[]       expected = logSearch.searchDocIds(plain, Integer.MAX_VALUE);
+            Assert.assertTrue(expected.length > 0);
+            Assert.assertEquals(logSearch.searchDocIds(planned, Integer.MAX_VALUE), expected);
+            Assert.assertEquals(logSearch.searchDocIds(planned, Integer.MAX_VALUE), expected);    // now served from the cached filter bitsets
+
+            Query       filtersOnly = QueryBuilder.builder()
+                .dateRange(start, end)
+                .operationType(EntryTypes.SET_DATA.getId())
+                .build(QueryBuilder.Type.AND);
+            BooleanQuery    plainFiltersOnly = new BooleanQuery();
+            plainFiltersOnly.add(plain.getClauses()[0]);
+            plainFiltersOnly.add(plain.getClauses()[1]);
+            Assert.assertEquals(logSearch.searchDocIds(filtersOnly, Integer.MAX_VALUE), logSearch.searchDocIds(plainFiltersOnly, Integer.MAX_VALUE));
+
+            Query       empty = QueryBuilder.builder()
+                .operationType(EntryTypes.SET_DATA.getId())
+                .operationType(EntryTypes.DELETE.getId())
+                .build(QueryBuilder.Type.AND);
+            Assert.assertEquals(logSearch.searchDocIds(empty, Integer.MAX_VALUE).length, 0);
+
+            Query       either = QueryBuilder.builder()
+                .operationType(EntryTypes.SET_DATA.getId())
+                .operationType(EntryTypes.DELETE.getId())
+                .build(QueryBuilder.Type.OR);
+            Assert.assertEquals(logSearch.searchDocIds(either, Integer.MAX_VALUE).length, 80);
+        }
+        finally
+        {
+            logSearch.close();
+        }
+    }
+
+    @Test
+    public void         testRollingDateRangesShareFilter() throws Exception
+    {
+        LogSearch       logSearch = new LogSearch(indexDirectory);
+        try
+        {
+            long        baseWeight = logSearch.getWeight();
+            long        cachedWeight = 0;
+            for ( long offset = 0; offset < 5000; offset += 1000 )
+            {
+                // bounds inside the buckets so that the edges have to be removed
+                long        start = START_TIME + 10500 + offset;
+                long        end = START_TIME + 90500 + offset;
+                Assert.assertTrue((start % QueryBuilder.DATE_BUCKET_MS) != 0);
+                Assert.assertTrue((end % QueryBuilder.DATE_BUCKET_MS) != 0);
+
+                Query       planned = QueryBuilder.builder().dateRange(new Date(start), new Date(end)).build(QueryBuilder.Type.AND);
+                Query       plain = NumericRangeQuery.newLongRange(FieldNames.DATE, start, end, true, false);
+                int[]       expected = logSearch.searchDocIds(plain, Integer.MAX_VALUE);
+                Assert.assertEquals(expected.length, 80);
+                Assert.assertEquals(logSearch.searchDocIds(planned, Integer.MAX_VALUE), expected);
+
+                Query       either = QueryBuilder.builder().dateRange(new Date(start), new Date(end)).operationType(EntryTypes.DELETE.getId()).build(QueryBuilder.Type.OR);
+                BooleanQuery    plainEither = new BooleanQuery();
+                plainEither.add(plain, BooleanClause.Occur.SHOULD);
+                plainEither.add(new TermQuery(new Term(FieldNames.TYPE, Integer.toString(EntryTypes.DELETE.getId()))), BooleanClause.Occur.SHOULD);
+                Assert.assertEquals(logSearch.searchDocIds(either, Integer.MAX_VALUE), logSearch.searchDocIds(plainEither, Integer.MAX_VALUE));
+
+                // the cached bitsets count toward the weight - a rolled range reuses them
+                if ( offset == 0 )
+                {
+                    cachedWeight = logSearch.getWeight();
+                    Assert.assertTrue(cachedWeight > baseWeight);
+                }
+                Assert.assertEquals(logSearch.getWeight(), cachedWeight);
+            }
+        }
+        finally
+        {
+            logSearch.close();
+        }
+    }
+
+    @Test
+    public void         testOrderIsPerReader() throws Exception
+    {
+        long            session = 0x5678L;
+        File            mostlySession = new File(tempDirectory, "mostly-session");
+        Assert.assertTrue(mostlySession.mkdirs());
+        LogFileMaker    maker = new LogFileMaker(mostlySession, 1, START_TIME);
+        maker.setSessionId(session);
+        maker.writeLog(20);     // 60 txns of the session, 20 setData
+
+        File            rarelySession = new File(tempDirectory, "rarely-session");
+        Assert.assertTrue(rarelySession.mkdirs());
+        maker = new LogFileMaker(rarelySession, 1, START_TIME);
+        maker.writeLog(20);
+        maker.setSessionId(session);
+        maker.writeLog(1);      // 3 txns of the session, 21 setData
+
+        Term                typeTerm = new Term(FieldNames.TYPE, Integer.toString(EntryTypes.SET_DATA.getId()));
+        Term                sessionTerm = new Term(FieldNames.SESSION, NumericUtils.longToPrefixCoded(session));
+        FilterClause        typeClause = new FilterClause("type", new QueryWrapperFilter(new TermQuery(typeTerm)), typeTerm);
+        FilterClause        sessionClause = new FilterClause("session", new QueryWrapperFilter(new TermQuery(sessionTerm)), sessionTerm);
+        IntersectionFilter  filter = new IntersectionFilter(Arrays.asList(typeClause, sessionClause));
+
+        IndexReader         mostly = IndexReader.open(new NIOFSDirectory(LogFileMaker.buildIndex(mostlySession, new File(tempDirectory, "mostly-index"))));
+        IndexReader         rarely = IndexReader.open(new NIOFSDirectory(LogFileMaker.buildIndex(rarelySession, new File(tempDirectory, "rarely-index"))));
+        try
+        {
+            Assert.assertEquals(filter.getOrder(mostly), Arrays.asList(typeClause, sessionClause));
+            Assert.assertEquals(filter.getOrder(rarely), Arrays.asList(sessionClause, typeClause));
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(mostly);
+            CloseableUtils.closeQuietly(rarely);
+        }
+    }
+
+    @Test
+    public void         testEquivalentQueriesAreEqual() throws Exception
+    {
+        Date        start = new Date(START_TIME);
+        Date        end = new Date(START_TIME + 5000);
+        Query       q1 = QueryBuilder.builder().operationType(EntryTypes.CREATE_PERSISTENT.getId()).dateRange(start, end).build(QueryBuilder.Type.AND);
+        Query       q2 = QueryBuilder.builder().dateRange(start, end).operationType(EntryTypes.CREATE_PERSISTENT.getId()).build(QueryBuilder.Type.AND);
+        Assert.assertEquals(q1, q2);
+        Assert.assertEquals(q1.hashCode(), q2.hashCode());
+    }
+}
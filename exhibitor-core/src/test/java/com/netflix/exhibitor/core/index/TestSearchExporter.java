@@ -0,0 +1,134 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.Files;
+import org.apache.curator.utils.CloseableUtils;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.List;
+
+public class TestSearchExporter
+{
+    private static final long START_TIME = 1000000;
+
+    private File        tempDirectory;
+    private LogSearch   logSearch;
+
+    @BeforeMethod
+    public void         setup() throws Exception
+    {
+        tempDirectory = Files.createTempDir();
+        File            logDirectory = new File(tempDirectory, "logs");
+        Assert.assertTrue(logDirectory.mkdirs());
+
+        LogFileMaker    maker = new LogFileMaker(logDirectory, 1, START_TIME);
+        maker.writeLog(20);
+        maker.writeMixedLog("/other/a,\"b\"");
+
+        logSearch = new LogSearch(LogFileMaker.buildIndex(logDirectory, new File(tempDirectory, "index")));
+    }
+
+    @AfterMethod
+    public void         tearDown()
+    {
+        CloseableUtils.closeQuietly(logSearch);
+        TestIndexBuilder.deleteDirectory(tempDirectory);
+    }
+
+    @Test
+    public void         testNdjson() throws Exception
+    {
+        ByteArrayOutputStream   out = new ByteArrayOutputStream();
+        SearchExporter          exporter = new SearchExporter(logSearch, null, SearchExporter.Format.NDJSON, true, 0, 7);
+        Assert.assertEquals(exporter.export(out), 67);
+
+        List<String>            lines = lines(out);
+        Assert.assertEquals(lines.size(), 67);
+        Assert.assertEquals(Sets.newHashSet(lines).size(), 67);   // pages don't overlap
+
+        ObjectMapper            mapper = new ObjectMapper();
+        long                    lastDate = Long.MAX_VALUE;
+        int                     dataQty = 0;
+        for ( String line : lines )
+        {
+            JsonNode    node = mapper.readTree(line);
+            long        date = node.get("date").getLongValue();
+            Assert.assertTrue(date <= lastDate);
+            lastDate = date;
+
+            if ( node.get("type").getTextValue().equals(EntryTypes.SET_DATA.name()) && node.get("path").getTextValue().startsWith("/test/") )
+            {
+                String  data = new String(BaseEncoding.base64().decode(node.get("data").getTextValue()), Charsets.UTF_8);
+                Assert.assertTrue(data.startsWith("set "), data);
+                ++dataQty;
+            }
+        }
+        Assert.assertEquals(dataQty, 20);
+
+        JsonNode                newest = mapper.readTree(lines.get(0));
+        Assert.assertEquals(newest.get("type").getTextValue(), EntryTypes.CLOSE_SESSION.name());
+        Assert.assertEquals(newest.get("sessionId").getTextValue(), "0x1234");
+        Assert.assertNull(newest.get("data"));
+    }
+
+    @Test
+    public void         testCsv() throws Exception
+    {
+        ByteArrayOutputStream   out = new ByteArrayOutputStream();
+        SearchExporter          exporter = new SearchExporter(logSearch, QueryBuilder.builder().pathPrefix("/other").build(QueryBuilder.Type.AND), SearchExporter.Format.CSV, false, 0, 2);
+        Assert.assertEquals(exporter.export(out), 4);
+
+        List<String>            lines = lines(out);
+        Assert.assertEquals(lines.size(), 5);
+        Assert.assertEquals(lines.get(0), "type,date,path,version,zxid,sessionId,cxid");
+        for ( String line : lines.subList(1, lines.size()) )
+        {
+            Assert.assertTrue(line.contains(",\"/other/a,\"\"b\"\"\","), line);
+        }
+    }
+
+    @Test
+    public void         testMax() throws Exception
+    {
+        ByteArrayOutputStream   out = new ByteArrayOutputStream();
+        SearchExporter          exporter = new SearchExporter(logSearch, null, SearchExporter.Format.CSV, true, 10, 3);
+        Assert.assertEquals(exporter.export(out), 10);
+        Assert.assertEquals(lines(out).size(), 11);
+        Assert.assertTrue(lines(out).get(0).endsWith(",data"));
+
+        Assert.assertEquals(SearchExporter.Format.fromName(null), SearchExporter.Format.NDJSON);
+        Assert.assertEquals(SearchExporter.Format.fromName("csv"), SearchExporter.Format.CSV);
+        Assert.assertNull(SearchExporter.Format.fromName("xml"));
+    }
+
+    private static List<String> lines(ByteArrayOutputStream out)
+    {
+        String      text = new String(out.toByteArray(), Charsets.UTF_8);
+        return Lists.newArrayList(Splitter.onPattern("\\r?\\n").omitEmptyStrings().split(text));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.io.Files;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.File;
+import java.util.Date;
+
+public class TestSearchResultCache
+{
+    private File        tempDirectory;
+    private File        indexDirectory;
+
+    @BeforeMethod
+    public void         setup() throws Exception
+    {
+        tempDirectory = Files.createTempDir();
+        File            logDirectory = new File(tempDirectory, "logs");
+        Assert.assertTrue(logDirectory.mkdirs());
+
+        LogFileMaker    maker = new LogFileMaker(logDirectory, 1, 1000000);
+        maker.writeLog(20);
+
+        indexDirectory = LogFileMaker.buildIndex(logDirectory, new File(tempDirectory, "index"));
+    }
+
+    @AfterMethod
+    public void         tearDown()
+    {
+        TestIndexBuilder.deleteDirectory(tempDirectory);
+    }
+
+    @Test
+    public void         testNormalizedKeys()
+    {
+        Date        d1 = new Date(1000);
+        Date        d2 = new Date(2000);
+        Assert.assertEquals(new SearchKey("", null, -5, d1, d2, 10), new SearchKey(null, null, -1, d2, d1, 10));
+        Assert.assertEquals(new SearchKey("/a", null, 1, d1, d2, 10).hashCode(), new SearchKey("/a", null, 1, d2, d1, 10).hashCode());
+        Assert.assertFalse(new SearchKey("/a", null, 1, d1, d2, 10).equals(new SearchKey("/a", null, 1, d1, d2, 11)));
+        Assert.assertTrue(new SearchKey("", null, -1, d1, null, 0).isAllDocs());
+    }
+
+    @Test
+    public void         testHandlesShareResults() throws Exception
+    {
+        LogSearch       logSearch = new LogSearch(indexDirectory);
+        try
+        {
+            String      handle1 = logSearch.cacheSearch(new SearchKey("/test", null, EntryTypes.SET_DATA.getId(), null, null, 0), null);
+            String      handle2 = logSearch.cacheSearch(new SearchKey("/test", null, EntryTypes.SET_DATA.getId(), null, null, 0), null);
+            Assert.assertFalse(handle1.equals(handle2));
+            Assert.assertEquals(logSearch.getSharedResultQty(), 1);
+            Assert.assertEquals(logSearch.getCachedSearch(handle1).getTotalHits(), 20);
+            Assert.assertEquals(logSearch.getCachedSearch(handle2).getTotalHits(), 20);
+
+            String      handle3 = logSearch.cacheSearch(new SearchKey("/test", null, EntryTypes.DELETE.getId(), null, null, 0), null);
+            Assert.assertEquals(logSearch.getSharedResultQty(), 2);
+
+            // reusing a handle for a different search releases its old result
+            Assert.assertEquals(logSearch.cacheSearch(new SearchKey("/test", null, EntryTypes.SET_DATA.getId(), null, null, 0), handle3), handle3);
+            Assert.assertEquals(logSearch.getSharedResultQty(), 1);
+
+            logSearch.releaseCache(handle1);
+            logSearch.releaseCache(handle2);
+            Assert.assertEquals(logSearch.getSharedResultQty(), 1);
+            Assert.assertEquals(logSearch.getCachedSearch(handle3).getTotalHits(), 20);
+
+            logSearch.releaseCache(handle3);
+            Assert.assertEquals(logSearch.getSharedResultQty(), 0);
+        }
+        finally
+        {
+            logSearch.close();
+        }
+    }
+}
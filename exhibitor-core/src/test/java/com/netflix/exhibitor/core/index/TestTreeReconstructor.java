@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.server.DataTree;
+import org.apache.zookeeper.server.persistence.FileSnap;
+import org.apache.zookeeper.server.persistence.Util;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.File;
+import java.util.Map;
+
+public class TestTreeReconstructor
+{
+    private File        tempDirectory;
+    private File        snapshot;
+
+    private static final long       START_TIME = 1000000;
+
+    @BeforeMethod
+    public void         setup() throws Exception
+    {
+        tempDirectory = Files.createTempDir();
+
+        DataTree            tree = new DataTree();
+        tree.createNode("/test", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, 0, 0, 0, START_TIME);
+        Map<Long, Integer>  sessions = Maps.newHashMap();
+        snapshot = new File(tempDirectory, Util.makeSnapshotName(0));
+        new FileSnap(tempDirectory).serialize(tree, sessions, snapshot);
+
+        LogFileMaker        maker = new LogFileMaker(tempDirectory, 1, START_TIME);
+        maker.writeLog(10);     // zxids 1 - 30
+        maker.writeLog(10);     // zxids 31 - 60
+    }
+
+    @AfterMethod
+    public void         tearDown()
+    {
+        TestIndexBuilder.deleteDirectory(tempDirectory);
+    }
+
+    @Test
+    public void         testReplay() throws Exception
+    {
+        TreeReconstructor   reconstructor = new TreeReconstructor(tempDirectory, tempDirectory);
+
+        // each create/setData/delete triple uses the zxid of its create in the path
+        Stat                stat = new Stat();
+        PointInTimeTree     tree = reconstructor.getTree(34);
+        Assert.assertEquals(tree.getZxid(), 34);
+        Assert.assertEquals(tree.getChildren("/test").size(), 1);
+        Assert.assertEquals(new String(tree.getData("/test/node-34", stat)), "create 1");
+        Assert.assertEquals(stat.getMzxid(), 34);
+
+        tree = reconstructor.getTree(35);
+        Assert.assertEquals(new String(tree.getData("/test/node-34", stat)), "set 1");
+        Assert.assertEquals(stat.getVersion(), 1);
+
+        tree = reconstructor.getTree(36);
+        Assert.assertEquals(tree.getChildren("/test").size(), 0);
+        try
+        {
+            tree.getData("/test/node-34", null);
+            Assert.fail();
+        }
+        catch ( KeeperException.NoNodeException expected )
+        {
+            // expected
+        }
+
+        tree = reconstructor.getTree(Long.MAX_VALUE);
+        Assert.assertEquals(tree.getZxid(), 60);
+    }
+
+    @Test
+    public void         testCheckpoints() throws Exception
+    {
+        TreeReconstructor   reconstructor = new TreeReconstructor(tempDirectory, tempDirectory, 10, Long.MAX_VALUE);
+        reconstructor.getTree(55);
+        Assert.assertEquals(reconstructor.getCheckpointQty(), 5);
+
+        // later trees must come from a checkpoint now
+        Assert.assertTrue(snapshot.delete());
+        PointInTimeTree     tree = reconstructor.getTree(43);
+        Assert.assertEquals(tree.getZxid(), 43);
+        Assert.assertEquals(new String(tree.getData("/test/node-43", null)), "create 4");
+
+        try
+        {
+            reconstructor.getTree(5);   // before the first checkpoint
+            Assert.fail();
+        }
+        catch ( Exception expected )
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void         testCheckpointLimit() throws Exception
+    {
+        TreeReconstructor   reconstructor = new TreeReconstructor(tempDirectory, tempDirectory, 10, 1);
+        reconstructor.getTree(55);
+        Assert.assertEquals(reconstructor.getCheckpointQty(), 0);
+    }
+
+    @Test
+    public void         testFindZxid() throws Exception
+    {
+        TreeReconstructor   reconstructor = new TreeReconstructor(tempDirectory, tempDirectory);
+        Assert.assertEquals(reconstructor.findZxid(START_TIME - 1), -1);
+        Assert.assertEquals(reconstructor.findZxid(START_TIME + 4500), 5);
+        Assert.assertEquals(reconstructor.findZxid(START_TIME + 40000), 41);
+        Assert.assertEquals(reconstructor.findZxid(Long.MAX_VALUE), 60);
+    }
+}
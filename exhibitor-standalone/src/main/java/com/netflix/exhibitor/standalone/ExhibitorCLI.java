@@ -93,6 +93,8 @@ public class ExhibitorCLI
     public static final String LOGLINES = "loglines";
     public static final String HOSTNAME = "hostname";
     public static final String CONFIGCHECKMS = "configcheckms";
+    public static final String LIVE_INDEX_MS = "liveindexms";
+    public static final String INDEX_DATA_TEXT_CHARS = "indexdatatextchars";
     public static final String HELP = "help";
     public static final String ALT_HELP = "?";
     public static final String HTTP_PORT = "port";
@@ -189,6 +191,8 @@ public class ExhibitorCLI
         generalOptions.addOption(ALT_HELP, HELP, false, "Print this help");
         generalOptions.addOption(SHORT_CONFIG_TYPE, CONFIG_TYPE, true, "Defines which configuration type you want to use. Choices are: \"file\", \"s3\", \"zookeeper\", \"consul\" or \"none\". Additional config will be required depending on which type you are using.");
         generalOptions.addOption(null, CONFIGCHECKMS, true, "Period (ms) to check for shared config updates. Default is: 30000");
+        generalOptions.addOption(null, LIVE_INDEX_MS, true, "If set, a live index that tails the active ZooKeeper txn log is kept in the log index directory and committed at this period (ms). Default is: 0 (no live index)");
+        generalOptions.addOption(null, INDEX_DATA_TEXT_CHARS, true, "If set, log indexes also index up to this many characters of each text znode payload so that searches can match data contents. This makes indexes considerably larger. Default is: 0 (data isn't indexed)");
         generalOptions.addOption(null, SERVO_INTEGRATION, true, "true/false (default is false). If enabled, ZooKeeper will be queried once a minute for its state via the 'mntr' four letter word (this requires ZooKeeper 3.4.x+). Servo will be used to publish this data via JMX.");
         generalOptions.addOption(null, INITIAL_CONFIG_FILE, true, "Full path to a file that contains initial/default values for Exhibitor/ZooKeeper config values. The file is a standard property file. The property names are listed below. The file can specify some or all of the properties.");
         generalOptions.addOption(null, PREFERENCES_PATH, true, "Certain values (such as Control Panel values) are stored in a preferences file. By default, Preferences.userRoot() is used. Use this option to specify a different file path.");
@@ -156,6 +156,8 @@ public class ExhibitorCreator
         int timeoutMs = Integer.parseInt(commandLine.getOptionValue(TIMEOUT, "30000"));
         int logWindowSizeLines = Integer.parseInt(commandLine.getOptionValue(LOGLINES, "1000"));
         int configCheckMs = Integer.parseInt(commandLine.getOptionValue(CONFIGCHECKMS, "30000"));
+        int liveIndexMs = Integer.parseInt(commandLine.getOptionValue(LIVE_INDEX_MS, "0"));
+        int indexDataTextChars = Integer.parseInt(commandLine.getOptionValue(INDEX_DATA_TEXT_CHARS, "0"));
         String useHostname = commandLine.getOptionValue(HOSTNAME, cli.getHostname());
         int httpPort = Integer.parseInt(commandLine.getOptionValue(HTTP_PORT, "8080"));
         String listenAddress = commandLine.getOptionValue(LISTEN_ADDRESS, "0.0.0.0");
@@ -238,6 +240,8 @@ public class ExhibitorCreator
             .aclProvider(aclProvider)
             .servoRegistration(servoRegistration)
             .preferencesPath(preferencesPath)
+            .liveIndexPeriodMs(liveIndexMs)
+            .indexDataTextMaxChars(indexDataTextChars)
         ;
 
         this.securityHandler = handler;